@@ -0,0 +1,79 @@
+package io.github.cmuphil.earthlinguistfx.archive;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * The thread pool archive entries are compressed and extracted on, one thread per core. Threads are daemons so that
+ * the pool never keeps the application alive.
+ *
+ * @author josephramsey
+ */
+final class ArchiveExecutor {
+
+    /**
+     * The pool.
+     */
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "archive-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Prevents instantiation.
+     */
+    private ArchiveExecutor() {
+    }
+
+    /**
+     * Runs the given tasks on the pool and waits for all of them. If any task fails, the remaining tasks are
+     * cancelled and the first failure is thrown.
+     *
+     * @param tasks the tasks.
+     * @param <T>   the type of result.
+     * @return the results, in the order of the tasks.
+     * @throws IOException if a task failed.
+     */
+    static <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<Future<T>> futures = new ArrayList<>();
+
+        for (Callable<T> task : tasks) {
+            futures.add(POOL.submit(task));
+        }
+
+        List<T> results = new ArrayList<>();
+
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for archive tasks.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException io) {
+                throw io;
+            } else if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            } else if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+
+            throw new IOException(cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return results;
+    }
+}
@@ -0,0 +1,367 @@
+package io.github.cmuphil.earthlinguistfx.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Brings a zip file up to date with a directory by rewriting only the entries that changed. Entries whose file has
+ * the same size and modification time as before, or failing that the same CRC, are carried over byte-for-byte with no
+ * recompression; only new and modified files are compressed and written, along with a new central directory.
+ * <p>
+ * When the zip file is its own base, it is updated in place: changed entries are appended where the old central
+ * directory began, the new central directory follows them and the file is truncated. Unchanged entries do not move
+ * at all. Before the old central directory is overwritten, it and the rest of the file after it are copied to a
+ * journal beside the archive, which is deleted once the update is on disk. If the update fails, or the process dies
+ * part way through it, {@link #recover(Path)} puts the old tail back, leaving the archive as it was before the
+ * update. The space left by replaced entries is reclaimed by copying the archive once it exceeds half of the
+ * archive. When the base is a different archive, such as the previous save of the same session, the new archive is
+ * written to a temporary file, copying unchanged entries' data from the base with channel transfers.
+ *
+ * @author josephramsey
+ */
+public class IncrementalZipUpdater {
+
+    /**
+     * The archive is compacted when the bytes of replaced entries exceed this fraction of its entry data.
+     */
+    private static final double MAX_DEAD_FRACTION = 0.5;
+
+    /**
+     * MS-DOS times have a two-second resolution, so a file modified within this many milliseconds of the base
+     * archive being written may have changed without its recorded time changing.
+     */
+    private static final long DOS_TIME_RESOLUTION_MILLIS = 2000;
+
+    /**
+     * The number of bytes read per block when computing a CRC.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Prevents instantiation.
+     */
+    private IncrementalZipUpdater() {
+    }
+
+    /**
+     * Writes every regular file under the given directory to the given zip file, reusing the entries of the base
+     * archive that are unchanged.
+     *
+     * @param sourceDir the directory.
+     * @param base      an earlier archive of the directory; may be the zip file itself, to update it in place.
+     * @param zipFile   the zip file to write.
+     * @return what was done.
+     * @throws IOException if the base cannot be read or the archive cannot be written. If the zip file was being
+     *                     updated in place, it is left as it was before the update.
+     */
+    public static Result update(Path sourceDir, Path base, Path zipFile) throws IOException {
+        recover(base);
+        recover(zipFile);
+        List<Path> files;
+
+        try (Stream<Path> walk = Files.walk(sourceDir)) {
+            files = walk.filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)).sorted().toList();
+        }
+
+        boolean inPlace = Files.exists(zipFile) && Files.isSameFile(base, zipFile);
+        Path tempDir = Files.createTempDirectory(zipFile.toAbsolutePath().getParent(), ".zip-writer");
+
+        try {
+            List<Planned> plan = new ArrayList<>();
+            long cdOffset;
+            long liveBytes = 0;
+
+            try (ZipIndex index = ZipIndex.open(base)) {
+                long baseMillis = Files.getLastModifiedTime(base).toMillis();
+                List<Callable<Planned>> tasks = new ArrayList<>();
+
+                for (Path file : files) {
+                    String name = ZipArchiveWriter.entryName(sourceDir.relativize(file));
+                    ZipEntryRecord old = index.getEntry(name);
+                    tasks.add(() -> plan(file, name, old, baseMillis, index, tempDir));
+                }
+
+                plan.addAll(ArchiveExecutor.invokeAll(tasks));
+                cdOffset = index.getCentralDirectoryOffset();
+
+                for (Planned planned : plan) {
+                    if (planned.isCarried()) {
+                        liveBytes += planned.dataOffset() + planned.carried().compressedSize()
+                                - planned.carried().localHeaderOffset();
+                    }
+                }
+            }
+
+            int carried = (int) plan.stream().filter(Planned::isCarried).count();
+            int written = plan.size() - carried;
+
+            if (inPlace && (cdOffset - liveBytes) <= cdOffset * MAX_DEAD_FRACTION) {
+                updateInPlace(zipFile, plan, cdOffset);
+                return new Result(carried, written, true);
+            }
+
+            Path temp = tempDir.resolve("archive.zip");
+            copyInto(temp, base, plan);
+            ZipArchiveWriter.moveIntoPlace(temp, zipFile);
+            return new Result(carried, written, false);
+        } finally {
+            ZipArchiveWriter.deleteRecursively(tempDir);
+        }
+    }
+
+    /**
+     * Decides whether a file can be carried over from the base archive, and prepares it for writing if not.
+     *
+     * @param file       the file.
+     * @param name       the entry name.
+     * @param old        the base archive's entry of that name, or null.
+     * @param baseMillis the modification time of the base archive.
+     * @param index      the base archive.
+     * @param tempDir    the directory for temporary files.
+     * @return the plan for the entry.
+     * @throws IOException if the file or the base archive cannot be read.
+     */
+    private static Planned plan(Path file, String name, ZipEntryRecord old, long baseMillis, ZipIndex index,
+                                Path tempDir) throws IOException {
+        if (old != null && isUnchanged(file, old, baseMillis)) {
+            return new Planned(old, index.getDataOffset(old), null);
+        }
+
+        return new Planned(null, 0, ZipArchiveWriter.prepare(file, name, tempDir));
+    }
+
+    /**
+     * Returns true if the file's contents are those of the base archive's entry. A matching size and modification
+     * time is trusted if the file was last modified well before the base archive was written; otherwise the file's
+     * CRC is compared.
+     *
+     * @param file       the file.
+     * @param old        the base archive's entry.
+     * @param baseMillis the modification time of the base archive.
+     * @return true if the file is unchanged.
+     * @throws IOException if the file cannot be read.
+     */
+    private static boolean isUnchanged(Path file, ZipEntryRecord old, long baseMillis) throws IOException {
+        if (old.isDirectory() || (old.method() != ZipFormat.STORED && old.method() != ZipFormat.DEFLATED)) {
+            return false;
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+        if (attributes.size() != old.size()) {
+            return false;
+        }
+
+        long millis = attributes.lastModifiedTime().toMillis();
+
+        if (ZipFormat.toDosTime(millis) == old.dosTime() && millis + DOS_TIME_RESOLUTION_MILLIS < baseMillis) {
+            return true;
+        }
+
+        return crc(file) == old.crc();
+    }
+
+    /**
+     * Undoes an in-place update of the given zip file that did not finish, if there was one, by writing the old
+     * central directory and the rest of the file after it back from the journal. This must be called before the zip
+     * file is read if it may have been updated in place when the process died.
+     *
+     * @param zipFile the zip file.
+     * @return true if an update was undone.
+     * @throws IOException if the journal cannot be read or the zip file cannot be written.
+     */
+    public static boolean recover(Path zipFile) throws IOException {
+        Path journal = journal(zipFile);
+
+        if (!Files.exists(journal)) {
+            return false;
+        }
+
+        if (Files.exists(zipFile)) {
+            try (FileChannel in = FileChannel.open(journal, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(zipFile, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+
+                while (header.hasRemaining()) {
+                    if (in.read(header) < 0) {
+                        throw new IOException("The journal of " + zipFile.getFileName() + " is truncated.");
+                    }
+                }
+
+                long cdOffset = header.flip().getLong();
+                long length = in.size() - Long.BYTES;
+                out.truncate(cdOffset);
+                ZipArchiveWriter.transferFully(in, Long.BYTES, length, out.position(cdOffset));
+                out.force(true);
+            }
+        }
+
+        Files.delete(journal);
+        return true;
+    }
+
+    /**
+     * Appends the changed entries where the old central directory began, writes the new central directory and
+     * truncates the file. The old tail of the file is journaled first, and put back if the update fails.
+     *
+     * @param zipFile  the zip file.
+     * @param plan     the plan for each entry, in central directory order.
+     * @param cdOffset the offset of the old central directory.
+     * @throws IOException if the file cannot be written.
+     */
+    private static void updateInPlace(Path zipFile, List<Planned> plan, long cdOffset) throws IOException {
+        writeJournal(zipFile, cdOffset);
+        boolean done = false;
+
+        try (FileChannel out = FileChannel.open(zipFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            out.position(cdOffset);
+            List<ZipEntryRecord> entries = new ArrayList<>();
+
+            for (Planned planned : plan) {
+                entries.add(planned.isCarried() ? planned.carried() : ZipArchiveWriter.append(out, planned.prepared()));
+            }
+
+            long offset = out.position();
+            ZipFormat.writeCentralDirectory(out, offset, entries);
+            out.truncate(out.position());
+            out.force(true);
+            done = true;
+        } finally {
+            if (done) {
+                Files.delete(journal(zipFile));
+            } else {
+                recover(zipFile);
+            }
+        }
+    }
+
+    /**
+     * Copies the tail of the zip file from the old central directory on, after its offset, to the journal. The
+     * journal is written to a temporary file and renamed into place once it is on disk, so it is whole if it exists.
+     *
+     * @param zipFile  the zip file.
+     * @param cdOffset the offset of the old central directory.
+     * @throws IOException if the journal cannot be written.
+     */
+    private static void writeJournal(Path zipFile, long cdOffset) throws IOException {
+        Path journal = journal(zipFile);
+        Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+
+        try {
+            try (FileChannel in = FileChannel.open(zipFile, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                ZipFormat.writeFully(out, ByteBuffer.allocate(Long.BYTES).putLong(cdOffset).flip());
+                ZipArchiveWriter.transferFully(in, cdOffset, in.size() - cdOffset, out);
+                out.force(true);
+            }
+
+            Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Returns the path of the journal of an in-place update of the given zip file.
+     *
+     * @param zipFile the zip file.
+     * @return the journal's path.
+     */
+    private static Path journal(Path zipFile) {
+        Path absolute = zipFile.toAbsolutePath();
+        return absolute.resolveSibling("." + absolute.getFileName() + ".journal");
+    }
+
+    /**
+     * Writes a new archive, copying the data of carried entries from the base archive and appending changed ones.
+     *
+     * @param target the new archive, which must not exist.
+     * @param base   the base archive.
+     * @param plan   the plan for each entry, in central directory order.
+     * @throws IOException if the base cannot be read or the archive written.
+     */
+    private static void copyInto(Path target, Path base, List<Planned> plan) throws IOException {
+        try (FileChannel in = FileChannel.open(base, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            List<ZipEntryRecord> entries = new ArrayList<>();
+
+            for (Planned planned : plan) {
+                if (planned.isCarried()) {
+
+                    // Write a fresh local header rather than copying the old one, which may have been written with
+                    // a trailing data descriptor.
+                    ZipEntryRecord record = planned.carried().atOffset(out.position());
+                    ZipFormat.checkFits(record);
+                    ZipFormat.writeFully(out, ZipFormat.localHeader(record));
+                    ZipArchiveWriter.transferFully(in, planned.dataOffset(), record.compressedSize(), out);
+                    entries.add(record);
+                } else {
+                    entries.add(ZipArchiveWriter.append(out, planned.prepared()));
+                }
+            }
+
+            ZipFormat.writeCentralDirectory(out, out.position(), entries);
+            out.force(true);
+        }
+    }
+
+    /**
+     * Returns the CRC-32 of a file.
+     *
+     * @param file the file.
+     * @return the CRC.
+     * @throws IOException if the file cannot be read.
+     */
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] block = new byte[BLOCK_SIZE];
+
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+
+            while ((n = in.read(block)) > 0) {
+                crc.update(block, 0, n);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * What an update did.
+     *
+     * @param carried the number of entries carried over unchanged.
+     * @param written the number of entries compressed and written.
+     * @param inPlace true if the archive was updated in place rather than rewritten.
+     */
+    public record Result(int carried, int written, boolean inPlace) {
+    }
+
+    /**
+     * The plan for one entry: either carried over from the base archive or prepared for writing.
+     *
+     * @param carried    the base archive's entry, if the entry is carried over; otherwise null.
+     * @param dataOffset the offset of the carried entry's data in the base archive.
+     * @param prepared   the prepared entry, if the entry is written; otherwise null.
+     */
+    private record Planned(ZipEntryRecord carried, long dataOffset, ZipArchiveWriter.Prepared prepared) {
+
+        /**
+         * Returns true if the entry is carried over from the base archive.
+         *
+         * @return true if the entry is carried over.
+         */
+        boolean isCarried() {
+            return carried != null;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package io.github.cmuphil.earthlinguistfx.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a directory to a zip file, compressing entries in parallel across cores. Each entry is either STORED or
+ * DEFLATED: audio and images, which barely compress, are stored; text such as 'state.json' is deflated; anything else
+ * is deflated only if a quick trial compression of its first block pays off.
+ * <p>
+ * Files are streamed from disk and never loaded whole. Deflated entries are compressed into temporary files in
+ * parallel; the archive is then assembled in one sequential pass that copies each entry's data into place with a
+ * channel transfer. The archive is written to a temporary file and moved over the target when it is complete.
+ *
+ * @author josephramsey
+ */
+public class ZipArchiveWriter {
+
+    /**
+     * File extensions whose contents are already compressed, or are audio that barely compresses.
+     */
+    private static final Set<String> STORED_EXTENSIONS = Set.of("wav", "png", "jpg", "jpeg", "gif", "zip", "mp3",
+            "m4a", "ogg", "flac");
+
+    /**
+     * File extensions whose contents are text and compress well.
+     */
+    private static final Set<String> DEFLATED_EXTENSIONS = Set.of("json", "txt", "csv", "xml");
+
+    /**
+     * The number of bytes read per block.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * An entry of unknown type is deflated only if its first block deflates to less than this fraction of its size.
+     */
+    private static final double PROBE_RATIO = 0.9;
+
+    /**
+     * Prevents instantiation.
+     */
+    private ZipArchiveWriter() {
+    }
+
+    /**
+     * Writes every regular file under the given directory to the given zip file, with entry names relative to the
+     * directory.
+     *
+     * @param sourceDir the directory.
+     * @param zipFile   the zip file to create or replace.
+     * @throws IOException if a file cannot be read or the archive cannot be written.
+     */
+    public static void write(Path sourceDir, Path zipFile) throws IOException {
+        List<Path> files;
+
+        try (Stream<Path> walk = Files.walk(sourceDir)) {
+            files = walk.filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)).sorted().toList();
+        }
+
+        Path tempDir = Files.createTempDirectory(zipFile.toAbsolutePath().getParent(), ".zip-writer");
+
+        try {
+            List<Callable<Prepared>> tasks = new ArrayList<>();
+
+            for (Path file : files) {
+                String name = entryName(sourceDir.relativize(file));
+                tasks.add(() -> prepare(file, name, tempDir));
+            }
+
+            List<Prepared> prepared = ArchiveExecutor.invokeAll(tasks);
+            Path temp = tempDir.resolve("archive.zip");
+
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                List<ZipEntryRecord> entries = new ArrayList<>();
+
+                for (Prepared entry : prepared) {
+                    entries.add(append(out, entry));
+                }
+
+                ZipFormat.writeCentralDirectory(out, out.position(), entries);
+                out.force(true);
+            }
+
+            moveIntoPlace(temp, zipFile);
+        } finally {
+            deleteRecursively(tempDir);
+        }
+    }
+
+    /**
+     * Reads a file once to compute its CRC and, if it should be deflated, compress it into a temporary file.
+     *
+     * @param file    the file.
+     * @param name    the entry name.
+     * @param tempDir the directory for temporary files.
+     * @return the prepared entry.
+     * @throws IOException if the file cannot be read or the temporary file written.
+     */
+    static Prepared prepare(Path file, String name, Path tempDir) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long dosTime = ZipFormat.toDosTime(attributes.lastModifiedTime().toMillis());
+        long size = attributes.size();
+        CRC32 crc = new CRC32();
+        byte[] block = new byte[BLOCK_SIZE];
+
+        if (!shouldDeflate(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                int n;
+
+                while ((n = in.read(block)) > 0) {
+                    crc.update(block, 0, n);
+                }
+            }
+
+            return new Prepared(new ZipEntryRecord(name, ZipFormat.STORED, crc.getValue(), size, size, dosTime, 0),
+                    file, false);
+        }
+
+        Path deflated = Files.createTempFile(tempDir, "entry", ".deflate");
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        try (InputStream in = Files.newInputStream(file);
+             OutputStream out = new DeflaterOutputStream(Files.newOutputStream(deflated), deflater, BLOCK_SIZE)) {
+            int n;
+
+            while ((n = in.read(block)) > 0) {
+                crc.update(block, 0, n);
+                out.write(block, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return new Prepared(new ZipEntryRecord(name, ZipFormat.DEFLATED, crc.getValue(), Files.size(deflated), size,
+                dosTime, 0), deflated, true);
+    }
+
+    /**
+     * Appends a prepared entry's local header and data to the archive.
+     *
+     * @param out   the archive, positioned where the entry should start.
+     * @param entry the prepared entry.
+     * @return the entry's central directory record.
+     * @throws IOException if the entry cannot be copied.
+     */
+    static ZipEntryRecord append(FileChannel out, Prepared entry) throws IOException {
+        ZipEntryRecord record = entry.record().atOffset(out.position());
+        ZipFormat.checkFits(record);
+        ZipFormat.writeFully(out, ZipFormat.localHeader(record));
+
+        try (FileChannel in = FileChannel.open(entry.data(), StandardOpenOption.READ)) {
+            transferFully(in, 0, record.compressedSize(), out);
+        }
+
+        return record;
+    }
+
+    /**
+     * Copies count bytes starting at position from one channel to the current position of another.
+     *
+     * @param in       the source channel.
+     * @param position the position in the source channel.
+     * @param count    the number of bytes.
+     * @param out      the target channel.
+     * @throws IOException if the source ends early or a channel fails.
+     */
+    static void transferFully(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        long done = 0;
+
+        while (done < count) {
+            long n = in.transferTo(position + done, count - done, out);
+
+            if (n <= 0) {
+                throw new IOException("Unexpected end of data after " + done + " of " + count + " bytes.");
+            }
+
+            done += n;
+        }
+    }
+
+    /**
+     * Returns true if the file should be deflated rather than stored.
+     *
+     * @param file the file.
+     * @return true if the file should be deflated.
+     * @throws IOException if the file cannot be probed.
+     */
+    static boolean shouldDeflate(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String extension = dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+
+        if (STORED_EXTENSIONS.contains(extension)) {
+            return false;
+        }
+
+        if (DEFLATED_EXTENSIONS.contains(extension)) {
+            return true;
+        }
+
+        byte[] block = new byte[BLOCK_SIZE];
+        int n;
+
+        try (InputStream in = Files.newInputStream(file)) {
+            n = in.readNBytes(block, 0, block.length);
+        }
+
+        if (n == 0) {
+            return false;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+        try {
+            deflater.setInput(block, 0, n);
+            deflater.finish();
+            byte[] out = new byte[BLOCK_SIZE];
+            long compressed = 0;
+
+            while (!deflater.finished() && compressed < n) {
+                compressed += deflater.deflate(out);
+            }
+
+            return compressed < n * PROBE_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the zip entry name for a relative path, with '/' as the separator.
+     *
+     * @param relativePath the relative path.
+     * @return the entry name.
+     */
+    static String entryName(Path relativePath) {
+        StringJoiner joiner = new StringJoiner("/");
+
+        for (Path part : relativePath) {
+            joiner.add(part.toString());
+        }
+
+        return joiner.toString();
+    }
+
+    /**
+     * Moves a finished file over the target, atomically if the file system allows.
+     *
+     * @param source the finished file.
+     * @param target the target.
+     * @throws IOException if the file cannot be moved.
+     */
+    static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes a directory and everything in it.
+     *
+     * @param dir the directory.
+     * @throws IOException if something cannot be deleted.
+     */
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * An entry ready to be appended to an archive.
+     *
+     * @param record  the entry's record; its local header offset is filled in when it is appended.
+     * @param data    the file holding the entry's data as it should appear in the archive.
+     * @param deflate true if the data is deflated.
+     */
+    record Prepared(ZipEntryRecord record, Path data, boolean deflate) {
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.cmuphil.earthlinguistfx.archive;
+
+/**
+ * One entry of a zip file's central directory: everything needed to find, check and copy the entry's data without
+ * reading any other part of the archive.
+ *
+ * @param name              the entry name, with '/' as the separator.
+ * @param method            the compression method, {@link ZipFormat#STORED} or {@link ZipFormat#DEFLATED}.
+ * @param crc               the CRC-32 of the uncompressed data.
+ * @param compressedSize    the number of bytes of (possibly compressed) data stored in the archive.
+ * @param size              the number of bytes of uncompressed data.
+ * @param dosTime           the modification time in MS-DOS date/time format.
+ * @param localHeaderOffset the offset of the entry's local header from the start of the archive.
+ * @author josephramsey
+ */
+public record ZipEntryRecord(String name, int method, long crc, long compressedSize, long size, long dosTime,
+                             long localHeaderOffset) {
+
+    /**
+     * Returns true if this entry is a directory.
+     *
+     * @return true if this entry is a directory.
+     */
+    public boolean isDirectory() {
+        return name.endsWith("/");
+    }
+
+    /**
+     * Returns a copy of this record at a different local header offset.
+     *
+     * @param offset the new local header offset.
+     * @return the copy.
+     */
+    public ZipEntryRecord atOffset(long offset) {
+        return new ZipEntryRecord(name, method, crc, compressedSize, size, dosTime, offset);
+    }
+}
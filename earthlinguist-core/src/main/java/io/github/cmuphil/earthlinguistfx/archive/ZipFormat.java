@@ -0,0 +1,240 @@
+package io.github.cmuphil.earthlinguistfx.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Constants and record layouts of the zip file format (PKWARE APPNOTE), limited to what EarthLinguist archives need:
+ * STORED and DEFLATED entries, UTF-8 names, no encryption and no multi-disk archives. Zip64 archives can be read,
+ * for large example packs made by other tools, but are never written.
+ *
+ * @author josephramsey
+ */
+public final class ZipFormat {
+
+    /**
+     * The STORED compression method.
+     */
+    public static final int STORED = 0;
+
+    /**
+     * The DEFLATED compression method.
+     */
+    public static final int DEFLATED = 8;
+
+    /**
+     * The signature of a local file header.
+     */
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    /**
+     * The signature of a central directory file header.
+     */
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    /**
+     * The signature of the end of central directory record.
+     */
+    static final int END_SIGNATURE = 0x06054b50;
+
+    /**
+     * The signature of the zip64 end of central directory record.
+     */
+    static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+    /**
+     * The signature of the zip64 end of central directory locator.
+     */
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    /**
+     * The header ID of the zip64 extended information extra field.
+     */
+    static final int ZIP64_EXTRA_ID = 0x0001;
+
+    /**
+     * The fixed size of a local file header, before the name and extra field.
+     */
+    static final int LOCAL_HEADER_SIZE = 30;
+
+    /**
+     * The fixed size of a central directory file header, before the name, extra field and comment.
+     */
+    static final int CENTRAL_HEADER_SIZE = 46;
+
+    /**
+     * The fixed size of the end of central directory record, before the comment.
+     */
+    static final int END_SIZE = 22;
+
+    /**
+     * The size of the zip64 end of central directory locator, which comes just before the end record.
+     */
+    static final int ZIP64_LOCATOR_SIZE = 20;
+
+    /**
+     * The fixed size of the zip64 end of central directory record, before its extensible data.
+     */
+    static final int ZIP64_END_SIZE = 56;
+
+    /**
+     * The largest value that fits in a 32-bit size or offset field without zip64.
+     */
+    static final long MAX_32 = 0xFFFFFFFFL;
+
+    /**
+     * The largest number of entries an archive can have without zip64.
+     */
+    static final int MAX_ENTRIES = 0xFFFF;
+
+    /**
+     * General purpose flag marking the entry name as UTF-8.
+     */
+    private static final int FLAG_UTF8 = 0x0800;
+
+    /**
+     * The version needed to extract: 2.0, which covers DEFLATED.
+     */
+    private static final int VERSION = 20;
+
+    /**
+     * Prevents instantiation.
+     */
+    private ZipFormat() {
+    }
+
+    /**
+     * Returns the local file header for the given entry.
+     *
+     * @param entry the entry.
+     * @return the header, ready to be written.
+     */
+    static ByteBuffer localHeader(ZipEntryRecord entry) {
+        byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(LOCAL_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(LOCAL_HEADER_SIGNATURE);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) FLAG_UTF8);
+        buffer.putShort((short) entry.method());
+        buffer.putInt((int) entry.dosTime());
+        buffer.putInt((int) entry.crc());
+        buffer.putInt((int) entry.compressedSize());
+        buffer.putInt((int) entry.size());
+        buffer.putShort((short) name.length);
+        buffer.putShort((short) 0);
+        buffer.put(name);
+        return buffer.flip();
+    }
+
+    /**
+     * Writes the central directory and the end of central directory record for the given entries.
+     *
+     * @param channel the channel, positioned where the central directory should start.
+     * @param offset  the offset of that position from the start of the archive.
+     * @param entries the entries, in the order they should be listed.
+     * @throws IOException if the channel cannot be written or the archive would need zip64.
+     */
+    static void writeCentralDirectory(WritableByteChannel channel, long offset, List<ZipEntryRecord> entries)
+            throws IOException {
+        if (entries.size() > MAX_ENTRIES) {
+            throw new IOException("Too many entries for a zip file without zip64: " + entries.size());
+        }
+
+        long size = 0;
+
+        for (ZipEntryRecord entry : entries) {
+            checkFits(entry);
+            byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(CENTRAL_HEADER_SIGNATURE);
+            buffer.putShort((short) VERSION);
+            buffer.putShort((short) VERSION);
+            buffer.putShort((short) FLAG_UTF8);
+            buffer.putShort((short) entry.method());
+            buffer.putInt((int) entry.dosTime());
+            buffer.putInt((int) entry.crc());
+            buffer.putInt((int) entry.compressedSize());
+            buffer.putInt((int) entry.size());
+            buffer.putShort((short) name.length);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putInt(0);
+            buffer.putInt((int) entry.localHeaderOffset());
+            buffer.put(name);
+            size += writeFully(channel, buffer.flip());
+        }
+
+        if (offset > MAX_32 || size > MAX_32) {
+            throw new IOException("The archive is too large for a zip file without zip64.");
+        }
+
+        ByteBuffer end = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) entries.size());
+        end.putShort((short) entries.size());
+        end.putInt((int) size);
+        end.putInt((int) offset);
+        end.putShort((short) 0);
+        writeFully(channel, end.flip());
+    }
+
+    /**
+     * Throws if the entry's sizes or offset need zip64.
+     *
+     * @param entry the entry.
+     * @throws IOException if the entry is too large.
+     */
+    static void checkFits(ZipEntryRecord entry) throws IOException {
+        if (entry.size() > MAX_32 || entry.compressedSize() > MAX_32 || entry.localHeaderOffset() > MAX_32) {
+            throw new IOException("Entry too large for a zip file without zip64: " + entry.name());
+        }
+    }
+
+    /**
+     * Writes all of the buffer.
+     *
+     * @param channel the channel.
+     * @param buffer  the buffer.
+     * @return the number of bytes written.
+     * @throws IOException if the channel cannot be written.
+     */
+    static int writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        int n = buffer.remaining();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        return n;
+    }
+
+    /**
+     * Converts a time in milliseconds since the epoch to MS-DOS date/time format, in the local time zone. MS-DOS
+     * times have a two-second resolution and start in 1980.
+     *
+     * @param millis the time in milliseconds since the epoch.
+     * @return the MS-DOS date/time.
+     */
+    public static long toDosTime(long millis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+
+        return ((long) (time.getYear() - 1980) << 25) | ((long) time.getMonthValue() << 21)
+                | ((long) time.getDayOfMonth() << 16) | ((long) time.getHour() << 11)
+                | ((long) time.getMinute() << 5) | (time.getSecond() >> 1);
+    }
+}
@@ -0,0 +1,749 @@
+package io.github.cmuphil.earthlinguistfx.archive;
+
+import io.github.cmuphil.earthlinguistfx.storage.StorageBackend;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Random access to a zip file through its central directory. Opening an index reads only the end of the file and the
+ * central directory; individual entries such as 'state.json' can then be read or extracted without touching the rest
+ * of the archive. Every entry read is checked against the size and CRC in the central directory, and all entries can be
+ * extracted concurrently, since every read is positional. Zip64 archives, such as large example packs, can be read.
+ * <p>
+ * The index is also a read-only {@link StorageBackend} whose keys are its entry names, so that files such as example
+ * images can be served straight from the archive.
+ *
+ * @author josephramsey
+ */
+public class ZipIndex implements StorageBackend {
+
+    /**
+     * The buffer size used when inflating entries.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The zip file.
+     */
+    private final Path path;
+
+    /**
+     * The open channel to the zip file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The entries, by name, in central directory order.
+     */
+    private final Map<String, ZipEntryRecord> entries;
+
+    /**
+     * The offset of the central directory from the start of the file.
+     */
+    private final long centralDirectoryOffset;
+
+    /**
+     * Constructs an index over an open channel.
+     *
+     * @param path                   the zip file.
+     * @param channel                the channel.
+     * @param entries                the entries.
+     * @param centralDirectoryOffset the offset of the central directory.
+     */
+    private ZipIndex(Path path, FileChannel channel, Map<String, ZipEntryRecord> entries, long centralDirectoryOffset) {
+        this.path = path;
+        this.channel = channel;
+        this.entries = entries;
+        this.centralDirectoryOffset = centralDirectoryOffset;
+    }
+
+    /**
+     * Opens the given zip file and reads its central directory.
+     *
+     * @param zipFile the zip file.
+     * @return the index.
+     * @throws ZipException if the file is not a zip file or uses features that are not supported, such as zip64.
+     * @throws IOException  if the file cannot be read.
+     */
+    public static ZipIndex open(Path zipFile) throws IOException {
+        FileChannel channel = FileChannel.open(zipFile, StandardOpenOption.READ);
+
+        try {
+            long size = channel.size();
+            int tailLength = (int) Math.min(size, ZipFormat.END_SIZE + 0xFFFF);
+            ByteBuffer tail = readAt(channel, size - tailLength, tailLength);
+            int end = -1;
+
+            for (int i = tailLength - ZipFormat.END_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == ZipFormat.END_SIGNATURE) {
+                    end = i;
+                    break;
+                }
+            }
+
+            if (end < 0) {
+                throw new ZipException("Not a zip file: " + zipFile.getFileName());
+            }
+
+            long disk = Short.toUnsignedInt(tail.getShort(end + 4));
+            long count = Short.toUnsignedInt(tail.getShort(end + 10));
+            long cdSize = Integer.toUnsignedLong(tail.getInt(end + 12));
+            long cdOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+            long endOffset = size - tailLength + end;
+
+            if (count == ZipFormat.MAX_ENTRIES || cdSize == ZipFormat.MAX_32 || cdOffset == ZipFormat.MAX_32) {
+                if (endOffset < ZipFormat.ZIP64_LOCATOR_SIZE) {
+                    throw new ZipException("Missing zip64 end locator in " + zipFile.getFileName());
+                }
+
+                ByteBuffer locator = readAt(channel, endOffset - ZipFormat.ZIP64_LOCATOR_SIZE,
+                        ZipFormat.ZIP64_LOCATOR_SIZE);
+
+                if (locator.getInt(0) == ZipFormat.ZIP64_LOCATOR_SIGNATURE) {
+                    ByteBuffer end64 = readAt(channel, locator.getLong(8), ZipFormat.ZIP64_END_SIZE);
+
+                    if (end64.getInt(0) != ZipFormat.ZIP64_END_SIGNATURE) {
+                        throw new ZipException("Bad zip64 end record in " + zipFile.getFileName());
+                    }
+
+                    disk = Integer.toUnsignedLong(end64.getInt(16));
+                    count = end64.getLong(32);
+                    cdSize = end64.getLong(40);
+                    cdOffset = end64.getLong(48);
+                } else if (count == ZipFormat.MAX_ENTRIES && cdSize != ZipFormat.MAX_32
+                           && cdOffset != ZipFormat.MAX_32) {
+                    // Exactly 65,535 entries, which does not need zip64.
+                    disk = 0;
+                } else {
+                    throw new ZipException("Missing zip64 end locator in " + zipFile.getFileName());
+                }
+            }
+
+            if (disk != 0) {
+                throw new ZipException("Multi-disk zip files are not supported: " + zipFile.getFileName());
+            }
+
+            if (count < 0 || count > Integer.MAX_VALUE || cdSize < 0 || cdSize > Integer.MAX_VALUE) {
+                throw new ZipException("The central directory is too large: " + zipFile.getFileName());
+            }
+
+            if (cdOffset + cdSize > size) {
+                throw new ZipException("The central directory runs past the end of the file: " + zipFile.getFileName());
+            }
+
+            Map<String, ZipEntryRecord> entries = readCentralDirectory(readAt(channel, cdOffset, (int) cdSize),
+                    (int) count);
+            return new ZipIndex(zipFile, channel, entries, cdOffset);
+        } catch (IndexOutOfBoundsException e) {
+            channel.close();
+            throw new ZipException("Corrupt central directory in " + zipFile.getFileName());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the zip file.
+     *
+     * @return the zip file.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the entries, in central directory order.
+     *
+     * @return the entries.
+     */
+    public List<ZipEntryRecord> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Returns the entry with the given name, or null if there is none.
+     *
+     * @param name the entry name.
+     * @return the entry, or null.
+     */
+    public ZipEntryRecord getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Returns the offset of the central directory from the start of the file, which is also where the data of the
+     * last entry ends.
+     *
+     * @return the offset of the central directory.
+     */
+    public long getCentralDirectoryOffset() {
+        return centralDirectoryOffset;
+    }
+
+    /**
+     * Returns the offset of the entry's data, just past its local header.
+     *
+     * @param entry the entry.
+     * @return the offset of the entry's data.
+     * @throws IOException if the local header cannot be read or is invalid.
+     */
+    public long getDataOffset(ZipEntryRecord entry) throws IOException {
+        ByteBuffer header = readAt(channel, entry.localHeaderOffset(), ZipFormat.LOCAL_HEADER_SIZE);
+
+        if (header.getInt(0) != ZipFormat.LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Bad local header for " + entry.name() + " in " + path.getFileName());
+        }
+
+        int nameLength = Short.toUnsignedInt(header.getShort(26));
+        int extraLength = Short.toUnsignedInt(header.getShort(28));
+        long dataOffset = entry.localHeaderOffset() + ZipFormat.LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+        if (dataOffset + entry.compressedSize() > centralDirectoryOffset) {
+            throw new ZipException("The data for " + entry.name() + " runs into the central directory.");
+        }
+
+        return dataOffset;
+    }
+
+    /**
+     * Opens a stream over the uncompressed contents of the given entry. The stream throws a {@link ZipException} when
+     * it reaches the end if the contents do not match the entry's size and CRC.
+     *
+     * @param entry the entry.
+     * @return the stream.
+     * @throws IOException if the entry cannot be read.
+     */
+    public InputStream openStream(ZipEntryRecord entry) throws IOException {
+        long dataOffset = getDataOffset(entry);
+        return decode(entry, new BufferedInputStream(new RangeInputStream(channel, dataOffset, entry.compressedSize()),
+                BUFFER_SIZE));
+    }
+
+    /**
+     * Wraps a stream over an entry's stored data, from just past its local header, so that it reads the entry's
+     * uncompressed contents. This is for entries whose data comes from somewhere other than a local file. The stream
+     * throws a {@link ZipException} when it reaches the end if the contents do not match the entry's size and CRC.
+     *
+     * @param entry the entry.
+     * @param raw   the stored data; it should end where the entry's data ends.
+     * @return the stream.
+     * @throws ZipException if the entry's compression method is not supported.
+     */
+    public static InputStream decode(ZipEntryRecord entry, InputStream raw) throws ZipException {
+        if (entry.method() == ZipFormat.STORED) {
+            return new CheckedEntryStream(entry, raw);
+        } else if (entry.method() == ZipFormat.DEFLATED) {
+            // A raw inflater may need one byte past the end of the data to finish.
+            InputStream padded = new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1]));
+            Inflater inflater = new Inflater(true);
+
+            return new CheckedEntryStream(entry, new InflaterInputStream(padded, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            });
+        }
+
+        throw new ZipException("Unsupported compression method " + entry.method() + " for " + entry.name());
+    }
+
+    /**
+     * Opens a stream over the uncompressed contents of the named entry.
+     *
+     * @param name the entry name.
+     * @return the stream.
+     * @throws IOException if there is no such entry or it cannot be read.
+     */
+    public InputStream openStream(String name) throws IOException {
+        ZipEntryRecord entry = entries.get(name);
+
+        if (entry == null) {
+            throw new FileNotFoundException("No entry " + name + " in " + path.getFileName());
+        }
+
+        return openStream(entry);
+    }
+
+    /**
+     * Returns true if the archive has an entry with the given name that is a file.
+     *
+     * @param key the entry name.
+     * @return true if there is such an entry.
+     */
+    @Override
+    public boolean exists(String key) {
+        ZipEntryRecord entry = entries.get(key);
+        return entry != null && !entry.isDirectory();
+    }
+
+    /**
+     * Returns the uncompressed size of the named entry.
+     *
+     * @param key the entry name.
+     * @return the size.
+     * @throws FileNotFoundException if there is no such entry.
+     */
+    @Override
+    public long size(String key) throws FileNotFoundException {
+        ZipEntryRecord entry = entries.get(key);
+
+        if (entry == null) {
+            throw new FileNotFoundException("No entry " + key + " in " + path.getFileName());
+        }
+
+        return entry.size();
+    }
+
+    /**
+     * Opens the named entry; see {@link #openStream(String)}.
+     *
+     * @param key the entry name.
+     * @return the stream.
+     * @throws IOException if there is no such entry or it cannot be read.
+     */
+    @Override
+    public InputStream open(String key) throws IOException {
+        return openStream(key);
+    }
+
+    /**
+     * Not supported; an index is read-only.
+     *
+     * @param key  the key.
+     * @param data the data.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void write(String key, InputStream data) {
+        throw new UnsupportedOperationException("Zip archives are read through an index read-only.");
+    }
+
+    /**
+     * Not supported; an index is read-only.
+     *
+     * @param key the key.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void delete(String key) {
+        throw new UnsupportedOperationException("Zip archives are read through an index read-only.");
+    }
+
+    /**
+     * Returns the names of the file entries that start with the given prefix, sorted.
+     *
+     * @param prefix the prefix; "" for every entry.
+     * @return the names.
+     */
+    @Override
+    public List<String> list(String prefix) {
+        return entries.values().stream().filter(entry -> !entry.isDirectory())
+                .map(ZipEntryRecord::name).filter(name -> name.startsWith(prefix)).sorted().toList();
+    }
+
+    /**
+     * Reads the whole uncompressed contents of the named entry.
+     *
+     * @param name the entry name.
+     * @return the contents.
+     * @throws IOException if there is no such entry or it cannot be read.
+     */
+    public byte[] readAllBytes(String name) throws IOException {
+        try (InputStream in = openStream(name)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Extracts one entry to the given file, checking its size and CRC. Deflated entries are inflated with a large
+     * buffer. If the contents do not match the entry, the file is deleted.
+     *
+     * @param entry  the entry.
+     * @param target the file to write.
+     * @throws IOException if the entry cannot be read or the file written.
+     */
+    public void extract(ZipEntryRecord entry, Path target) throws IOException {
+
+        // Unlink rather than truncate, since the old file may be hard-linked from another workspace.
+        Files.deleteIfExists(target);
+
+        try (InputStream in = openStream(entry);
+             OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+        } catch (ZipException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    /**
+     * Extracts every entry into the given directory, concurrently. Entries whose names would place them outside the
+     * directory are rejected before anything is written.
+     *
+     * @param targetDir the directory.
+     * @throws IOException if an entry is unsafe, cannot be read or cannot be written.
+     */
+    public void extractAll(Path targetDir) throws IOException {
+        extractAll(targetDir, Set.of());
+    }
+
+    /**
+     * Extracts every entry into the given directory, concurrently, except the named entries, which the caller has
+     * provided some other way. Entries whose names would place them outside the directory are rejected before
+     * anything is written.
+     *
+     * @param targetDir the directory.
+     * @param skip      the names of the entries not to extract.
+     * @throws IOException if an entry is unsafe, cannot be read or cannot be written.
+     */
+    public void extractAll(Path targetDir, Set<String> skip) throws IOException {
+        Path root = targetDir.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (ZipEntryRecord entry : entries.values()) {
+            Path target = root.resolve(entry.name()).normalize();
+
+            if (!target.startsWith(root) || target.equals(root)) {
+                throw new IOException("Entry is outside of the target dir: " + entry.name());
+            }
+
+            if (entry.isDirectory()) {
+                Files.createDirectories(target);
+                continue;
+            }
+
+            if (skip.contains(entry.name())) {
+                continue;
+            }
+
+            Files.createDirectories(target.getParent());
+
+            tasks.add(() -> {
+                extract(entry, target);
+                return null;
+            });
+        }
+
+        ArchiveExecutor.invokeAll(tasks);
+    }
+
+    /**
+     * Closes the zip file.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Parses the central directory.
+     *
+     * @param buffer the central directory.
+     * @param count  the number of entries the end record declares.
+     * @return the entries, by name.
+     * @throws ZipException if the central directory is invalid.
+     */
+    private static Map<String, ZipEntryRecord> readCentralDirectory(ByteBuffer buffer, int count) throws ZipException {
+        Map<String, ZipEntryRecord> entries = new LinkedHashMap<>();
+        int position = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(position) != ZipFormat.CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Bad central directory header at entry " + i + ".");
+            }
+
+            int flags = Short.toUnsignedInt(buffer.getShort(position + 8));
+            int method = Short.toUnsignedInt(buffer.getShort(position + 10));
+            long dosTime = Integer.toUnsignedLong(buffer.getInt(position + 12));
+            long crc = Integer.toUnsignedLong(buffer.getInt(position + 16));
+            long compressedSize = Integer.toUnsignedLong(buffer.getInt(position + 20));
+            long size = Integer.toUnsignedLong(buffer.getInt(position + 24));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+            long offset = Integer.toUnsignedLong(buffer.getInt(position + 42));
+
+            if ((flags & 1) != 0) {
+                throw new ZipException("Encrypted zip entries are not supported.");
+            }
+
+            byte[] name = new byte[nameLength];
+            buffer.get(position + ZipFormat.CENTRAL_HEADER_SIZE, name);
+            String entryName = new String(name, StandardCharsets.UTF_8);
+
+            if (compressedSize == ZipFormat.MAX_32 || size == ZipFormat.MAX_32 || offset == ZipFormat.MAX_32) {
+                // The real values are in the zip64 extra field, in this order, for those that overflowed.
+                int extra = position + ZipFormat.CENTRAL_HEADER_SIZE + nameLength;
+                int extraEnd = extra + extraLength;
+
+                while (extra + 4 <= extraEnd
+                       && Short.toUnsignedInt(buffer.getShort(extra)) != ZipFormat.ZIP64_EXTRA_ID) {
+                    extra += 4 + Short.toUnsignedInt(buffer.getShort(extra + 2));
+                }
+
+                if (extra + 4 > extraEnd) {
+                    throw new ZipException("Missing zip64 extra field for " + entryName + ".");
+                }
+
+                int field = extra + 4;
+                int fieldEnd = field + Short.toUnsignedInt(buffer.getShort(extra + 2));
+
+                if (size == ZipFormat.MAX_32 && field + 8 <= fieldEnd) {
+                    size = buffer.getLong(field);
+                    field += 8;
+                }
+
+                if (compressedSize == ZipFormat.MAX_32 && field + 8 <= fieldEnd) {
+                    compressedSize = buffer.getLong(field);
+                    field += 8;
+                }
+
+                if (offset == ZipFormat.MAX_32 && field + 8 <= fieldEnd) {
+                    offset = buffer.getLong(field);
+                }
+            }
+            entries.put(entryName, new ZipEntryRecord(entryName, method, crc, compressedSize, size, dosTime, offset));
+            position += ZipFormat.CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return entries;
+    }
+
+    /**
+     * Reads length bytes at the given position.
+     *
+     * @param channel  the channel.
+     * @param position the position.
+     * @param length   the number of bytes.
+     * @return a little-endian buffer holding the bytes.
+     * @throws IOException if the channel ends early.
+     */
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of zip file.");
+            }
+        }
+
+        return buffer.flip();
+    }
+
+    /**
+     * A stream over a range of a file channel, using positional reads so that many can be open at once.
+     */
+    private static class RangeInputStream extends InputStream {
+
+        /**
+         * The channel.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The position of the next byte.
+         */
+        private long position;
+
+        /**
+         * The number of bytes left.
+         */
+        private long remaining;
+
+        /**
+         * Constructs the stream.
+         *
+         * @param channel  the channel.
+         * @param position the position of the first byte.
+         * @param length   the number of bytes.
+         */
+        RangeInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        /**
+         * Reads one byte.
+         *
+         * @return the byte, or -1 at the end of the range.
+         * @throws IOException if the channel cannot be read.
+         */
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        /**
+         * Reads up to len bytes.
+         *
+         * @param b   the buffer.
+         * @param off the offset into the buffer.
+         * @param len the maximum number of bytes.
+         * @return the number of bytes read, or -1 at the end of the range.
+         * @throws IOException if the channel cannot be read.
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+
+            if (n < 0) {
+                throw new EOFException("Unexpected end of zip file.");
+            }
+
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        /**
+         * Skips up to n bytes without reading them.
+         *
+         * @param n the number of bytes.
+         * @return the number of bytes skipped.
+         */
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * A stream over an entry's uncompressed contents that checks them against the entry's size and CRC, as
+     * ZipInputStream does, and throws a {@link ZipException} at the end of the stream if they do not match.
+     */
+    private static class CheckedEntryStream extends FilterInputStream {
+
+        /**
+         * The entry.
+         */
+        private final ZipEntryRecord entry;
+
+        /**
+         * The CRC of the bytes read so far.
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * The number of bytes read so far.
+         */
+        private long size;
+
+        /**
+         * Constructs the stream.
+         *
+         * @param entry the entry.
+         * @param in    the uncompressed contents.
+         */
+        CheckedEntryStream(ZipEntryRecord entry, InputStream in) {
+            super(in);
+            this.entry = entry;
+        }
+
+        /**
+         * Reads one byte.
+         *
+         * @return the byte, or -1 at the end of the contents.
+         * @throws IOException if the contents cannot be read or do not match the entry.
+         */
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        /**
+         * Reads up to len bytes.
+         *
+         * @param b   the buffer.
+         * @param off the offset into the buffer.
+         * @param len the maximum number of bytes.
+         * @return the number of bytes read, or -1 at the end of the contents.
+         * @throws IOException if the contents cannot be read or do not match the entry.
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+
+            if (n > 0) {
+                crc.update(b, off, n);
+                size += n;
+
+                if (size > entry.size()) {
+                    throw new ZipException("Too much data for " + entry.name() + ".");
+                }
+            } else if (n < 0 && len > 0 && (size != entry.size() || crc.getValue() != entry.crc())) {
+                throw new ZipException("Corrupt data for " + entry.name() + ".");
+            }
+
+            return n;
+        }
+
+        /**
+         * Skips bytes by reading them, so that they are counted in the CRC.
+         *
+         * @param n the number of bytes.
+         * @return the number of bytes skipped.
+         * @throws IOException if the contents cannot be read or do not match the entry.
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+
+                if (read < 0) {
+                    break;
+                }
+
+                skipped += read;
+            }
+
+            return skipped;
+        }
+
+        /**
+         * Returns false, since marking would upset the CRC.
+         *
+         * @return false.
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.cmuphil.earthlinguistfx.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated, lock-free byte ring buffer for exactly one producer thread and one consumer thread. The producer
+ * only ever advances the write position and the consumer only ever advances the read position, so the two sides never
+ * contend on a lock; each side publishes its position with release semantics and reads the other side's position with
+ * acquire semantics.
+ * <p>
+ * The capacity is rounded up to a power of two so that positions can be mapped into the array with a mask. Positions
+ * are 64-bit counters that never wrap in practice.
+ *
+ * @author josephramsey
+ */
+public class AudioRingBuffer {
+
+    /**
+     * The backing array.
+     */
+    private final byte[] buffer;
+
+    /**
+     * The mask used to map a position into the backing array.
+     */
+    private final int mask;
+
+    /**
+     * The total number of bytes ever written. Advanced only by the producer.
+     */
+    private final AtomicLong writePosition = new AtomicLong();
+
+    /**
+     * The total number of bytes ever read. Advanced only by the consumer.
+     */
+    private final AtomicLong readPosition = new AtomicLong();
+
+    /**
+     * Constructs a ring buffer holding at least the given number of bytes.
+     *
+     * @param minCapacity the minimum capacity in bytes. Must be between 1 and 2^30.
+     */
+    public AudioRingBuffer(int minCapacity) {
+        if (minCapacity < 1 || minCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid ring buffer capacity: " + minCapacity);
+        }
+
+        int capacity = Integer.highestOneBit(minCapacity);
+
+        if (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+
+        this.buffer = new byte[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the capacity of the buffer in bytes.
+     *
+     * @return the capacity of the buffer in bytes.
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Returns the number of bytes available to the consumer.
+     *
+     * @return the number of bytes available to the consumer.
+     */
+    public int available() {
+        return (int) (writePosition.getAcquire() - readPosition.getAcquire());
+    }
+
+    /**
+     * Returns the number of bytes the producer may write without overwriting unread data.
+     *
+     * @return the number of free bytes.
+     */
+    public int remaining() {
+        return buffer.length - available();
+    }
+
+    /**
+     * Copies up to len bytes into the ring. Producer side only. Never overwrites unread data; if the ring is full, fewer
+     * bytes (possibly zero) are written.
+     *
+     * @param src the source array.
+     * @param off the offset into the source array.
+     * @param len the number of bytes to write.
+     * @return the number of bytes actually written.
+     */
+    public int write(byte[] src, int off, int len) {
+        long write = writePosition.getPlain();
+        long read = readPosition.getAcquire();
+        int free = buffer.length - (int) (write - read);
+        int n = Math.min(len, free);
+
+        if (n <= 0) {
+            return 0;
+        }
+
+        int start = (int) (write & mask);
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(src, off, buffer, start, first);
+        System.arraycopy(src, off + first, buffer, 0, n - first);
+
+        writePosition.setRelease(write + n);
+        return n;
+    }
+
+    /**
+     * Copies up to len bytes out of the ring. Consumer side only.
+     *
+     * @param dst the destination array.
+     * @param off the offset into the destination array.
+     * @param len the maximum number of bytes to read.
+     * @return the number of bytes actually read, possibly zero.
+     */
+    public int read(byte[] dst, int off, int len) {
+        long read = readPosition.getPlain();
+        long write = writePosition.getAcquire();
+        int n = Math.min(len, (int) (write - read));
+
+        if (n <= 0) {
+            return 0;
+        }
+
+        int start = (int) (read & mask);
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(buffer, start, dst, off, first);
+        System.arraycopy(buffer, 0, dst, off + first, n - first);
+
+        readPosition.setRelease(read + n);
+        return n;
+    }
+}
@@ -0,0 +1,448 @@
+package io.github.cmuphil.earthlinguistfx.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.TargetDataLine;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Captures audio from a microphone line into a WAV file using two threads joined by a preallocated
+ * {@link AudioRingBuffer}. The reader thread does nothing but drain the line into the ring, so a slow disk never
+ * backs up into the line; the writer thread flushes the ring to disk in large blocks. Memory use is bounded by the
+ * ring capacity however long the take is.
+ * <p>
+ * Frames are never dropped by the engine itself: if the ring fills up, the reader waits for the writer and counts a
+ * ring overrun. If the line's own buffer fills up while the reader is waiting, the line will drop data; this is
+ * detected and counted as a line overrun. Both counters are exposed so that a take can be checked after the fact.
+ * <p>
+ * The WAV file is written to a temporary file beside the target's directory and moved into place when the take is
+ * finished, so the target is never seen half-written and is replaced rather than overwritten in place.
+ *
+ * @author josephramsey
+ */
+public class CaptureEngine {
+
+    /**
+     * The size of the canonical PCM WAV header.
+     */
+    private static final int WAV_HEADER_SIZE = 44;
+
+    /**
+     * The minimum number of bytes the writer collects before writing, unless the take is finishing.
+     */
+    private static final int WRITE_BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * How long the writer sleeps when there is not yet a full block to write.
+     */
+    private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * How long the reader sleeps when the ring is full.
+     */
+    private static final long READER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    /**
+     * The microphone line.
+     */
+    private final TargetDataLine line;
+
+    /**
+     * The format of the line.
+     */
+    private final AudioFormat format;
+
+    /**
+     * The WAV file to produce.
+     */
+    private final File target;
+
+    /**
+     * The ring buffer between the reader and the writer.
+     */
+    private final AudioRingBuffer ring;
+
+    /**
+     * The number of times the reader found the ring full and had to wait for the writer.
+     */
+    private final AtomicLong ringOverruns = new AtomicLong();
+
+    /**
+     * The number of times the line's buffer was found full, meaning the line may have dropped data.
+     */
+    private final AtomicLong lineOverruns = new AtomicLong();
+
+    /**
+     * The number of bytes read from the line.
+     */
+    private final AtomicLong bytesCaptured = new AtomicLong();
+
+    /**
+     * The number of audio bytes written to disk.
+     */
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * The highest ring fill level seen, in bytes.
+     */
+    private final AtomicLong maxRingFill = new AtomicLong();
+
+    /**
+     * Set when the take should stop.
+     */
+    private volatile boolean stopRequested = false;
+
+    /**
+     * Set by the reader once it will write nothing further to the ring.
+     */
+    private volatile boolean readerDone = false;
+
+    /**
+     * The first error seen by either thread, if any.
+     */
+    private volatile IOException error = null;
+
+    /**
+     * The reader thread.
+     */
+    private Thread readerThread;
+
+    /**
+     * The writer thread.
+     */
+    private Thread writerThread;
+
+    /**
+     * Constructs a capture engine. The line must already be open; it is started by {@link #start()} and closed when
+     * the take finishes.
+     *
+     * @param line         the open microphone line.
+     * @param target       the WAV file to produce.
+     * @param ringCapacity the capacity of the ring buffer in bytes.
+     */
+    public CaptureEngine(TargetDataLine line, File target, int ringCapacity) {
+        this.line = line;
+        this.format = line.getFormat();
+        this.target = target;
+        this.ring = new AudioRingBuffer(ringCapacity);
+
+        boolean signed = format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED;
+        boolean unsigned = format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED;
+        int bits = format.getSampleSizeInBits();
+
+        if (!((bits == 8 && unsigned) || (bits > 8 && signed && !format.isBigEndian()))) {
+            throw new IllegalArgumentException("WAV capture needs unsigned 8-bit or signed little-endian PCM: " + format);
+        }
+    }
+
+    /**
+     * Returns a ring capacity holding the given number of seconds of audio in the given format.
+     *
+     * @param format  the audio format.
+     * @param seconds the number of seconds.
+     * @return the capacity in bytes.
+     */
+    public static int ringCapacityFor(AudioFormat format, double seconds) {
+        return (int) Math.min(1 << 30, Math.ceil(format.getFrameRate() * format.getFrameSize() * seconds));
+    }
+
+    /**
+     * Starts the line and the reader and writer threads.
+     *
+     * @throws IOException if the temporary file could not be created.
+     */
+    public void start() throws IOException {
+        FileChannel channel = openTempChannel();
+        line.start();
+
+        readerThread = new Thread(this::readLoop, "capture-reader");
+        readerThread.setPriority(Thread.MAX_PRIORITY);
+        readerThread.setDaemon(true);
+
+        writerThread = new Thread(() -> writeLoop(channel), "capture-writer");
+        writerThread.setDaemon(true);
+
+        writerThread.start();
+        readerThread.start();
+    }
+
+    /**
+     * Stops the take and waits until the WAV file is in place. Audio already in the line's buffer is still captured.
+     *
+     * @throws IOException if the take could not be written.
+     */
+    public void stop() throws IOException {
+        stopRequested = true;
+        line.stop();
+
+        boolean interrupted = false;
+
+        for (Thread thread : new Thread[]{readerThread, writerThread}) {
+            while (thread != null && thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Returns the number of times the ring was full and the reader had to wait for the disk.
+     *
+     * @return the number of ring overruns.
+     */
+    public long getRingOverruns() {
+        return ringOverruns.get();
+    }
+
+    /**
+     * Returns the number of times the line's buffer was found full, so that the line may have dropped audio.
+     *
+     * @return the number of line overruns.
+     */
+    public long getLineOverruns() {
+        return lineOverruns.get();
+    }
+
+    /**
+     * Returns the number of audio bytes read from the line so far.
+     *
+     * @return the number of audio bytes read from the line so far.
+     */
+    public long getBytesCaptured() {
+        return bytesCaptured.get();
+    }
+
+    /**
+     * Returns the number of audio bytes written to disk so far.
+     *
+     * @return the number of audio bytes written to disk so far.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Returns the highest number of bytes that were waiting in the ring at any one time.
+     *
+     * @return the highest ring fill level, in bytes.
+     */
+    public long getMaxRingFill() {
+        return maxRingFill.get();
+    }
+
+    /**
+     * Returns the capacity of the ring in bytes.
+     *
+     * @return the capacity of the ring in bytes.
+     */
+    public int getRingCapacity() {
+        return ring.capacity();
+    }
+
+    /**
+     * Drains the line into the ring until the take is stopped and the line is empty.
+     */
+    private void readLoop() {
+        int frameSize = Math.max(1, format.getFrameSize());
+        int chunkSize = Math.max(frameSize, (line.getBufferSize() / 4) / frameSize * frameSize);
+        byte[] chunk = new byte[chunkSize];
+
+        try {
+            while (!stopRequested || line.available() > 0) {
+                if (line.available() >= line.getBufferSize()) {
+                    lineOverruns.incrementAndGet();
+                }
+
+                int toRead = stopRequested ? Math.min(chunkSize, line.available() / frameSize * frameSize) : chunkSize;
+
+                if (toRead <= 0) {
+                    break;
+                }
+
+                int n = line.read(chunk, 0, toRead);
+
+                if (n <= 0) {
+                    continue;
+                }
+
+                bytesCaptured.addAndGet(n);
+                int offset = 0;
+                boolean waited = false;
+
+                while (offset < n) {
+                    offset += ring.write(chunk, offset, n - offset);
+
+                    if (offset < n) {
+                        if (!waited) {
+                            ringOverruns.incrementAndGet();
+                            waited = true;
+                        }
+
+                        if (error != null) {
+                            return;
+                        }
+
+                        LockSupport.parkNanos(READER_PARK_NANOS);
+                    }
+                }
+
+                maxRingFill.accumulateAndGet(ring.available(), Math::max);
+            }
+        } finally {
+            readerDone = true;
+            line.close();
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    /**
+     * Flushes the ring to the channel in large blocks, then finishes the WAV file.
+     *
+     * @param channel the channel for the temporary file, positioned after the header.
+     */
+    private void writeLoop(FileChannel channel) {
+        ByteBuffer block = ByteBuffer.allocate(Math.min(WRITE_BLOCK_SIZE, ring.capacity()));
+
+        try (channel) {
+            while (true) {
+                boolean done = readerDone;
+
+                if (ring.available() < block.capacity() && !done) {
+                    LockSupport.parkNanos(WRITER_PARK_NANOS);
+
+                    if (ring.available() < block.capacity() && !readerDone) {
+                        continue;
+                    }
+                }
+
+                int n = ring.read(block.array(), 0, block.capacity());
+
+                if (n == 0) {
+                    if (done) {
+                        break;
+                    }
+
+                    continue;
+                }
+
+                block.clear().limit(n);
+
+                while (block.hasRemaining()) {
+                    channel.write(block);
+                }
+
+                bytesWritten.addAndGet(n);
+            }
+
+            channel.write(wavHeader(format, bytesWritten.get()), 0);
+            channel.force(true);
+        } catch (IOException e) {
+            error = e;
+            stopRequested = true;
+
+            try {
+                Files.deleteIfExists(tempFile());
+            } catch (IOException ignored) {
+                // The original error is the one worth reporting.
+            }
+
+            return;
+        }
+
+        try {
+            moveIntoPlace();
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    /**
+     * Opens the temporary file, writing a placeholder header.
+     *
+     * @return a channel positioned after the header.
+     * @throws IOException if the file could not be created.
+     */
+    private FileChannel openTempChannel() throws IOException {
+        FileChannel channel = FileChannel.open(tempFile(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.write(wavHeader(format, 0));
+        return channel;
+    }
+
+    /**
+     * Moves the finished temporary file over the target.
+     *
+     * @throws IOException if the file could not be moved.
+     */
+    private void moveIntoPlace() throws IOException {
+        try {
+            Files.move(tempFile(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the temporary file the take is written to. It is kept beside the clip directory rather than in it, so a
+     * leftover never makes the directory invalid.
+     *
+     * @return the temporary file.
+     */
+    private Path tempFile() {
+        File dir = target.getAbsoluteFile().getParentFile();
+        return new File(dir.getParentFile(), "." + dir.getName() + "." + target.getName() + ".part").toPath();
+    }
+
+    /**
+     * Returns a canonical 44-byte PCM WAV header.
+     *
+     * @param format     the audio format.
+     * @param dataLength the number of audio bytes following the header.
+     * @return the header, ready to be written.
+     */
+    private static ByteBuffer wavHeader(AudioFormat format, long dataLength) {
+        int channels = format.getChannels();
+        int sampleRate = Math.round(format.getSampleRate());
+        int frameSize = format.getFrameSize();
+        long length = Math.min(dataLength, 0xFFFFFFFFL - 36);
+
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'R', 'I', 'F', 'F'});
+        header.putInt((int) (36 + length));
+        header.put(new byte[]{'W', 'A', 'V', 'E'});
+        header.put(new byte[]{'f', 'm', 't', ' '});
+        header.putInt(16);
+        header.putShort((short) 1);
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * frameSize);
+        header.putShort((short) frameSize);
+        header.putShort((short) format.getSampleSizeInBits());
+        header.put(new byte[]{'d', 'a', 't', 'a'});
+        header.putInt((int) length);
+        return header.flip();
+    }
+}
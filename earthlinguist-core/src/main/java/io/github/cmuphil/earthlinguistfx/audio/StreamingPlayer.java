@@ -0,0 +1,350 @@
+package io.github.cmuphil.earthlinguistfx.audio;
+
+import javax.sound.sampled.*;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Plays a WAV file through a {@link SourceDataLine}, reading it a buffer at a time. Output starts as soon as the first
+ * buffer has been read, and memory use is the same however long the file is. Playback runs on its own daemon thread
+ * and can be moved to any byte offset while it is running.
+ * <p>
+ * The WAV data can also come from a {@link Source} rather than a file, such as a clip still being downloaded; a seek
+ * then opens the source again and skips forward.
+ *
+ * @author josephramsey
+ */
+public class StreamingPlayer {
+
+    /**
+     * The number of milliseconds of audio read and written per buffer.
+     */
+    private static final int BUFFER_MILLIS = 50;
+
+    /**
+     * The file to play, or null if playing from a source.
+     */
+    private final File file;
+
+    /**
+     * The source to play, or null if playing a file.
+     */
+    private final Source source;
+
+    /**
+     * The byte offset to move to, or -1 if no seek is pending.
+     */
+    private volatile long pendingSeek = -1;
+
+    /**
+     * Set when playback should stop.
+     */
+    private volatile boolean stopRequested = false;
+
+    /**
+     * The number of audio bytes into the file that have been handed to the line.
+     */
+    private volatile long position = 0;
+
+    /**
+     * The playback thread.
+     */
+    private Thread thread;
+
+    /**
+     * Constructs a player for the given file. Nothing is opened until {@link #start(long)} is called.
+     *
+     * @param file the WAV file.
+     */
+    public StreamingPlayer(File file) {
+        this.file = file;
+        this.source = null;
+    }
+
+    /**
+     * Constructs a player for WAV data from the given source. Nothing is opened until {@link #start(long)} is called.
+     *
+     * @param source the source.
+     */
+    public StreamingPlayer(Source source) {
+        this.file = null;
+        this.source = source;
+    }
+
+    /**
+     * Returns true if the given file has a readable audio header in a format some output line can play. Only the
+     * header is read.
+     *
+     * @param file the file.
+     * @return true if the file can be played.
+     */
+    public static boolean isPlayable(File file) {
+        if (file == null || !file.isFile()) {
+            return false;
+        }
+
+        try (AudioInputStream audioStream = AudioSystem.getAudioInputStream(file)) {
+            return AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, playbackFormat(audioStream.getFormat())));
+        } catch (UnsupportedAudioFileException | IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts playback at the given byte offset into the audio data. The offset is rounded down to a whole frame. A
+     * file is opened before this returns; a source may have to be fetched, so it is opened on the playback thread, and
+     * a problem opening it is reported there rather than thrown.
+     *
+     * @param byteOffset the byte offset into the audio data, not counting the file header.
+     * @throws IOException if the file cannot be read or no line is available for its format.
+     */
+    public void start(long byteOffset) throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("This player has already been started.");
+        }
+
+        if (source != null) {
+            thread = new Thread(() -> {
+                try {
+                    AudioInputStream audioStream = open(byteOffset);
+                    playLoop(audioStream, openLine(audioStream));
+                } catch (IOException e) {
+                    System.out.println("There was a problem playing back the audio. " + "\n" + e.getMessage());
+                }
+            }, "streaming-player");
+        } else {
+            AudioInputStream audioStream = open(byteOffset);
+            SourceDataLine line = openLine(audioStream);
+            thread = new Thread(() -> playLoop(audioStream, line), "streaming-player");
+        }
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Moves playback to the given byte offset into the audio data. Takes effect after the buffer currently being
+     * written.
+     *
+     * @param byteOffset the byte offset into the audio data, not counting the file header.
+     */
+    public void seek(long byteOffset) {
+        if (byteOffset < 0) {
+            throw new IllegalArgumentException("Negative seek offset: " + byteOffset);
+        }
+
+        pendingSeek = byteOffset;
+    }
+
+    /**
+     * Stops playback. Returns without waiting for the line to close.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Returns true if playback has started and not yet finished.
+     *
+     * @return true if playback has started and not yet finished.
+     */
+    public boolean isPlaying() {
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * Returns the byte offset into the audio data up to which audio has been handed to the line.
+     *
+     * @return the byte offset into the audio data.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Opens an output line for the given stream's format, closing the stream if none is available.
+     *
+     * @param audioStream the stream.
+     * @return the open line.
+     * @throws IOException if no line is available for the stream's format.
+     */
+    private static SourceDataLine openLine(AudioInputStream audioStream) throws IOException {
+        try {
+            AudioFormat format = audioStream.getFormat();
+            SourceDataLine line = AudioSystem.getSourceDataLine(format);
+            line.open(format, bufferSize(format) * 2);
+            return line;
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            audioStream.close();
+            throw new IOException("No audio output line is available: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the stream into the line one buffer at a time, handling seeks, until the end of the stream or a stop.
+     *
+     * @param audioStream the stream, positioned at the starting offset.
+     * @param line        the open line.
+     */
+    private void playLoop(AudioInputStream audioStream, SourceDataLine line) {
+        AudioInputStream stream = audioStream;
+        byte[] buffer = new byte[bufferSize(line.getFormat())];
+        boolean started = false;
+
+        try {
+            while (!stopRequested) {
+                long seek = pendingSeek;
+
+                if (seek >= 0) {
+                    pendingSeek = -1;
+                    stream.close();
+                    stream = open(seek);
+                    line.flush();
+                }
+
+                int n = readFully(stream, buffer);
+
+                if (n <= 0) {
+                    break;
+                }
+
+                line.write(buffer, 0, n);
+                position += n;
+
+                if (!started) {
+                    line.start();
+                    started = true;
+                }
+            }
+
+            if (!stopRequested) {
+                line.drain();
+            }
+        } catch (IOException e) {
+            System.out.println("There was a problem playing back the audio. " + "\n" + e.getMessage());
+        } finally {
+            line.stop();
+            line.close();
+
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // Nothing more to play either way.
+            }
+        }
+    }
+
+    /**
+     * Opens the file or source, converted to a playable PCM format if need be, and skips to the given byte offset.
+     *
+     * @param byteOffset the byte offset into the audio data.
+     * @return the stream, positioned at the offset.
+     * @throws IOException if the file cannot be read.
+     */
+    private AudioInputStream open(long byteOffset) throws IOException {
+        AudioInputStream stream;
+
+        try {
+            if (file != null) {
+                stream = AudioSystem.getAudioInputStream(file);
+            } else {
+                // Reading the header needs mark and reset, which a network stream does not support.
+                stream = AudioSystem.getAudioInputStream(new BufferedInputStream(source.open()));
+            }
+        } catch (UnsupportedAudioFileException e) {
+            throw new IOException("Not a supported audio file: " + (file != null ? file.getName() : "stream"), e);
+        }
+
+        AudioFormat format = playbackFormat(stream.getFormat());
+
+        if (!format.matches(stream.getFormat())) {
+            stream = AudioSystem.getAudioInputStream(format, stream);
+        }
+
+        int frameSize = Math.max(1, format.getFrameSize());
+        long toSkip = byteOffset / frameSize * frameSize;
+        position = toSkip;
+
+        while (toSkip > 0) {
+            long skipped = stream.skip(toSkip);
+
+            if (skipped <= 0) {
+                break;
+            }
+
+            toSkip -= skipped;
+        }
+
+        position -= toSkip;
+        return stream;
+    }
+
+    /**
+     * Reads until the buffer is full or the stream ends.
+     *
+     * @param stream the stream.
+     * @param buffer the buffer.
+     * @return the number of bytes read, or -1 at the end of the stream.
+     * @throws IOException if the stream cannot be read.
+     */
+    private static int readFully(AudioInputStream stream, byte[] buffer) throws IOException {
+        int total = 0;
+
+        while (total < buffer.length) {
+            int n = stream.read(buffer, total, buffer.length - total);
+
+            if (n < 0) {
+                break;
+            }
+
+            total += n;
+        }
+
+        return total == 0 ? -1 : total;
+    }
+
+    /**
+     * Returns the format the given format should be played in: unchanged if it is PCM, otherwise 16-bit signed PCM.
+     *
+     * @param format the format of the file.
+     * @return the format to play in.
+     */
+    private static AudioFormat playbackFormat(AudioFormat format) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+
+        if (encoding == AudioFormat.Encoding.PCM_SIGNED || encoding == AudioFormat.Encoding.PCM_UNSIGNED) {
+            return format;
+        }
+
+        return new AudioFormat(format.getSampleRate(), 16, format.getChannels(), true, false);
+    }
+
+    /**
+     * Returns the size of one buffer of audio in the given format, in whole frames.
+     *
+     * @param format the format.
+     * @return the buffer size in bytes.
+     */
+    private static int bufferSize(AudioFormat format) {
+        int frameSize = Math.max(1, format.getFrameSize());
+        int frames = Math.max(1, Math.round(format.getFrameRate() * BUFFER_MILLIS / 1000f));
+        return frames * frameSize;
+    }
+
+    /**
+     * Where WAV data to play comes from when it is not a file.
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        /**
+         * Opens a new stream over the WAV data, from its start.
+         *
+         * @return the stream.
+         * @throws IOException if the data cannot be read.
+         */
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,312 @@
+package io.github.cmuphil.earthlinguistfx.audio;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Validates RIFF/WAVE files by reading their headers and chunk table only. No audio data is read and no audio line is
+ * opened, so many files can be checked quickly, and {@link #validateAll(Collection)} checks a batch of files in
+ * parallel, stopping at the first failure.
+ *
+ * @author josephramsey
+ */
+public class WavValidator {
+
+    /**
+     * WAVE format tag for integer PCM.
+     */
+    private static final int FORMAT_PCM = 1;
+
+    /**
+     * WAVE format tag for IEEE floating point samples.
+     */
+    private static final int FORMAT_IEEE_FLOAT = 3;
+
+    /**
+     * WAVE format tag for WAVE_FORMAT_EXTENSIBLE.
+     */
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    /**
+     * The pool files are validated on. Threads are daemons so that the pool never keeps the application alive.
+     */
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "wav-validator");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Prevents instantiation.
+     */
+    private WavValidator() {
+    }
+
+    /**
+     * Validates the header of the given file.
+     *
+     * @param file the file.
+     * @return the report for the file.
+     */
+    public static Report validate(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return validate(file.getName(), in, file.length());
+        } catch (IOException e) {
+            return Report.invalid(file.getName(), "could not be read: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Validates the header of a WAV file read from a stream. Audio data is skipped, not read, where the stream
+     * supports it.
+     *
+     * @param name   the name to report the file under.
+     * @param in     the stream, positioned at the start of the file.
+     * @param length the length of the file in bytes.
+     * @return the report for the file.
+     */
+    public static Report validate(String name, InputStream in, long length) {
+        try {
+            return parse(name, new DataInputStream(new BufferedInputStream(in, 64)), length);
+        } catch (EOFException e) {
+            return Report.invalid(name, "is truncated inside its header");
+        } catch (IOException e) {
+            return Report.invalid(name, "could not be read: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Validates the given files in parallel. As soon as one file fails, the remaining checks are cancelled.
+     *
+     * @param files the files.
+     * @return the reports of the checks that finished, in completion order. If any file is invalid, the last report
+     * is the first failure found.
+     */
+    public static List<Report> validateAll(Collection<File> files) {
+        CompletionService<Report> completionService = new ExecutorCompletionService<>(POOL);
+        List<Future<Report>> futures = new ArrayList<>();
+        List<Report> reports = new ArrayList<>();
+
+        for (File file : files) {
+            futures.add(completionService.submit(() -> validate(file)));
+        }
+
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Report report = completionService.take().get();
+                reports.add(report);
+
+                if (!report.valid()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reports.add(Report.invalid("(batch)", "validation was interrupted"));
+        } catch (ExecutionException e) {
+            reports.add(Report.invalid("(batch)", "validation failed: " + e.getCause()));
+        } finally {
+            for (Future<Report> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return reports;
+    }
+
+    /**
+     * Walks the RIFF chunk table.
+     *
+     * @param name   the name to report the file under.
+     * @param in     the stream.
+     * @param length the length of the file in bytes.
+     * @return the report.
+     * @throws IOException if the stream cannot be read.
+     */
+    private static Report parse(String name, DataInputStream in, long length) throws IOException {
+        if (length < 12) {
+            return Report.invalid(name, "is too short to be a WAV file (" + length + " bytes)");
+        }
+
+        if (!"RIFF".equals(readId(in))) {
+            return Report.invalid(name, "does not start with a RIFF header");
+        }
+
+        long riffSize = readUnsignedInt(in);
+
+        if (!"WAVE".equals(readId(in))) {
+            return Report.invalid(name, "is a RIFF file but not a WAVE file");
+        }
+
+        if (riffSize + 8 > length) {
+            return Report.invalid(name, "is truncated: the RIFF header declares " + (riffSize + 8)
+                    + " bytes but there are " + length);
+        }
+
+        long offset = 12;
+        long end = riffSize + 8;
+        int formatTag = -1;
+        int channels = 0;
+        long sampleRate = 0;
+        int blockAlign = 0;
+        int bitsPerSample = 0;
+
+        while (offset + 8 <= end) {
+            String id = readId(in);
+            long size = readUnsignedInt(in);
+            offset += 8;
+
+            if (offset + size > end) {
+                return Report.invalid(name, "has a '" + id + "' chunk of " + size + " bytes at offset " + (offset - 8)
+                        + " that runs past the end of the file");
+            }
+
+            if ("fmt ".equals(id)) {
+                if (size < 16) {
+                    return Report.invalid(name, "has a format chunk that is too short (" + size + " bytes)");
+                }
+
+                formatTag = Short.toUnsignedInt(Short.reverseBytes(in.readShort()));
+                channels = Short.toUnsignedInt(Short.reverseBytes(in.readShort()));
+                sampleRate = readUnsignedInt(in);
+                readUnsignedInt(in); // byte rate
+                blockAlign = Short.toUnsignedInt(Short.reverseBytes(in.readShort()));
+                bitsPerSample = Short.toUnsignedInt(Short.reverseBytes(in.readShort()));
+                skipFully(in, size - 16 + (size & 1));
+            } else if ("data".equals(id)) {
+                if (formatTag == -1) {
+                    return Report.invalid(name, "has its data chunk before its format chunk");
+                }
+
+                if (formatTag != FORMAT_PCM && formatTag != FORMAT_IEEE_FLOAT && formatTag != FORMAT_EXTENSIBLE) {
+                    return Report.invalid(name, "uses unsupported WAVE format tag " + formatTag);
+                }
+
+                if (channels < 1 || sampleRate < 1 || bitsPerSample < 1) {
+                    return Report.invalid(name, "has an invalid format: " + channels + " channel(s), " + sampleRate
+                            + " Hz, " + bitsPerSample + " bits");
+                }
+
+                if (blockAlign != channels * ((bitsPerSample + 7) / 8)) {
+                    return Report.invalid(name, "has block alignment " + blockAlign + " but " + channels
+                            + " channel(s) of " + bitsPerSample + " bits");
+                }
+
+                if (size % blockAlign != 0) {
+                    return Report.invalid(name, "has " + size + " bytes of audio, which is not a whole number of "
+                            + blockAlign + "-byte frames");
+                }
+
+                return new Report(name, true, "is valid", channels, sampleRate, bitsPerSample, size);
+            } else {
+                skipFully(in, size + (size & 1));
+            }
+
+            offset += size + (size & 1);
+        }
+
+        return Report.invalid(name, formatTag == -1 ? "has no format chunk" : "has no data chunk");
+    }
+
+    /**
+     * Reads a four-character chunk id.
+     *
+     * @param in the stream.
+     * @return the id.
+     * @throws IOException if the stream cannot be read.
+     */
+    private static String readId(DataInputStream in) throws IOException {
+        byte[] id = new byte[4];
+        in.readFully(id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads a little-endian unsigned 32-bit integer.
+     *
+     * @param in the stream.
+     * @return the value.
+     * @throws IOException if the stream cannot be read.
+     */
+    private static long readUnsignedInt(DataInputStream in) throws IOException {
+        return Integer.toUnsignedLong(Integer.reverseBytes(in.readInt()));
+    }
+
+    /**
+     * Skips exactly n bytes.
+     *
+     * @param in the stream.
+     * @param n  the number of bytes.
+     * @throws IOException if the stream ends first.
+     */
+    private static void skipFully(DataInputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+
+                skipped = 1;
+            }
+
+            n -= skipped;
+        }
+    }
+
+    /**
+     * The result of validating one WAV file.
+     *
+     * @param name          the name of the file.
+     * @param valid         true if the file is a valid WAV file.
+     * @param message       what was found, phrased to follow the file name.
+     * @param channels      the number of channels, or 0 if invalid.
+     * @param sampleRate    the sample rate in Hz, or 0 if invalid.
+     * @param bitsPerSample the number of bits per sample, or 0 if invalid.
+     * @param dataLength    the number of bytes of audio, or 0 if invalid.
+     */
+    public record Report(String name, boolean valid, String message, int channels, long sampleRate,
+                         int bitsPerSample, long dataLength) {
+
+        /**
+         * Returns a report for an invalid file.
+         *
+         * @param name    the name of the file.
+         * @param message what is wrong, phrased to follow the file name.
+         * @return the report.
+         */
+        static Report invalid(String name, String message) {
+            return new Report(name, false, message, 0, 0, 0, 0);
+        }
+
+        /**
+         * Returns the length of the audio in seconds, or 0 if the file is invalid.
+         *
+         * @return the length of the audio in seconds.
+         */
+        public double durationSeconds() {
+            if (!valid) {
+                return 0;
+            }
+
+            return dataLength / (double) (channels * ((bitsPerSample + 7) / 8)) / sampleRate;
+        }
+
+        /**
+         * Returns the report as a sentence.
+         *
+         * @return the report as a sentence.
+         */
+        @Override
+        public String toString() {
+            return name + " " + message + (valid ? String.format(" (%d ch, %d Hz, %d bit, %.2f s)", channels,
+                    sampleRate, bitsPerSample, durationSeconds()) : "");
+        }
+    }
+}
@@ -0,0 +1,819 @@
+package io.github.cmuphil.earthlinguistfx.catalog;
+
+import io.github.cmuphil.earthlinguistfx.archive.ZipArchiveWriter;
+import io.github.cmuphil.earthlinguistfx.archive.ZipIndex;
+import io.github.cmuphil.earthlinguistfx.examples.Examples;
+import io.github.cmuphil.earthlinguistfx.state.AppState;
+import io.github.cmuphil.earthlinguistfx.utils.Constants;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Imports a directory of sample zips into a library in bulk. Each archive passes through four stages, each with its
+ * own threads and connected to the next by a bounded queue, so that a slow stage holds the earlier ones back instead
+ * of letting work pile up:
+ * <ol>
+ * <li>unzip: the archive is extracted into a staging directory, dropping '__MACOSX' folders and hidden files and
+ * flattening a single enclosing folder;</li>
+ * <li>validate: the staging directory is checked as a sample, as when a sample is loaded;</li>
+ * <li>normalize: the sample is rewritten into its shard of the library (see {@link ShardedLayout}) under the usual
+ * 'example_N_language_country.K.zip' name, with audio stored and 'state.json' deflated;</li>
+ * <li>catalog: the new archive is added to the library's {@link SampleCatalog}, in batches.</li>
+ * </ol>
+ * An archive that fails at any stage is recorded in the error report and the rest carry on; one that fails to be
+ * cataloged is deleted from the library again. If a stage fails as a whole, as when the catalog cannot be saved, the
+ * other stages are stopped, every queue is given the end marker, and the archives written to the library but not yet
+ * in its catalog are deleted and reported as failed. Progress and throughput are reported to a listener once a
+ * second. This class can be run headless; see {@link #main(String[])}.
+ *
+ * @author josephramsey
+ */
+public class BulkImporter {
+
+    /**
+     * The capacity of each queue between stages.
+     */
+    private static final int QUEUE_CAPACITY = 32;
+
+    /**
+     * The number of records the catalog stage collects before saving the catalog.
+     */
+    private static final int CATALOG_BATCH = 256;
+
+    /**
+     * Marks the end of the work in a queue.
+     */
+    private static final Item END = new Item(null);
+
+    /**
+     * How long to wait for the threads of a failed import to stop before its written archives are rolled back.
+     */
+    private static final long STOP_TIMEOUT_SECONDS = 60;
+
+    /**
+     * The library directory.
+     */
+    private final Path libraryDir;
+
+    /**
+     * Where archives go in the library.
+     */
+    private final ShardedLayout layout;
+
+    /**
+     * The library's catalog.
+     */
+    private final SampleCatalog catalog;
+
+    /**
+     * The number of threads for each of the unzip, validate and normalize stages.
+     */
+    private final int threadsPerStage;
+
+    /**
+     * The library file names handed out but possibly not yet written.
+     */
+    private final Set<String> reservedNames = new HashSet<>();
+
+    /**
+     * Constructs an importer into the given library.
+     *
+     * @param libraryDir      the library directory.
+     * @param threadsPerStage the number of threads for each of the unzip, validate and normalize stages.
+     * @throws IOException if a flat library cannot be moved into shards or the library's catalog cannot be opened.
+     */
+    public BulkImporter(Path libraryDir, int threadsPerStage) throws IOException {
+        if (threadsPerStage < 1) {
+            throw new IllegalArgumentException("Expecting at least one thread per stage: " + threadsPerStage);
+        }
+
+        Files.createDirectories(libraryDir);
+        this.libraryDir = libraryDir;
+        this.layout = new ShardedLayout(libraryDir);
+        this.layout.migrate();
+        this.catalog = SampleCatalog.open(libraryDir);
+        this.threadsPerStage = threadsPerStage;
+    }
+
+    /**
+     * Imports every '.zip' file directly in the given directory into the library.
+     *
+     * @param sourceDir the directory of zips.
+     * @param listener  called with progress about once a second and once at the end, on a background thread; may be
+     *                  null.
+     * @return the report.
+     * @throws IOException if the directory cannot be listed or the staging area cannot be created.
+     */
+    public Report importAll(Path sourceDir, Consumer<Progress> listener) throws IOException {
+        List<Path> sources;
+
+        try (Stream<Path> list = Files.list(sourceDir)) {
+            sources = list.filter(path -> path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".zip"))
+                    .filter(path -> !path.getFileName().toString().startsWith("."))
+                    .filter(Files::isRegularFile).sorted().toList();
+        }
+
+        // Read the bundled examples now rather than in the first validation, where every validator would wait for it.
+        Examples.getInstance();
+
+        Run run = new Run(sources.size());
+        Path staging = Files.createTempDirectory(libraryDir, ".import");
+        BlockingQueue<Item> toUnzip = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Item> toValidate = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Item> toNormalize = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Item> toCatalog = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        List<BlockingQueue<Item>> queues = List.of(toUnzip, toValidate, toNormalize, toCatalog);
+
+        List<Stage> stages = List.of(
+                new Stage("unzip", threadsPerStage, toUnzip, toValidate, item -> unzip(item, staging)),
+                new Stage("validate", threadsPerStage, toValidate, toNormalize, this::validate),
+                new Stage("normalize", threadsPerStage, toNormalize, toCatalog, item -> normalize(item, run)));
+
+        int threads = stages.stream().mapToInt(stage -> stage.threads).sum() + 2;
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Tasks are waited for in the order they finish, so that a stage that fails is noticed at once rather than
+        // after the stages before it, which may be blocked on a queue the failed stage no longer drains.
+        CompletionService<Void> completion = new ExecutorCompletionService<>(pool);
+        int tasks = 0;
+
+        try {
+            for (Stage stage : stages) {
+                for (int i = 0; i < stage.threads; i++) {
+                    completion.submit(() -> stage.work(run));
+                    tasks++;
+                }
+            }
+
+            completion.submit(() -> {
+                catalogStage(toCatalog, run);
+                return null;
+            });
+
+            completion.submit(() -> {
+                feed(sources, toUnzip, run);
+                return null;
+            });
+
+            tasks += 2;
+
+            if (listener != null) {
+                reporter.scheduleAtFixedRate(() -> listener.accept(run.progress()), 1, 1, TimeUnit.SECONDS);
+            }
+
+            for (int i = 0; i < tasks; i++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            abort(run, queues, pool);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while importing " + sourceDir);
+        } catch (ExecutionException e) {
+            abort(run, queues, pool);
+            throw new IOException("The import failed: " + e.getCause(), e.getCause());
+        } finally {
+            reporter.shutdownNow();
+            pool.shutdownNow();
+            rollBack(run, pool);
+            deleteRecursively(staging);
+        }
+
+        Progress progress = run.progress();
+
+        if (listener != null) {
+            listener.accept(progress);
+        }
+
+        return new Report(List.copyOf(run.imported), new TreeMap<>(run.errors), progress);
+    }
+
+    /**
+     * Imports a directory of zips from the command line and prints progress and the error report. The arguments are
+     * the directory of zips and, optionally, the library directory, which defaults to
+     * {@link Constants#LIBRARY_DIRECTORY}. Exits with status 2 if any archive could not be imported.
+     *
+     * @param args the arguments.
+     * @throws IOException if the import cannot be run.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: BulkImporter <directory of zips> [<library directory>]");
+            System.exit(1);
+        }
+
+        Path library = Path.of(args.length > 1 ? args[1] : Constants.LIBRARY_DIRECTORY);
+        BulkImporter importer = new BulkImporter(library, Runtime.getRuntime().availableProcessors());
+        Report report = importer.importAll(Path.of(args[0]), System.out::println);
+
+        report.errors().forEach((file, message) -> System.out.println("FAILED " + file + ": " + message));
+        System.out.println("Imported " + report.imported().size() + " of " + report.progress().total()
+                + " archives into " + library + ".");
+
+        if (!report.errors().isEmpty()) {
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Puts the archives to import on the first queue, followed by the end marker.
+     *
+     * @param sources the archives.
+     * @param out     the first queue.
+     * @param run     the run.
+     * @throws InterruptedException if interrupted.
+     */
+    private static void feed(List<Path> sources, BlockingQueue<Item> out, Run run) throws InterruptedException {
+        for (Path source : sources) {
+            if (run.aborted) {
+                return;
+            }
+
+            out.put(new Item(source));
+        }
+
+        out.put(END);
+    }
+
+    /**
+     * Stops a failed import: marks the run aborted, interrupts every thread and replaces the contents of every queue
+     * with the end marker, so that no thread is left waiting on a queue that nothing drains or fills.
+     *
+     * @param run    the run.
+     * @param queues the queues between the stages.
+     * @param pool   the pool the stages run on.
+     */
+    private static void abort(Run run, List<BlockingQueue<Item>> queues, ExecutorService pool) {
+        run.aborted = true;
+        pool.shutdownNow();
+
+        for (BlockingQueue<Item> queue : queues) {
+            queue.clear();
+            queue.offer(END);
+        }
+    }
+
+    /**
+     * Deletes the archives written to the library that did not make it into the catalog, once the import's threads
+     * have stopped, and reports them as failed. Nothing is left to roll back after an import that finished.
+     *
+     * @param run  the run.
+     * @param pool the pool the stages ran on, already shut down.
+     */
+    private void rollBack(Run run, ExecutorService pool) {
+        try {
+            if (!pool.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.out.println("The import's threads did not stop; an archive being written may be left in "
+                        + "the library.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Item> items = new ArrayList<>(run.written);
+
+        if (items.isEmpty()) {
+            return;
+        }
+
+        List<String> files = new ArrayList<>();
+
+        for (Item item : items) {
+            discard(item, run);
+            run.imported.remove(item.libraryName);
+            run.errors.put(item.source.getFileName().toString(), "catalog: rolled back because the import failed");
+            files.add(item.libraryName);
+        }
+
+        try {
+            catalog.removeAll(files);
+        } catch (IOException e) {
+            System.out.println("Could not save the catalog after rolling back the import: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes an archive that was written to the library but will not be cataloged.
+     *
+     * @param item the item.
+     * @param run  the run.
+     */
+    private void discard(Item item, Run run) {
+        run.written.remove(item);
+
+        try {
+            Files.deleteIfExists(libraryDir.resolve(item.libraryName));
+        } catch (IOException e) {
+            System.out.println("Could not delete " + item.libraryName + " from the library: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Extracts an archive into a new staging directory and tidies its layout.
+     *
+     * @param item    the item.
+     * @param staging the staging area.
+     * @throws IOException if the archive cannot be extracted.
+     */
+    private void unzip(Item item, Path staging) throws IOException {
+        item.workspace = Files.createTempDirectory(staging, "sample");
+
+        try (ZipIndex index = ZipIndex.open(item.source)) {
+            index.extractAll(item.workspace);
+        }
+
+        try (Stream<Path> walk = Files.walk(item.workspace)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                String name = path.getFileName().toString();
+
+                if (!path.equals(item.workspace) && (name.startsWith(".") || name.equals("__MACOSX"))) {
+                    deleteRecursively(path);
+                }
+            }
+        }
+
+        // Archives made by zipping a folder rather than its contents have everything in one enclosing folder.
+        List<Path> top;
+
+        try (Stream<Path> list = Files.list(item.workspace)) {
+            top = list.toList();
+        }
+
+        if (top.size() == 1 && Files.isDirectory(top.get(0))) {
+            Path folder = top.get(0);
+
+            try (Stream<Path> list = Files.list(folder)) {
+                for (Path path : list.toList()) {
+                    Files.move(path, item.workspace.resolve(path.getFileName()));
+                }
+            }
+
+            Files.delete(folder);
+        }
+    }
+
+    /**
+     * Validates a staged sample.
+     *
+     * @param item the item.
+     * @throws IOException if the sample cannot be read.
+     */
+    private void validate(Item item) throws IOException {
+        item.appState = SampleValidator.checkClipsDirectory(item.workspace.toString());
+    }
+
+    /**
+     * Writes a staged sample into the library under a fresh name and deletes the staging directory. The archive is
+     * recorded as written until it is cataloged, so that it can be rolled back.
+     *
+     * @param item the item.
+     * @param run  the run.
+     * @throws IOException if the archive cannot be written.
+     */
+    private void normalize(Item item, Run run) throws IOException {
+        String name = reserveName(item.appState);
+
+        try {
+            ZipArchiveWriter.write(item.workspace, layout.prepare(name));
+            item.libraryName = ShardedLayout.relativeName(name);
+            run.written.add(item);
+        } finally {
+            release(name);
+            deleteRecursively(item.workspace);
+        }
+    }
+
+    /**
+     * Adds the normalized archives to the catalog, saving it once per batch. An archive counts as imported once its
+     * batch is saved; one that cannot be read is deleted from the library. Runs on one thread.
+     *
+     * @param in  the queue of normalized items.
+     * @param run the run.
+     * @throws InterruptedException if interrupted.
+     * @throws IOException          if the catalog cannot be saved.
+     */
+    private void catalogStage(BlockingQueue<Item> in, Run run) throws InterruptedException, IOException {
+        List<Item> items = new ArrayList<>();
+        List<SampleRecord> batch = new ArrayList<>();
+        AtomicInteger done = run.stageDone("catalog");
+
+        while (!run.aborted) {
+            Item item = in.take();
+
+            if (item == END) {
+                break;
+            }
+
+            try {
+                batch.add(SampleCatalog.read(libraryDir.resolve(item.libraryName), item.libraryName));
+                items.add(item);
+            } catch (IOException | RuntimeException e) {
+                discard(item, run);
+                run.failed(item, "catalog", e);
+            }
+
+            done.incrementAndGet();
+
+            if (batch.size() >= CATALOG_BATCH) {
+                saveBatch(items, batch, run);
+            }
+        }
+
+        if (!run.aborted) {
+            saveBatch(items, batch, run);
+        }
+    }
+
+    /**
+     * Adds a batch of records to the catalog and marks their archives imported.
+     *
+     * @param items the items of the batch, cleared once it is saved.
+     * @param batch their records, cleared once they are saved.
+     * @param run   the run.
+     * @throws IOException if the catalog cannot be saved.
+     */
+    private void saveBatch(List<Item> items, List<SampleRecord> batch, Run run) throws IOException {
+        catalog.putAll(batch);
+
+        for (Item item : items) {
+            run.written.remove(item);
+            run.imported(item);
+        }
+
+        items.clear();
+        batch.clear();
+    }
+
+    /**
+     * Reserves a library file name for the given sample, in the format saves use.
+     *
+     * @param appState the sample's app state.
+     * @return the file name.
+     */
+    private synchronized String reserveName(AppState appState) {
+        String base = ("example " + appState.getSelectedIndex() + " " + appState.getSelectedLanguage() + " "
+                + appState.getSelectedCountry()).replace(" ", "_").toLowerCase(Locale.ROOT)
+                .replaceAll("[^\\p{L}\\p{N}_.-]", "_");
+
+        for (int i = 1; ; i++) {
+            String name = base + "." + i + ".zip";
+
+            if (!reservedNames.contains(name) && !layout.exists(name)) {
+                reservedNames.add(name);
+                return name;
+            }
+        }
+    }
+
+    /**
+     * Releases a reserved name once its file has been written, or has failed to be.
+     *
+     * @param name the file name.
+     */
+    private synchronized void release(String name) {
+        reservedNames.remove(name);
+    }
+
+    /**
+     * Deletes a file or a directory and everything in it, if it exists.
+     *
+     * @param path the file or directory.
+     * @throws IOException if something cannot be deleted.
+     */
+    private static void deleteRecursively(Path path) throws IOException {
+        if (path == null || !Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * The work done to one item by a stage.
+     */
+    private interface StageFunction {
+
+        /**
+         * Does the work.
+         *
+         * @param item the item.
+         * @throws IOException if the work fails.
+         */
+        void apply(Item item) throws IOException;
+    }
+
+    /**
+     * One archive on its way through the pipeline.
+     */
+    private static class Item {
+
+        /**
+         * The archive being imported.
+         */
+        private final Path source;
+
+        /**
+         * The staging directory it is extracted into.
+         */
+        private Path workspace;
+
+        /**
+         * Its app state, once validated.
+         */
+        private AppState appState;
+
+        /**
+         * Its file name in the library, once normalized.
+         */
+        private String libraryName;
+
+        /**
+         * Constructs an item.
+         *
+         * @param source the archive being imported.
+         */
+        Item(Path source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * A stage of the pipeline: some threads taking items from one queue, working on them and passing them to the
+     * next. The end marker is passed on once every thread of the stage has seen it.
+     */
+    private static class Stage {
+
+        /**
+         * The name of the stage.
+         */
+        private final String name;
+
+        /**
+         * The number of threads.
+         */
+        private final int threads;
+
+        /**
+         * The queue items are taken from.
+         */
+        private final BlockingQueue<Item> in;
+
+        /**
+         * The queue items are passed to.
+         */
+        private final BlockingQueue<Item> out;
+
+        /**
+         * The work done to each item.
+         */
+        private final StageFunction function;
+
+        /**
+         * The number of threads still running.
+         */
+        private final AtomicInteger running;
+
+        /**
+         * Constructs a stage.
+         *
+         * @param name     the name of the stage.
+         * @param threads  the number of threads.
+         * @param in       the queue items are taken from.
+         * @param out      the queue items are passed to.
+         * @param function the work done to each item.
+         */
+        Stage(String name, int threads, BlockingQueue<Item> in, BlockingQueue<Item> out, StageFunction function) {
+            this.name = name;
+            this.threads = threads;
+            this.in = in;
+            this.out = out;
+            this.function = function;
+            this.running = new AtomicInteger(threads);
+        }
+
+        /**
+         * The loop each of the stage's threads runs.
+         *
+         * @param run the run.
+         * @return null.
+         * @throws InterruptedException if interrupted.
+         */
+        Void work(Run run) throws InterruptedException {
+            AtomicInteger done = run.stageDone(name);
+
+            while (!run.aborted) {
+                Item item = in.take();
+
+                if (item == END) {
+                    in.put(END);
+
+                    if (running.decrementAndGet() == 0) {
+                        out.put(END);
+                    }
+
+                    return null;
+                }
+
+                try {
+                    function.apply(item);
+                    out.put(item);
+                } catch (IOException | RuntimeException e) {
+                    run.failed(item, name, e);
+                }
+
+                done.incrementAndGet();
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * The state of one import run, shared by the stages.
+     */
+    private static class Run {
+
+        /**
+         * The number of archives to import.
+         */
+        private final int total;
+
+        /**
+         * When the run started, in nanoseconds.
+         */
+        private final long start = System.nanoTime();
+
+        /**
+         * The number of items each stage has finished with, by stage, in pipeline order.
+         */
+        private final Map<String, AtomicInteger> stageDone = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        /**
+         * The library names of the archives imported.
+         */
+        private final List<String> imported = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * Why each archive that failed was rejected, by source file name.
+         */
+        private final Map<String, String> errors = new ConcurrentHashMap<>();
+
+        /**
+         * The number of bytes of source archives fully imported.
+         */
+        private final AtomicLong bytes = new AtomicLong();
+
+        /**
+         * The items written to the library but not yet in its catalog.
+         */
+        private final Set<Item> written = ConcurrentHashMap.newKeySet();
+
+        /**
+         * True once a stage has failed and the run is being stopped.
+         */
+        private volatile boolean aborted;
+
+        /**
+         * Constructs a run.
+         *
+         * @param total the number of archives to import.
+         */
+        Run(int total) {
+            this.total = total;
+
+            for (String stage : List.of("unzip", "validate", "normalize", "catalog")) {
+                stageDone.put(stage, new AtomicInteger());
+            }
+        }
+
+        /**
+         * Returns the counter of items the given stage has finished with.
+         *
+         * @param stage the stage.
+         * @return the counter.
+         */
+        AtomicInteger stageDone(String stage) {
+            return stageDone.get(stage);
+        }
+
+        /**
+         * Records an imported archive.
+         *
+         * @param item the item.
+         */
+        void imported(Item item) {
+            imported.add(item.libraryName);
+
+            try {
+                bytes.addAndGet(Files.size(item.source));
+            } catch (IOException ignored) {
+                // Only the throughput figure is affected.
+            }
+        }
+
+        /**
+         * Records a failed archive and cleans up after it.
+         *
+         * @param item  the item.
+         * @param stage the stage it failed in.
+         * @param e     the failure.
+         */
+        void failed(Item item, String stage, Exception e) {
+            errors.put(item.source.getFileName().toString(), stage + ": " + e.getMessage());
+
+            try {
+                deleteRecursively(item.workspace);
+            } catch (IOException ignored) {
+                // The staging area is deleted at the end of the run anyway.
+            }
+        }
+
+        /**
+         * Returns a snapshot of the run's progress.
+         *
+         * @return the progress.
+         */
+        Progress progress() {
+            Map<String, Integer> done = new LinkedHashMap<>();
+
+            synchronized (stageDone) {
+                stageDone.forEach((stage, count) -> done.put(stage, count.get()));
+            }
+
+            return new Progress(total, done, imported.size(), errors.size(), bytes.get(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * A snapshot of an import's progress.
+     *
+     * @param total         the number of archives to import.
+     * @param stageDone     the number of archives each stage has finished with, in pipeline order.
+     * @param imported      the number of archives imported.
+     * @param failed        the number of archives that failed.
+     * @param bytes         the number of bytes of source archives imported.
+     * @param elapsedMillis the time since the import started, in milliseconds.
+     */
+    public record Progress(int total, Map<String, Integer> stageDone, int imported, int failed, long bytes,
+                           long elapsedMillis) {
+
+        /**
+         * Returns the number of archives imported per second so far.
+         *
+         * @return the throughput in archives per second.
+         */
+        public double archivesPerSecond() {
+            return elapsedMillis == 0 ? 0 : imported * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * Returns the number of megabytes of source archives imported per second so far.
+         *
+         * @return the throughput in megabytes per second.
+         */
+        public double megabytesPerSecond() {
+            return elapsedMillis == 0 ? 0 : bytes / 1e6 * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * Returns the string representation of the progress.
+         *
+         * @return the string representation.
+         */
+        public String toString() {
+            return String.format("%d/%d imported, %d failed, stages %s, %.1f archives/s, %.1f MB/s", imported,
+                    total, failed, stageDone, archivesPerSecond(), megabytesPerSecond());
+        }
+    }
+
+    /**
+     * The result of an import.
+     *
+     * @param imported the library names of the archives imported.
+     * @param errors   why each archive that failed was rejected, by source file name, prefixed with the stage.
+     * @param progress the final progress.
+     */
+    public record Report(List<String> imported, Map<String, String> errors, Progress progress) {
+    }
+}
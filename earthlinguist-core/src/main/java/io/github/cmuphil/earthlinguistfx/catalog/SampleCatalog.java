@@ -0,0 +1,763 @@
+package io.github.cmuphil.earthlinguistfx.catalog;
+
+import com.google.gson.Gson;
+import io.github.cmuphil.earthlinguistfx.archive.ZipEntryRecord;
+import io.github.cmuphil.earthlinguistfx.archive.ZipIndex;
+import io.github.cmuphil.earthlinguistfx.audio.WavValidator;
+import io.github.cmuphil.earthlinguistfx.state.AppState;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A persistent catalog of the sample archives in a library directory. Each archive is read once, through its central
+ * directory, its 'state.json' entry and the headers of its clips, and what was learned is kept in an index file in the
+ * library directory. A rescan only reads archives that are new or whose size or modification time changed, and drops
+ * archives that are gone, so browsing a large library never means opening every file.
+ * <p>
+ * Changes are not written by rewriting the index. Each one is appended to a log beside it, one JSON line per archive
+ * changed, and the log is replayed over the index when the catalog is opened. Once the log has more lines than the
+ * catalog has archives, the index is rewritten and the log deleted, so the cost of writing the whole index is spread
+ * over at least as many changes. Every line sets or drops one archive's entry outright, so replaying a log over an
+ * index that already holds its changes, as after a crash between the two steps of a compaction, does no harm.
+ *
+ * @author josephramsey
+ */
+public class SampleCatalog {
+
+    /**
+     * The name of the index file, in the library directory. Hidden, so that it is never taken for a sample.
+     */
+    public static final String INDEX_FILE = ".catalog.json";
+
+    /**
+     * The name of the log of changes made since the index was last written, in the library directory.
+     */
+    public static final String LOG_FILE = ".catalog.log";
+
+    /**
+     * The log is never compacted before it has this many lines, however small the catalog.
+     */
+    private static final int MIN_COMPACTION_LINES = 1000;
+
+    /**
+     * The version of the index file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The JSON serializer.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Clip entry names, capturing the 1-based column.
+     */
+    private static final Pattern CLIP_NAME = Pattern.compile("clip\\.(\\d+)\\.wav");
+
+    /**
+     * The library directory.
+     */
+    private final Path libraryDir;
+
+    /**
+     * The records, by file.
+     */
+    private final Map<String, SampleRecord> records = new TreeMap<>();
+
+    /**
+     * The archives that could not be read, by file, so they are not read again until they change.
+     */
+    private final Map<String, Failure> failures = new TreeMap<>();
+
+    /**
+     * The query table over the records, built when first asked for after a change; null until then.
+     */
+    private SampleTable table = null;
+
+    /**
+     * The changes made since the catalog was last written, in order.
+     */
+    private final List<LogEntry> pending = new ArrayList<>();
+
+    /**
+     * The number of lines in the log.
+     */
+    private int logLines = 0;
+
+    /**
+     * Whether the index should be rewritten at the next write rather than the log appended to, as when the log is
+     * damaged.
+     */
+    private boolean compactNext = false;
+
+    /**
+     * Constructs a catalog of the given library directory.
+     *
+     * @param libraryDir the library directory.
+     */
+    private SampleCatalog(Path libraryDir) {
+        this.libraryDir = libraryDir;
+    }
+
+    /**
+     * Opens the catalog of the given library directory, loading its index if it has one and replaying its log. A log
+     * whose last line was cut short, as by a crash, is replayed up to that line and compacted away. The library is
+     * not scanned; call {@link #rescan()} to bring the catalog up to date.
+     *
+     * @param libraryDir the library directory.
+     * @return the catalog.
+     * @throws IOException if the directory cannot be created or a damaged log cannot be compacted.
+     */
+    public static SampleCatalog open(Path libraryDir) throws IOException {
+        Files.createDirectories(libraryDir);
+        SampleCatalog catalog = new SampleCatalog(libraryDir);
+        Path indexFile = libraryDir.resolve(INDEX_FILE);
+
+        if (Files.exists(indexFile)) {
+            try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                IndexFile index = GSON.fromJson(reader, IndexFile.class);
+
+                if (index != null && index.version == VERSION) {
+                    for (SampleRecord record : index.records) {
+                        catalog.records.put(record.getFile(), record);
+                    }
+
+                    for (Failure failure : index.failures) {
+                        catalog.failures.put(failure.file, failure);
+                    }
+                }
+            } catch (Exception e) {
+                System.out.println("The catalog index for " + libraryDir + " could not be read; rebuilding. "
+                        + e.getMessage());
+            }
+        }
+
+        catalog.replayLog();
+
+        if (catalog.compactNext) {
+            catalog.compact();
+        }
+
+        return catalog;
+    }
+
+    /**
+     * Reads the catalog record for one archive.
+     *
+     * @param archive the archive.
+     * @param file    the path to record it under, relative to the library directory.
+     * @return the record.
+     * @throws IOException              if the archive cannot be read.
+     * @throws IllegalArgumentException if the archive is not a valid sample.
+     */
+    public static SampleRecord read(Path archive, String file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(archive, BasicFileAttributes.class);
+
+        try (ZipIndex index = ZipIndex.open(archive)) {
+            if (index.getEntry("state.json") == null) {
+                throw new IllegalArgumentException("There is no state.json.");
+            }
+
+            AppState appState;
+
+            try (Reader reader = new InputStreamReader(index.openStream("state.json"), StandardCharsets.UTF_8)) {
+                appState = AppState.fromJson(reader);
+            } catch (IllegalStateException e) {
+                throw new IllegalArgumentException("The state.json cannot be parsed: " + e.getMessage());
+            }
+
+            int numColumns = appState.getUserAnnotations().length;
+            TreeMap<Integer, Double> durations = new TreeMap<>();
+
+            for (ZipEntryRecord entry : index.getEntries()) {
+                Matcher matcher = CLIP_NAME.matcher(entry.name());
+
+                if (!matcher.matches()) {
+                    continue;
+                }
+
+                WavValidator.Report report;
+
+                try (InputStream in = index.openStream(entry)) {
+                    report = WavValidator.validate(entry.name(), in, entry.size());
+                }
+
+                if (!report.valid()) {
+                    throw new IllegalArgumentException(report.toString());
+                }
+
+                durations.put(Integer.parseInt(matcher.group(1)) - 1, report.durationSeconds());
+            }
+
+            int[] columns = durations.keySet().stream().mapToInt(Integer::intValue).toArray();
+            double[] seconds = durations.values().stream().mapToDouble(Double::doubleValue).toArray();
+
+            return new SampleRecord(file, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    appState.getSelectedLanguage(), appState.getSelectedCountry(), appState.getEnteredRegion(),
+                    appState.getSelectedIndex(), numColumns, appState.getTimeStamp(), columns, seconds);
+        }
+    }
+
+    /**
+     * Brings the catalog up to date with the library directory and saves the index if anything changed. Archives
+     * are read in parallel, and only if they are new or their size or modification time changed.
+     *
+     * @return what the scan did.
+     * @throws IOException if the library cannot be listed or the index cannot be written.
+     */
+    public synchronized ScanResult rescan() throws IOException {
+        Map<String, BasicFileAttributes> found = list();
+        List<String> stale = new ArrayList<>();
+
+        for (Map.Entry<String, BasicFileAttributes> file : found.entrySet()) {
+            long size = file.getValue().size();
+            long lastModified = file.getValue().lastModifiedTime().toMillis();
+            SampleRecord record = records.get(file.getKey());
+            Failure failure = failures.get(file.getKey());
+
+            if (record != null && record.getSize() == size && record.getLastModified() == lastModified) {
+                continue;
+            }
+
+            if (failure != null && failure.size == size && failure.lastModified == lastModified) {
+                continue;
+            }
+
+            stale.add(file.getKey());
+        }
+
+        int removed = 0;
+
+        for (String file : new ArrayList<>(records.keySet())) {
+            if (!found.containsKey(file)) {
+                change(LogEntry.remove(file));
+                removed++;
+            }
+        }
+
+        for (String file : new ArrayList<>(failures.keySet())) {
+            if (!found.containsKey(file)) {
+                change(LogEntry.remove(file));
+            }
+        }
+
+        int failed = readAll(stale, found);
+        save();
+
+        return new ScanResult(found.size(), stale.size() - failed, failed, removed);
+    }
+
+    /**
+     * Adds or replaces the record for one archive, as when an archive has just been imported, and saves the change.
+     *
+     * @param record the record.
+     * @throws IOException if the change cannot be written.
+     */
+    public synchronized void put(SampleRecord record) throws IOException {
+        change(LogEntry.put(record));
+        save();
+    }
+
+    /**
+     * Adds or replaces the records for several archives and saves the changes in one write.
+     *
+     * @param records the records.
+     * @throws IOException if the changes cannot be written.
+     */
+    public synchronized void putAll(Collection<SampleRecord> records) throws IOException {
+        for (SampleRecord record : records) {
+            change(LogEntry.put(record));
+        }
+
+        save();
+    }
+
+    /**
+     * Removes the records and failures of the given archives, as when they have been deleted from the library, and
+     * saves the changes.
+     *
+     * @param files the paths of the archives relative to the library directory.
+     * @throws IOException if the changes cannot be written.
+     */
+    public synchronized void removeAll(Collection<String> files) throws IOException {
+        for (String file : files) {
+            if (records.containsKey(file) || failures.containsKey(file)) {
+                change(LogEntry.remove(file));
+            }
+        }
+
+        save();
+    }
+
+    /**
+     * Renames the records of archives that have been moved within the library, without reading them again, and saves
+     * the changes. Failures are renamed too.
+     *
+     * @param moved the new path of each moved archive, by its old path, both relative to the library directory.
+     * @throws IOException if the changes cannot be written.
+     */
+    public synchronized void rename(Map<String, String> moved) throws IOException {
+        for (Map.Entry<String, String> move : moved.entrySet()) {
+            SampleRecord record = records.get(move.getKey());
+            Failure failure = failures.get(move.getKey());
+
+            if (record == null && failure == null) {
+                continue;
+            }
+
+            change(LogEntry.remove(move.getKey()));
+
+            if (record != null) {
+                change(LogEntry.put(record.withFile(move.getValue())));
+            } else {
+                change(LogEntry.fail(new Failure(move.getValue(), failure.size, failure.lastModified,
+                        failure.message)));
+            }
+        }
+
+        save();
+    }
+
+    /**
+     * Returns the records, ordered by file.
+     *
+     * @return the records.
+     */
+    public synchronized List<SampleRecord> getRecords() {
+        return List.copyOf(records.values());
+    }
+
+    /**
+     * Returns a column-oriented snapshot of the records for fast queries. The snapshot is cached until the catalog
+     * changes.
+     *
+     * @return the table.
+     */
+    public synchronized SampleTable getTable() {
+        if (table == null) {
+            table = new SampleTable(records.values());
+        }
+
+        return table;
+    }
+
+    /**
+     * Returns the record for the given file, or null if there is none.
+     *
+     * @param file the path of the archive relative to the library directory.
+     * @return the record, or null.
+     */
+    public synchronized SampleRecord getRecord(String file) {
+        return records.get(file);
+    }
+
+    /**
+     * Returns why each archive that could not be read was rejected, by file.
+     *
+     * @return the errors.
+     */
+    public synchronized Map<String, String> getErrors() {
+        Map<String, String> errors = new TreeMap<>();
+        failures.forEach((file, failure) -> errors.put(file, failure.message));
+        return errors;
+    }
+
+    /**
+     * Returns the library directory.
+     *
+     * @return the library directory.
+     */
+    public Path getLibraryDir() {
+        return libraryDir;
+    }
+
+    /**
+     * Lists the archives in the library, with their attributes, skipping hidden files and directories.
+     *
+     * @return the attributes of each archive, by path relative to the library directory.
+     * @throws IOException if the library cannot be listed.
+     */
+    private Map<String, BasicFileAttributes> list() throws IOException {
+        Map<String, BasicFileAttributes> found = new HashMap<>();
+
+        Files.walkFileTree(libraryDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return !dir.equals(libraryDir) && isHidden(dir) ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !isHidden(file) && file.getFileName().toString().endsWith(".zip")) {
+                    found.put(relativeName(file), attrs);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                System.out.println("Skipping " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return found;
+    }
+
+    /**
+     * Reads the given archives in parallel, recording each as a record or a failure.
+     *
+     * @param files the archives, relative to the library directory.
+     * @param found the attributes of each archive.
+     * @return the number of archives that failed.
+     * @throws IOException if the scan is interrupted.
+     */
+    private int readAll(List<String> files, Map<String, BasicFileAttributes> found) throws IOException {
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(files.size(), Runtime.getRuntime().availableProcessors()), runnable -> {
+                    Thread thread = new Thread(runnable, "catalog-scan");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        try {
+            List<Future<SampleRecord>> futures = new ArrayList<>();
+
+            for (String file : files) {
+                futures.add(pool.submit(() -> read(libraryDir.resolve(file), file)));
+            }
+
+            int failed = 0;
+
+            for (int i = 0; i < files.size(); i++) {
+                String file = files.get(i);
+
+                try {
+                    change(LogEntry.put(futures.get(i).get()));
+                } catch (ExecutionException e) {
+                    BasicFileAttributes attributes = found.get(file);
+                    change(LogEntry.fail(new Failure(file, attributes.size(),
+                            attributes.lastModifiedTime().toMillis(), String.valueOf(e.getCause().getMessage()))));
+                    failed++;
+                }
+            }
+
+            return failed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning " + libraryDir);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies a change to the catalog and queues it to be written by the next {@link #save()}.
+     *
+     * @param entry the change.
+     */
+    private void change(LogEntry entry) {
+        entry.apply(records, failures);
+        pending.add(entry);
+        table = null;
+    }
+
+    /**
+     * Writes the changes made since the last save, by appending them to the log or, once the log has grown longer than
+     * the catalog, by compacting. Nothing is written if nothing changed.
+     *
+     * @throws IOException if the changes cannot be written.
+     */
+    private void save() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        int limit = Math.max(MIN_COMPACTION_LINES, records.size() + failures.size());
+
+        if (compactNext || logLines + pending.size() > limit) {
+            compact();
+            return;
+        }
+
+        try (Writer writer = Files.newBufferedWriter(libraryDir.resolve(LOG_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (LogEntry entry : pending) {
+                writer.write(GSON.toJson(entry));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+
+            // The log may now end in part of a line; rewrite the index next time rather than append after it.
+            compactNext = true;
+            throw e;
+        } finally {
+            logLines += pending.size();
+            pending.clear();
+        }
+    }
+
+    /**
+     * Replays the log over the records and failures read from the index. Replay stops at the first line that cannot be
+     * read, which can only be a line cut short by a crash, and the log is then marked for compaction.
+     */
+    private void replayLog() {
+        Path log = libraryDir.resolve(LOG_FILE);
+
+        if (!Files.exists(log)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                LogEntry entry = GSON.fromJson(line, LogEntry.class);
+
+                if (entry == null || !entry.isValid()) {
+                    throw new IOException("Bad line " + (logLines + 1) + ".");
+                }
+
+                entry.apply(records, failures);
+                logLines++;
+            }
+        } catch (Exception e) {
+            System.out.println("The catalog log for " + libraryDir + " is damaged after " + logLines
+                    + " changes; the rest is dropped. " + e.getMessage());
+            compactNext = true;
+        }
+    }
+
+    /**
+     * Writes the whole catalog to the index, through a temporary file renamed into place, and then deletes the log.
+     * Changes not yet saved are included.
+     *
+     * @throws IOException if the index cannot be written or the log deleted.
+     */
+    private void compact() throws IOException {
+        pending.clear();
+        compactNext = true;
+
+        IndexFile index = new IndexFile();
+        index.records = new ArrayList<>(records.values());
+        index.failures = new ArrayList<>(failures.values());
+        Path target = libraryDir.resolve(INDEX_FILE);
+        Path temp = libraryDir.resolve(INDEX_FILE + ".tmp");
+
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(index, writer);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        Files.deleteIfExists(libraryDir.resolve(LOG_FILE));
+        logLines = 0;
+        compactNext = false;
+    }
+
+    /**
+     * Returns the path of a file relative to the library directory, with '/' as the separator.
+     *
+     * @param file the file.
+     * @return the relative path.
+     */
+    private String relativeName(Path file) {
+        StringJoiner joiner = new StringJoiner("/");
+
+        for (Path part : libraryDir.relativize(file)) {
+            joiner.add(part.toString());
+        }
+
+        return joiner.toString();
+    }
+
+    /**
+     * Returns true if the file or directory is hidden, by the leading-dot convention.
+     *
+     * @param path the path.
+     * @return true if it is hidden.
+     */
+    private static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     * What a rescan did.
+     *
+     * @param archives the number of archives in the library.
+     * @param read     the number of archives read and recorded.
+     * @param failed   the number of archives read that could not be recorded.
+     * @param removed  the number of records dropped because their archive is gone.
+     */
+    public record ScanResult(int archives, int read, int failed, int removed) {
+    }
+
+    /**
+     * An archive that could not be read.
+     */
+    private static class Failure {
+
+        /**
+         * The path of the archive relative to the library directory.
+         */
+        private final String file;
+
+        /**
+         * The size of the archive in bytes when it was read.
+         */
+        private final long size;
+
+        /**
+         * The modification time of the archive in milliseconds when it was read.
+         */
+        private final long lastModified;
+
+        /**
+         * Why the archive could not be read.
+         */
+        private final String message;
+
+        /**
+         * Constructs a failure.
+         *
+         * @param file         the path of the archive relative to the library directory.
+         * @param size         the size of the archive in bytes.
+         * @param lastModified the modification time of the archive in milliseconds.
+         * @param message      why the archive could not be read.
+         */
+        Failure(String file, long size, long lastModified, String message) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.message = message;
+        }
+    }
+
+    /**
+     * One line of the log: a change to the catalog entry of one archive. Exactly one field is set.
+     */
+    private static class LogEntry {
+
+        /**
+         * A record to add or replace, replacing any failure for the same archive.
+         */
+        private SampleRecord put;
+
+        /**
+         * A failure to add or replace, replacing any record for the same archive.
+         */
+        private Failure fail;
+
+        /**
+         * The path of an archive whose record and failure are dropped.
+         */
+        private String remove;
+
+        /**
+         * Returns an entry that adds or replaces a record.
+         *
+         * @param record the record.
+         * @return the entry.
+         */
+        static LogEntry put(SampleRecord record) {
+            LogEntry entry = new LogEntry();
+            entry.put = record;
+            return entry;
+        }
+
+        /**
+         * Returns an entry that adds or replaces a failure.
+         *
+         * @param failure the failure.
+         * @return the entry.
+         */
+        static LogEntry fail(Failure failure) {
+            LogEntry entry = new LogEntry();
+            entry.fail = failure;
+            return entry;
+        }
+
+        /**
+         * Returns an entry that drops an archive.
+         *
+         * @param file the path of the archive relative to the library directory.
+         * @return the entry.
+         */
+        static LogEntry remove(String file) {
+            LogEntry entry = new LogEntry();
+            entry.remove = file;
+            return entry;
+        }
+
+        /**
+         * Returns true if exactly one change is set and it names an archive.
+         *
+         * @return true if the entry is valid.
+         */
+        boolean isValid() {
+            int set = (put != null ? 1 : 0) + (fail != null ? 1 : 0) + (remove != null ? 1 : 0);
+            return set == 1 && (put == null || put.getFile() != null) && (fail == null || fail.file != null);
+        }
+
+        /**
+         * Applies the change.
+         *
+         * @param records  the records, by file.
+         * @param failures the failures, by file.
+         */
+        void apply(Map<String, SampleRecord> records, Map<String, Failure> failures) {
+            if (put != null) {
+                records.put(put.getFile(), put);
+                failures.remove(put.getFile());
+            } else if (fail != null) {
+                failures.put(fail.file, fail);
+                records.remove(fail.file);
+            } else {
+                records.remove(remove);
+                failures.remove(remove);
+            }
+        }
+    }
+
+    /**
+     * The layout of the index file.
+     */
+    private static class IndexFile {
+
+        /**
+         * The version of the format.
+         */
+        private int version = VERSION;
+
+        /**
+         * The records.
+         */
+        private List<SampleRecord> records = new ArrayList<>();
+
+        /**
+         * The archives that could not be read.
+         */
+        private List<Failure> failures = new ArrayList<>();
+    }
+}
@@ -0,0 +1,243 @@
+package io.github.cmuphil.earthlinguistfx.catalog;
+
+import java.util.Arrays;
+
+/**
+ * The catalog's record of one saved sample archive: the metadata from its 'state.json' plus the columns it has clips
+ * for and how long each clip is. The file's size and modification time are kept so that the catalog can tell when the
+ * archive needs to be read again.
+ *
+ * @author josephramsey
+ */
+public final class SampleRecord {
+
+    /**
+     * The path of the archive, relative to the library directory, with '/' as the separator.
+     */
+    private final String file;
+
+    /**
+     * The size of the archive in bytes when it was read.
+     */
+    private final long size;
+
+    /**
+     * The modification time of the archive in milliseconds when it was read.
+     */
+    private final long lastModified;
+
+    /**
+     * The selected language.
+     */
+    private final String language;
+
+    /**
+     * The selected country.
+     */
+    private final String country;
+
+    /**
+     * The entered region.
+     */
+    private final String region;
+
+    /**
+     * The index of the example.
+     */
+    private final int exampleIndex;
+
+    /**
+     * The number of columns of the example.
+     */
+    private final int numColumns;
+
+    /**
+     * The time stamp of the state.
+     */
+    private final String timeStamp;
+
+    /**
+     * The columns that have clips, 0-based and in increasing order.
+     */
+    private final int[] recordedColumns;
+
+    /**
+     * The duration in seconds of the clip for each recorded column, parallel to recordedColumns.
+     */
+    private final double[] durations;
+
+    /**
+     * Constructs a record.
+     *
+     * @param file            the path of the archive relative to the library directory.
+     * @param size            the size of the archive in bytes.
+     * @param lastModified    the modification time of the archive in milliseconds.
+     * @param language        the selected language.
+     * @param country         the selected country.
+     * @param region          the entered region.
+     * @param exampleIndex    the index of the example.
+     * @param numColumns      the number of columns of the example.
+     * @param timeStamp       the time stamp of the state.
+     * @param recordedColumns the columns that have clips, 0-based and in increasing order.
+     * @param durations       the duration in seconds of each recorded column's clip.
+     */
+    public SampleRecord(String file, long size, long lastModified, String language, String country, String region,
+                        int exampleIndex, int numColumns, String timeStamp, int[] recordedColumns, double[] durations) {
+        if (recordedColumns.length != durations.length) {
+            throw new IllegalArgumentException("Expecting one duration per recorded column.");
+        }
+
+        this.file = file;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.language = language == null ? "" : language;
+        this.country = country == null ? "" : country;
+        this.region = region == null ? "" : region;
+        this.exampleIndex = exampleIndex;
+        this.numColumns = numColumns;
+        this.timeStamp = timeStamp == null ? "" : timeStamp;
+        this.recordedColumns = recordedColumns.clone();
+        this.durations = durations.clone();
+    }
+
+    /**
+     * Returns the path of the archive, relative to the library directory.
+     *
+     * @return the path.
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Returns a copy of this record for the same archive at another path, as when it has been moved.
+     *
+     * @param file the new path, relative to the library directory.
+     * @return the copy.
+     */
+    public SampleRecord withFile(String file) {
+        return new SampleRecord(file, size, lastModified, language, country, region, exampleIndex, numColumns,
+                timeStamp, recordedColumns, durations);
+    }
+
+    /**
+     * Returns the size of the archive in bytes when it was read.
+     *
+     * @return the size.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the modification time of the archive in milliseconds when it was read.
+     *
+     * @return the modification time.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns the selected language.
+     *
+     * @return the language.
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Returns the selected country.
+     *
+     * @return the country.
+     */
+    public String getCountry() {
+        return country;
+    }
+
+    /**
+     * Returns the entered region.
+     *
+     * @return the region.
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * Returns the index of the example.
+     *
+     * @return the example index.
+     */
+    public int getExampleIndex() {
+        return exampleIndex;
+    }
+
+    /**
+     * Returns the number of columns of the example.
+     *
+     * @return the number of columns.
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * Returns the time stamp of the state.
+     *
+     * @return the time stamp.
+     */
+    public String getTimeStamp() {
+        return timeStamp;
+    }
+
+    /**
+     * Returns the columns that have clips, 0-based and in increasing order.
+     *
+     * @return the recorded columns.
+     */
+    public int[] getRecordedColumns() {
+        return recordedColumns.clone();
+    }
+
+    /**
+     * Returns true if the given column has a clip.
+     *
+     * @param column the 0-based column.
+     * @return true if the column is recorded.
+     */
+    public boolean isRecorded(int column) {
+        return Arrays.binarySearch(recordedColumns, column) >= 0;
+    }
+
+    /**
+     * Returns the duration in seconds of the given column's clip, or 0 if the column is not recorded.
+     *
+     * @param column the 0-based column.
+     * @return the duration.
+     */
+    public double getDuration(int column) {
+        int i = Arrays.binarySearch(recordedColumns, column);
+        return i < 0 ? 0 : durations[i];
+    }
+
+    /**
+     * Returns the total duration in seconds of all the clips.
+     *
+     * @return the total duration.
+     */
+    public double getTotalDuration() {
+        return Arrays.stream(durations).sum();
+    }
+
+    /**
+     * Returns the string representation of the record.
+     *
+     * @return the string representation.
+     */
+    public String toString() {
+        return "SampleRecord: " + file + ", Example #" + exampleIndex + ", " + language + ", " + country + ", "
+                + region + ", columns " + Arrays.toString(recordedColumns) + ", " + timeStamp;
+    }
+}
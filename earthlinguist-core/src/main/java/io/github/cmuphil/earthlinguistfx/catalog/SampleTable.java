@@ -0,0 +1,386 @@
+package io.github.cmuphil.earthlinguistfx.catalog;
+
+import java.util.*;
+
+/**
+ * An immutable, column-oriented snapshot of sample metadata for fast queries. Language, country, region and example
+ * index are dictionary-encoded into int arrays, with a bitmap of the matching rows for every distinct value, and
+ * there is a bitmap of the rows that have each column recorded. A conjunctive query is then a few bitmap
+ * intersections, however many samples there are.
+ * <p>
+ * Example: all Yoruba samples of example 3 with column 2 recorded is
+ * {@code table.query().where(Field.LANGUAGE, "Yoruba").where(Field.EXAMPLE, "3").recorded(1).count()}, columns being
+ * 0-based.
+ *
+ * @author josephramsey
+ */
+public class SampleTable {
+
+    /**
+     * The rows.
+     */
+    private final SampleRecord[] rows;
+
+    /**
+     * The dictionary-encoded columns, by field.
+     */
+    private final EnumMap<Field, EncodedColumn> columns = new EnumMap<>(Field.class);
+
+    /**
+     * The rows that have each column recorded, by 0-based column.
+     */
+    private final BitSet[] recorded;
+
+    /**
+     * Builds a table over the given records.
+     *
+     * @param records the records.
+     */
+    public SampleTable(Collection<SampleRecord> records) {
+        this.rows = records.toArray(new SampleRecord[0]);
+
+        for (Field field : Field.values()) {
+            columns.put(field, new EncodedColumn(field, rows));
+        }
+
+        int maxColumns = 0;
+
+        for (SampleRecord row : rows) {
+            int[] recordedColumns = row.getRecordedColumns();
+
+            if (recordedColumns.length > 0) {
+                maxColumns = Math.max(maxColumns, recordedColumns[recordedColumns.length - 1] + 1);
+            }
+        }
+
+        this.recorded = new BitSet[maxColumns];
+
+        for (int c = 0; c < maxColumns; c++) {
+            recorded[c] = new BitSet(rows.length);
+        }
+
+        for (int r = 0; r < rows.length; r++) {
+            for (int c : rows[r].getRecordedColumns()) {
+                if (c >= 0) {
+                    recorded[c].set(r);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Returns the row at the given index.
+     *
+     * @param row the row index.
+     * @return the row.
+     */
+    public SampleRecord getRow(int row) {
+        return rows[row];
+    }
+
+    /**
+     * Returns the distinct values of the given field, in order of first appearance.
+     *
+     * @param field the field.
+     * @return the values.
+     */
+    public List<String> getValues(Field field) {
+        return Collections.unmodifiableList(columns.get(field).dictionary);
+    }
+
+    /**
+     * Starts a query matching every row.
+     *
+     * @return the query.
+     */
+    public Query query() {
+        BitSet all = new BitSet(rows.length);
+        all.set(0, rows.length);
+        return new Query(all);
+    }
+
+    /**
+     * The fields that are dictionary-encoded and indexed.
+     */
+    public enum Field {
+
+        /**
+         * The selected language.
+         */
+        LANGUAGE,
+
+        /**
+         * The selected country.
+         */
+        COUNTRY,
+
+        /**
+         * The entered region.
+         */
+        REGION,
+
+        /**
+         * The example index, as a string.
+         */
+        EXAMPLE;
+
+        /**
+         * Returns this field's value for the given record.
+         *
+         * @param record the record.
+         * @return the value.
+         */
+        String valueOf(SampleRecord record) {
+            return switch (this) {
+                case LANGUAGE -> record.getLanguage();
+                case COUNTRY -> record.getCountry();
+                case REGION -> record.getRegion();
+                case EXAMPLE -> String.valueOf(record.getExampleIndex());
+            };
+        }
+    }
+
+    /**
+     * A dictionary-encoded column with a bitmap index.
+     */
+    private static class EncodedColumn {
+
+        /**
+         * The distinct values, by code.
+         */
+        private final List<String> dictionary = new ArrayList<>();
+
+        /**
+         * The code of each distinct value.
+         */
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        /**
+         * The code of each row's value.
+         */
+        private final int[] values;
+
+        /**
+         * The rows with each value, by code.
+         */
+        private final List<BitSet> index = new ArrayList<>();
+
+        /**
+         * Encodes the given field of the given rows.
+         *
+         * @param field the field.
+         * @param rows  the rows.
+         */
+        EncodedColumn(Field field, SampleRecord[] rows) {
+            values = new int[rows.length];
+
+            for (int r = 0; r < rows.length; r++) {
+                String value = field.valueOf(rows[r]);
+                Integer code = codes.get(value);
+
+                if (code == null) {
+                    code = dictionary.size();
+                    codes.put(value, code);
+                    dictionary.add(value);
+                    index.add(new BitSet(rows.length));
+                }
+
+                values[r] = code;
+                index.get(code).set(r);
+            }
+        }
+    }
+
+    /**
+     * A conjunction of filters over the table. Each filter narrows the query in place and returns it, so filters can
+     * be chained.
+     */
+    public class Query {
+
+        /**
+         * The rows that match so far.
+         */
+        private final BitSet matches;
+
+        /**
+         * Constructs a query over the given rows.
+         *
+         * @param matches the rows.
+         */
+        private Query(BitSet matches) {
+            this.matches = matches;
+        }
+
+        /**
+         * Keeps the rows whose field has any of the given values.
+         *
+         * @param field  the field.
+         * @param values the values.
+         * @return this query.
+         */
+        public Query where(Field field, String... values) {
+            EncodedColumn column = columns.get(field);
+
+            if (values.length == 1) {
+                Integer code = column.codes.get(values[0]);
+
+                if (code == null) {
+                    matches.clear();
+                } else {
+                    matches.and(column.index.get(code));
+                }
+
+                return this;
+            }
+
+            BitSet any = new BitSet(rows.length);
+
+            for (String value : values) {
+                Integer code = column.codes.get(value);
+
+                if (code != null) {
+                    any.or(column.index.get(code));
+                }
+            }
+
+            matches.and(any);
+            return this;
+        }
+
+        /**
+         * Keeps the rows that have all the given columns recorded.
+         *
+         * @param columns the 0-based columns.
+         * @return this query.
+         */
+        public Query recorded(int... columns) {
+            for (int column : columns) {
+                if (column < 0 || column >= recorded.length) {
+                    matches.clear();
+                } else {
+                    matches.and(recorded[column]);
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Keeps the rows that do not have the given column recorded.
+         *
+         * @param column the 0-based column.
+         * @return this query.
+         */
+        public Query notRecorded(int column) {
+            if (column >= 0 && column < recorded.length) {
+                matches.andNot(recorded[column]);
+            }
+
+            return this;
+        }
+
+        /**
+         * Returns the number of matching rows.
+         *
+         * @return the count.
+         */
+        public int count() {
+            return matches.cardinality();
+        }
+
+        /**
+         * Returns the indices of the matching rows, in increasing order.
+         *
+         * @return the row indices.
+         */
+        public int[] rowIndices() {
+            return matches.stream().toArray();
+        }
+
+        /**
+         * Returns the matching rows.
+         *
+         * @return the rows.
+         */
+        public List<SampleRecord> rows() {
+            List<SampleRecord> result = new ArrayList<>(matches.cardinality());
+            matches.stream().forEach(r -> result.add(SampleTable.this.rows[r]));
+            return result;
+        }
+
+        /**
+         * Counts the matching rows by the value of the given field.
+         *
+         * @param field the field.
+         * @return the count for each value that occurs, from most to least frequent.
+         */
+        public Map<String, Integer> groupBy(Field field) {
+            EncodedColumn column = columns.get(field);
+            int[] counts = new int[column.dictionary.size()];
+            matches.stream().forEach(r -> counts[column.values[r]]++);
+            Integer[] order = new Integer[counts.length];
+
+            for (int code = 0; code < order.length; code++) {
+                order[code] = code;
+            }
+
+            Arrays.sort(order, (a, b) -> Integer.compare(counts[b], counts[a]));
+            Map<String, Integer> groups = new LinkedHashMap<>();
+
+            for (int code : order) {
+                if (counts[code] > 0) {
+                    groups.put(column.dictionary.get(code), counts[code]);
+                }
+            }
+
+            return groups;
+        }
+
+        /**
+         * Returns a uniform random sample of the matching rows, by reservoir sampling in one pass.
+         *
+         * @param k      the sample size; all matching rows are returned if there are fewer.
+         * @param random the source of randomness.
+         * @return the sampled rows, in no particular order.
+         */
+        public List<SampleRecord> sample(int k, Random random) {
+            if (k < 0) {
+                throw new IllegalArgumentException("The sample size must be >= 0: " + k);
+            }
+
+            int[] reservoir = new int[k];
+            int seen = 0;
+
+            for (int r = matches.nextSetBit(0); r >= 0; r = matches.nextSetBit(r + 1)) {
+                if (seen < k) {
+                    reservoir[seen] = r;
+                } else {
+                    int j = random.nextInt(seen + 1);
+
+                    if (j < k) {
+                        reservoir[j] = r;
+                    }
+                }
+
+                seen++;
+            }
+
+            List<SampleRecord> sample = new ArrayList<>(Math.min(k, seen));
+
+            for (int i = 0; i < Math.min(k, seen); i++) {
+                sample.add(SampleTable.this.rows[reservoir[i]]);
+            }
+
+            return sample;
+        }
+    }
+}
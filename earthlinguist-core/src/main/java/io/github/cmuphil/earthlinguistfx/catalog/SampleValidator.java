@@ -0,0 +1,113 @@
+package io.github.cmuphil.earthlinguistfx.catalog;
+
+import io.github.cmuphil.earthlinguistfx.audio.WavValidator;
+import io.github.cmuphil.earthlinguistfx.examples.Examples;
+import io.github.cmuphil.earthlinguistfx.state.AppState;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a directory holds a valid sample: a 'state.json' plus one valid 'clip.N.wav' per recorded column of the
+ * sample's example, and nothing else. This has no user interface, so it can be used by headless tools as well as by
+ * the application.
+ *
+ * @author josephramsey
+ */
+public class SampleValidator {
+
+    /**
+     * Prevents instantiation.
+     */
+    private SampleValidator() {
+    }
+
+    /**
+     * Validates the contents of a sample directory. The clips' RIFF/WAVE headers are checked in parallel, without
+     * reading any audio data.
+     *
+     * @param toDirectory the directory.
+     * @return the app state read from the directory's 'state.json'.
+     * @throws IOException              if the directory cannot be read.
+     * @throws IllegalArgumentException if the directory is not a valid sample; the message says why.
+     */
+    public static AppState checkClipsDirectory(String toDirectory) throws IOException {
+        if (!new File(toDirectory, "state.json").exists()) {
+            throw new IllegalArgumentException("I was expecting a state.json file plus a number of clip.wav files.");
+        }
+
+        File[] files = new File(toDirectory).listFiles();
+
+        if (files == null) {
+            throw new IllegalArgumentException("The directory does not exist: " + toDirectory);
+        }
+
+        // Check that the app state can be parsed.
+        AppState appState;
+
+        try {
+            appState = AppState.fromJson(toDirectory);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not parse app state: " + e.getMessage());
+        }
+
+        List<File> clips = new ArrayList<>();
+
+        for (File _file : files) {
+            if (_file.isDirectory()) {
+                throw new IllegalArgumentException("The directory contains subdirectories.");
+            }
+
+            if (_file.getName().startsWith(".")) {
+                throw new IllegalArgumentException("The directory contains hidden files.");
+            }
+
+            if (_file.getName().equals("state.json")) {
+                continue;
+            }
+
+            // Any other file should be a clip.
+            int clipNumber = getClipNumber(_file);
+            int example = appState.getSelectedIndex();
+            int numColumns = Examples.getInstance().getExampleSet(appState.getSelectedExampleSet())
+                    .getExample(example).getNumColumns();
+
+            // It should be for a column in the given example.
+            if (!(clipNumber >= 1 && clipNumber <= numColumns)) {
+                throw new IllegalArgumentException("The directory contains a clip that is not for a column in the given example, clip." + clipNumber + ".wav");
+            }
+
+            clips.add(_file);
+        }
+
+        // Each clip should be a valid audio file. Only the headers are read, and the clips are checked in parallel.
+        for (WavValidator.Report report : WavValidator.validateAll(clips)) {
+            if (!report.valid()) {
+                throw new IllegalArgumentException("The directory contains a clip that is not a valid audio clip: "
+                        + report.name() + " " + report.message() + ".");
+            }
+        }
+
+        return appState;
+    }
+
+    /**
+     * Returns the clip number of a file named 'clip.N.wav'.
+     *
+     * @param _file the file.
+     * @return the clip number, N.
+     * @throws IllegalArgumentException if the file is not named like a clip.
+     */
+    private static int getClipNumber(File _file) {
+        String name = _file.getName();
+        String[] tokens = name.split("\\.");
+
+        if (tokens.length != 3 || !tokens[0].equals("clip") || !tokens[2].equals("wav") || !tokens[1].matches("\\d+") || Integer.parseInt(tokens[1]) < 1) {
+            throw new IllegalArgumentException("The directory contains a clip that is not for a column in the given example, " + _file.getName());
+        }
+
+        return Integer.parseInt(tokens[1]);
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.cmuphil.earthlinguistfx.catalog;
+
+import io.github.cmuphil.earthlinguistfx.utils.Constants;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Where archives go in a library directory: under two levels of directories named by the first four hex digits of the
+ * SHA-256 of the archive's file name, as in 'ab/cd/example_1_yoruba_nigeria.1.zip'. A library of millions of archives
+ * then has 65,536 leaf directories of a few dozen archives each rather than one enormous directory, and an archive's
+ * path follows from its name alone, so looking one up never lists a directory.
+ * <p>
+ * Libraries written before the layout existed keep their archives at the top level; {@link #migrate()} moves them
+ * into their shards and renames their catalog records, so that nothing has to be read again. Run this class from the
+ * command line to migrate a library by hand.
+ *
+ * @author josephramsey
+ */
+public class ShardedLayout {
+
+    /**
+     * The number of hex digits naming each level of shard directories.
+     */
+    private static final int DIGITS = 2;
+
+    /**
+     * The library directory.
+     */
+    private final Path libraryDir;
+
+    /**
+     * Constructs the layout of the given library directory.
+     *
+     * @param libraryDir the library directory.
+     */
+    public ShardedLayout(Path libraryDir) {
+        this.libraryDir = libraryDir;
+    }
+
+    /**
+     * Migrates a flat library directory from the command line. The argument is the library directory, which defaults
+     * to {@link Constants#LIBRARY_DIRECTORY}.
+     *
+     * @param args the arguments.
+     * @throws IOException if the library cannot be migrated.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 1) {
+            System.out.println("Usage: ShardedLayout [<library directory>]");
+            System.exit(1);
+        }
+
+        Path library = Path.of(args.length > 0 ? args[0] : Constants.LIBRARY_DIRECTORY);
+        Migration migration = new ShardedLayout(library).migrate();
+        System.out.println("Moved " + migration.moved() + " archive(s) into shards in " + library + "; "
+                + migration.skipped() + " left where they were because an archive of the same name is already in "
+                + "its shard.");
+    }
+
+    /**
+     * Returns the library directory.
+     *
+     * @return the library directory.
+     */
+    public Path getLibraryDir() {
+        return libraryDir;
+    }
+
+    /**
+     * Returns the shard an archive belongs in, relative to the library directory, such as 'ab/cd'.
+     *
+     * @param name the archive's file name.
+     * @return the shard.
+     */
+    public static String shardOf(String name) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(name.getBytes(StandardCharsets.UTF_8));
+            String hex = HexFormat.of().formatHex(digest, 0, DIGITS);
+            return hex.substring(0, DIGITS) + "/" + hex.substring(DIGITS);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the path of an archive relative to the library directory, with '/' as the separator, as the catalog
+     * records it.
+     *
+     * @param name the archive's file name.
+     * @return the relative path.
+     * @throws IllegalArgumentException if the name is not a plain file name.
+     */
+    public static String relativeName(String name) {
+        checkName(name);
+        return shardOf(name) + "/" + name;
+    }
+
+    /**
+     * Returns the path of an archive. The archive need not exist.
+     *
+     * @param name the archive's file name.
+     * @return the path.
+     * @throws IllegalArgumentException if the name is not a plain file name.
+     */
+    public Path resolve(String name) {
+        return libraryDir.resolve(relativeName(name));
+    }
+
+    /**
+     * Returns the path of an archive, creating its shard directories if need be, so that it can be written.
+     *
+     * @param name the archive's file name.
+     * @return the path.
+     * @throws IOException if the shard directories cannot be created.
+     */
+    public Path prepare(String name) throws IOException {
+        Path path = resolve(name);
+        Files.createDirectories(path.getParent());
+        return path;
+    }
+
+    /**
+     * Returns true if there is an archive of the given name in its shard.
+     *
+     * @param name the archive's file name.
+     * @return true if it exists.
+     */
+    public boolean exists(String name) {
+        return Files.exists(resolve(name));
+    }
+
+    /**
+     * Moves the archives at the top level of the library directory into their shards and renames their catalog
+     * records to match. Each move is atomic, and an archive whose shard already has one of the same name is left
+     * where it is. The archives keep their modification times, so a later rescan of the catalog does not read them.
+     *
+     * @return what was moved.
+     * @throws IOException if the library cannot be listed, an archive cannot be moved or the catalog cannot be
+     *                     written.
+     */
+    public Migration migrate() throws IOException {
+        List<Path> flat;
+
+        try (Stream<Path> list = Files.list(libraryDir)) {
+            flat = list.filter(path -> {
+                String name = path.getFileName().toString();
+                return !name.startsWith(".") && name.endsWith(".zip") && Files.isRegularFile(path);
+            }).toList();
+        }
+
+        if (flat.isEmpty()) {
+            return new Migration(0, 0);
+        }
+
+        Map<String, String> renamed = new LinkedHashMap<>();
+        int skipped = 0;
+
+        for (Path path : flat) {
+            String name = path.getFileName().toString();
+            Path target = prepare(name);
+
+            if (Files.exists(target)) {
+                skipped++;
+                continue;
+            }
+
+            try {
+                Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(path, target);
+            }
+
+            renamed.put(name, relativeName(name));
+        }
+
+        SampleCatalog.open(libraryDir).rename(renamed);
+        return new Migration(renamed.size(), skipped);
+    }
+
+    /**
+     * Checks that a name is a plain file name that cannot escape its shard.
+     *
+     * @param name the name.
+     * @throws IllegalArgumentException if it is not.
+     */
+    private static void checkName(String name) {
+        if (name.isEmpty() || name.startsWith(".") || name.contains("/") || name.contains("\\")) {
+            throw new IllegalArgumentException("Not a plain archive name: " + name);
+        }
+    }
+
+    /**
+     * What a migration did.
+     *
+     * @param moved   the number of archives moved into their shards.
+     * @param skipped the number of archives left at the top level because their shard has one of the same name.
+     */
+    public record Migration(int moved, int skipped) {
+    }
+}
@@ -1,5 +1,7 @@
 package io.github.cmuphil.earthlinguistfx.data;
 
+import java.util.Objects;
+
 /**
  * Rrepresents a row in a TableData object containing a picture and a number of checkmarks.
  *
@@ -19,10 +21,20 @@ public class CheckboxRow implements TableRow {
 
     /**
      * The checkmarks in the row, where checkmerks[i] == true iff the ith checkmark is checked.
-     * The length of the array is numCheckmarkColumns.
+     * The length of the array is numCheckmarkColumns. Null if the row reads its checkmarks from a matrix.
      */
     private final boolean[] checkmarks;
 
+    /**
+     * The matrix the row reads its checkmarks from, or null if they are in the array.
+     */
+    private final CheckmarkMatrix matrix;
+
+    /**
+     * The index of the row in the matrix.
+     */
+    private final int matrixRow;
+
     /**
      * Constructs a TableRow object.
      *
@@ -46,7 +58,33 @@ public class CheckboxRow implements TableRow {
 
         this.imagePath = imagePath;
         this.numCheckmarkColumns = numCheckmarks;
-        this.checkmarks = checkmarks;
+        this.checkmarks = checkmarks.clone();
+        this.matrix = null;
+        this.matrixRow = -1;
+    }
+
+    /**
+     * Constructs a row that reads its checkmarks from a row of a matrix, which must not be changed afterwards.
+     *
+     * @param imagePath the path to the image file.
+     * @param matrix    the matrix.
+     * @param row       the index of the row in the matrix.
+     */
+    CheckboxRow(String imagePath, CheckmarkMatrix matrix, int row) {
+        if (imagePath == null) {
+            throw new IllegalArgumentException("Image path cannot be null.");
+        }
+
+        if (matrix.getNumColumns() < 1) {
+            throw new IllegalArgumentException("Number of checkmarks must be at least 1.");
+        }
+
+        Objects.checkIndex(row, matrix.getNumRows());
+        this.imagePath = imagePath;
+        this.numCheckmarkColumns = matrix.getNumColumns();
+        this.checkmarks = null;
+        this.matrix = matrix;
+        this.matrixRow = row;
     }
 
     /**
@@ -67,6 +105,16 @@ public class CheckboxRow implements TableRow {
         return numCheckmarkColumns;
     }
 
+    /**
+     * Returns true if the checkmark at the specified index is checked.
+     *
+     * @param columnIndex the column index.
+     * @return true if it is checked.
+     */
+    public boolean isChecked(int columnIndex) {
+        return matrix != null ? matrix.isChecked(matrixRow, columnIndex) : checkmarks[columnIndex];
+    }
+
     /**
      * Returns the image for the checkmark at the specified index, either a checkmark image or a blank image.
      *
@@ -74,7 +122,7 @@ public class CheckboxRow implements TableRow {
      * @return the image for the checkmark at the specified index, either a checkmark image or a blank image.
      */
     public String getImage(int colummIndex) {
-        return checkmarks[colummIndex]
+        return isChecked(colummIndex)
                 ? "/images/ui/checkmark.png"
                 : "/images/ui/blank.png";
     }
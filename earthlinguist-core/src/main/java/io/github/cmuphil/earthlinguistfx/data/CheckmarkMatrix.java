@@ -0,0 +1,533 @@
+package io.github.cmuphil.earthlinguistfx.data;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The checkmarks of a table as bits, packed 64 to a long, kept both row-major and column-major so that a row or a
+ * column can be read a word at a time. The rows checked in a column, how many there are, and whether two columns are
+ * checked in the same rows are then answered without looking at each cell, which matters for the very large synthetic
+ * tables we generate and analyse.
+ * <p>
+ * The matrix can be written in a compact binary form, kept as '{@value #FILE_NAME}' beside checkmarks.txt, which
+ * holds the row-major words. Run this class from the command line to convert checkmarks.txt files to it.
+ *
+ * @author josephramsey
+ */
+public class CheckmarkMatrix {
+
+    /**
+     * The name of the binary form of a matrix, beside checkmarks.txt.
+     */
+    public static final String FILE_NAME = "checkmarks.bin";
+
+    /**
+     * The magic number at the start of the binary form, 'ELCM'.
+     */
+    private static final int MAGIC = 0x454c434d;
+
+    /**
+     * The version of the binary form.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The number of bytes in the header of the binary form.
+     */
+    private static final int HEADER_BYTES = 16;
+
+    /**
+     * The number of rows.
+     */
+    private final int numRows;
+
+    /**
+     * The number of columns.
+     */
+    private final int numColumns;
+
+    /**
+     * The number of words in each row of the row-major words.
+     */
+    private final int rowStride;
+
+    /**
+     * The number of words in each column of the column-major words.
+     */
+    private final int columnStride;
+
+    /**
+     * The bits row by row; bit c of row r is bit (c % 64) of word r * rowStride + c / 64.
+     */
+    private final long[] rowWords;
+
+    /**
+     * The bits column by column; bit r of column c is bit (r % 64) of word c * columnStride + r / 64.
+     */
+    private final long[] columnWords;
+
+    /**
+     * Constructs a matrix with nothing checked.
+     *
+     * @param numRows    the number of rows.
+     * @param numColumns the number of columns.
+     * @throws IllegalArgumentException if either is negative.
+     */
+    public CheckmarkMatrix(int numRows, int numColumns) {
+        if (numRows < 0 || numColumns < 0) {
+            throw new IllegalArgumentException("A matrix cannot have " + numRows + " rows and " + numColumns
+                                               + " columns.");
+        }
+
+        this.numRows = numRows;
+        this.numColumns = numColumns;
+        this.rowStride = words(numColumns);
+        this.columnStride = words(numRows);
+        this.rowWords = new long[Math.multiplyExact(numRows, rowStride)];
+        this.columnWords = new long[Math.multiplyExact(numColumns, columnStride)];
+    }
+
+    /**
+     * Converts checkmarks.txt files to the binary form from the command line, writing each beside its text file
+     * through a temporary file renamed into place.
+     *
+     * @param args the checkmarks.txt files.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: CheckmarkMatrix <checkmarks.txt>...");
+            System.exit(1);
+        }
+
+        for (String arg : args) {
+            Path text = Path.of(arg);
+            CheckmarkMatrix matrix = parse(Files.readAllLines(text, StandardCharsets.UTF_8));
+            Path binary = text.resolveSibling(FILE_NAME);
+            Path temp = Files.createTempFile(binary.toAbsolutePath().getParent(), ".checkmarks", ".tmp");
+
+            try {
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    matrix.write(out);
+                }
+
+                try {
+                    Files.move(temp, binary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, binary, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            System.out.println("Wrote " + matrix.numRows + " x " + matrix.numColumns + " checkmarks to " + binary);
+        }
+    }
+
+    /**
+     * Parses the lines of a checkmarks.txt file, one row of 0s and 1s per line. Blank lines are skipped.
+     *
+     * @param lines the lines.
+     * @return the matrix.
+     * @throws IllegalArgumentException if the lines are not all the same length or hold anything but 0s and 1s.
+     */
+    public static CheckmarkMatrix parse(List<String> lines) {
+        List<String> rows = new ArrayList<>();
+
+        for (String line : lines) {
+            if (!line.isBlank()) {
+                rows.add(line.trim());
+            }
+        }
+
+        int numColumns = rows.isEmpty() ? 0 : rows.get(0).length();
+        CheckmarkMatrix matrix = new CheckmarkMatrix(rows.size(), numColumns);
+
+        for (int r = 0; r < rows.size(); r++) {
+            String row = rows.get(r);
+
+            if (row.length() != numColumns) {
+                throw new IllegalArgumentException("Invalid checkmarks.txt: all lines must have the same number of "
+                                                   + "columns.");
+            }
+
+            for (int c = 0; c < numColumns; c++) {
+                char ch = row.charAt(c);
+
+                if (ch != '0' && ch != '1') {
+                    throw new IllegalArgumentException("Invalid checkmarks.txt: all characters must be 0 or 1.");
+                }
+
+                if (ch == '1') {
+                    matrix.rowWords[r * matrix.rowStride + (c >>> 6)] |= 1L << c;
+                }
+            }
+        }
+
+        matrix.deriveColumnWords();
+        return matrix;
+    }
+
+    /**
+     * Reads a matrix in the binary form. The dimensions in the header are checked against the size before anything
+     * is allocated, so a corrupt or hostile file is rejected rather than exhausting memory.
+     *
+     * @param in   the stream; it is not closed.
+     * @param size the number of bytes of the binary form in the stream, as recorded by the stream's source.
+     * @return the matrix.
+     * @throws IOException if it cannot be read, is not a matrix in the binary form or does not take the given size.
+     */
+    public static CheckmarkMatrix read(InputStream in, long size) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a checkmark matrix of version " + VERSION + ".");
+        }
+
+        int numRows = data.readInt();
+        int numColumns = data.readInt();
+
+        if (numRows < 0 || numColumns < 0) {
+            throw new IOException("Bad checkmark matrix dimensions: " + numRows + " x " + numColumns);
+        }
+
+        long numRowWords = (long) numRows * words(numColumns);
+        long numColumnWords = (long) numColumns * words(numRows);
+
+        if (HEADER_BYTES + numRowWords * Long.BYTES != size) {
+            throw new IOException("A " + numRows + " x " + numColumns + " checkmark matrix does not take " + size
+                                  + " bytes.");
+        }
+
+        if (numRowWords > Integer.MAX_VALUE - 8 || numColumnWords > Integer.MAX_VALUE - 8) {
+            throw new IOException("A " + numRows + " x " + numColumns + " checkmark matrix is too large.");
+        }
+
+        CheckmarkMatrix matrix = new CheckmarkMatrix(numRows, numColumns);
+        long tail = tailMask(numColumns);
+
+        for (int i = 0; i < matrix.rowWords.length; i++) {
+            matrix.rowWords[i] = data.readLong();
+        }
+
+        for (int r = 0; r < numRows && matrix.rowStride > 0; r++) {
+            if ((matrix.rowWords[(r + 1) * matrix.rowStride - 1] & ~tail) != 0) {
+                throw new IOException("Bits set past the last column in row " + (r + 1) + ".");
+            }
+        }
+
+        matrix.deriveColumnWords();
+        return matrix;
+    }
+
+    /**
+     * Writes the matrix in the binary form: a header of magic number, version, rows and columns, and then the
+     * row-major words, all big-endian.
+     *
+     * @param out the stream; it is not closed.
+     * @throws IOException if it cannot be written.
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(numRows);
+        data.writeInt(numColumns);
+
+        for (long word : rowWords) {
+            data.writeLong(word);
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns.
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * Returns true if a cell is checked.
+     *
+     * @param row    the row index.
+     * @param column the column index.
+     * @return true if it is checked.
+     */
+    public boolean isChecked(int row, int column) {
+        check(row, column);
+        return (rowWords[row * rowStride + (column >>> 6)] & (1L << column)) != 0;
+    }
+
+    /**
+     * Checks or unchecks a cell. This is package-private, since a matrix is shared by its table and rows once built,
+     * and must not change after that.
+     *
+     * @param row     the row index.
+     * @param column  the column index.
+     * @param checked whether it is checked.
+     */
+    void set(int row, int column, boolean checked) {
+        check(row, column);
+        int rowWord = row * rowStride + (column >>> 6);
+        int columnWord = column * columnStride + (row >>> 6);
+
+        if (checked) {
+            rowWords[rowWord] |= 1L << column;
+            columnWords[columnWord] |= 1L << row;
+        } else {
+            rowWords[rowWord] &= ~(1L << column);
+            columnWords[columnWord] &= ~(1L << row);
+        }
+    }
+
+    /**
+     * Returns the rows checked in a column.
+     *
+     * @param column the column index.
+     * @return the row indices, as a new set.
+     */
+    public BitSet getCheckedRows(int column) {
+        checkColumn(column);
+        return BitSet.valueOf(Arrays.copyOfRange(columnWords, column * columnStride, (column + 1) * columnStride));
+    }
+
+    /**
+     * Returns the columns checked in a row.
+     *
+     * @param row the row index.
+     * @return the column indices, as a new set.
+     */
+    public BitSet getCheckedColumns(int row) {
+        checkRow(row);
+        return BitSet.valueOf(Arrays.copyOfRange(rowWords, row * rowStride, (row + 1) * rowStride));
+    }
+
+    /**
+     * Returns the words of a column, in which bit r % 64 of word r / 64 is set if row r is checked. Columns of
+     * matrices with the same number of rows can be compared word for word.
+     *
+     * @param column the column index.
+     * @return the words, as a new array.
+     */
+    public long[] getColumnWords(int column) {
+        checkColumn(column);
+        return Arrays.copyOfRange(columnWords, column * columnStride, (column + 1) * columnStride);
+    }
+
+    /**
+     * Returns the number of rows checked in a column.
+     *
+     * @param column the column index.
+     * @return the number checked.
+     */
+    public int countCheckedRows(int column) {
+        checkColumn(column);
+        return popCount(columnWords, column * columnStride, columnStride);
+    }
+
+    /**
+     * Returns the number of columns checked in a row.
+     *
+     * @param row the row index.
+     * @return the number checked.
+     */
+    public int countCheckedColumns(int row) {
+        checkRow(row);
+        return popCount(rowWords, row * rowStride, rowStride);
+    }
+
+    /**
+     * Returns the number of checked cells.
+     *
+     * @return the number checked.
+     */
+    public int countChecked() {
+        return popCount(rowWords, 0, rowWords.length);
+    }
+
+    /**
+     * Returns true if two columns are checked in exactly the same rows.
+     *
+     * @param column1 the index of the first column.
+     * @param column2 the index of the second column.
+     * @return true if they are equivalent.
+     */
+    public boolean columnsEqual(int column1, int column2) {
+        return columnEquals(column1, this, column2);
+    }
+
+    /**
+     * Returns true if a column is checked in exactly the same rows as a column of another matrix with the same
+     * number of rows.
+     *
+     * @param column      the index of the column in this matrix.
+     * @param other       the other matrix.
+     * @param otherColumn the index of the column in the other matrix.
+     * @return true if they are equivalent; false if the matrices have different numbers of rows.
+     */
+    public boolean columnEquals(int column, CheckmarkMatrix other, int otherColumn) {
+        checkColumn(column);
+        other.checkColumn(otherColumn);
+
+        if (numRows != other.numRows) {
+            return false;
+        }
+
+        return Arrays.equals(columnWords, column * columnStride, (column + 1) * columnStride,
+                other.columnWords, otherColumn * columnStride, (otherColumn + 1) * columnStride);
+    }
+
+    /**
+     * Returns true if the other object is a matrix of the same size with the same cells checked.
+     *
+     * @param o the other object.
+     * @return true if they are equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CheckmarkMatrix other && numRows == other.numRows && numColumns == other.numColumns
+               && Arrays.equals(rowWords, other.rowWords);
+    }
+
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}.
+     *
+     * @return the hash code.
+     */
+    @Override
+    public int hashCode() {
+        return 31 * (31 * numRows + numColumns) + Arrays.hashCode(rowWords);
+    }
+
+    /**
+     * Returns the matrix as the lines of a checkmarks.txt file.
+     *
+     * @return the lines, joined by newlines.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(numRows * (numColumns + 1));
+
+        for (int r = 0; r < numRows; r++) {
+            for (int c = 0; c < numColumns; c++) {
+                builder.append(isChecked(r, c) ? '1' : '0');
+            }
+
+            builder.append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Sets the column-major words from the row-major words, which must be the only bits set so far.
+     */
+    private void deriveColumnWords() {
+        for (int r = 0; r < numRows; r++) {
+            int rowWord = r >>> 6;
+            long rowBit = 1L << r;
+
+            for (int w = 0; w < rowStride; w++) {
+                long word = rowWords[r * rowStride + w];
+
+                while (word != 0) {
+                    int column = (w << 6) + Long.numberOfTrailingZeros(word);
+                    columnWords[column * columnStride + rowWord] |= rowBit;
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of words needed for the given number of bits.
+     *
+     * @param bits the number of bits.
+     * @return the number of words.
+     */
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * Returns the mask of the bits of the last word of a row of the given number of bits that are in the row.
+     *
+     * @param bits the number of bits in the row.
+     * @return the mask.
+     */
+    private static long tailMask(int bits) {
+        return bits % 64 == 0 ? -1L : (1L << (bits % 64)) - 1;
+    }
+
+    /**
+     * Returns the number of bits set in a range of words.
+     *
+     * @param words  the words.
+     * @param from   the index of the first word.
+     * @param length the number of words.
+     * @return the number of bits set.
+     */
+    private static int popCount(long[] words, int from, int length) {
+        int count = 0;
+
+        for (int i = from; i < from + length; i++) {
+            count += Long.bitCount(words[i]);
+        }
+
+        return count;
+    }
+
+    /**
+     * Checks that a cell is in the matrix.
+     *
+     * @param row    the row index.
+     * @param column the column index.
+     * @throws IndexOutOfBoundsException if it is not.
+     */
+    private void check(int row, int column) {
+        checkRow(row);
+        checkColumn(column);
+    }
+
+    /**
+     * Checks that a row is in the matrix.
+     *
+     * @param row the row index.
+     * @throws IndexOutOfBoundsException if it is not.
+     */
+    private void checkRow(int row) {
+        Objects.checkIndex(row, numRows);
+    }
+
+    /**
+     * Checks that a column is in the matrix.
+     *
+     * @param column the column index.
+     * @throws IndexOutOfBoundsException if it is not.
+     */
+    private void checkColumn(int column) {
+        Objects.checkIndex(column, numColumns);
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.cmuphil.earthlinguistfx.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a table of images and checkmarks. A table never changes once it is made, so it can be read from any
+ * thread without locking. The checkmarks are also available as a bit-packed {@link CheckmarkMatrix}, for questions
+ * about whole columns; a table made from a matrix reads its rows' checkmarks from it, and a table made from rows
+ * builds it when first asked for.
+ *
+ * @author josephramsey
+ */
+public class TableData {
+
+    /**
+     * The rows in the table, unmodifiable.
+     */
+    private final List<CheckboxRow> rows;
+
+    /**
+     * The number of checkmark columns in each row.
+     */
+    private final int numColumns;
+
+    /**
+     * The checkmarks as a matrix, or null if they have not been asked for yet.
+     */
+    private volatile CheckmarkMatrix checkmarks;
+
+    /**
+     * Constructs a TableData object from its rows.
+     *
+     * @param numColumns the number of checkmark columns in each row.
+     * @param rows       the rows.
+     * @throws IllegalArgumentException if a row does not have that number of checkmark columns.
+     */
+    public TableData(int numColumns, List<CheckboxRow> rows) {
+        for (CheckboxRow row : rows) {
+            if (row.getNumCheckmarkColumns() != numColumns) {
+                throw new IllegalArgumentException("Number of checkmarks must match the number of checkmarks specified in the constructor.");
+            }
+        }
+
+        this.numColumns = numColumns;
+        this.rows = List.copyOf(rows);
+    }
+
+    /**
+     * Constructs a TableData object from a checkmark matrix and the image for each of its rows. The rows read their
+     * checkmarks from the matrix, which must not be changed afterwards.
+     *
+     * @param checkmarks the checkmarks.
+     * @param imagePaths the path to the image for each row.
+     * @throws IllegalArgumentException if there is not an image for each row, or the matrix has no columns.
+     */
+    public TableData(CheckmarkMatrix checkmarks, List<String> imagePaths) {
+        if (imagePaths.size() != checkmarks.getNumRows()) {
+            throw new IllegalArgumentException("There must be an image for each of the " + checkmarks.getNumRows()
+                                               + " rows.");
+        }
+
+        List<CheckboxRow> rows = new ArrayList<>(checkmarks.getNumRows());
+
+        for (int r = 0; r < checkmarks.getNumRows(); r++) {
+            rows.add(new CheckboxRow(imagePaths.get(r), checkmarks, r));
+        }
+
+        this.numColumns = checkmarks.getNumColumns();
+        this.rows = Collections.unmodifiableList(rows);
+        this.checkmarks = checkmarks;
+    }
+
+    /**
+     * Returns the number of checkmark columns in each row.
+     *
+     * @return the number of checkmark columns in each row.
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * Returns the row at the specified index.
+     *
+     * @param columnIndex the index of the row.
+     * @return the row at the specified index.
+     */
+    public CheckboxRow getRow(int columnIndex) {
+        return rows.get(columnIndex);
+    }
+
+    /**
+     * Returns the rows of the table (excluding the header).
+     *
+     * @return the rows of the table (excluding the header), unmodifiable.
+     */
+    public List<CheckboxRow> getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of rows in the table (excluding the header).
+     *
+     * @return the number of rows.
+     */
+    public int getNumRows() {
+        return rows.size();
+    }
+
+    /**
+     * Returns the checkmarks of the table as a bit-packed matrix, building it if need be. The matrix is shared, and
+     * must not be changed.
+     *
+     * @return the matrix.
+     */
+    public CheckmarkMatrix getCheckmarks() {
+        CheckmarkMatrix matrix = checkmarks;
+
+        if (matrix == null) {
+            matrix = new CheckmarkMatrix(rows.size(), numColumns);
+
+            for (int r = 0; r < rows.size(); r++) {
+                for (int c = 0; c < numColumns; c++) {
+                    if (rows.get(r).isChecked(c)) {
+                        matrix.set(r, c, true);
+                    }
+                }
+            }
+
+            checkmarks = matrix;
+        }
+
+        return matrix;
+    }
+}
@@ -0,0 +1,278 @@
+package io.github.cmuphil.earthlinguistfx.examples;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import io.github.cmuphil.earthlinguistfx.data.CheckmarkMatrix;
+import io.github.cmuphil.earthlinguistfx.data.TableData;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * An index of the examples bundled in the jar: for each example, its checkmark matrix and the resource path of each
+ * row's image. It is generated from the 'examples' resource directory when the examples change, by running this class
+ * from the command line, and kept beside them as '{@value #RESOURCE}', so that {@link Examples} can learn every
+ * example by reading one small file instead of probing the class loader for each checkmarks.txt and image. The build
+ * fails if the manifest differs from the one the examples would generate.
+ * <p>
+ * Each row of a checkmark matrix is kept as a string of 0s and 1s, as in checkmarks.txt.
+ *
+ * @author josephramsey
+ */
+public class ExampleManifest {
+
+    /**
+     * The resource path of the manifest.
+     */
+    public static final String RESOURCE = "examples/manifest.json";
+
+    /**
+     * The version of the manifest format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Reads and writes manifests.
+     */
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * The version of the format the manifest was written in.
+     */
+    private int version = VERSION;
+
+    /**
+     * The examples, in ascending order of index.
+     */
+    private List<Example> examples = new ArrayList<>();
+
+    /**
+     * Generates the manifest for the 'examples' resource directory from the command line and writes it into that
+     * directory. The argument is the directory, which defaults to 'earthlinguist-core/resources/examples'.
+     *
+     * @param args the arguments.
+     * @throws IOException if the examples cannot be read or the manifest cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 1) {
+            System.out.println("Usage: ExampleManifest [<examples directory>]");
+            System.exit(1);
+        }
+
+        Path dir = Path.of(args.length > 0 ? args[0] : "earthlinguist-core/resources/examples");
+        ExampleManifest manifest = generate(dir);
+        Path file = dir.resolve(Path.of(RESOURCE).getFileName());
+        manifest.write(file);
+        System.out.println("Wrote " + manifest.examples.size() + " example(s) to " + file);
+    }
+
+    /**
+     * Generates the manifest for an examples directory, which holds an 'example_N' directory for each example with a
+     * checkmarks.txt file and an image, 'R.png' or 'R.jpg', for each row R.
+     *
+     * @param dir the examples directory.
+     * @return the manifest.
+     * @throws IOException              if the examples cannot be read.
+     * @throws IllegalArgumentException if an example is not properly formatted.
+     */
+    public static ExampleManifest generate(Path dir) throws IOException {
+        Map<Integer, Path> exampleDirs = new TreeMap<>();
+
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) list::iterator) {
+                String name = path.getFileName().toString();
+
+                if (Files.isDirectory(path) && name.matches("example_\\d+")) {
+                    exampleDirs.put(Integer.parseInt(name.substring("example_".length())), path);
+                }
+            }
+        }
+
+        ExampleManifest manifest = new ExampleManifest();
+
+        for (Map.Entry<Integer, Path> entry : exampleDirs.entrySet()) {
+            int index = entry.getKey();
+            Path exampleDir = entry.getValue();
+            Path checkmarksFile = exampleDir.resolve("checkmarks.txt");
+
+            if (!Files.isRegularFile(checkmarksFile)) {
+                throw new IllegalArgumentException("checkmarks.txt not found in " + exampleDir);
+            }
+
+            Example example = new Example();
+            example.index = index;
+
+            for (String line : Files.readAllLines(checkmarksFile, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                int row = example.checkmarks.size() + 1;
+                String prefix = "/examples/" + exampleDir.getFileName() + "/" + row;
+                boolean png = Files.isRegularFile(exampleDir.resolve(row + ".png"));
+                boolean jpg = Files.isRegularFile(exampleDir.resolve(row + ".jpg"));
+
+                if (png && jpg) {
+                    throw new IllegalArgumentException("Multiple image files found in example directory for example "
+                                                       + index + " for row " + row + ".");
+                }
+
+                if (!png && !jpg) {
+                    throw new IllegalArgumentException("Image for example " + index + ", row " + row
+                                                       + " not found in example directory.");
+                }
+
+                example.checkmarks.add(line.trim());
+                example.images.add(prefix + (png ? ".png" : ".jpg"));
+            }
+
+            example.check();
+            manifest.examples.add(example);
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Reads a manifest.
+     *
+     * @param in the manifest, as JSON; the stream is not closed.
+     * @return the manifest.
+     * @throws IllegalArgumentException if it cannot be parsed, is of an unknown version or describes an example that
+     *                                  is not properly formatted.
+     */
+    public static ExampleManifest read(InputStream in) {
+        ExampleManifest manifest;
+
+        try {
+            manifest = GSON.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), ExampleManifest.class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Could not parse the examples manifest: " + e.getMessage(), e);
+        }
+
+        if (manifest == null || manifest.version != VERSION || manifest.examples == null) {
+            throw new IllegalArgumentException("Not an examples manifest of version " + VERSION + ".");
+        }
+
+        for (Example example : manifest.examples) {
+            example.check();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest, through a temporary file so that it appears whole or not at all.
+     *
+     * @param file the file.
+     * @throws IOException if it cannot be written.
+     */
+    public void write(Path file) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), ".manifest", ".tmp");
+
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(this, writer);
+            }
+
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Returns the examples, in ascending order of index.
+     *
+     * @return the examples.
+     */
+    public List<Example> getExamples() {
+        return examples;
+    }
+
+    /**
+     * One example in a manifest.
+     */
+    public static final class Example {
+
+        /**
+         * The index of the example, N in 'example_N'.
+         */
+        private int index;
+
+        /**
+         * The rows of the checkmark matrix, each a string of 0s and 1s.
+         */
+        private List<String> checkmarks = new ArrayList<>();
+
+        /**
+         * The resource path of each row's image.
+         */
+        private List<String> images = new ArrayList<>();
+
+        /**
+         * Returns the index of the example.
+         *
+         * @return the index.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Builds the table for the example.
+         *
+         * @return the table.
+         */
+        public TableData toTableData() {
+            return new TableData(toCheckmarks(), images);
+        }
+
+        /**
+         * Parses the example's checkmarks, without building its table.
+         *
+         * @return the checkmark matrix.
+         */
+        CheckmarkMatrix toCheckmarks() {
+            return CheckmarkMatrix.parse(checkmarks);
+        }
+
+        /**
+         * Checks that the example is properly formatted, as checkmarks.txt must be.
+         *
+         * @throws IllegalArgumentException if it is not.
+         */
+        private void check() {
+            if (checkmarks == null || images == null || checkmarks.isEmpty()
+                || checkmarks.size() != images.size()) {
+                throw new IllegalArgumentException("Example " + index + " must have an image for each of at least "
+                                                   + "one row of checkmarks.");
+            }
+
+            int numColumns = checkmarks.get(0).length();
+
+            for (String line : checkmarks) {
+                if (line.length() != numColumns) {
+                    throw new IllegalArgumentException("Invalid checkmarks.txt for example " + index
+                                                       + ": all lines must have the same number of columns.");
+                }
+
+                if (!line.matches("[01]+")) {
+                    throw new IllegalArgumentException("Invalid checkmarks.txt for example " + index
+                                                       + ": all characters must be 0 or 1.");
+                }
+            }
+        }
+    }
+}
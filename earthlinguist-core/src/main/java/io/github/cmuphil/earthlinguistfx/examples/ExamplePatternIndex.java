@@ -0,0 +1,291 @@
+package io.github.cmuphil.earthlinguistfx.examples;
+
+import io.github.cmuphil.earthlinguistfx.data.CheckmarkMatrix;
+import io.github.cmuphil.earthlinguistfx.data.TableData;
+
+import java.util.*;
+
+/**
+ * An index of the columns of example tables by their pattern of checked rows, for finding examples that share
+ * structure, so that recordings can be reused and clips paired across examples. Examples are named by their set and
+ * their index in it, so one index can cover every loaded {@link ExampleSet}. A pattern is the set of row indices
+ * checked in a column, counting from 0, whatever the number of rows in the table; 'exactly rows 1 and 3 checked' is
+ * {0, 2}.
+ * <p>
+ * Each distinct pattern is hashed into an inverted index that lists the columns with that pattern, so an exact query
+ * is one lookup. For subset and superset queries, each row has a bit set of the distinct patterns that check it; the
+ * answer is then a few bitwise operations over those sets rather than a scan of every column, which keeps queries fast
+ * as the examples grow into the thousands.
+ *
+ * @author josephramsey
+ */
+public class ExamplePatternIndex {
+
+    /**
+     * The id of each distinct pattern.
+     */
+    private final Map<BitSet, Integer> ids = new HashMap<>();
+
+    /**
+     * The columns with each distinct pattern, by id.
+     */
+    private final List<List<Match>> columns = new ArrayList<>();
+
+    /**
+     * For each row, the ids of the distinct patterns that check it.
+     */
+    private final List<BitSet> rowPostings = new ArrayList<>();
+
+    /**
+     * For each example, by set and then index, the id of the pattern of each of its columns.
+     */
+    private final Map<String, Map<Integer, int[]>> examplePatterns = new HashMap<>();
+
+    /**
+     * Constructs an empty index.
+     */
+    public ExamplePatternIndex() {
+
+    }
+
+    /**
+     * Builds an index of the given examples of one set.
+     *
+     * @param set      the name of the set.
+     * @param examples the example tables by index.
+     * @return the index.
+     */
+    public static ExamplePatternIndex of(String set, Map<Integer, TableData> examples) {
+        ExamplePatternIndex index = new ExamplePatternIndex();
+
+        for (Map.Entry<Integer, TableData> entry : new TreeMap<>(examples).entrySet()) {
+            index.add(set, entry.getKey(), entry.getValue());
+        }
+
+        return index;
+    }
+
+    /**
+     * Builds an index of every example of the given sets. The checkmarks of tables not built yet are read from the
+     * sets' manifests, so indexing does not build them.
+     *
+     * @param sets the sets, with different names.
+     * @return the index.
+     */
+    public static ExamplePatternIndex of(Collection<ExampleSet> sets) {
+        ExamplePatternIndex index = new ExamplePatternIndex();
+
+        for (ExampleSet set : sets) {
+            for (int example : set.getExampleIndices()) {
+                index.add(set.getName(), example, set.getCheckmarks(example));
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Adds the columns of an example to the index.
+     *
+     * @param set     the name of the example's set.
+     * @param example the index of the example.
+     * @param table   its table.
+     * @throws IllegalArgumentException if the example is already in the index.
+     */
+    public void add(String set, int example, TableData table) {
+        add(set, example, table.getCheckmarks());
+    }
+
+    /**
+     * Adds the columns of an example, given by its checkmarks, to the index.
+     *
+     * @param set     the name of the example's set.
+     * @param example the index of the example.
+     * @param matrix  its checkmarks.
+     * @throws IllegalArgumentException if the example is already in the index.
+     */
+    public synchronized void add(String set, int example, CheckmarkMatrix matrix) {
+        Map<Integer, int[]> setPatterns = examplePatterns.computeIfAbsent(set, s -> new HashMap<>());
+
+        if (setPatterns.containsKey(example)) {
+            throw new IllegalArgumentException("Example " + example + " of " + set + " is already in the index.");
+        }
+
+        int[] patternIds = new int[matrix.getNumColumns()];
+
+        for (int column = 0; column < matrix.getNumColumns(); column++) {
+            BitSet pattern = matrix.getCheckedRows(column);
+            Integer id = ids.get(pattern);
+
+            if (id == null) {
+                id = columns.size();
+                ids.put(pattern, id);
+                columns.add(new ArrayList<>());
+
+                for (int row = pattern.nextSetBit(0); row >= 0; row = pattern.nextSetBit(row + 1)) {
+                    while (rowPostings.size() <= row) {
+                        rowPostings.add(new BitSet());
+                    }
+
+                    rowPostings.get(row).set(id);
+                }
+            }
+
+            columns.get(id).add(new Match(set, example, column));
+            patternIds[column] = id;
+        }
+
+        setPatterns.put(example, patternIds);
+    }
+
+    /**
+     * Returns the columns checked in exactly the given rows.
+     *
+     * @param rows the rows, counting from 0.
+     * @return the columns, by set, example and then column.
+     */
+    public synchronized List<Match> findExact(BitSet rows) {
+        Integer id = ids.get(rows);
+        return id == null ? List.of() : sorted(columns.get(id));
+    }
+
+    /**
+     * Returns the columns checked in all of the given rows, and perhaps others.
+     *
+     * @param rows the rows, counting from 0.
+     * @return the columns, by set, example and then column.
+     */
+    public synchronized List<Match> findSupersets(BitSet rows) {
+        BitSet found = new BitSet();
+        found.set(0, columns.size());
+
+        for (int row = rows.nextSetBit(0); row >= 0 && !found.isEmpty(); row = rows.nextSetBit(row + 1)) {
+            if (row >= rowPostings.size()) {
+                return List.of();
+            }
+
+            found.and(rowPostings.get(row));
+        }
+
+        return collect(found);
+    }
+
+    /**
+     * Returns the columns checked in none but the given rows, though perhaps not in all of them.
+     *
+     * @param rows the rows, counting from 0.
+     * @return the columns, by set, example and then column.
+     */
+    public synchronized List<Match> findSubsets(BitSet rows) {
+        BitSet found = new BitSet();
+        found.set(0, columns.size());
+
+        for (int row = rows.nextClearBit(0); row < rowPostings.size(); row = rows.nextClearBit(row + 1)) {
+            found.andNot(rowPostings.get(row));
+        }
+
+        return collect(found);
+    }
+
+    /**
+     * Returns the indices of the examples with a column checked in exactly the given rows, by set.
+     *
+     * @param rows the rows, counting from 0.
+     * @return the example indices in ascending order, by set name in ascending order, for the sets that have any.
+     */
+    public synchronized Map<String, List<Integer>> findExamples(BitSet rows) {
+        Map<String, List<Integer>> examples = new TreeMap<>();
+
+        for (Match match : findExact(rows)) {
+            List<Integer> indices = examples.computeIfAbsent(match.set(), s -> new ArrayList<>());
+
+            if (indices.isEmpty() || indices.get(indices.size() - 1) != match.example()) {
+                indices.add(match.example());
+            }
+        }
+
+        return examples;
+    }
+
+    /**
+     * Returns, for each column of an example, the columns of other examples, in its set or any other, checked in
+     * exactly the same rows.
+     *
+     * @param set     the name of the example's set.
+     * @param example the index of the example.
+     * @return the matching columns of other examples by column of the given example, for the columns that have any.
+     * @throws IllegalArgumentException if the example is not in the index.
+     */
+    public synchronized Map<Integer, List<Match>> findSharedColumns(String set, int example) {
+        int[] patternIds = examplePatterns.getOrDefault(set, Map.of()).get(example);
+
+        if (patternIds == null) {
+            throw new IllegalArgumentException("Example " + example + " of " + set + " is not in the index.");
+        }
+
+        Map<Integer, List<Match>> shared = new TreeMap<>();
+
+        for (int column = 0; column < patternIds.length; column++) {
+            List<Match> others = new ArrayList<>();
+
+            for (Match match : columns.get(patternIds[column])) {
+                if (match.example() != example || !match.set().equals(set)) {
+                    others.add(match);
+                }
+            }
+
+            if (!others.isEmpty()) {
+                shared.put(column, sorted(others));
+            }
+        }
+
+        return shared;
+    }
+
+    /**
+     * Returns the number of distinct patterns in the index.
+     *
+     * @return the number of patterns.
+     */
+    public synchronized int getNumPatterns() {
+        return columns.size();
+    }
+
+    /**
+     * Returns the columns with the given distinct patterns.
+     *
+     * @param patternIds the ids of the patterns.
+     * @return the columns, by set, example and then column.
+     */
+    private List<Match> collect(BitSet patternIds) {
+        List<Match> found = new ArrayList<>();
+
+        for (int id = patternIds.nextSetBit(0); id >= 0; id = patternIds.nextSetBit(id + 1)) {
+            found.addAll(columns.get(id));
+        }
+
+        return sorted(found);
+    }
+
+    /**
+     * Returns a copy of the given columns, sorted by set, example and then column.
+     *
+     * @param matches the columns.
+     * @return the sorted copy.
+     */
+    private static List<Match> sorted(List<Match> matches) {
+        List<Match> copy = new ArrayList<>(matches);
+        copy.sort(Comparator.comparing(Match::set).thenComparingInt(Match::example).thenComparingInt(Match::column));
+        return copy;
+    }
+
+    /**
+     * A column of an example.
+     *
+     * @param set     the name of the example's set.
+     * @param example the index of the example.
+     * @param column  the index of the column, counting from 0.
+     */
+    public record Match(String set, int example, int column) {
+    }
+}
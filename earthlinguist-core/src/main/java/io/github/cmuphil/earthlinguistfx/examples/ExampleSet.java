@@ -0,0 +1,156 @@
+package io.github.cmuphil.earthlinguistfx.examples;
+
+import io.github.cmuphil.earthlinguistfx.data.CheckmarkMatrix;
+import io.github.cmuphil.earthlinguistfx.data.TableData;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A named set of example tables, such as the built-in examples or a loaded example pack; see {@link Examples}. The
+ * examples in a set never change once it is made, so a set can be read from any thread without locking. Tables
+ * listed in a manifest are built the first time they are asked for.
+ *
+ * @author josephramsey
+ */
+public final class ExampleSet {
+
+    /**
+     * The name of the set.
+     */
+    private final String name;
+
+    /**
+     * The example indices, in ascending order.
+     */
+    private final List<Integer> indices;
+
+    /**
+     * The manifest entries of the examples whose tables are built on demand, by index.
+     */
+    private final Map<Integer, ExampleManifest.Example> manifest;
+
+    /**
+     * The tables built so far, by index.
+     */
+    private final Map<Integer, TableData> tables;
+
+    /**
+     * The name the set's example pack is mounted under in storage, or null if it is not from a pack.
+     */
+    private final String mount;
+
+    /**
+     * Constructs a set.
+     *
+     * @param name     the name of the set.
+     * @param manifest the manifest entries of examples whose tables are to be built on demand, by index.
+     * @param tables   the tables of the other examples, by index.
+     * @param mount    the name the set's example pack is mounted under in storage, or null.
+     */
+    ExampleSet(String name, Map<Integer, ExampleManifest.Example> manifest, Map<Integer, TableData> tables,
+               String mount) {
+        SortedSet<Integer> indices = new TreeSet<>(manifest.keySet());
+        indices.addAll(tables.keySet());
+
+        this.name = name;
+        this.indices = List.copyOf(indices);
+        this.manifest = Map.copyOf(manifest);
+        this.tables = new ConcurrentHashMap<>(tables);
+        this.mount = mount;
+    }
+
+    /**
+     * Returns the name of the set.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the example indices, in ascending order.
+     *
+     * @return the indices, unmodifiable.
+     */
+    public List<Integer> getExampleIndices() {
+        return indices;
+    }
+
+    /**
+     * Returns the table of an example, building it if need be.
+     *
+     * @param index the example index.
+     * @return the table.
+     * @throws IllegalArgumentException if there is no example with that index in the set.
+     */
+    public TableData getExample(int index) {
+        TableData tableData = tables.get(index);
+
+        if (tableData == null) {
+            ExampleManifest.Example example = manifest.get(index);
+
+            if (example == null) {
+                throw new IllegalArgumentException("No example with index " + index + " exists in " + name + ".");
+            }
+
+            tableData = tables.computeIfAbsent(index, i -> example.toTableData());
+        }
+
+        return tableData;
+    }
+
+    /**
+     * Returns the checkmarks of an example: those of its table if it has been built, and otherwise parsed from its
+     * manifest entry, without building the table.
+     *
+     * @param index the example index.
+     * @return the checkmarks.
+     * @throws IllegalArgumentException if there is no example with that index in the set.
+     */
+    public CheckmarkMatrix getCheckmarks(int index) {
+        TableData tableData = tables.get(index);
+
+        if (tableData != null) {
+            return tableData.getCheckmarks();
+        }
+
+        ExampleManifest.Example example = manifest.get(index);
+
+        if (example == null) {
+            throw new IllegalArgumentException("No example with index " + index + " exists in " + name + ".");
+        }
+
+        return example.toCheckmarks();
+    }
+
+    /**
+     * Returns true if the table of an example has been built.
+     *
+     * @param index the example index.
+     * @return true if it has been built.
+     */
+    boolean isBuilt(int index) {
+        return tables.containsKey(index);
+    }
+
+    /**
+     * Returns the name the set's example pack is mounted under in storage.
+     *
+     * @return the mount name, or null if the set is not from a pack.
+     */
+    String getMount() {
+        return mount;
+    }
+
+    /**
+     * Returns the name of the set.
+     *
+     * @return the name.
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,565 @@
+package io.github.cmuphil.earthlinguistfx.examples;
+
+import io.github.cmuphil.earthlinguistfx.archive.ZipIndex;
+import io.github.cmuphil.earthlinguistfx.data.CheckboxRow;
+import io.github.cmuphil.earthlinguistfx.data.CheckmarkMatrix;
+import io.github.cmuphil.earthlinguistfx.data.TableData;
+import io.github.cmuphil.earthlinguistfx.storage.Storage;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The example tables for the EarthLinguist application, kept as named {@link ExampleSet}s: the built-in examples,
+ * under {@value #BUILT_IN}, and any example packs loaded from zips. One set is active, and the examples asked for
+ * without naming a set come from it. This class is a singleton.
+ * <p>
+ * The built-in examples are loaded from the /examples directory in the classpath. Each example is a directory with
+ * the name "example_N" where N is the example index. Each example directory contains a set of images and a
+ * checkmarks.txt file. The checkmarks.txt file contains a matrix of 0s and 1s, where 0 indicates that the
+ * corresponding image is not checked, and 1 indicates that the corresponding image is checked. The images are named
+ * 1.png, 2.png, 3.png, etc. The images are displayed in the table view in the EarthLinguist application.
+ * <p>
+ * The bundled examples are listed in an {@link ExampleManifest} generated with them, which is read once; each
+ * example's table is built the first time it is asked for, so starting up and restoring the bundled examples cost the
+ * same however many examples there are. Without a manifest the class loader is probed for each example instead.
+ * <p>
+ * The sets and which one is active are published together as one immutable snapshot, which loading, switching or
+ * removing a set replaces with a compare-and-set. Readers, such as the UI and the ingestion server's validators, never
+ * lock and never see a set half loaded, and a slow load never blocks them.
+ * <p>
+ * In the future, the examples will be loaded from a database.
+ *
+ * @author josephramsey
+ */
+public class Examples {
+
+    /**
+     * The name of the set of built-in examples.
+     */
+    public static final String BUILT_IN = "built-in";
+
+    /**
+     * The start of the name each loaded example pack is mounted under in {@link Storage}; a new name is used for each
+     * pack, so that an image cached from one pack is never shown for another.
+     */
+    private static final String PACK_MOUNT = "example_pack_";
+
+    /**
+     * Singleton pattern.
+     */
+    private static final Examples instance = new Examples();
+
+    /**
+     * The current snapshot of the example sets.
+     */
+    private final AtomicReference<Registry> registry = new AtomicReference<>(new Registry(Map.of(), null));
+
+    /**
+     * The number of example packs loaded so far.
+     */
+    private final AtomicInteger packsLoaded = new AtomicInteger();
+
+    /**
+     * The index of the column patterns of every set, with the sets it was built over, or null if it has not been
+     * built yet.
+     */
+    private final AtomicReference<IndexedSets> patternIndex = new AtomicReference<>();
+
+    /**
+     * The examples of the bundled manifest by index, once read, or an empty map if there is no usable manifest.
+     */
+    private volatile Map<Integer, ExampleManifest.Example> bundledManifest;
+
+    /**
+     * Private constructor to prevent instantiation.
+     *
+     * @throws IllegalStateException if the bundled examples cannot be read; the examples are part of the build, so
+     *                               this means the jar is broken.
+     */
+    private Examples() {
+        try {
+            loadExamplesFromJar();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error loading examples from jar: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Singleton pattern.
+     *
+     * @return the singleton instance.
+     */
+    public static Examples getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the names of the example sets, in the order they were first loaded.
+     *
+     * @return the names.
+     */
+    public List<String> getExampleSetNames() {
+        return List.copyOf(registry.get().sets().keySet());
+    }
+
+    /**
+     * Returns the example set with the given name.
+     *
+     * @param name the name.
+     * @return the set.
+     * @throws IllegalArgumentException if there is no such set.
+     */
+    public ExampleSet getExampleSet(String name) {
+        ExampleSet set = registry.get().sets().get(name);
+
+        if (set == null) {
+            throw new IllegalArgumentException("No example set named " + name + ".");
+        }
+
+        return set;
+    }
+
+    /**
+     * Returns the active example set.
+     *
+     * @return the set.
+     */
+    public ExampleSet getActiveSet() {
+        Registry current = registry.get();
+        return current.sets().get(current.active());
+    }
+
+    /**
+     * Makes the example set with the given name the active one.
+     *
+     * @param name the name.
+     * @throws IllegalArgumentException if there is no such set.
+     */
+    public void setActiveSet(String name) {
+        registry.updateAndGet(current -> {
+            if (!current.sets().containsKey(name)) {
+                throw new IllegalArgumentException("No example set named " + name + ".");
+            }
+
+            return new Registry(current.sets(), name);
+        });
+    }
+
+    /**
+     * Removes a loaded example set and closes its pack. If it was the active set, the built-in examples become
+     * active.
+     *
+     * @param name the name.
+     * @throws IllegalArgumentException if it is the built-in set.
+     */
+    public void removeExampleSet(String name) {
+        if (name.equals(BUILT_IN)) {
+            throw new IllegalArgumentException("The built-in examples cannot be removed.");
+        }
+
+        Registry previous = registry.getAndUpdate(current -> {
+            Map<String, ExampleSet> sets = new LinkedHashMap<>(current.sets());
+            sets.remove(name);
+            return new Registry(Collections.unmodifiableMap(sets), name.equals(current.active()) ? BUILT_IN
+                    : current.active());
+        });
+
+        release(previous.sets().get(name));
+    }
+
+    /**
+     * Returns a list of example indices of the active set, sorted in ascending order.
+     *
+     * @return a list of example indices.
+     */
+    public List<Integer> getExampleIndices() {
+        return getActiveSet().getExampleIndices();
+    }
+
+    /**
+     * Retrieves the example with the specified index from the active set.
+     *
+     * @param index the index of the example to retrieve.
+     * @return the example with the specified index.
+     * @throws IllegalArgumentException if no example with the specified index exists.
+     */
+    public TableData getExample(int index) {
+        return getActiveSet().getExample(index);
+    }
+
+    /**
+     * Returns an index of the column patterns of every example set, for finding examples that share structure within
+     * and across sets. It is built over the current snapshot of the sets the first time it is asked for after they
+     * change, from the checkmarks alone, so tables still to be built from a manifest are not built for it; switching
+     * the active set does not change it.
+     *
+     * @return the index.
+     */
+    public ExamplePatternIndex getPatternIndex() {
+        Map<String, ExampleSet> sets = registry.get().sets();
+        IndexedSets indexed = patternIndex.get();
+
+        if (indexed == null || indexed.sets() != sets) {
+            indexed = new IndexedSets(sets, ExamplePatternIndex.of(sets.values()));
+            patternIndex.set(indexed);
+        }
+
+        return indexed.index();
+    }
+
+    /**
+     * Loads the built-in examples from the "examples" directory in the resources, through its manifest if it has a
+     * usable one, and makes them the active set. Loaded example sets are kept.
+     *
+     * @throws IOException if there is an error in reading the files.
+     */
+    public void loadExamplesFromJar() throws IOException {
+        Map<Integer, ExampleManifest.Example> manifest = bundledManifest;
+
+        if (manifest == null) {
+            manifest = readBundledManifest();
+            bundledManifest = manifest;
+        }
+
+        if (!manifest.isEmpty()) {
+            publish(new ExampleSet(BUILT_IN, manifest, Map.of(), null));
+        } else {
+            publish(new ExampleSet(BUILT_IN, Map.of(), probeExamplesFromJar(), null));
+        }
+    }
+
+    /**
+     * Reads the manifest of the bundled examples. It is not used if it is missing, cannot be read, or is stale
+     * because there is an example after the last one it lists.
+     *
+     * @return the examples of the manifest by index, or an empty map if it is not to be used.
+     */
+    private Map<Integer, ExampleManifest.Example> readBundledManifest() {
+        ClassLoader classLoader = getClass().getClassLoader();
+        ExampleManifest manifest;
+
+        try (InputStream in = classLoader.getResourceAsStream(ExampleManifest.RESOURCE)) {
+            if (in == null) {
+                return Map.of();
+            }
+
+            manifest = ExampleManifest.read(in);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("The examples manifest could not be read; looking for the examples instead. "
+                               + "\n" + e.getMessage());
+            return Map.of();
+        }
+
+        Map<Integer, ExampleManifest.Example> examples = new HashMap<>();
+
+        for (ExampleManifest.Example example : manifest.getExamples()) {
+            examples.put(example.getIndex(), example);
+        }
+
+        int next = examples.isEmpty() ? 1 : Collections.max(examples.keySet()) + 1;
+
+        if (examples.isEmpty() || classLoader.getResource("examples/example_" + next) != null) {
+            System.out.println("The examples manifest is out of date; looking for the examples instead.");
+            return Map.of();
+        }
+
+        return Collections.unmodifiableMap(examples);
+    }
+
+    /**
+     * Loads example data from the "examples" directory in the resources by probing the class loader for each
+     * example's checkmarks.txt and images.
+     *
+     * @return the examples by index.
+     * @throws IOException if there is an error in reading the files.
+     */
+    private Map<Integer, TableData> probeExamplesFromJar() throws IOException {
+        URL examples = getClass().getClassLoader().getResource("examples");
+        Map<Integer, TableData> examplesMap = new HashMap<>();
+
+        if (examples == null) {
+            throw new RuntimeException("examples directory not found.");
+        }
+
+        for (int exampleIndex = 1; ; exampleIndex++) {
+            URL example = getClass().getClassLoader().getResource("examples/example_" + exampleIndex);
+
+            if (example == null) {
+                break;
+            }
+
+            ClassLoader classLoader = getClass().getClassLoader();
+
+            try (InputStream inputStream = classLoader.getResourceAsStream(
+                    "examples/example_" + exampleIndex + "/checkmarks.txt")) {
+                if (inputStream == null) {
+                    throw new RuntimeException("checkmarks.txt not found in example directory.");
+                }
+
+                InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
+                BufferedReader reader = new BufferedReader(inputStreamReader);
+                List<CheckboxRow> rows = new ArrayList<>();
+
+                String line;
+                int numColumns = -1;
+                int rowIndex = 0;
+
+                while ((line = reader.readLine()) != null) {
+                    ++rowIndex;
+
+                    if (numColumns == -1) {
+                        numColumns = line.length();
+                    }
+
+                    if (line.length() != numColumns) {
+                        throw new RuntimeException("Invalid checkmarks.txt dir: all lines must have the same number of columns.");
+                    }
+
+                    for (int j = 0; j < numColumns; j++) {
+                        if (line.charAt(j) != '0' && line.charAt(j) != '1') {
+                            throw new RuntimeException("Invalid checkmarks.txt dir: all characters must be 0 or 1.");
+                        }
+                    }
+
+                    boolean[] checkmarks = new boolean[numColumns];
+
+                    for (int j = 0; j < numColumns; j++) {
+                        checkmarks[j] = line.charAt(j) == '1';
+                    }
+
+                    URL imageURL1 = getClass().getClassLoader().getResource("examples/example_" + exampleIndex + "/" + rowIndex + ".png");
+                    URL imageURL2 = getClass().getClassLoader().getResource("examples/example_" + exampleIndex + "/" + rowIndex + ".jpg");
+
+                    if (imageURL1 != null && imageURL2 != null) {
+                        throw new RuntimeException("Multiple image files found in example directory for example " + exampleIndex +
+                                                   " for row " + rowIndex + ".");
+                    }
+
+                    if (imageURL1 == null && imageURL2 == null) {
+                        throw new RuntimeException("Image for row + " + rowIndex + " not found in example directory.");
+                    }
+
+                    String imagePath = "/examples/example_" + exampleIndex + "/" + rowIndex;
+
+                    if (imageURL1 != null) {
+                        imagePath += ".png";
+                    } else {
+                        imagePath += ".jpg";
+                    }
+
+                    rows.add(new CheckboxRow(imagePath, numColumns, checkmarks));
+                }
+
+                if (!rows.isEmpty()) {
+                    examplesMap.put(exampleIndex, new TableData(numColumns, rows));
+                }
+            }
+        }
+
+        return examplesMap;
+    }
+
+    /**
+     * Loads an example pack from the specified zip file as a set named after the file, without '.zip', and makes it
+     * the active set; see {@link #loadExamplesFromZip(String, File)}.
+     *
+     * @param zipFile the zip file.
+     * @throws IOException              if there is an error in reading the files.
+     * @throws IllegalArgumentException if the zip file does not contain properly formatted example data.
+     */
+    public void loadExamplesFromZip(File zipFile) throws IOException, IllegalArgumentException {
+        loadExamplesFromZip(zipFile.getName().replaceFirst("(?i)\\.zip$", ""), zipFile);
+    }
+
+    /**
+     * Loads an example pack from the specified zip file as a named set, replacing any loaded set of that name, and
+     * makes it the active set. Nothing is extracted: the zip's central directory is indexed, each example's
+     * checkmarks are read from it, from checkmarks.bin if there is one and checkmarks.txt otherwise, and the zip is
+     * mounted in {@link Storage} so that the images are read from it, and decoded, only when they are shown.
+     *
+     * @param name    the name of the set.
+     * @param zipFile the zip file.
+     * @throws IOException              if there is an error in reading the files.
+     * @throws IllegalArgumentException if the zip file does not contain properly formatted example data, or the name
+     *                                  is that of the built-in set.
+     */
+    public void loadExamplesFromZip(String name, File zipFile) throws IOException, IllegalArgumentException {
+        if (name.equals(BUILT_IN)) {
+            throw new IllegalArgumentException("The name " + BUILT_IN + " is taken by the built-in examples.");
+        }
+
+        ZipIndex pack = ZipIndex.open(zipFile.toPath());
+        String mount = PACK_MOUNT + packsLoaded.incrementAndGet();
+        Map<Integer, TableData> loaded;
+
+        try {
+            loaded = readPack(pack, mount);
+        } catch (Throwable e) {
+            // Errors too, such as running out of memory on a huge pack, so that the zip is never left open.
+            try {
+                pack.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+
+            throw e;
+        }
+
+        Storage.getInstance().mount(mount, pack);
+        publish(new ExampleSet(name, Map.of(), loaded, mount));
+    }
+
+    /**
+     * Adds a set to the registry, or replaces the set of the same name, and makes it active. A replaced set's pack is
+     * closed.
+     *
+     * @param set the set.
+     */
+    private void publish(ExampleSet set) {
+        Registry previous = registry.getAndUpdate(current -> {
+            Map<String, ExampleSet> sets = new LinkedHashMap<>(current.sets());
+            sets.put(set.getName(), set);
+            return new Registry(Collections.unmodifiableMap(sets), set.getName());
+        });
+
+        ExampleSet replaced = previous.sets().get(set.getName());
+
+        if (replaced != set) {
+            release(replaced);
+        }
+    }
+
+    /**
+     * Unmounts the pack of a set that has left the registry, if it has one.
+     *
+     * @param set the set, or null.
+     */
+    private static void release(ExampleSet set) {
+        if (set != null && set.getMount() != null) {
+            Storage.getInstance().unmount(set.getMount());
+        }
+    }
+
+    /**
+     * Reads the examples in an example pack.
+     *
+     * @param pack  the pack.
+     * @param mount the name the pack will be mounted under, for references to its images.
+     * @return the examples by index.
+     * @throws IOException              if the pack cannot be read.
+     * @throws IllegalArgumentException if it does not contain properly formatted example data.
+     */
+    private static Map<Integer, TableData> readPack(ZipIndex pack, String mount) throws IOException {
+        // The examples are in the first folder of the zip, as 'example_N' folders.
+        String examplesDir = null;
+
+        for (String key : pack.list("")) {
+            if (key.contains("/") && !key.startsWith("__MACOSX/") && !key.startsWith(".")) {
+                examplesDir = key.substring(0, key.indexOf('/'));
+                break;
+            }
+        }
+
+        if (examplesDir == null) {
+            throw new IllegalArgumentException("The zip has no examples; make sure you zipped up a directory.");
+        }
+
+        Set<String> exampleDirs = new TreeSet<>();
+
+        for (String key : pack.list(examplesDir + "/")) {
+            String rest = key.substring(examplesDir.length() + 1);
+
+            if (rest.contains("/")) {
+                exampleDirs.add(rest.substring(0, rest.indexOf('/')));
+            }
+        }
+
+        Map<Integer, TableData> examples = new HashMap<>();
+
+        for (String exampleDir : exampleDirs) {
+            if (exampleDir.startsWith(".")) {
+                continue;
+            }
+
+            String[] tokens = exampleDir.split("_");
+
+            if (tokens.length != 2) {
+                throw new IllegalArgumentException("Invalid example directory: " + exampleDir);
+            }
+
+            if (!tokens[0].equals("example")) {
+                throw new IllegalArgumentException("Invalid example directory: " + exampleDir);
+            }
+
+            if (!tokens[1].matches("\\d+")) {
+                throw new IllegalArgumentException("Invalid example directory: " + exampleDir);
+            }
+
+            int exampleIndex = Integer.parseInt(tokens[1]);
+            String prefix = examplesDir + "/" + exampleDir + "/";
+
+            CheckmarkMatrix checkmarks;
+
+            if (pack.exists(prefix + CheckmarkMatrix.FILE_NAME)) {
+                try (InputStream in = pack.open(prefix + CheckmarkMatrix.FILE_NAME)) {
+                    checkmarks = CheckmarkMatrix.read(in, pack.size(prefix + CheckmarkMatrix.FILE_NAME));
+                }
+            } else if (pack.exists(prefix + "checkmarks.txt")) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        pack.open(prefix + "checkmarks.txt"), StandardCharsets.UTF_8))) {
+                    checkmarks = CheckmarkMatrix.parse(reader.lines().toList());
+                }
+            } else {
+                throw new IllegalArgumentException("checkmarks.txt not found in example directory.");
+            }
+
+            if (checkmarks.getNumRows() == 0 || checkmarks.getNumColumns() == 0) {
+                throw new IllegalArgumentException("No checkmarks for example " + exampleIndex + ".");
+            }
+
+            List<String> images = new ArrayList<>();
+
+            for (int rowIndex = 1; rowIndex <= checkmarks.getNumRows(); rowIndex++) {
+                String imageKey = prefix + rowIndex + ".png";
+
+                if (!pack.exists(imageKey)) {
+                    imageKey = prefix + rowIndex + ".jpg";
+
+                    if (!pack.exists(imageKey)) {
+                        throw new IllegalArgumentException("Image for example " + exampleIndex + ", row " + rowIndex
+                                                           + " not found in example directory.");
+                    }
+                }
+
+                images.add(Storage.reference(mount, imageKey));
+            }
+
+            examples.put(exampleIndex, new TableData(checkmarks, images));
+        }
+
+        return examples;
+    }
+
+    /**
+     * An index of the column patterns of the sets of a snapshot.
+     *
+     * @param sets  the sets of the snapshot.
+     * @param index the index of their column patterns.
+     */
+    private record IndexedSets(Map<String, ExampleSet> sets, ExamplePatternIndex index) {
+    }
+
+    /**
+     * A snapshot of the example sets and which one is active.
+     *
+     * @param sets   the sets by name, unmodifiable, in the order they were first loaded.
+     * @param active the name of the active set.
+     */
+    private record Registry(Map<String, ExampleSet> sets, String active) {
+    }
+}
@@ -0,0 +1,983 @@
+package io.github.cmuphil.earthlinguistfx.remote;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import io.github.cmuphil.earthlinguistfx.archive.ZipEntryRecord;
+import io.github.cmuphil.earthlinguistfx.archive.ZipIndex;
+import io.github.cmuphil.earthlinguistfx.catalog.SampleRecord;
+import io.github.cmuphil.earthlinguistfx.storage.StorageBackend;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A sample archive on an ingestion server, read entry by entry with HTTP range requests rather than downloaded whole;
+ * see {@link io.github.cmuphil.earthlinguistfx.server.IngestionServer}. Opening it fetches only the end of the
+ * archive, which holds the central directory, and each entry is fetched when it is first opened, so a clip can start
+ * playing while it and the others are still downloading.
+ * <p>
+ * Everything fetched goes into a read-through cache on disk: a sparse file the size of the archive in which the
+ * fetched byte ranges are filled in, plus a descriptor listing those ranges and the archive's ETag. The central
+ * directory is then read from the sparse file with a {@link ZipIndex}, as is any entry whose bytes are all there. On
+ * each open the cache is checked against the server with 'If-None-Match', and thrown away if the archive has changed;
+ * if the server cannot be reached, whatever is cached can still be read.
+ * <p>
+ * The archive is also a read-only {@link StorageBackend} whose keys are its entry names, so that a sample can be
+ * played or its state read from the library the same way as from local storage.
+ *
+ * @author josephramsey
+ */
+public class RemoteArchive implements StorageBackend {
+
+    /**
+     * The number of bytes at the end of the archive fetched on opening: the largest end-of-central-directory record,
+     * with its comment, which is what {@link ZipIndex} searches.
+     */
+    private static final int TAIL_BYTES = 0xFFFF + 22;
+
+    /**
+     * The most bytes left unread in an entry that are fetched anyway when its stream is closed, so that it is cached.
+     */
+    private static final int DRAIN_LIMIT = 64 * 1024;
+
+    /**
+     * The name of the sparse copy of the archive in the cache directory.
+     */
+    private static final String MIRROR = "archive.zip";
+
+    /**
+     * The name of the descriptor in the cache directory.
+     */
+    private static final String DESCRIPTOR = "cache.json";
+
+    /**
+     * The Content-Range header of a partial response.
+     */
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    /**
+     * The JSON reader and writer.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The HTTP client.
+     */
+    private final HttpClient client;
+
+    /**
+     * The address of the archive.
+     */
+    private final URI uri;
+
+    /**
+     * The cache directory for this archive.
+     */
+    private final Path dir;
+
+    /**
+     * The channel the sparse copy is written through.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The cache descriptor.
+     */
+    private final Descriptor descriptor;
+
+    /**
+     * The index of the sparse copy.
+     */
+    private ZipIndex index;
+
+    /**
+     * Where each entry's stored bytes end: the start of the next entry, or of the central directory.
+     */
+    private final Map<String, Long> ends = new HashMap<>();
+
+    /**
+     * Whether the archive has been closed, which stops a prefetch.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a remote archive over a cache that has been brought up to date.
+     *
+     * @param client     the HTTP client.
+     * @param uri        the address of the archive.
+     * @param dir        the cache directory.
+     * @param descriptor the cache descriptor.
+     * @throws IOException if the sparse copy cannot be opened.
+     */
+    private RemoteArchive(HttpClient client, URI uri, Path dir, Descriptor descriptor) throws IOException {
+        this.client = client;
+        this.uri = uri;
+        this.dir = dir;
+        this.descriptor = descriptor;
+        this.channel = FileChannel.open(dir.resolve(MIRROR), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Lists the samples on a server.
+     *
+     * @param server the address of the server, such as 'http://localhost:8642'.
+     * @return the samples.
+     * @throws IOException if the server cannot be reached or its reply cannot be read.
+     */
+    public static List<Listing> list(URI server) throws IOException {
+        HttpClient client = newClient();
+        HttpResponse<String> response = send(client, HttpRequest.newBuilder(server.resolve("/samples")).GET()
+                .timeout(Duration.ofMinutes(1)).build(), HttpResponse.BodyHandlers.ofString());
+
+        if (response.statusCode() != 200) {
+            throw new IOException("The server replied " + response.statusCode() + ": " + response.body());
+        }
+
+        try {
+            List<Listing> listing = GSON.fromJson(response.body(), new TypeToken<List<Listing>>() {
+            }.getType());
+            return listing == null ? List.of() : listing;
+        } catch (JsonParseException e) {
+            throw new IOException("The sample listing cannot be read: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Opens a sample on a server, fetching the central directory unless the cached copy is still current.
+     *
+     * @param server    the address of the server, such as 'http://localhost:8642'.
+     * @param id        the sample ID.
+     * @param cacheRoot the directory the cache is kept in.
+     * @return the remote archive.
+     * @throws FileNotFoundException if the server has no such sample.
+     * @throws IOException           if the archive cannot be read from the server or the cache.
+     */
+    public static RemoteArchive open(URI server, String id, Path cacheRoot) throws IOException {
+        HttpClient client = newClient();
+        URI uri = server.resolve("/samples/" + id);
+        Path dir = cacheRoot.resolve(cacheKey(uri));
+        Files.createDirectories(dir);
+        Descriptor descriptor = readDescriptor(dir);
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET().header("Range", "bytes=-" + TAIL_BYTES)
+                .timeout(Duration.ofMinutes(1));
+
+        if (descriptor != null && descriptor.etag != null) {
+            request.header("If-None-Match", descriptor.etag);
+        }
+
+        byte[] tail = null;
+        long tailStart = 0;
+
+        try {
+            HttpResponse<byte[]> response = send(client, request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            int status = response.statusCode();
+
+            if (status == 404) {
+                throw new FileNotFoundException("There is no sample " + id + " on " + server);
+            } else if (status == 206 || status == 200) {
+                tail = response.body();
+                long size = tail.length;
+
+                if (status == 206) {
+                    Matcher matcher = CONTENT_RANGE.matcher(response.headers().firstValue("Content-Range").orElse(""));
+
+                    if (!matcher.matches()) {
+                        throw new IOException("The server's Content-Range cannot be read.");
+                    }
+
+                    tailStart = Long.parseLong(matcher.group(1));
+                    size = Long.parseLong(matcher.group(3));
+                }
+
+                String etag = response.headers().firstValue("ETag").orElse(null);
+
+                if (descriptor == null || etag == null || !etag.equals(descriptor.etag) || size != descriptor.size) {
+                    descriptor = reset(dir, etag, size);
+                }
+            } else if (status != 304 || descriptor == null) {
+                throw new IOException("The server replied " + status + " for sample " + id + ".");
+            }
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            if (descriptor == null) {
+                throw e;
+            }
+
+            System.out.println("Reading the cached copy of sample " + id + ": " + e);
+        }
+
+        RemoteArchive archive = new RemoteArchive(client, uri, dir, descriptor);
+
+        try {
+            if (tail != null) {
+                archive.write(tailStart, tail, 0, tail.length);
+                archive.cached(tailStart, tailStart + tail.length);
+            }
+
+            archive.readCentralDirectory();
+            return archive;
+        } catch (IOException | RuntimeException e) {
+            archive.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the names of the archive's entries.
+     *
+     * @return the names, in central directory order.
+     */
+    public List<String> getEntryNames() {
+        return index.getEntries().stream().map(ZipEntryRecord::name).toList();
+    }
+
+    /**
+     * Returns true if the archive has an entry with the given name.
+     *
+     * @param name the entry name.
+     * @return true if there is such an entry.
+     */
+    public boolean hasEntry(String name) {
+        return index.getEntry(name) != null;
+    }
+
+    /**
+     * Returns true if all of an entry's bytes are in the cache.
+     *
+     * @param name the entry name.
+     * @return true if the entry is cached.
+     */
+    public boolean isCached(String name) {
+        ZipEntryRecord entry = index.getEntry(name);
+        return entry != null && isCached(entry);
+    }
+
+    /**
+     * Opens a stream over the uncompressed contents of the named entry. If the entry is not cached, it is fetched
+     * with a range request and streamed as it arrives, and written to the cache on the way.
+     *
+     * @param name the entry name.
+     * @return the stream.
+     * @throws FileNotFoundException if there is no such entry.
+     * @throws IOException           if the entry cannot be fetched, or the archive has changed on the server.
+     */
+    public InputStream openStream(String name) throws IOException {
+        ZipEntryRecord entry = index.getEntry(name);
+
+        if (entry == null) {
+            throw new FileNotFoundException("No entry " + name + " in " + uri);
+        }
+
+        if (isCached(entry)) {
+            return index.openStream(entry);
+        }
+
+        long start = entry.localHeaderOffset();
+        long end = ends.get(name);
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET()
+                .header("Range", "bytes=" + start + "-" + (end - 1)).timeout(Duration.ofMinutes(2));
+
+        if (descriptor.etag != null) {
+            request.header("If-Range", descriptor.etag);
+        }
+
+        HttpResponse<InputStream> response = send(client, request.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+        if (response.statusCode() != 206) {
+            response.body().close();
+            throw new IOException(response.statusCode() == 200 ? "Sample " + uri + " has changed on the server; "
+                    + "open it again." : "The server replied " + response.statusCode() + " for " + name + ".");
+        }
+
+        CachingStream raw = new CachingStream(response.body(), start, end - start);
+
+        try {
+            byte[] header = raw.readNBytes(30);
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.length < 30 || buffer.getInt(0) != 0x04034b50) {
+                throw new IOException("Bad local header for " + name + " in " + uri);
+            }
+
+            raw.skipNBytes(Short.toUnsignedInt(buffer.getShort(26)) + Short.toUnsignedInt(buffer.getShort(28)));
+            return ZipIndex.decode(entry, new EntryStream(raw, entry.compressedSize()));
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the archive has an entry with the given name that is a file.
+     *
+     * @param key the entry name.
+     * @return true if there is such an entry.
+     */
+    @Override
+    public boolean exists(String key) {
+        ZipEntryRecord entry = index.getEntry(key);
+        return entry != null && !entry.isDirectory();
+    }
+
+    /**
+     * Returns the uncompressed size of the named entry.
+     *
+     * @param key the entry name.
+     * @return the size.
+     * @throws FileNotFoundException if there is no such entry.
+     */
+    @Override
+    public long size(String key) throws FileNotFoundException {
+        ZipEntryRecord entry = index.getEntry(key);
+
+        if (entry == null) {
+            throw new FileNotFoundException("No entry " + key + " in " + uri);
+        }
+
+        return entry.size();
+    }
+
+    /**
+     * Opens the named entry; see {@link #openStream(String)}.
+     *
+     * @param key the entry name.
+     * @return the stream.
+     * @throws IOException if the entry cannot be fetched.
+     */
+    @Override
+    public InputStream open(String key) throws IOException {
+        return openStream(key);
+    }
+
+    /**
+     * Not supported; library samples are read-only.
+     *
+     * @param key  the key.
+     * @param data the data.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void write(String key, InputStream data) {
+        throw new UnsupportedOperationException("Library samples are read-only.");
+    }
+
+    /**
+     * Not supported; library samples are read-only.
+     *
+     * @param key the key.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void delete(String key) {
+        throw new UnsupportedOperationException("Library samples are read-only.");
+    }
+
+    /**
+     * Returns the names of the file entries that start with the given prefix, sorted.
+     *
+     * @param prefix the prefix; "" for every entry.
+     * @return the names.
+     */
+    @Override
+    public List<String> list(String prefix) {
+        return index.getEntries().stream().filter(entry -> !entry.isDirectory())
+                .map(ZipEntryRecord::name).filter(name -> name.startsWith(prefix)).sorted().toList();
+    }
+
+    /**
+     * Writes the named entry to a file, through a temporary file so that the file appears whole or not at all.
+     *
+     * @param name   the entry name.
+     * @param target the file.
+     * @throws IOException if the entry cannot be fetched or the file cannot be written.
+     */
+    public void extract(String name, Path target) throws IOException {
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), ".extract", ".tmp");
+
+        try {
+            try (InputStream in = openStream(name)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Fetches every entry not yet cached, one at a time, so that they can later be read without the server. Stops
+     * without an error if the archive is closed meanwhile.
+     *
+     * @throws IOException if an entry cannot be fetched.
+     */
+    public void prefetch() throws IOException {
+        for (ZipEntryRecord entry : index.getEntries()) {
+            if (closed) {
+                return;
+            }
+
+            if (!isCached(entry)) {
+                try (InputStream in = openStream(entry.name())) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    if (closed) {
+                        return;
+                    }
+
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the cache files and stops any prefetch. Streams still open may fail.
+     *
+     * @throws IOException if the files cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        try (channel) {
+            if (index != null) {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Makes sure the central directory is cached, fetching whatever part of it lies before the end already fetched,
+     * then reads it.
+     *
+     * @throws IOException if the central directory cannot be fetched or read.
+     */
+    private void readCentralDirectory() throws IOException {
+        long size = descriptor.size;
+        int tailLength = (int) Math.min(size, TAIL_BYTES);
+
+        if (!descriptor.covers(size - tailLength, size)) {
+            throw new IOException("The end of sample " + uri + " is not cached and the server cannot be reached.");
+        }
+
+        ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, size - tailLength + tail.position()) < 0) {
+                throw new EOFException("The cached copy of " + uri + " is truncated.");
+            }
+        }
+
+        for (int i = tailLength - 22; i >= 0; i--) {
+            if (tail.getInt(i) == 0x06054b50) {
+                long cdSize = Integer.toUnsignedLong(tail.getInt(i + 12));
+                long cdOffset = Integer.toUnsignedLong(tail.getInt(i + 16));
+
+                if (cdOffset + cdSize <= size && !descriptor.covers(cdOffset, cdOffset + cdSize)) {
+                    fetch(cdOffset, cdOffset + cdSize);
+                }
+
+                break;
+            }
+        }
+
+        index = ZipIndex.open(dir.resolve(MIRROR));
+        List<ZipEntryRecord> entries = new ArrayList<>(index.getEntries());
+        entries.sort(Comparator.comparingLong(ZipEntryRecord::localHeaderOffset));
+
+        for (int i = 0; i < entries.size(); i++) {
+            ends.put(entries.get(i).name(), i + 1 < entries.size() ? entries.get(i + 1).localHeaderOffset()
+                    : index.getCentralDirectoryOffset());
+        }
+    }
+
+    /**
+     * Fetches a byte range into the cache.
+     *
+     * @param from the first byte.
+     * @param to   one past the last byte.
+     * @throws IOException if the range cannot be fetched.
+     */
+    private void fetch(long from, long to) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET()
+                .header("Range", "bytes=" + from + "-" + (to - 1)).timeout(Duration.ofMinutes(1));
+
+        if (descriptor.etag != null) {
+            request.header("If-Range", descriptor.etag);
+        }
+
+        HttpResponse<byte[]> response = send(client, request.build(), HttpResponse.BodyHandlers.ofByteArray());
+
+        if (response.statusCode() != 206 || response.body().length != to - from) {
+            throw new IOException("The server replied " + response.statusCode() + " for bytes " + from + "-"
+                    + (to - 1) + " of " + uri + ".");
+        }
+
+        write(from, response.body(), 0, response.body().length);
+        cached(from, to);
+    }
+
+    /**
+     * Returns true if all of an entry's stored bytes are cached.
+     *
+     * @param entry the entry.
+     * @return true if the entry is cached.
+     */
+    private boolean isCached(ZipEntryRecord entry) {
+        return descriptor.covers(entry.localHeaderOffset(), ends.get(entry.name()));
+    }
+
+    /**
+     * Writes bytes into the sparse copy.
+     *
+     * @param position where they go in the archive.
+     * @param bytes    the bytes.
+     * @param off      the offset in the array.
+     * @param len      the number of bytes.
+     * @throws IOException if they cannot be written.
+     */
+    private void write(long position, byte[] bytes, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, off, len);
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - off);
+        }
+    }
+
+    /**
+     * Records that a byte range is in the sparse copy and saves the descriptor. The sparse copy is forced to disk
+     * first, so that the descriptor never claims a range whose bytes a crash could have lost: cached ranges are never
+     * fetched again, so entries read from lost bytes would fail their CRC check until the cache was deleted.
+     *
+     * @param from the first byte.
+     * @param to   one past the last byte.
+     * @throws IOException if the sparse copy cannot be forced or the descriptor cannot be written.
+     */
+    private synchronized void cached(long from, long to) throws IOException {
+        channel.force(false);
+        descriptor.add(from, to);
+        writeDescriptor(dir, descriptor);
+    }
+
+    /**
+     * Empties a cache directory and starts a new sparse copy of the given size.
+     *
+     * @param dir  the cache directory.
+     * @param etag the archive's ETag, or null.
+     * @param size the size of the archive.
+     * @return the new descriptor.
+     * @throws IOException if the cache cannot be reset.
+     */
+    private static Descriptor reset(Path dir, String etag, long size) throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path path : list.toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve(MIRROR).toFile(), "rw")) {
+            file.setLength(size);
+        }
+
+        Descriptor descriptor = new Descriptor();
+        descriptor.etag = etag;
+        descriptor.size = size;
+        writeDescriptor(dir, descriptor);
+        return descriptor;
+    }
+
+    /**
+     * Reads a cache directory's descriptor.
+     *
+     * @param dir the cache directory.
+     * @return the descriptor, or null if there is no usable cache.
+     */
+    private static Descriptor readDescriptor(Path dir) {
+        try {
+            Descriptor descriptor = GSON.fromJson(Files.readString(dir.resolve(DESCRIPTOR), StandardCharsets.UTF_8),
+                    Descriptor.class);
+
+            if (descriptor == null || descriptor.ranges == null || Files.size(dir.resolve(MIRROR)) != descriptor.size) {
+                return null;
+            }
+
+            return descriptor;
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache directory's descriptor to a temporary file and renames it into place.
+     *
+     * @param dir        the cache directory.
+     * @param descriptor the descriptor.
+     * @throws IOException if it cannot be written.
+     */
+    private static void writeDescriptor(Path dir, Descriptor descriptor) throws IOException {
+        Path temp = Files.createTempFile(dir, ".cache", ".json");
+
+        try {
+            Files.writeString(temp, GSON.toJson(descriptor), StandardCharsets.UTF_8);
+            Files.move(temp, dir.resolve(DESCRIPTOR), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Returns the cache directory name for an archive address.
+     *
+     * @param uri the address.
+     * @return the start of the SHA-256 of the address, in hex.
+     */
+    private static String cacheKey(URI uri) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(uri.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a new HTTP client.
+     *
+     * @return the client.
+     */
+    private static HttpClient newClient() {
+        return HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NORMAL).build();
+    }
+
+    /**
+     * Sends a request, turning an interrupt into an {@link InterruptedIOException}.
+     *
+     * @param client  the client.
+     * @param request the request.
+     * @param handler the body handler.
+     * @param <T>     the type of the body.
+     * @return the response.
+     * @throws IOException if the request fails.
+     */
+    private static <T> HttpResponse<T> send(HttpClient client, HttpRequest request,
+                                            HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return client.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + request.uri());
+        }
+    }
+
+    /**
+     * A sample on the server, as listed.
+     */
+    public static final class Listing {
+
+        /**
+         * The sample ID.
+         */
+        private String id;
+
+        /**
+         * The sample's catalog record.
+         */
+        private SampleRecord record;
+
+        /**
+         * Returns the sample ID.
+         *
+         * @return the ID.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Returns the sample's catalog record.
+         *
+         * @return the record.
+         */
+        public SampleRecord getRecord() {
+            return record;
+        }
+
+        /**
+         * Returns a description of the sample for choosing it from a list.
+         *
+         * @return the description.
+         */
+        public String toString() {
+            if (record == null) {
+                return id;
+            }
+
+            return "Example " + record.getExampleIndex() + ", " + record.getLanguage() + ", " + record.getCountry()
+                    + " (" + id + ")";
+        }
+    }
+
+    /**
+     * What is in a cache directory: the archive's ETag and size, and the byte ranges of the sparse copy that have
+     * been fetched, sorted and merged.
+     */
+    private static final class Descriptor {
+
+        /**
+         * The archive's ETag, or null if the server gave none.
+         */
+        private String etag;
+
+        /**
+         * The size of the archive.
+         */
+        private long size;
+
+        /**
+         * The fetched ranges, as [from, to) pairs.
+         */
+        private List<long[]> ranges = new ArrayList<>();
+
+        /**
+         * Returns true if a range has been fetched.
+         *
+         * @param from the first byte.
+         * @param to   one past the last byte.
+         * @return true if every byte in the range has been fetched.
+         */
+        synchronized boolean covers(long from, long to) {
+            for (long[] range : ranges) {
+                if (range[0] <= from && to <= range[1]) {
+                    return true;
+                }
+            }
+
+            return from >= to;
+        }
+
+        /**
+         * Adds a fetched range, merging it with those it touches.
+         *
+         * @param from the first byte.
+         * @param to   one past the last byte.
+         */
+        synchronized void add(long from, long to) {
+            List<long[]> merged = new ArrayList<>();
+            long[] added = {from, to};
+
+            for (long[] range : ranges) {
+                if (range[1] < added[0] || added[1] < range[0]) {
+                    merged.add(range);
+                } else {
+                    added = new long[]{Math.min(range[0], added[0]), Math.max(range[1], added[1])};
+                }
+            }
+
+            merged.add(added);
+            merged.sort(Comparator.comparingLong(range -> range[0]));
+            ranges = merged;
+        }
+    }
+
+    /**
+     * Reads an entry's bytes from a range response and writes them into the sparse copy on the way. The range is
+     * recorded as cached as soon as its last byte has been read.
+     */
+    private class CachingStream extends InputStream {
+
+        /**
+         * The response body.
+         */
+        private final InputStream in;
+
+        /**
+         * Where the range starts in the archive.
+         */
+        private final long start;
+
+        /**
+         * The length of the range.
+         */
+        private final long length;
+
+        /**
+         * The number of bytes read.
+         */
+        private long position;
+
+        /**
+         * Whether the stream has been closed.
+         */
+        private boolean closed;
+
+        /**
+         * Constructs the stream.
+         *
+         * @param in     the response body.
+         * @param start  where the range starts in the archive.
+         * @param length the length of the range.
+         */
+        CachingStream(InputStream in, long start, long length) {
+            this.in = in;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= length) {
+                return -1;
+            }
+
+            int n = in.read(b, off, (int) Math.min(len, length - position));
+
+            if (n < 0) {
+                throw new EOFException("The server sent " + position + " of " + length + " bytes.");
+            }
+
+            write(start + position, b, off, n);
+            position += n;
+
+            if (position == length) {
+                cached(start, start + length);
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+
+                if (read < 0) {
+                    break;
+                }
+
+                skipped += read;
+            }
+
+            return skipped;
+        }
+
+        /**
+         * Returns the number of bytes of the range not yet read.
+         *
+         * @return the number of bytes.
+         */
+        long remaining() {
+            return length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * An entry's stored data within its range. When closed, a small unread remainder of the range, such as a data
+     * descriptor or bytes the inflater did not need, is read so that the entry ends up cached.
+     */
+    private static class EntryStream extends FilterInputStream {
+
+        /**
+         * The range's stream.
+         */
+        private final CachingStream raw;
+
+        /**
+         * The number of bytes of data not yet read.
+         */
+        private long remaining;
+
+        /**
+         * Constructs the stream.
+         *
+         * @param raw    the range's stream, positioned at the entry's data.
+         * @param length the number of bytes of data.
+         */
+        EntryStream(CachingStream raw, long length) {
+            super(raw);
+            this.raw = raw;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int n = raw.read(b, off, (int) Math.min(len, remaining));
+
+            if (n > 0) {
+                remaining -= n;
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = raw.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, Math.min(remaining, raw.in.available()));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (raw.remaining() <= DRAIN_LIMIT) {
+                    raw.skip(raw.remaining());
+                }
+            } finally {
+                raw.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,817 @@
+package io.github.cmuphil.earthlinguistfx.server;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.cmuphil.earthlinguistfx.catalog.SampleCatalog;
+import io.github.cmuphil.earthlinguistfx.catalog.SampleRecord;
+import io.github.cmuphil.earthlinguistfx.catalog.ShardedLayout;
+import io.github.cmuphil.earthlinguistfx.examples.Examples;
+import io.github.cmuphil.earthlinguistfx.utils.Constants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+
+/**
+ * Takes in sample archives uploaded over HTTP and stores them in a library, on the JDK's built-in HTTP server. This
+ * is what collection kiosks post their samples to, in place of saving them to a local folder.
+ * <p>
+ * An upload is a POST of the archive's bytes to '/samples'; the body may be chunked. The archive is validated as it
+ * streams in and is written to a hidden '.incoming' directory of the library; see {@link UploadValidator}. Once all
+ * of it has arrived, it is forced to disk, renamed into its shard of the library as '&lt;sample ID&gt;.zip' (see
+ * {@link ShardedLayout}) and checked again in full as it is read into the library's {@link SampleCatalog}. The
+ * sample ID is the start of the SHA-256 of the archive, so an upload that is retried after a lost response gets the
+ * same ID back and is stored once.
+ * <p>
+ * The reply is JSON: {"id": ..., "duplicate": ...} with status 201, or 200 if the archive was already stored;
+ * otherwise {"error": ...} with 400 for an invalid archive and 413 for one that is too large.
+ * <p>
+ * Over a flaky link an archive can instead be uploaded in chunks to '/uploads/&lt;SHA-256 of the archive&gt;', which
+ * can be resumed after a disconnect: a GET there says how many bytes have been received, and each chunk is PUT with
+ * its range and checksum. The received bytes are kept in '.incoming' across restarts of the server for a week. See
+ * {@link #chunk}.
+ * <p>
+ * Stored samples are listed by a GET of '/samples' and downloaded from '/samples/&lt;sample ID&gt;', with support for
+ * single byte ranges and ETags so that a listening client can read just the entries it needs; see
+ * {@link #download}.
+ * <p>
+ * Each request runs on its own virtual thread when the runtime supports them (Java 21 and later), so that many slow
+ * uploads can be open at once; otherwise on a cached pool. Catalog updates are batched and written once a second,
+ * since the archives themselves are what is durable and the catalog can be rebuilt from them. This class can be run
+ * headless; see {@link #main(String[])}.
+ *
+ * @author josephramsey
+ */
+public class IngestionServer {
+
+    /**
+     * The port used when none is given.
+     */
+    public static final int DEFAULT_PORT = 8642;
+
+    /**
+     * The largest upload accepted, in bytes.
+     */
+    public static final long MAX_UPLOAD_BYTES = 1L << 30;
+
+    /**
+     * The largest total size of an upload's entries accepted, in bytes.
+     */
+    public static final long MAX_UNCOMPRESSED_BYTES = 4L << 30;
+
+    /**
+     * The number of hex digits of the SHA-256 used as the sample ID.
+     */
+    private static final int ID_LENGTH = 32;
+
+    /**
+     * The directory of the library uploads are written to before they are complete.
+     */
+    private static final String INCOMING = ".incoming";
+
+    /**
+     * The largest chunk of a resumable upload accepted, in bytes.
+     */
+    public static final int MAX_CHUNK_BYTES = 16 << 20;
+
+    /**
+     * The suffix of the partial file of a resumable upload, named by the SHA-256 of the whole archive.
+     */
+    private static final String PART = ".part";
+
+    /**
+     * How long the partial file of a resumable upload is kept without being resumed, in milliseconds.
+     */
+    private static final long PART_EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * The path of a resumable upload.
+     */
+    private static final Pattern UPLOAD_PATH = Pattern.compile("/uploads/([0-9a-f]{64})");
+
+    /**
+     * The Content-Range header of a chunk. The numbers are limited to 18 digits so that they always fit in a long.
+     */
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d{1,18})-(\\d{1,18})/(\\d{1,18})");
+
+    /**
+     * The path of a stored archive in the library, without '.zip'. No part may start with a dot.
+     */
+    private static final Pattern SAMPLE_ID = Pattern.compile("[\\w-][\\w.-]*(/[\\w-][\\w.-]*)*");
+
+    /**
+     * A single byte range in a Range header: 'bytes=first-last', 'bytes=first-' or 'bytes=-suffix', with numbers of at
+     * most 18 digits.
+     */
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d{0,18})-(\\d{0,18})");
+
+    /**
+     * The number of connections the server lets wait to be accepted.
+     */
+    private static final int BACKLOG = 1024;
+
+    /**
+     * The JSON writer for replies.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The library directory.
+     */
+    private final Path libraryDir;
+
+    /**
+     * Where archives go in the library.
+     */
+    private final ShardedLayout layout;
+
+    /**
+     * The library's catalog.
+     */
+    private final SampleCatalog catalog;
+
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * The executor requests are handled on.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Writes batched catalog updates.
+     */
+    private final ScheduledExecutorService catalogWriter;
+
+    /**
+     * Records of stored archives waiting to be added to the catalog.
+     */
+    private final Queue<SampleRecord> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * A lock for each resumable upload in progress, by SHA-256, so that its chunks are appended one at a time.
+     */
+    private final Map<String, Object> uploadLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a server for the given library, not yet started.
+     *
+     * @param libraryDir the library directory.
+     * @param address    the address to listen on.
+     * @throws IOException if the library's catalog cannot be opened or the address cannot be bound.
+     */
+    public IngestionServer(Path libraryDir, InetSocketAddress address) throws IOException {
+        this.libraryDir = libraryDir;
+        this.layout = new ShardedLayout(libraryDir);
+        Files.createDirectories(libraryDir);
+
+        // A library written before archives were sharded is moved into shards before its catalog is opened.
+        ShardedLayout.Migration migration = layout.migrate();
+
+        if (migration.moved() > 0 || migration.skipped() > 0) {
+            System.out.println("Moved " + migration.moved() + " archive(s) into shards; " + migration.skipped()
+                    + " could not be moved.");
+        }
+
+        this.catalog = SampleCatalog.open(libraryDir);
+
+        Path incoming = libraryDir.resolve(INCOMING);
+        cleanIncoming(incoming);
+        Files.createDirectories(incoming);
+
+        // Read the bundled examples now rather than in the first upload, where every other upload would wait for it.
+        Examples.getInstance();
+
+        this.executor = newRequestExecutor();
+        this.catalogWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(address, BACKLOG);
+        this.server.createContext("/samples", this::handle);
+        this.server.createContext("/uploads/", this::handleChunked);
+        this.server.setExecutor(executor);
+    }
+
+    /**
+     * Runs an ingestion server from the command line until it is killed. The arguments are, optionally, the port,
+     * which defaults to {@link #DEFAULT_PORT}, and the library directory, which defaults to
+     * {@link Constants#LIBRARY_DIRECTORY}.
+     *
+     * @param args the arguments.
+     * @throws IOException if the server cannot be started.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 2) {
+            System.out.println("Usage: IngestionServer [<port>] [<library directory>]");
+            System.exit(1);
+        }
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Path library = Path.of(args.length > 1 ? args[1] : Constants.LIBRARY_DIRECTORY);
+        Files.createDirectories(library);
+
+        IngestionServer server = new IngestionServer(library, new InetSocketAddress(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "ingestion-shutdown"));
+        server.start();
+
+        System.out.println("Taking uploads on port " + server.getPort() + " into " + library + ".");
+    }
+
+    /**
+     * Starts taking uploads.
+     */
+    public void start() {
+        catalogWriter.scheduleWithFixedDelay(this::writeCatalog, 1, 1, TimeUnit.SECONDS);
+        server.start();
+    }
+
+    /**
+     * Stops taking uploads, waits up to a few seconds for those in progress and writes the catalog.
+     */
+    public void stop() {
+        server.stop(5);
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        catalogWriter.shutdown();
+        writeCatalog();
+    }
+
+    /**
+     * Returns the port the server is listening on, which is useful if it was started on port 0.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the library's catalog. Uploads show up in it within about a second of being stored.
+     *
+     * @return the catalog.
+     */
+    public SampleCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Handles a request to '/samples' or '/samples/&lt;sample ID&gt;'.
+     *
+     * @param exchange the exchange.
+     * @throws IOException if the reply cannot be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+
+            if (path.equals("/samples")) {
+                if (method.equals("POST")) {
+                    upload(exchange);
+                } else if (method.equals("GET")) {
+                    reply(exchange, 200, listing());
+                } else {
+                    exchange.getResponseHeaders().set("Allow", "GET, POST");
+                    reply(exchange, 405, Map.of("error", "Samples are uploaded with POST."));
+                }
+            } else if (path.startsWith("/samples/") && SAMPLE_ID.matcher(path.substring(9)).matches()) {
+                if (method.equals("GET") || method.equals("HEAD")) {
+                    download(exchange, path.substring(9));
+                } else {
+                    exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                    reply(exchange, 405, Map.of("error", "Samples are downloaded with GET."));
+                }
+            } else {
+                reply(exchange, 404, Map.of("error", "Not found: " + path));
+            }
+        }
+    }
+
+    /**
+     * Returns the catalog's records with the sample ID each can be downloaded under.
+     *
+     * @return the listing.
+     */
+    private List<Map<String, Object>> listing() {
+        List<Map<String, Object>> listing = new ArrayList<>();
+
+        for (SampleRecord record : catalog.getRecords()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            String file = record.getFile().replace('\\', '/');
+            String name = file.substring(file.lastIndexOf('/') + 1);
+
+            // Archives in their shards are downloaded by name; anything else in the library by its path.
+            item.put("id", (file.equals(ShardedLayout.relativeName(name)) ? name : file).replaceFirst("\\.zip$", ""));
+            item.put("record", record);
+            listing.add(item);
+        }
+
+        return listing;
+    }
+
+    /**
+     * Sends a stored archive, or the single byte range of it asked for, so that a client can read the central
+     * directory and then individual entries without downloading the rest. The ETag is made from the archive's size
+     * and modification time; 'If-None-Match' and 'If-Range' are honoured. A request for several ranges gets the whole
+     * archive.
+     *
+     * @param exchange the exchange.
+     * @param id       the sample ID, the archive's name without '.zip', or its path in the library if it is not in
+     *                 its shard.
+     * @throws IOException if the reply cannot be sent.
+     */
+    private void download(HttpExchange exchange, String id) throws IOException {
+        Path file = id.contains("/") ? libraryDir.resolve(id + ".zip") : layout.resolve(id + ".zip");
+        BasicFileAttributes attributes;
+
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            reply(exchange, 404, Map.of("error", "No sample " + id));
+            return;
+        }
+
+        long size = attributes.size();
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis())
+                + "\"";
+        Headers request = exchange.getRequestHeaders();
+        Headers response = exchange.getResponseHeaders();
+        response.set("ETag", etag);
+        response.set("Accept-Ranges", "bytes");
+        response.set("Content-Type", "application/zip");
+
+        String ifNoneMatch = request.getFirst("If-None-Match");
+
+        if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim).anyMatch(etag::equals))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        long first = 0;
+        long last = size - 1;
+        int status = 200;
+        String range = request.getFirst("Range");
+        String ifRange = request.getFirst("If-Range");
+        Matcher matcher = range == null ? null : RANGE.matcher(range.trim());
+
+        if (matcher != null && matcher.matches() && (ifRange == null || ifRange.trim().equals(etag))) {
+            if (matcher.group(1).isEmpty()) {
+                long suffix = matcher.group(2).isEmpty() ? 0 : Long.parseLong(matcher.group(2));
+                first = Math.max(0, size - suffix);
+            } else {
+                first = Long.parseLong(matcher.group(1));
+                last = matcher.group(2).isEmpty() ? size - 1 : Math.min(size - 1, Long.parseLong(matcher.group(2)));
+            }
+
+            if (first >= size || first > last) {
+                response.set("Content-Range", "bytes */" + size);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+
+            status = 206;
+            response.set("Content-Range", "bytes " + first + "-" + last + "/" + size);
+        }
+
+        long length = last - first + 1;
+
+        if (exchange.getRequestMethod().equals("HEAD") || length == 0) {
+            response.set("Content-Length", Long.toString(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, length);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             WritableByteChannel out = Channels.newChannel(exchange.getResponseBody())) {
+            long position = first;
+
+            while (position <= last) {
+                long sent = channel.transferTo(position, last + 1 - position, out);
+
+                if (sent <= 0) {
+                    throw new IOException("The archive " + id + " got shorter while it was being sent.");
+                }
+
+                position += sent;
+            }
+        }
+    }
+
+    /**
+     * Handles a request to '/uploads/&lt;SHA-256&gt;', the resumable upload of an archive in chunks.
+     *
+     * @param exchange the exchange.
+     * @throws IOException if the reply cannot be sent.
+     */
+    private void handleChunked(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Matcher matcher = UPLOAD_PATH.matcher(exchange.getRequestURI().getPath());
+
+            if (!matcher.matches()) {
+                reply(exchange, 404, Map.of("error", "Not found: " + exchange.getRequestURI().getPath()));
+            } else if (exchange.getRequestMethod().equals("GET")) {
+                offset(exchange, matcher.group(1));
+            } else if (exchange.getRequestMethod().equals("PUT")) {
+                chunk(exchange, matcher.group(1));
+            } else {
+                exchange.getResponseHeaders().set("Allow", "GET, PUT");
+                reply(exchange, 405, Map.of("error", "Chunks are uploaded with PUT."));
+            }
+        }
+    }
+
+    /**
+     * Receives, stores and catalogs one upload.
+     *
+     * @param exchange the exchange.
+     * @throws IOException if the reply cannot be sent.
+     */
+    private void upload(HttpExchange exchange) throws IOException {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+
+        long declared;
+
+        try {
+            declared = contentLength == null ? -1 : Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            reply(exchange, 400, Map.of("error", "The Content-Length is not valid: " + contentLength));
+            return;
+        }
+
+        if (declared > MAX_UPLOAD_BYTES) {
+            reply(exchange, 413, Map.of("error", "The upload is larger than " + MAX_UPLOAD_BYTES + " bytes."));
+            return;
+        }
+
+        Path temp = Files.createTempFile(libraryDir.resolve(INCOMING), "upload", ".zip");
+
+        try {
+            UploadValidator.Received received;
+
+            try {
+                received = UploadValidator.receive(exchange.getRequestBody(), temp, MAX_UPLOAD_BYTES,
+                        MAX_UNCOMPRESSED_BYTES);
+            } catch (UploadValidator.UploadTooLargeException e) {
+                reply(exchange, 413, Map.of("error", e.getMessage()));
+                return;
+            } catch (IllegalArgumentException | ZipException e) {
+                reply(exchange, 400, Map.of("error", e.getMessage()));
+                return;
+            }
+
+            store(exchange, temp, received);
+        } catch (IOException | RuntimeException e) {
+            failed(exchange, e);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Replies with how much of a resumable upload has been received, or with its sample ID if it has already been
+     * stored.
+     *
+     * @param exchange the exchange.
+     * @param sha256   the SHA-256 of the whole archive, which names the upload.
+     * @throws IOException if the reply cannot be sent.
+     */
+    private void offset(HttpExchange exchange, String sha256) throws IOException {
+        String id = sha256.substring(0, ID_LENGTH);
+
+        if (layout.exists(id + ".zip")) {
+            reply(exchange, 200, Map.of("id", id, "duplicate", true));
+            return;
+        }
+
+        Path part = libraryDir.resolve(INCOMING).resolve(sha256 + PART);
+        reply(exchange, 200, Map.of("offset", Files.exists(part) ? Files.size(part) : 0L));
+    }
+
+    /**
+     * Receives one chunk of a resumable upload. The request carries a 'Content-Range: bytes first-last/total' header
+     * and an 'X-Chunk-SHA256' header with the SHA-256 of the chunk. A chunk is appended only if its checksum matches
+     * and it starts where the upload so far ends; a chunk that was already received, because its reply was lost, is
+     * acknowledged again. The reply gives the offset to send from next. When the last chunk arrives the archive is
+     * checked against its SHA-256 and validated, then stored as a direct upload is.
+     *
+     * @param exchange the exchange.
+     * @param sha256   the SHA-256 of the whole archive, which names the upload.
+     * @throws IOException if the reply cannot be sent.
+     */
+    private void chunk(HttpExchange exchange, String sha256) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Content-Range");
+        String checksum = exchange.getRequestHeaders().getFirst("X-Chunk-SHA256");
+        Matcher matcher = range == null ? null : CONTENT_RANGE.matcher(range.trim());
+
+        if (matcher == null || !matcher.matches() || checksum == null) {
+            reply(exchange, 400, Map.of("error", "A chunk needs Content-Range and X-Chunk-SHA256 headers."));
+            return;
+        }
+
+        long first = Long.parseLong(matcher.group(1));
+        long last = Long.parseLong(matcher.group(2));
+        long total = Long.parseLong(matcher.group(3));
+
+        if (total > MAX_UPLOAD_BYTES || last - first + 1 > MAX_CHUNK_BYTES) {
+            reply(exchange, 413, Map.of("error", "The upload is larger than " + MAX_UPLOAD_BYTES
+                    + " bytes or the chunk larger than " + MAX_CHUNK_BYTES + " bytes."));
+            return;
+        }
+
+        if (first > last || last >= total) {
+            reply(exchange, 400, Map.of("error", "The Content-Range is not valid: " + range));
+            return;
+        }
+
+        byte[] bytes = exchange.getRequestBody().readNBytes((int) (last - first + 2));
+
+        if (bytes.length != last - first + 1) {
+            reply(exchange, 400, Map.of("error", "The chunk is " + bytes.length + " bytes but its range says "
+                    + (last - first + 1) + "."));
+            return;
+        }
+
+        Path part = libraryDir.resolve(INCOMING).resolve(sha256 + PART);
+
+        if (!sha256(bytes).equalsIgnoreCase(checksum.trim())) {
+            reply(exchange, 400, Map.of("offset", Files.exists(part) ? Files.size(part) : 0L,
+                    "error", "The chunk's checksum does not match."));
+            return;
+        }
+
+        while (true) {
+            Object lock = uploadLocks.computeIfAbsent(sha256, key -> new Object());
+
+            synchronized (lock) {
+
+                // The upload completed while this request waited, and its lock was dropped; use the current one.
+                if (uploadLocks.get(sha256) != lock) {
+                    continue;
+                }
+
+                try {
+                    long offset = Files.exists(part) ? Files.size(part) : 0;
+
+                    if (last < offset) {
+                        reply(exchange, 200, Map.of("offset", offset));
+                        return;
+                    }
+
+                    if (first != offset) {
+                        reply(exchange, 409, Map.of("offset", offset,
+                                "error", "Expecting the chunk at " + offset + "."));
+                        return;
+                    }
+
+                    try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+
+                        channel.force(false);
+                    }
+
+                    if (last + 1 < total) {
+                        reply(exchange, 200, Map.of("offset", last + 1));
+                        return;
+                    }
+
+                    complete(exchange, sha256, part);
+                } catch (IOException | RuntimeException e) {
+                    failed(exchange, e);
+                }
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * Validates and stores a resumable upload whose last chunk has arrived. The partial file is deleted if the
+     * archive is rejected, so the client has to start again. This is called holding the upload's lock, which is
+     * dropped here before it is released, so that a request waiting for it knows to take a new one.
+     *
+     * @param exchange the exchange.
+     * @param sha256   the SHA-256 the archive should have.
+     * @param part     the received archive.
+     * @throws IOException if the archive cannot be read or stored.
+     */
+    private void complete(HttpExchange exchange, String sha256, Path part) throws IOException {
+        try {
+            UploadValidator.Received received;
+
+            try {
+                received = UploadValidator.check(part, MAX_UNCOMPRESSED_BYTES);
+            } catch (UploadValidator.UploadTooLargeException e) {
+                reply(exchange, 413, Map.of("error", e.getMessage()));
+                return;
+            } catch (IllegalArgumentException | ZipException e) {
+                reply(exchange, 400, Map.of("error", e.getMessage()));
+                return;
+            }
+
+            if (!received.sha256().equals(sha256)) {
+                reply(exchange, 400, Map.of("error", "The archive's SHA-256 is " + received.sha256() + "."));
+                return;
+            }
+
+            store(exchange, part, received);
+        } finally {
+            Files.deleteIfExists(part);
+            uploadLocks.remove(sha256);
+        }
+    }
+
+    /**
+     * Moves a received and validated archive into the library under its sample ID, reads it into the catalog and
+     * replies with the ID.
+     *
+     * @param exchange the exchange.
+     * @param received the archive, on disk in the incoming directory.
+     * @param details  what was received.
+     * @throws IOException if the archive cannot be stored or the reply cannot be sent.
+     */
+    private void store(HttpExchange exchange, Path received, UploadValidator.Received details) throws IOException {
+        String id = details.sha256().substring(0, ID_LENGTH);
+        String file = ShardedLayout.relativeName(id + ".zip");
+        Path target = layout.prepare(id + ".zip");
+
+        synchronized (this) {
+            if (Files.exists(target)) {
+                reply(exchange, 200, Map.of("id", id, "duplicate", true));
+                return;
+            }
+
+            Files.move(received, target, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(target.getParent());
+        }
+
+        try {
+            pending.add(SampleCatalog.read(target, file));
+        } catch (IllegalArgumentException e) {
+            Files.deleteIfExists(target);
+            reply(exchange, 400, Map.of("error", e.getMessage()));
+            return;
+        }
+
+        reply(exchange, 201, Map.of("id", id, "duplicate", false));
+    }
+
+    /**
+     * Logs an upload that could not be stored and tries to tell the client.
+     *
+     * @param exchange the exchange.
+     * @param e        what went wrong.
+     */
+    private static void failed(HttpExchange exchange, Exception e) {
+        System.out.println("Could not store an upload: " + e.getMessage());
+
+        try {
+            reply(exchange, 500, Map.of("error", "The upload could not be stored: " + e.getMessage()));
+        } catch (IOException ignored) {
+            // The client has gone.
+        }
+    }
+
+    /**
+     * Adds the records of archives stored since the last call to the catalog.
+     */
+    private void writeCatalog() {
+        List<SampleRecord> records = new ArrayList<>();
+        SampleRecord record;
+
+        while ((record = pending.poll()) != null) {
+            records.add(record);
+        }
+
+        try {
+            catalog.putAll(records);
+        } catch (IOException e) {
+            System.out.println("Could not save the catalog; it will be rebuilt on the next scan. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a JSON reply. Whatever is left of the request body is discarded when the exchange is closed.
+     *
+     * @param exchange the exchange.
+     * @param status   the status code.
+     * @param body     the reply, to be written as JSON.
+     * @throws IOException if the reply cannot be sent.
+     */
+    private static void reply(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task if the runtime has them, otherwise a cached pool.
+     * This is looked up reflectively so that the project still builds for Java 17.
+     *
+     * @return the executor.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "ingestion");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Forces a directory's entries to disk, so that a rename into it survives a crash. Some platforms cannot open a
+     * directory for this, in which case the rename is left to the file system.
+     *
+     * @param dir the directory.
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // Not supported here.
+        }
+    }
+
+    /**
+     * Returns the SHA-256 of some bytes, in hex.
+     *
+     * @param bytes the bytes.
+     * @return the SHA-256.
+     */
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Deletes uploads cut off when the server last stopped, keeping the partial files of resumable uploads unless
+     * they have been abandoned.
+     *
+     * @param dir the incoming directory.
+     * @throws IOException if something cannot be deleted.
+     */
+    private static void cleanIncoming(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - PART_EXPIRY_MILLIS;
+
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path path : list.toList()) {
+                if (!path.getFileName().toString().endsWith(PART)
+                        || Files.getLastModifiedTime(path).toMillis() < cutoff) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+}
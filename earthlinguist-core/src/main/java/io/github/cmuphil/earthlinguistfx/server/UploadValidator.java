@@ -0,0 +1,467 @@
+package io.github.cmuphil.earthlinguistfx.server;
+
+import io.github.cmuphil.earthlinguistfx.audio.WavValidator;
+import io.github.cmuphil.earthlinguistfx.data.TableData;
+import io.github.cmuphil.earthlinguistfx.examples.Examples;
+import io.github.cmuphil.earthlinguistfx.state.AppState;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Receives one uploaded sample archive, writing it to a file while checking it as the bytes arrive. The archive is
+ * read entry by entry as it streams in: entry names, the 'state.json' and the clips' WAV headers are checked as soon
+ * as each entry arrives, and every entry's CRC is checked when it ends, so a bad upload is rejected without waiting
+ * for the rest of it. The file is forced to disk before {@link #receive} returns, and the SHA-256 of the bytes is
+ * computed on the way through.
+ * <p>
+ * What this checks matches {@link io.github.cmuphil.earthlinguistfx.catalog.SampleValidator}: a 'state.json' plus
+ * 'clip.N.wav' files for columns of the sample's example, and nothing else.
+ *
+ * @author josephramsey
+ */
+final class UploadValidator {
+
+    /**
+     * The names clips have in an archive.
+     */
+    private static final Pattern CLIP_NAME = Pattern.compile("clip\\.(\\d+)\\.wav");
+
+    /**
+     * The largest 'state.json' accepted, in bytes.
+     */
+    private static final int MAX_STATE_BYTES = 1 << 20;
+
+    /**
+     * The most entries an archive may have.
+     */
+    private static final int MAX_ENTRIES = 1024;
+
+    /**
+     * The buffer size for copying.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Prevents instantiation.
+     */
+    private UploadValidator() {
+    }
+
+    /**
+     * Reads an upload to its end, writing it to the given file and validating it on the way.
+     *
+     * @param body            the request body.
+     * @param target          the file to write; it is truncated first.
+     * @param maxBytes        the largest upload accepted, in bytes.
+     * @param maxUncompressed the largest total size of the archive's entries accepted, in bytes.
+     * @return what was received.
+     * @throws IOException              if the upload cannot be read or written.
+     * @throws IllegalArgumentException if the upload is not a valid sample archive; the message says why.
+     * @throws UploadTooLargeException  if the upload or its contents are larger than allowed.
+     */
+    static Received receive(InputStream body, Path target, long maxBytes, long maxUncompressed) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            TeeInputStream tee = new TeeInputStream(body, Channels.newOutputStream(channel), maxBytes);
+            AppState appState = validate(tee, maxUncompressed);
+
+            // The central directory follows the last entry; it is kept but not parsed here.
+            tee.drain();
+            tee.flush();
+            channel.force(true);
+
+            return new Received(HexFormat.of().formatHex(tee.digest.digest()), tee.count, appState);
+        }
+    }
+
+    /**
+     * Validates an archive that has already been received in full, as when a resumable upload completes.
+     *
+     * @param file            the archive.
+     * @param maxUncompressed the largest total size of the archive's entries accepted, in bytes.
+     * @return what was received.
+     * @throws IOException              if the archive cannot be read.
+     * @throws IllegalArgumentException if it is not a valid sample archive; the message says why.
+     * @throws UploadTooLargeException  if its contents are larger than allowed.
+     */
+    static Received check(Path file, long maxUncompressed) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            TeeInputStream tee = new TeeInputStream(in, OutputStream.nullOutputStream(), Long.MAX_VALUE);
+            AppState appState = validate(tee, maxUncompressed);
+            tee.drain();
+
+            return new Received(HexFormat.of().formatHex(tee.digest.digest()), tee.count, appState);
+        }
+    }
+
+    /**
+     * Reads the entries of an archive as they arrive and checks them.
+     *
+     * @param in              the archive's bytes.
+     * @param maxUncompressed the largest total size of the archive's entries accepted, in bytes.
+     * @return the sample's app state.
+     * @throws IOException if the archive cannot be read or an entry's CRC does not match.
+     */
+    private static AppState validate(InputStream in, long maxUncompressed) throws IOException {
+        ZipInputStream zis = new ZipInputStream(in, StandardCharsets.UTF_8);
+        Set<String> names = new HashSet<>();
+        Set<Integer> clips = new HashSet<>();
+        AppState appState = null;
+        long uncompressed = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ZipEntry entry;
+
+        while ((entry = zis.getNextEntry()) != null) {
+            String name = entry.getName();
+
+            if (!names.add(name)) {
+                throw new IllegalArgumentException("The archive has two entries named " + name + ".");
+            }
+
+            if (names.size() > MAX_ENTRIES) {
+                throw new IllegalArgumentException("The archive has more than " + MAX_ENTRIES + " entries.");
+            }
+
+            CountingInputStream entryIn = new CountingInputStream(zis, maxUncompressed - uncompressed);
+
+            if (name.equals("state.json")) {
+                byte[] json = entryIn.readNBytes(MAX_STATE_BYTES + 1);
+
+                if (json.length > MAX_STATE_BYTES) {
+                    throw new IllegalArgumentException("The state.json is larger than " + MAX_STATE_BYTES + " bytes.");
+                }
+
+                appState = parseState(json);
+
+                for (int clip : clips) {
+                    checkClipNumber(appState, clip);
+                }
+            } else {
+                Matcher matcher = CLIP_NAME.matcher(name);
+
+                if (entry.isDirectory() || !matcher.matches()) {
+                    throw new IllegalArgumentException("The archive holds something other than a state.json and "
+                            + "clip.N.wav files: " + name);
+                }
+
+                int clip = Integer.parseInt(matcher.group(1));
+
+                if (appState != null) {
+                    checkClipNumber(appState, clip);
+                }
+
+                clips.add(clip);
+
+                // The size is known when the writer put it in the local header; otherwise the length check is left
+                // to the full check once the archive is stored.
+                long length = entry.getSize() >= 0 ? entry.getSize() : Long.MAX_VALUE;
+                WavValidator.Report report = WavValidator.validate(name, entryIn, length);
+
+                if (!report.valid()) {
+                    throw new IllegalArgumentException("The archive contains a clip that is not a valid audio clip: "
+                            + report.name() + " " + report.message() + ".");
+                }
+            }
+
+            // Read the rest of the entry, which checks its CRC.
+            while (entryIn.read(buffer) != -1) {
+                // The bytes are only counted.
+            }
+
+            uncompressed += entryIn.count;
+        }
+
+        if (appState == null) {
+            throw new IllegalArgumentException("I was expecting a state.json file plus a number of clip.wav files.");
+        }
+
+        return appState;
+    }
+
+    /**
+     * Parses the 'state.json' of an upload and checks that its example exists in the example set it names.
+     *
+     * @param json the bytes of the 'state.json'.
+     * @return the app state.
+     */
+    private static AppState parseState(byte[] json) {
+        AppState appState;
+
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)) {
+            appState = AppState.fromJson(reader);
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException("Could not parse app state: " + e.getMessage());
+        }
+
+        getExample(appState);
+        return appState;
+    }
+
+    /**
+     * Returns the sample's example, from the example set the sample names.
+     *
+     * @param appState the sample's app state.
+     * @return the example.
+     * @throws IllegalArgumentException if there is no such set or no such example in it.
+     */
+    private static TableData getExample(AppState appState) {
+        return Examples.getInstance().getExampleSet(appState.getSelectedExampleSet())
+                .getExample(appState.getSelectedIndex());
+    }
+
+    /**
+     * Checks that a clip is for a column of the sample's example.
+     *
+     * @param appState the sample's app state.
+     * @param clip     the clip number, N in 'clip.N.wav'.
+     */
+    private static void checkClipNumber(AppState appState, int clip) {
+        int numColumns = getExample(appState).getNumColumns();
+
+        if (clip < 1 || clip > numColumns) {
+            throw new IllegalArgumentException("The archive contains a clip that is not for a column in the given "
+                    + "example, clip." + clip + ".wav");
+        }
+    }
+
+    /**
+     * What was received.
+     *
+     * @param sha256   the SHA-256 of the upload, in hex.
+     * @param size     the size of the upload in bytes.
+     * @param appState the sample's app state.
+     */
+    record Received(String sha256, long size, AppState appState) {
+    }
+
+    /**
+     * Thrown when an upload or its contents are larger than allowed.
+     */
+    static class UploadTooLargeException extends IllegalArgumentException {
+
+        /**
+         * The serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs the exception.
+         *
+         * @param message what was too large.
+         */
+        UploadTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Passes the bytes read from a stream on to an output stream and a digest, failing once more than a given number
+     * of bytes have been read.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+
+        /**
+         * Where the bytes are copied to.
+         */
+        private final OutputStream out;
+
+        /**
+         * The largest number of bytes allowed.
+         */
+        private final long maxBytes;
+
+        /**
+         * The digest of the bytes read.
+         */
+        private final MessageDigest digest;
+
+        /**
+         * The number of bytes read.
+         */
+        private long count;
+
+        /**
+         * Constructs the stream.
+         *
+         * @param in       the stream read from.
+         * @param out      where the bytes are copied to; it is not closed.
+         * @param maxBytes the largest number of bytes allowed.
+         */
+        TeeInputStream(InputStream in, OutputStream out, long maxBytes) {
+            super(in);
+            this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+            this.maxBytes = maxBytes;
+
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+
+            if (n > 0) {
+                count += n;
+
+                if (count > maxBytes) {
+                    throw new UploadTooLargeException("The upload is larger than " + maxBytes + " bytes.");
+                }
+
+                out.write(b, off, n);
+                digest.update(b, off, n);
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            long skipped = 0;
+
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+
+                if (read == -1) {
+                    break;
+                }
+
+                skipped += read;
+            }
+
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Reads the rest of the stream.
+         *
+         * @throws IOException if the stream cannot be read.
+         */
+        void drain() throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            while (read(buffer, 0, buffer.length) != -1) {
+                // The bytes are copied as they are read.
+            }
+        }
+
+        /**
+         * Writes out the bytes copied so far.
+         *
+         * @throws IOException if they cannot be written.
+         */
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Does not close the request body; the server does that when the exchange is closed.
+         */
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Counts the bytes read from one entry of a zip stream, failing once more than a given number have been read so
+     * that a small archive cannot inflate without end. It does not close the zip stream when closed.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        /**
+         * The largest number of bytes allowed.
+         */
+        private final long limit;
+
+        /**
+         * The number of bytes read.
+         */
+        private long count;
+
+        /**
+         * Constructs the stream.
+         *
+         * @param in    the zip stream, positioned at the start of an entry.
+         * @param limit the largest number of bytes allowed.
+         */
+        CountingInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+
+            if (b != -1) {
+                counted(1);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, (int) Math.min(len, limit - count + 1));
+
+            if (n > 0) {
+                counted(n);
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, limit - count + 1));
+            counted(skipped);
+            return skipped;
+        }
+
+        /**
+         * Adds to the count.
+         *
+         * @param n the number of bytes read or skipped.
+         */
+        private void counted(long n) {
+            count += n;
+
+            if (count > limit) {
+                throw new UploadTooLargeException("The archive's contents are larger than allowed.");
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,15 +1,24 @@
-package io.github.cmuphil.earthlinguistfx.ui;
+package io.github.cmuphil.earthlinguistfx.state;
 
 import com.google.gson.Gson;
-import io.github.cmuphil.earthlinguistfx.utils.UiUtils;
+import io.github.cmuphil.earthlinguistfx.examples.Examples;
+import io.github.cmuphil.earthlinguistfx.utils.Constants;
+
+import io.github.cmuphil.earthlinguistfx.storage.Storage;
+import io.github.cmuphil.earthlinguistfx.storage.StorageBackend;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 
 /**
  * Represents the state of the application. There is a separate state for listening and recording.
@@ -18,11 +27,27 @@ import java.util.Objects;
  */
 public class AppState {
 
+    /**
+     * The JSON serializer. Gson instances are thread-safe, so one is shared.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The name of the file the state is kept in, in a workspace or sample.
+     */
+    public static final String STATE_FILE = "state.json";
+
     /**
      * The name of the selected example.
      */
     private final String selectedExampleName = "";
 
+    /**
+     * The name of the example set the selected example is in. State saved before there were example sets has none,
+     * and its example is in the built-in set.
+     */
+    private String selectedExampleSet = Examples.BUILT_IN;
+
     /**
      * The index of the selected example.
      */
@@ -68,6 +93,12 @@ public class AppState {
      */
     private int numColumns = 0;
 
+    /**
+     * The SHA-256 digest of each clip, by clip file name, as recorded in the clip store. Missing from state saved by
+     * older versions.
+     */
+    private Map<String, String> clipDigests = new TreeMap<>();
+
     public AppState() {
         setNumColumns(0);
     }
@@ -93,17 +124,41 @@ public class AppState {
             }
         }
 
-        if (!new File(dir, "state.json").exists()) {
+        StorageBackend backend = Storage.getInstance().forDirectory(Path.of(dir));
+
+        if (!backend.exists(STATE_FILE)) {
             toJson(appState, dir);
             return appState;
         }
 
-        Gson gson = new Gson();
+        return fromJson(backend);
+    }
 
-        AppState appState1;
+    /**
+     * Reads an AppState from the 'state.json' file in a storage backend, such as a sample on the ingestion server.
+     *
+     * @param backend the backend.
+     * @return the AppState object.
+     * @throws java.io.FileNotFoundException if there is no 'state.json'.
+     * @throws IOException                   if it cannot be read.
+     * @throws IllegalStateException         if it cannot be parsed.
+     */
+    public static AppState fromJson(StorageBackend backend) throws IOException {
+        try (Reader reader = new InputStreamReader(backend.open(STATE_FILE), StandardCharsets.UTF_8)) {
+            return fromJson(reader);
+        }
+    }
 
-        try (FileReader reader = new FileReader(new File(dir, "state.json"))) {
-            appState1 = gson.fromJson(reader, AppState.class);
+    /**
+     * Reads an AppState object from the given JSON, filling in annotations missing from older files.
+     *
+     * @param reader the reader of the JSON; it is not closed.
+     * @return the AppState object.
+     * @throws IllegalStateException if the JSON cannot be parsed.
+     */
+    public static AppState fromJson(Reader reader) {
+        try {
+            AppState appState1 = GSON.fromJson(reader, AppState.class);
 
             if ("Chair Example".equals(appState1.getSelectedExampleName())) {
                 appState1.setSelectedIndex(1);
@@ -135,9 +190,9 @@ public class AppState {
 
     /**
      * Saves the AppState object to a file named 'state.json' in the specified directory. If the directory does not
-     * exist, attempts to create it. Displays an error alert if the directory cannot be created. The AppState's
-     * timestamp is updated to the current date and time before serialization. Throws a RuntimeException if an error
-     * occurs during file writing.
+     * exist, attempts to create it. The AppState's timestamp is updated to the current date and time before
+     * serialization. The file is written to a temporary file and renamed into place, replacing any write still pending
+     * for the directory in the {@link StatePersister}.
      *
      * @param appState the AppState object to be saved.
      * @param dir      the directory where the 'state.json' file will be saved. If the directory does not exist, it will
@@ -145,22 +200,18 @@ public class AppState {
      * @throws IOException if an error occurs during file writing.
      */
     public static void toJson(AppState appState, String dir) throws IOException {
-        if (!new File(dir).exists()) {
-            if (!new File(dir).mkdirs()) {
-                if (!new File(dir).mkdirs()) {
-                    throw new IOException("Error creating directory: " + dir);
-                }
-            }
-        }
+        StatePersister.getInstance().writeNow(dir, toJsonString(appState));
+    }
 
-        try (FileWriter writer = new FileWriter(new File(dir, "state.json"), StandardCharsets.UTF_8)) {
-            Gson gson = new Gson();
-            appState.setTimeStamp(UiUtils.formatCurrentDateTime());
-            String json = gson.toJson(appState);
-            writer.write(json);
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
+    /**
+     * Returns the AppState as JSON, first updating its timestamp to the current date and time.
+     *
+     * @param appState the AppState object.
+     * @return the JSON.
+     */
+    public static String toJsonString(AppState appState) {
+        appState.setTimeStamp(Constants.FORMATTER.format(LocalDateTime.now()));
+        return GSON.toJson(appState);
     }
 
     /**
@@ -172,6 +223,28 @@ public class AppState {
         return selectedExampleName;
     }
 
+    /**
+     * Returns the name of the example set the selected example is in.
+     *
+     * @return the name of the set.
+     */
+    public String getSelectedExampleSet() {
+        return selectedExampleSet == null || selectedExampleSet.isBlank() ? Examples.BUILT_IN : selectedExampleSet;
+    }
+
+    /**
+     * Sets the name of the example set the selected example is in.
+     *
+     * @param selectedExampleSet the name of the set.
+     */
+    public void setSelectedExampleSet(String selectedExampleSet) {
+        if (selectedExampleSet == null || selectedExampleSet.isBlank()) {
+            throw new IllegalArgumentException("An example set must have a name.");
+        }
+
+        this.selectedExampleSet = selectedExampleSet;
+    }
+
     /**
      * Returns the index of the selected example.
      *
@@ -359,6 +432,24 @@ public class AppState {
         this.timeStamp = Objects.requireNonNullElse(timeStamp, "");
     }
 
+    /**
+     * Returns the SHA-256 digest of each clip, by clip file name. Empty if the digests are not known.
+     *
+     * @return the clip digests.
+     */
+    public Map<String, String> getClipDigests() {
+        return clipDigests == null ? Map.of() : Collections.unmodifiableMap(clipDigests);
+    }
+
+    /**
+     * Sets the SHA-256 digest of each clip, by clip file name.
+     *
+     * @param clipDigests the clip digests.
+     */
+    public void setClipDigests(Map<String, String> clipDigests) {
+        this.clipDigests = new TreeMap<>(clipDigests);
+    }
+
     /**
      * Returns the string representation of the app state.
      *
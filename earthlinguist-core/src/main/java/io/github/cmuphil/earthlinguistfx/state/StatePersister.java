@@ -0,0 +1,191 @@
+package io.github.cmuphil.earthlinguistfx.state;
+
+import io.github.cmuphil.earthlinguistfx.storage.Storage;
+import io.github.cmuphil.earthlinguistfx.utils.Constants;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Writes AppState 'state.json' files in the background. Changes submitted for the same directory within the write
+ * delay are coalesced into a single write of the latest state, and the write happens on a background thread rather
+ * than the caller's. Each write goes to a temporary file that is then atomically renamed over 'state.json', so a
+ * reader never sees a half-written file.
+ * <p>
+ * Pending writes can be flushed synchronously, which should be done before a directory is archived, copied or the
+ * application exits, and discarded, which should be done before a directory's contents are replaced. This class is a
+ * singleton.
+ *
+ * @author josephramsey
+ */
+public class StatePersister {
+
+    /**
+     * Singleton pattern.
+     */
+    private static final StatePersister instance = new StatePersister(Constants.STATE_WRITE_DELAY_MILLIS);
+
+    /**
+     * The JSON waiting to be written, by directory.
+     */
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+
+    /**
+     * The thread writes are done on.
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "state-persister");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The number of milliseconds changes are collected for before they are written.
+     */
+    private volatile long delayMillis;
+
+    /**
+     * Called with any error from a background write.
+     */
+    private volatile Consumer<IOException> errorHandler = e ->
+            System.out.println("There was a problem saving the app state. " + "\n" + e.getMessage());
+
+    /**
+     * Constructs the singleton instance.
+     *
+     * @param delayMillis the write delay in milliseconds.
+     */
+    private StatePersister(long delayMillis) {
+        setDelayMillis(delayMillis);
+    }
+
+    /**
+     * Singleton pattern.
+     *
+     * @return the singleton instance.
+     */
+    public static StatePersister getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the number of milliseconds changes are collected for before they are written.
+     *
+     * @param delayMillis the write delay in milliseconds. Must be >= 0.
+     */
+    public void setDelayMillis(long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("The write delay must be >= 0: " + delayMillis);
+        }
+
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Sets the handler called with any error from a background write. The handler is called on the background
+     * thread.
+     *
+     * @param errorHandler the error handler.
+     */
+    public void setErrorHandler(Consumer<IOException> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Schedules the given state to be written to 'state.json' in the given directory. The state is captured now, so
+     * later changes to it are only written if they are submitted too.
+     *
+     * @param appState the app state.
+     * @param dir      the directory.
+     */
+    public void submit(AppState appState, String dir) {
+        String json = AppState.toJsonString(appState);
+
+        if (pending.put(dir, json) == null) {
+            scheduler.schedule(() -> {
+                try {
+                    flush(dir);
+                } catch (IOException e) {
+                    errorHandler.accept(e);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the given JSON to 'state.json' in the given directory now, replacing anything pending for it.
+     *
+     * @param dir  the directory.
+     * @param json the JSON.
+     * @throws IOException if the file could not be written.
+     */
+    public synchronized void writeNow(String dir, String json) throws IOException {
+        pending.remove(dir);
+        write(dir, json);
+    }
+
+    /**
+     * Writes any pending state for the given directory now.
+     *
+     * @param dir the directory.
+     * @throws IOException if the file could not be written.
+     */
+    public synchronized void flush(String dir) throws IOException {
+        String json = pending.remove(dir);
+
+        if (json != null) {
+            write(dir, json);
+        }
+    }
+
+    /**
+     * Writes all pending state now.
+     *
+     * @throws IOException if a file could not be written. The remaining directories are still written.
+     */
+    public synchronized void flushAll() throws IOException {
+        IOException error = null;
+
+        for (String dir : pending.keySet()) {
+            try {
+                flush(dir);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Drops any pending state for the given directory without writing it.
+     *
+     * @param dir the directory.
+     */
+    public synchronized void discard(String dir) {
+        pending.remove(dir);
+    }
+
+    /**
+     * Writes the JSON over 'state.json' through the directory's storage backend; a workspace's backend writes it to a
+     * temporary file beside the directory, so that a leftover never makes the directory invalid, and renames it into
+     * place.
+     *
+     * @param dir  the directory.
+     * @param json the JSON.
+     * @throws IOException if the file could not be written.
+     */
+    private static void write(String dir, String json) throws IOException {
+        Storage.getInstance().forDirectory(Path.of(dir)).write(AppState.STATE_FILE,
+                json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,259 @@
+package io.github.cmuphil.earthlinguistfx.storage;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Keeps each file as an ordinary file under a root directory, at the path its key names. This is how the app has
+ * always kept its files; the root can be put wherever suits, such as scratch on a tmpfs or the library on a fast SSD.
+ * <p>
+ * A write goes to a temporary file beside the root, not inside it, and is renamed into place, so a crash never leaves
+ * a partial file or a stray temporary file in the root, where it might be taken for part of a sample. Hidden files,
+ * by the leading-dot convention, are not listed.
+ *
+ * @author josephramsey
+ */
+public class DirectoryBackend implements StorageBackend {
+
+    /**
+     * The root directory.
+     */
+    private final Path root;
+
+    /**
+     * Constructs a backend over the given root directory, which is created when the first file is written.
+     *
+     * @param root the root directory.
+     */
+    public DirectoryBackend(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns true if there is a regular file at the key's path.
+     *
+     * @param key the key.
+     * @return true if it exists.
+     */
+    @Override
+    public boolean exists(String key) {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    /**
+     * Returns the size of the file at the key's path in bytes.
+     *
+     * @param key the key.
+     * @return the size.
+     * @throws FileNotFoundException if there is no such file.
+     * @throws IOException           if its size cannot be read.
+     */
+    @Override
+    public long size(String key) throws IOException {
+        try {
+            return Files.size(resolve(key));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("No file " + key + " in " + root);
+        }
+    }
+
+    /**
+     * Opens the file at the key's path for reading.
+     *
+     * @param key the key.
+     * @return a stream over its contents.
+     * @throws FileNotFoundException if there is no such file.
+     * @throws IOException           if it cannot be opened.
+     */
+    @Override
+    public InputStream open(String key) throws IOException {
+        try {
+            return Files.newInputStream(resolve(key));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("No file " + key + " in " + root);
+        }
+    }
+
+    /**
+     * Writes the file to a temporary file beside the root and renames it into place, atomically if the file system
+     * allows, creating any directories the key names.
+     *
+     * @param key  the key.
+     * @param data its contents, read to the end; the stream is not closed.
+     * @throws IOException if it cannot be written.
+     */
+    @Override
+    public void write(String key, InputStream data) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path parent = root.getParent() == null ? root : root.getParent();
+        Path temp = Files.createTempFile(parent, "." + root.getFileName() + ".", ".tmp");
+
+        try {
+            Files.copy(data, temp, StandardCopyOption.REPLACE_EXISTING);
+
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Deletes the file at the key's path, if it exists. Directories left empty are not deleted.
+     *
+     * @param key the key.
+     * @throws IOException if it cannot be deleted.
+     */
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    /**
+     * Returns the keys of the regular files under the root that start with the given prefix, skipping hidden files
+     * and directories.
+     *
+     * @param prefix the prefix; "" for every file.
+     * @return the keys, in order.
+     * @throws IOException if the root cannot be walked.
+     */
+    @Override
+    public List<String> list(String prefix) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+
+        List<String> keys = new ArrayList<>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            /**
+             * Skips hidden directories.
+             *
+             * @param dir   the directory.
+             * @param attrs its attributes.
+             * @return whether to walk into it.
+             */
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return !dir.equals(root) && dir.getFileName().toString().startsWith(".")
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            /**
+             * Adds the key of a file that is not hidden and starts with the prefix.
+             *
+             * @param file  the file.
+             * @param attrs its attributes.
+             * @return to carry on.
+             */
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !file.getFileName().toString().startsWith(".")) {
+                    String key = keyOf(file);
+
+                    if (key.startsWith(prefix)) {
+                        keys.add(key);
+                    }
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Deletes the files whose keys start with the given prefix, and then any directories left empty.
+     *
+     * @param prefix the prefix; "" for every file.
+     * @throws IOException if a file cannot be deleted.
+     */
+    @Override
+    public void deleteAll(String prefix) throws IOException {
+        StorageBackend.super.deleteAll(prefix);
+
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            /**
+             * Deletes a directory under the root that is now empty.
+             *
+             * @param dir the directory.
+             * @param e   any error walking it.
+             * @return to carry on.
+             * @throws IOException if it cannot be deleted.
+             */
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (!dir.equals(root)) {
+                    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                        if (!entries.iterator().hasNext()) {
+                            Files.delete(dir);
+                        }
+                    }
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Returns the root directory.
+     *
+     * @return the root directory.
+     */
+    @Override
+    public Path getDirectory() {
+        return root;
+    }
+
+    /**
+     * Nothing to close.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns the path of a key.
+     *
+     * @param key the key.
+     * @return the path.
+     * @throws IllegalArgumentException if the key is not valid.
+     */
+    private Path resolve(String key) {
+        return root.resolve(StorageBackend.checkKey(key));
+    }
+
+    /**
+     * Returns the key of a file under the root.
+     *
+     * @param file the file.
+     * @return the key.
+     */
+    private String keyOf(Path file) {
+        StringJoiner joiner = new StringJoiner("/");
+
+        for (Path part : root.relativize(file)) {
+            joiner.add(part.toString());
+        }
+
+        return joiner.toString();
+    }
+}
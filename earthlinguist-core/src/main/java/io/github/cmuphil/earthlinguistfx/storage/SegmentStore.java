@@ -0,0 +1,672 @@
+package io.github.cmuphil.earthlinguistfx.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps files in a single append-only file, for many small files such as images and JSON sidecars, which as ordinary
+ * files would each cost an inode and a round of metadata updates to create, list and delete.
+ * <p>
+ * The store file starts with a header and then holds one record per write or delete: a put record carries the key and
+ * the whole file, a delete record just the key, and each ends with a CRC-32. The latest record for a key wins. The
+ * keys are indexed in memory, by where their contents are in the store file, so reads are a single positional read.
+ * <p>
+ * Opening the store rebuilds the index by scanning the records. To keep that quick, closing the store forces it to
+ * disk and writes the index to a sidecar file, '&lt;store&gt;.idx', with how much of the store file it covers; since
+ * records are only ever appended, the next open can load it and scan only the records after that, even if the store
+ * was not closed cleanly since. A record cut short by a crash fails its check and is truncated away, along with
+ * anything after it. Writes are not forced to disk one by one; call {@link #sync()} where that matters.
+ * <p>
+ * Replaced and deleted files leave dead records behind. {@link #compact()} copies the live ones to a new store file
+ * and renames it into place; it is done on close when more than half the store file is dead.
+ *
+ * @author josephramsey
+ */
+public class SegmentStore implements StorageBackend {
+
+    /**
+     * The start of every store file.
+     */
+    private static final long FILE_MAGIC = 0x454C5345474D3031L;
+
+    /**
+     * The start of every index sidecar.
+     */
+    private static final long INDEX_MAGIC = 0x454C534547494458L;
+
+    /**
+     * The size of the file header: the magic number and the generation.
+     */
+    private static final int FILE_HEADER = 16;
+
+    /**
+     * The size of a record header: the type, the key length and the value length.
+     */
+    private static final int RECORD_HEADER = 9;
+
+    /**
+     * The size of a record trailer: the CRC-32.
+     */
+    private static final int RECORD_TRAILER = 4;
+
+    /**
+     * The record type of a write.
+     */
+    private static final byte PUT = 1;
+
+    /**
+     * The record type of a delete.
+     */
+    private static final byte DELETE = 2;
+
+    /**
+     * The largest key, in UTF-8 bytes.
+     */
+    private static final int MAX_KEY = 4096;
+
+    /**
+     * The largest file the store keeps.
+     */
+    private static final int MAX_VALUE = Integer.MAX_VALUE - 64;
+
+    /**
+     * The fewest dead bytes worth compacting on close.
+     */
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+    /**
+     * The store file.
+     */
+    private final Path file;
+
+    /**
+     * The index sidecar.
+     */
+    private final Path indexFile;
+
+    /**
+     * The channel of the store file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Identifies the store file, so that an index sidecar left from a store file since replaced is not used.
+     */
+    private long generation;
+
+    /**
+     * Where each live file's contents are in the store file, by key.
+     */
+    private final TreeMap<String, Slot> index = new TreeMap<>();
+
+    /**
+     * The end of the last good record; where the next record goes.
+     */
+    private long end;
+
+    /**
+     * The number of bytes in the store file taken by records that have been replaced or deleted.
+     */
+    private long dead;
+
+    /**
+     * Whether the store has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a store over the given file; see {@link #open(Path)}.
+     *
+     * @param file the store file.
+     */
+    private SegmentStore(Path file) {
+        this.file = file.toAbsolutePath();
+        this.indexFile = this.file.resolveSibling(this.file.getFileName() + ".idx");
+    }
+
+    /**
+     * Opens the store in the given file, creating it if it does not exist, and indexes it.
+     *
+     * @param file the store file.
+     * @return the store.
+     * @throws IOException if the file cannot be created or is not a store file.
+     */
+    public static SegmentStore open(Path file) throws IOException {
+        SegmentStore store = new SegmentStore(file);
+        Files.createDirectories(store.file.getParent());
+        store.channel = FileChannel.open(store.file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            store.load();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            store.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the index has the key.
+     *
+     * @param key the key.
+     * @return true if it exists.
+     */
+    @Override
+    public synchronized boolean exists(String key) {
+        return index.containsKey(StorageBackend.checkKey(key));
+    }
+
+    /**
+     * Returns the size of a file in bytes, from the index.
+     *
+     * @param key the key.
+     * @return the size.
+     * @throws FileNotFoundException if there is no such file.
+     * @throws IOException           if the store is closed.
+     */
+    @Override
+    public synchronized long size(String key) throws IOException {
+        return slot(key).length;
+    }
+
+    /**
+     * Opens a file for reading. Its contents are read into memory, so the stream is not affected by later writes or
+     * compaction.
+     *
+     * @param key the key.
+     * @return a stream over its contents.
+     * @throws FileNotFoundException if there is no such file.
+     * @throws IOException           if it cannot be read.
+     */
+    @Override
+    public synchronized InputStream open(String key) throws IOException {
+        Slot slot = slot(key);
+        ByteBuffer buffer = ByteBuffer.allocate(slot.length);
+        readFully(channel, buffer, slot.offset);
+        return new ByteArrayInputStream(buffer.array());
+    }
+
+    /**
+     * Writes a file, replacing any file with the same key. Its contents are read into memory first.
+     *
+     * @param key  the key.
+     * @param data its contents, read to the end; the stream is not closed.
+     * @throws IOException if it cannot be written.
+     */
+    @Override
+    public void write(String key, InputStream data) throws IOException {
+        write(key, data.readAllBytes());
+    }
+
+    /**
+     * Appends a put record for the file and points the index at it; the record it replaces, if any, becomes dead.
+     *
+     * @param key  the key.
+     * @param data its contents.
+     * @throws IOException if it is too large or cannot be appended.
+     */
+    @Override
+    public synchronized void write(String key, byte[] data) throws IOException {
+        checkOpen();
+
+        if (data.length > MAX_VALUE) {
+            throw new IOException("Too large for a segment store: " + key);
+        }
+
+        long offset = append(PUT, StorageBackend.checkKey(key), data);
+        Slot previous = index.put(key, new Slot(offset, data.length, key.getBytes(StandardCharsets.UTF_8).length));
+
+        if (previous != null) {
+            dead += previous.recordLength();
+        }
+    }
+
+    /**
+     * Appends a delete record for the file, if it exists, and drops it from the index.
+     *
+     * @param key the key.
+     * @throws IOException if the record cannot be appended.
+     */
+    @Override
+    public synchronized void delete(String key) throws IOException {
+        checkOpen();
+        Slot previous = index.get(StorageBackend.checkKey(key));
+
+        if (previous != null) {
+            long start = end;
+            append(DELETE, key, new byte[0]);
+            index.remove(key);
+            dead += previous.recordLength() + (end - start);
+        }
+    }
+
+    /**
+     * Returns the keys in the index that start with the given prefix.
+     *
+     * @param prefix the prefix; "" for every file.
+     * @return the keys, in order.
+     */
+    @Override
+    public synchronized List<String> list(String prefix) {
+        if (prefix.isEmpty()) {
+            return new ArrayList<>(index.keySet());
+        }
+
+        return new ArrayList<>(index.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+    }
+
+    /**
+     * Forces everything written so far to disk.
+     *
+     * @throws IOException if it cannot be forced.
+     */
+    public synchronized void sync() throws IOException {
+        checkOpen();
+        channel.force(false);
+    }
+
+    /**
+     * Returns the number of bytes in the store file taken by records that have been replaced or deleted.
+     *
+     * @return the number of bytes.
+     */
+    public synchronized long getDeadBytes() {
+        return dead;
+    }
+
+    /**
+     * Rewrites the store file with only the live records, through a temporary file that is forced to disk and renamed
+     * into place.
+     *
+     * @throws IOException if the store file cannot be rewritten; it is left as it was.
+     */
+    public synchronized void compact() throws IOException {
+        checkOpen();
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        long newGeneration = new SecureRandom().nextLong();
+        TreeMap<String, Slot> moved = new TreeMap<>();
+
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = writeHeader(out, newGeneration);
+
+                for (Map.Entry<String, Slot> entry : index.entrySet()) {
+                    Slot slot = entry.getValue();
+                    ByteBuffer value = ByteBuffer.allocate(slot.length);
+                    readFully(channel, value, slot.offset);
+                    ByteBuffer record = record(PUT, entry.getKey(), value.array());
+                    moved.put(entry.getKey(), new Slot(position + RECORD_HEADER + slot.keyLength, slot.length,
+                            slot.keyLength));
+                    position += writeFully(out, record, position);
+                }
+
+                out.force(true);
+            }
+
+            // The store file is closed first, since an open file cannot be replaced on every platform.
+            channel.close();
+
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                // The old store file is still in place, so the store carries on with it.
+                try {
+                    channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } catch (IOException reopen) {
+                    e.addSuppressed(reopen);
+                }
+
+                throw e;
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        Files.deleteIfExists(indexFile);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        generation = newGeneration;
+        index.clear();
+        index.putAll(moved);
+        end = channel.size();
+        dead = 0;
+    }
+
+    /**
+     * Compacts the store if more than half of it is dead, writes the index sidecar and closes the store file.
+     *
+     * @throws IOException if the store file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            if (dead >= MIN_COMPACT_BYTES && dead * 2 > end) {
+                compact();
+            }
+
+            channel.force(false);
+            writeIndex();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the header and builds the index, from the sidecar if it matches and then by scanning the records after
+     * it. Anything after the last good record is truncated.
+     *
+     * @throws IOException if the file is not a store file.
+     */
+    private void load() throws IOException {
+        long size = channel.size();
+
+        if (size == 0) {
+            generation = new SecureRandom().nextLong();
+            end = writeHeader(channel, generation);
+            channel.force(false);
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+
+        if (size < FILE_HEADER || readFully(channel, header, 0) < FILE_HEADER || header.getLong(0) != FILE_MAGIC) {
+            throw new IOException("Not a segment store: " + file);
+        }
+
+        generation = header.getLong(8);
+        end = FILE_HEADER;
+        readIndex(size);
+        scan(size);
+
+        if (end < size) {
+            System.out.println("Truncating " + (size - end) + " bytes of unreadable records from " + file + ".");
+            channel.truncate(end);
+        }
+    }
+
+    /**
+     * Scans the records from {@link #end} up to the given size, adding them to the index and stopping at the first
+     * record that is cut short or fails its check.
+     *
+     * @param size the size of the store file.
+     * @throws IOException if the file cannot be read.
+     */
+    private void scan(long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+
+        while (end + RECORD_HEADER + RECORD_TRAILER <= size) {
+            header.clear();
+            readFully(channel, header, end);
+            byte type = header.get(0);
+            int keyLength = header.getInt(1);
+            int valueLength = header.getInt(5);
+
+            if ((type != PUT && type != DELETE) || keyLength <= 0 || keyLength > MAX_KEY || valueLength < 0
+                    || end + RECORD_HEADER + keyLength + (long) valueLength + RECORD_TRAILER > size) {
+                return;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(keyLength + valueLength + RECORD_TRAILER);
+            readFully(channel, body, end + RECORD_HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, RECORD_HEADER);
+            crc.update(body.array(), 0, keyLength + valueLength);
+
+            if ((int) crc.getValue() != body.getInt(keyLength + valueLength)) {
+                return;
+            }
+
+            String key = new String(body.array(), 0, keyLength, StandardCharsets.UTF_8);
+            long recordLength = RECORD_HEADER + keyLength + (long) valueLength + RECORD_TRAILER;
+            Slot previous;
+
+            if (type == PUT) {
+                previous = index.put(key, new Slot(end + RECORD_HEADER + keyLength, valueLength, keyLength));
+            } else {
+                previous = index.remove(key);
+                dead += recordLength;
+            }
+
+            if (previous != null) {
+                dead += previous.recordLength();
+            }
+
+            end += recordLength;
+        }
+    }
+
+    /**
+     * Loads the index sidecar if it was written for this store file and covers no more than the file holds.
+     *
+     * @param size the size of the store file.
+     */
+    private void readIndex(long size) {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readLong() != INDEX_MAGIC || in.readLong() != generation) {
+                return;
+            }
+
+            long covered = in.readLong();
+            long deadBytes = in.readLong();
+            int count = in.readInt();
+
+            if (covered < FILE_HEADER || covered > size) {
+                return;
+            }
+
+            TreeMap<String, Slot> loaded = new TreeMap<>();
+
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                long offset = in.readLong();
+                int length = in.readInt();
+                loaded.put(key, new Slot(offset, length, key.getBytes(StandardCharsets.UTF_8).length));
+            }
+
+            index.putAll(loaded);
+            end = covered;
+            dead = deadBytes;
+        } catch (IOException e) {
+            index.clear();
+            end = FILE_HEADER;
+            dead = 0;
+        }
+    }
+
+    /**
+     * Writes the index sidecar through a temporary file.
+     *
+     * @throws IOException if it cannot be written.
+     */
+    private void writeIndex() throws IOException {
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeLong(INDEX_MAGIC);
+                out.writeLong(generation);
+                out.writeLong(end);
+                out.writeLong(dead);
+                out.writeInt(index.size());
+
+                for (Map.Entry<String, Slot> entry : index.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().offset);
+                    out.writeInt(entry.getValue().length);
+                }
+            }
+
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Appends a record at the end of the store file.
+     *
+     * @param type  the record type.
+     * @param key   the key.
+     * @param value the contents; empty for a delete.
+     * @return where the contents start in the store file.
+     * @throws IOException if the record cannot be written.
+     */
+    private long append(byte type, String key, byte[] value) throws IOException {
+        ByteBuffer record = record(type, key, value);
+        long valueOffset = end + record.limit() - RECORD_TRAILER - value.length;
+
+        try {
+            end += writeFully(channel, record, end);
+        } catch (IOException e) {
+            // Leave no partial record for the next append to follow.
+            channel.truncate(end);
+            throw e;
+        }
+
+        return valueOffset;
+    }
+
+    /**
+     * Builds a record.
+     *
+     * @param type  the record type.
+     * @param key   the key.
+     * @param value the contents.
+     * @return the record, ready to be written.
+     * @throws IOException if the key is too long.
+     */
+    private static ByteBuffer record(byte type, String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        if (keyBytes.length > MAX_KEY) {
+            throw new IOException("Key too long for a segment store: " + key);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + keyBytes.length + value.length + RECORD_TRAILER);
+        record.put(type).putInt(keyBytes.length).putInt(value.length).put(keyBytes).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Writes a new file header.
+     *
+     * @param channel    the channel.
+     * @param generation the generation.
+     * @return the size of the header.
+     * @throws IOException if it cannot be written.
+     */
+    private static long writeHeader(FileChannel channel, long generation) throws IOException {
+        return writeFully(channel, ByteBuffer.allocate(FILE_HEADER).putLong(FILE_MAGIC).putLong(generation).flip(), 0);
+    }
+
+    /**
+     * Returns the slot of a live file.
+     *
+     * @param key the key.
+     * @return the slot.
+     * @throws FileNotFoundException if there is no such file.
+     */
+    private Slot slot(String key) throws IOException {
+        checkOpen();
+        Slot slot = index.get(StorageBackend.checkKey(key));
+
+        if (slot == null) {
+            throw new FileNotFoundException("No file " + key + " in " + file);
+        }
+
+        return slot;
+    }
+
+    /**
+     * Checks that the store is open.
+     *
+     * @throws IOException if it has been closed.
+     */
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The segment store has been closed: " + file);
+        }
+    }
+
+    /**
+     * Reads until the buffer is full or the file ends.
+     *
+     * @param channel  the channel.
+     * @param buffer   the buffer.
+     * @param position where to read from.
+     * @return the number of bytes read.
+     * @throws IOException if the file cannot be read.
+     */
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0) {
+                break;
+            }
+        }
+
+        return buffer.position() - start;
+    }
+
+    /**
+     * Writes the whole buffer.
+     *
+     * @param channel  the channel.
+     * @param buffer   the buffer.
+     * @param position where to write to.
+     * @return the number of bytes written.
+     * @throws IOException if the file cannot be written.
+     */
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - start);
+        }
+
+        return buffer.position() - start;
+    }
+
+    /**
+     * Where a live file's contents are in the store file.
+     *
+     * @param offset    where its contents start.
+     * @param length    the length of its contents.
+     * @param keyLength the length of its key in UTF-8 bytes, for working out the length of its record.
+     */
+    private record Slot(long offset, int length, int keyLength) {
+
+        /**
+         * Returns the length of the record holding the file.
+         *
+         * @return the length in bytes.
+         */
+        long recordLength() {
+            return RECORD_HEADER + (long) keyLength + length + RECORD_TRAILER;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package io.github.cmuphil.earthlinguistfx.storage;
+
+import io.github.cmuphil.earthlinguistfx.utils.Constants;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The storage backend for each area the app keeps files in. Each area is rooted at its directory in {@link Constants},
+ * which can be moved with a system property, and is kept by a {@link DirectoryBackend} unless the system property
+ * 'earthlinguist.storage.&lt;area&gt;' is set to 'segments', in which case it is kept by a {@link SegmentStore} in
+ * 'store.seg' in that directory. The scratch workspaces are not areas: clips are captured into them, hard-linked from
+ * the clip store and zipped from them, so they are always directories, kept by the {@link DirectoryBackend} that
+ * {@link #forDirectory(Path)} gives for them.
+ * <p>
+ * Other backends, such as a loaded example pack read straight from its zip, can be mounted under a name of their own.
+ * Files in an area or a mounted backend can be referred to by a string, '{@value #SCHEME}&lt;name&gt;/&lt;key&gt;',
+ * where a file path would otherwise go, as for the images of loaded examples. A mounted backend is closed only once
+ * it has been unmounted and every stream opened from it has been closed, so unmounting never pulls a backend out
+ * from under a reader. This class is a singleton.
+ *
+ * @author josephramsey
+ */
+public class Storage {
+
+    /**
+     * The prefix of a reference to a file in an area.
+     */
+    public static final String SCHEME = "storage:";
+
+    /**
+     * Singleton pattern.
+     */
+    private static final Storage instance = new Storage();
+
+    /**
+     * The backends opened so far, by area.
+     */
+    private final Map<Area, StorageBackend> backends = new EnumMap<>(Area.class);
+
+    /**
+     * The backends mounted under names of their own.
+     */
+    private final Map<String, Mount> mounts = new HashMap<>();
+
+    /**
+     * Constructs the singleton instance.
+     */
+    private Storage() {
+
+    }
+
+    /**
+     * Singleton pattern.
+     *
+     * @return the singleton instance.
+     */
+    public static Storage getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the backend for an area, opening it the first time.
+     *
+     * @param area the area.
+     * @return the backend.
+     * @throws IOException           if a segment store cannot be opened.
+     * @throws IllegalStateException if the area is configured to be kept by an unknown kind of storage.
+     */
+    public synchronized StorageBackend get(Area area) throws IOException {
+        StorageBackend backend = backends.get(area);
+
+        if (backend == null) {
+            String kind = System.getProperty("earthlinguist.storage." + area.getName(), "directory");
+
+            if (kind.equalsIgnoreCase("segments")) {
+                backend = SegmentStore.open(area.getRoot().resolve("store.seg"));
+            } else if (kind.equalsIgnoreCase("directory")) {
+                backend = new DirectoryBackend(area.getRoot());
+            } else {
+                throw new IllegalStateException("Unknown storage for " + area.getName() + ": " + kind);
+            }
+
+            backends.put(area, backend);
+        }
+
+        return backend;
+    }
+
+    /**
+     * Returns the backend files in a directory are kept by: the area's backend if the directory is the root of an
+     * area, and otherwise a {@link DirectoryBackend} over it, as for a scratch workspace or a staging directory.
+     *
+     * @param dir the directory.
+     * @return the backend.
+     * @throws IOException if the area's segment store cannot be opened.
+     */
+    public StorageBackend forDirectory(Path dir) throws IOException {
+        Path normalized = dir.toAbsolutePath().normalize();
+
+        for (Area area : Area.values()) {
+            if (area.getRoot().toAbsolutePath().normalize().equals(normalized)) {
+                return get(area);
+            }
+        }
+
+        return new DirectoryBackend(normalized);
+    }
+
+    /**
+     * Mounts a backend under a name, so that references to files in it can be opened, closing any backend mounted
+     * under that name before.
+     *
+     * @param name    the name; not the name of an area, and without '/'.
+     * @param backend the backend.
+     * @throws IllegalArgumentException if the name is not allowed.
+     */
+    public synchronized void mount(String name, StorageBackend backend) {
+        if (name.isEmpty() || name.contains("/")) {
+            throw new IllegalArgumentException("Not a valid mount name: " + name);
+        }
+
+        for (Area area : Area.values()) {
+            if (area.getName().equals(name)) {
+                throw new IllegalArgumentException("The name " + name + " is taken by a storage area.");
+            }
+        }
+
+        Mount previous = mounts.put(name, new Mount(backend));
+
+        if (previous != null && previous.backend != backend) {
+            previous.unmounted = true;
+            closeIfUnused(previous);
+        }
+    }
+
+    /**
+     * Unmounts the backend mounted under a name, if there is one, and closes it once no stream opened from it is still
+     * open.
+     *
+     * @param name the name.
+     */
+    public synchronized void unmount(String name) {
+        Mount previous = mounts.remove(name);
+
+        if (previous != null) {
+            previous.unmounted = true;
+            closeIfUnused(previous);
+        }
+    }
+
+    /**
+     * Returns a reference to a file in an area, which {@link #open(String)} opens.
+     *
+     * @param area the area.
+     * @param key  the key.
+     * @return the reference.
+     */
+    public static String reference(Area area, String key) {
+        return reference(area.getName(), key);
+    }
+
+    /**
+     * Returns a reference to a file in an area or mounted backend, which {@link #open(String)} opens.
+     *
+     * @param name the name of the area or mount.
+     * @param key  the key.
+     * @return the reference.
+     */
+    public static String reference(String name, String key) {
+        return SCHEME + name + "/" + StorageBackend.checkKey(key);
+    }
+
+    /**
+     * Returns true if a string is a reference to a file in an area rather than a path.
+     *
+     * @param path the string.
+     * @return true if it is a reference.
+     */
+    public static boolean isReference(String path) {
+        return path != null && path.startsWith(SCHEME);
+    }
+
+    /**
+     * Opens the file a reference refers to.
+     *
+     * @param reference the reference.
+     * @return a stream over its contents.
+     * @throws FileNotFoundException    if it names neither an area nor a mounted backend, as after the backend was
+     *                                  unmounted, or there is no such file.
+     * @throws IOException              if it cannot be read.
+     * @throws IllegalArgumentException if it is not a storage reference.
+     */
+    public InputStream open(String reference) throws IOException {
+        if (!isReference(reference)) {
+            throw new IllegalArgumentException("Not a storage reference: " + reference);
+        }
+
+        String rest = reference.substring(SCHEME.length());
+        int slash = rest.indexOf('/');
+
+        if (slash < 0) {
+            throw new IllegalArgumentException("Not a storage reference: " + reference);
+        }
+
+        String name = rest.substring(0, slash);
+        String key = rest.substring(slash + 1);
+        Mount mount;
+
+        synchronized (this) {
+            mount = mounts.get(name);
+
+            if (mount != null) {
+                mount.readers++;
+            }
+        }
+
+        if (mount == null) {
+            for (Area area : Area.values()) {
+                if (area.getName().equals(name)) {
+                    return get(area).open(key);
+                }
+            }
+
+            throw new FileNotFoundException("Nothing is mounted under " + name + "; it may have been unmounted.");
+        }
+
+        try {
+            return new FilterInputStream(mount.backend.open(key)) {
+
+                /**
+                 * Whether the stream has been closed.
+                 */
+                private boolean closed;
+
+                /**
+                 * Closes the stream and releases the mount, once.
+                 *
+                 * @throws IOException if the stream cannot be closed.
+                 */
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!closed) {
+                            closed = true;
+                            release(mount);
+                        }
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            release(mount);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes every backend opened or mounted so far. Areas are opened again if asked for; mounts are gone.
+     */
+    public synchronized void closeAll() {
+        for (StorageBackend backend : backends.values()) {
+            close(backend);
+        }
+
+        for (Mount mount : mounts.values()) {
+            mount.unmounted = true;
+            closeIfUnused(mount);
+        }
+
+        backends.clear();
+        mounts.clear();
+    }
+
+    /**
+     * Notes that a stream opened from a mounted backend has been closed, closing the backend if it has been unmounted
+     * and this was the last.
+     *
+     * @param mount the mount.
+     */
+    private synchronized void release(Mount mount) {
+        mount.readers--;
+        closeIfUnused(mount);
+    }
+
+    /**
+     * Closes a mounted backend if it has been unmounted and no stream opened from it is still open.
+     *
+     * @param mount the mount.
+     */
+    private static void closeIfUnused(Mount mount) {
+        if (mount.unmounted && mount.readers == 0 && !mount.closed) {
+            mount.closed = true;
+            close(mount.backend);
+        }
+    }
+
+    /**
+     * Closes a backend, reporting any problem.
+     *
+     * @param backend the backend.
+     */
+    private static void close(StorageBackend backend) {
+        try {
+            backend.close();
+        } catch (IOException e) {
+            System.out.println("There was a problem closing storage. " + "\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * A backend mounted under a name, with the number of streams opened from it that are still open. Guarded by the
+     * lock on the storage.
+     */
+    private static final class Mount {
+
+        /**
+         * The backend.
+         */
+        private final StorageBackend backend;
+
+        /**
+         * The number of streams opened from the backend that are still open.
+         */
+        private int readers;
+
+        /**
+         * Whether the backend has been unmounted.
+         */
+        private boolean unmounted;
+
+        /**
+         * Whether the backend has been closed.
+         */
+        private boolean closed;
+
+        /**
+         * Constructs a mount.
+         *
+         * @param backend the backend.
+         */
+        private Mount(StorageBackend backend) {
+            this.backend = backend;
+        }
+    }
+
+    /**
+     * An area the app keeps files in.
+     */
+    public enum Area {
+
+        /**
+         * Public sound zips.
+         */
+        PUBLIC_FILES("public_sound_zips", Constants.PUBLIC_FILES_DIRECTORY),
+
+        /**
+         * Scratch zips.
+         */
+        SCRATCH_ZIPS("scratch_zips", Constants.SCRATCH_ZIPS);
+
+        /**
+         * The name of the area, as used in system properties and references.
+         */
+        private final String name;
+
+        /**
+         * The directory of the area.
+         */
+        private final String root;
+
+        /**
+         * Constructs an area.
+         *
+         * @param name the name of the area.
+         * @param root the directory of the area.
+         */
+        Area(String name, String root) {
+            this.name = name;
+            this.root = root;
+        }
+
+        /**
+         * Returns the area with the given name.
+         *
+         * @param name the name.
+         * @return the area.
+         * @throws IllegalArgumentException if there is no such area.
+         */
+        public static Area forName(String name) {
+            for (Area area : values()) {
+                if (area.name.equals(name.toLowerCase(Locale.ROOT))) {
+                    return area;
+                }
+            }
+
+            throw new IllegalArgumentException("No storage area " + name);
+        }
+
+        /**
+         * Returns the name of the area, as used in system properties and references.
+         *
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the directory of the area.
+         *
+         * @return the directory.
+         */
+        public Path getRoot() {
+            return Path.of(root);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.cmuphil.earthlinguistfx.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Somewhere files are kept, by key. A key is a relative path with '/' as the separator, such as
+ * 'example_1/checkmarks.txt'; no part of it may be empty, '.' or '..'. Implementations decide how the files are laid
+ * out: {@link DirectoryBackend} keeps each as a file under a root directory, and {@link SegmentStore} keeps them all in
+ * one append-only file, so that many small files do not each cost an inode and a round of metadata updates.
+ * <p>
+ * Writes replace the whole file at once, so that a reader sees the old contents or the new, never a mix.
+ * Implementations are safe for use from several threads.
+ *
+ * @author josephramsey
+ */
+public interface StorageBackend extends Closeable {
+
+    /**
+     * Returns true if there is a file with the given key.
+     *
+     * @param key the key.
+     * @return true if it exists.
+     * @throws IOException if the backend cannot be read.
+     */
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Returns the size of a file in bytes.
+     *
+     * @param key the key.
+     * @return the size.
+     * @throws FileNotFoundException if there is no such file.
+     * @throws IOException           if the backend cannot be read.
+     */
+    long size(String key) throws IOException;
+
+    /**
+     * Opens a file for reading.
+     *
+     * @param key the key.
+     * @return a stream over its contents.
+     * @throws FileNotFoundException if there is no such file.
+     * @throws IOException           if it cannot be read.
+     */
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Writes a file, replacing any file with the same key.
+     *
+     * @param key  the key.
+     * @param data its contents, read to the end; the stream is not closed.
+     * @throws IOException if it cannot be written.
+     */
+    void write(String key, InputStream data) throws IOException;
+
+    /**
+     * Writes a file, replacing any file with the same key.
+     *
+     * @param key  the key.
+     * @param data its contents.
+     * @throws IOException if it cannot be written.
+     */
+    default void write(String key, byte[] data) throws IOException {
+        write(key, new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Deletes a file, if it exists.
+     *
+     * @param key the key.
+     * @throws IOException if it cannot be deleted.
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Returns the keys that start with the given prefix, sorted.
+     *
+     * @param prefix the prefix; "" for every key.
+     * @return the keys.
+     * @throws IOException if the backend cannot be read.
+     */
+    List<String> list(String prefix) throws IOException;
+
+    /**
+     * Deletes the files whose keys start with the given prefix.
+     *
+     * @param prefix the prefix; "" for every file.
+     * @throws IOException if a file cannot be deleted.
+     */
+    default void deleteAll(String prefix) throws IOException {
+        for (String key : list(prefix)) {
+            delete(key);
+        }
+    }
+
+    /**
+     * Returns the directory the files are kept in as ordinary files, named by their keys, for code that needs real
+     * files, such as audio capture or hard links into the clip store.
+     *
+     * @return the directory, or null if the files are not kept as ordinary files.
+     */
+    default Path getDirectory() {
+        return null;
+    }
+
+    /**
+     * Checks that a key is a relative path that cannot escape the backend.
+     *
+     * @param key the key.
+     * @return the key.
+     * @throws IllegalArgumentException if it is not a valid key.
+     */
+    static String checkKey(String key) {
+        if (key == null || key.isEmpty() || key.startsWith("/") || key.contains("\\")) {
+            throw new IllegalArgumentException("Not a valid storage key: " + key);
+        }
+
+        for (String part : key.split("/", -1)) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..")) {
+                throw new IllegalArgumentException("Not a valid storage key: " + key);
+            }
+        }
+
+        return key;
+    }
+}
@@ -0,0 +1,435 @@
+package io.github.cmuphil.earthlinguistfx.store;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.github.cmuphil.earthlinguistfx.utils.Constants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed store for audio clips. Each distinct clip is kept once, as a blob named by the SHA-256 digest
+ * of its bytes under 'objects/ab/cdef...', and the clips in a workspace are hard links to those blobs, so copying a
+ * workspace, re-saving it or loading the same session again never duplicates audio on disk.
+ * <p>
+ * The store records which workspace (the holder) references which digest under which clip name, in 'refs.json'. A
+ * blob is deleted when no holder references it any more. Blobs are never written in place; workspaces only ever
+ * replace a clip by renaming a new file over it, which leaves the blob untouched. Because every workspace file is a
+ * full file in its own right, losing the store loses no data, only the sharing.
+ * <p>
+ * Where the file system refuses hard links, as some tmpfs, FAT and network mounts do, or where the store and a
+ * workspace are on different file systems, clips are copied instead: every workspace stays valid, but the copies take
+ * their own disk space. The first such fallback is reported; later ones are not. This class is a singleton.
+ *
+ * @author josephramsey
+ */
+public class ClipStore {
+
+    /**
+     * Singleton pattern.
+     */
+    private static final ClipStore instance = new ClipStore(Path.of(Constants.CLIP_STORE_DIRECTORY));
+
+    /**
+     * The JSON serializer.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The type of the references file.
+     */
+    private static final Type REFS_TYPE = new TypeToken<Map<String, Map<String, String>>>() {
+    }.getType();
+
+    /**
+     * The number of bytes read at a time when hashing.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The root directory of the store.
+     */
+    private final Path root;
+
+    /**
+     * The clips each holder references, as clip name to digest, by holder.
+     */
+    private Map<String, Map<String, String>> refs;
+
+    /**
+     * Whether a clip has been copied because a hard link could not be made, which is reported only once.
+     */
+    private boolean copiedInsteadOfLinked;
+
+    /**
+     * Constructs a store rooted at the given directory. This is package-private so that tests can use a store of
+     * their own.
+     *
+     * @param root the root directory.
+     */
+    ClipStore(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Singleton pattern.
+     *
+     * @return the singleton instance.
+     */
+    public static ClipStore getInstance() {
+        return instance;
+    }
+
+    /**
+     * Brings the store up to date with the clips in the given workspace: every '.wav' file is hashed and added to the
+     * store if it is new, and replaced by a link to the stored blob if it duplicates one. Clips that are still links
+     * to the blob recorded for them last time are not read again. The workspace's references are replaced by the
+     * clips found, and blobs no longer referenced by anything are deleted.
+     *
+     * @param workspace the workspace directory.
+     * @return the digest of each clip in the workspace, by clip name.
+     * @throws IOException if a clip cannot be read or the store cannot be written.
+     */
+    public synchronized Map<String, String> ingest(Path workspace) throws IOException {
+        Map<String, Map<String, String>> refs = refs();
+        String holder = holder(workspace);
+        Map<String, String> previous = refs.getOrDefault(holder, Map.of());
+        Map<String, String> digests = new TreeMap<>();
+
+        if (Files.isDirectory(workspace)) {
+            List<Path> clips;
+
+            try (Stream<Path> list = Files.list(workspace)) {
+                clips = list.filter(this::isClip).sorted().toList();
+            }
+
+            for (Path clip : clips) {
+                String name = clip.getFileName().toString();
+                String known = previous.get(name);
+
+                if (known != null && Files.exists(blob(known)) && Files.isSameFile(clip, blob(known))) {
+                    digests.put(name, known);
+                } else {
+                    digests.put(name, add(clip));
+                }
+            }
+        }
+
+        if (digests.isEmpty()) {
+            refs.remove(holder);
+        } else {
+            refs.put(holder, digests);
+        }
+
+        saveRefs();
+        collect();
+        return digests;
+    }
+
+    /**
+     * Drops every reference held by the given workspace and deletes the blobs no longer referenced by anything. The
+     * workspace itself is not touched.
+     *
+     * @param workspace the workspace directory.
+     * @throws IOException if the store cannot be written.
+     */
+    public synchronized void release(Path workspace) throws IOException {
+        if (refs().remove(holder(workspace)) != null) {
+            saveRefs();
+            collect();
+        }
+    }
+
+    /**
+     * Places the clip with the given digest at the target path, as a link to the stored blob or a copy of it, if the
+     * store has it and the given content really has that digest. This lets a workspace be filled from the store
+     * rather than from an archive. The digest comes from the archive's state.json, which is not trusted, so the
+     * content is hashed to make sure that the blob placed is the clip the archive holds.
+     *
+     * @param digest  the digest.
+     * @param size    the size of the clip in bytes.
+     * @param content the clip's content, as held in the archive; the stream is not closed.
+     * @param target  the path to place the clip at; any existing file there is replaced.
+     * @return true if the clip was placed, false if the store does not have it or the content does not match.
+     * @throws IOException if the content cannot be read or the clip cannot be placed.
+     */
+    public synchronized boolean restore(String digest, long size, InputStream content, Path target)
+            throws IOException {
+        if (!isDigest(digest)) {
+            return false;
+        }
+
+        Path blob = blob(digest);
+
+        if (!Files.isRegularFile(blob) || Files.size(blob) != size || !digest.equals(digest(content))) {
+            return false;
+        }
+
+        Files.deleteIfExists(target);
+
+        try {
+            Files.createLink(target, blob);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            reportCopy(e);
+            Files.copy(blob, target);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns true if the store holds a blob with the given digest.
+     *
+     * @param digest the digest.
+     * @return true if the store holds the blob.
+     */
+    public boolean contains(String digest) {
+        return isDigest(digest) && Files.isRegularFile(blob(digest));
+    }
+
+    /**
+     * Deletes every blob that no holder references.
+     *
+     * @return the number of blobs deleted.
+     * @throws IOException if a blob cannot be deleted.
+     */
+    public synchronized int collect() throws IOException {
+        Path objects = root.resolve("objects");
+
+        if (!Files.isDirectory(objects)) {
+            return 0;
+        }
+
+        Set<String> live = new HashSet<>();
+
+        for (Map<String, String> clips : refs().values()) {
+            live.addAll(clips.values());
+        }
+
+        List<Path> blobs;
+
+        try (Stream<Path> walk = Files.walk(objects, 2)) {
+            blobs = walk.filter(Files::isRegularFile).toList();
+        }
+
+        int deleted = 0;
+
+        for (Path blob : blobs) {
+            String digest = blob.getParent().getFileName().toString() + blob.getFileName();
+
+            if (!live.contains(digest)) {
+                Files.deleteIfExists(blob);
+                deleted++;
+            }
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Returns the SHA-256 digest of the given file, as lowercase hex.
+     *
+     * @param file the file.
+     * @return the digest.
+     * @throws IOException if the file cannot be read.
+     */
+    public static String digest(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return digest(in);
+        }
+    }
+
+    /**
+     * Returns the SHA-256 digest of the rest of the given stream, as lowercase hex.
+     *
+     * @param in the stream; it is not closed.
+     * @return the digest.
+     * @throws IOException if the stream cannot be read.
+     */
+    public static String digest(InputStream in) throws IOException {
+        MessageDigest sha;
+
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+
+        while ((read = in.read(buffer)) >= 0) {
+            sha.update(buffer, 0, read);
+        }
+
+        return HexFormat.of().formatHex(sha.digest());
+    }
+
+    /**
+     * Adds a clip to the store and makes the workspace file a link to its blob.
+     *
+     * @param clip the clip.
+     * @return the clip's digest.
+     * @throws IOException if the clip cannot be read or the blob written.
+     */
+    private String add(Path clip) throws IOException {
+        String digest = digest(clip);
+        Path blob = blob(digest);
+        Files.createDirectories(blob.getParent());
+
+        if (!Files.exists(blob)) {
+            try {
+                Files.createLink(blob, clip);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                reportCopy(e);
+                Path temp = Files.createTempFile(blob.getParent(), ".blob", ".tmp");
+
+                try {
+                    Files.copy(clip, temp, StandardCopyOption.REPLACE_EXISTING);
+                    move(temp, blob);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } else if (!Files.isSameFile(clip, blob)) {
+
+            // A duplicate of a stored clip: swap the copy for a link to the blob. The link is made beside the
+            // workspace so that a leftover never makes the workspace invalid.
+            Path workspace = clip.toAbsolutePath().getParent();
+            Path link = workspace.resolveSibling("." + workspace.getFileName() + "." + clip.getFileName() + ".link");
+            Files.deleteIfExists(link);
+
+            try {
+                Files.createLink(link, blob);
+                move(link, clip);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                reportCopy(e);
+                Files.deleteIfExists(link);
+            }
+        }
+
+        return digest;
+    }
+
+    /**
+     * Reports, the first time only, that a clip is held as a copy because a hard link could not be made.
+     *
+     * @param e the reason the link could not be made.
+     */
+    private void reportCopy(Exception e) {
+        if (!copiedInsteadOfLinked) {
+            copiedInsteadOfLinked = true;
+            System.out.println("Hard links are not available for the clip store at " + root
+                    + "; clips will be copied instead: " + e);
+        }
+    }
+
+    /**
+     * Returns true if the given workspace file is a clip.
+     *
+     * @param file the file.
+     * @return true if the file is a clip.
+     */
+    private boolean isClip(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".wav") && !name.startsWith(".") && Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Returns true if the given string is a well-formed digest.
+     *
+     * @param digest the string.
+     * @return true if the string is a digest.
+     */
+    private static boolean isDigest(String digest) {
+        return digest != null && digest.matches("[0-9a-f]{64}");
+    }
+
+    /**
+     * Returns the path of the blob with the given digest.
+     *
+     * @param digest the digest.
+     * @return the path.
+     */
+    private Path blob(String digest) {
+        return root.resolve("objects").resolve(digest.substring(0, 2)).resolve(digest.substring(2));
+    }
+
+    /**
+     * Returns the key a workspace's references are recorded under.
+     *
+     * @param workspace the workspace directory.
+     * @return the key.
+     */
+    private static String holder(Path workspace) {
+        return workspace.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Returns the references, reading them from disk the first time. An unreadable references file is treated as
+     * empty, which at worst deletes blobs that workspaces still hold their own links to.
+     *
+     * @return the references.
+     */
+    private Map<String, Map<String, String>> refs() {
+        if (refs == null) {
+            refs = new HashMap<>();
+            Path file = root.resolve("refs.json");
+
+            if (Files.exists(file)) {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    Map<String, Map<String, String>> read = GSON.fromJson(reader, REFS_TYPE);
+
+                    if (read != null) {
+                        read.forEach((holder, clips) -> refs.put(holder, new TreeMap<>(clips)));
+                    }
+                } catch (Exception e) {
+                    System.out.println("The clip store references could not be read; starting over. "
+                            + e.getMessage());
+                }
+            }
+        }
+
+        return refs;
+    }
+
+    /**
+     * Writes the references to a temporary file and renames it over 'refs.json'.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    private void saveRefs() throws IOException {
+        Files.createDirectories(root);
+        Path temp = root.resolve("refs.json.tmp");
+
+        try {
+            Files.writeString(temp, GSON.toJson(refs, REFS_TYPE), StandardCharsets.UTF_8);
+            move(temp, root.resolve("refs.json"));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Renames a file over another, atomically if the file system allows.
+     *
+     * @param from the file.
+     * @param to   the target.
+     * @throws IOException if the file cannot be renamed.
+     */
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package io.github.cmuphil.earthlinguistfx.upload;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Uploads the archives in an {@link UploadOutbox} to an ingestion server in the background, in checksummed chunks
+ * that resume from the last acknowledged offset after a disconnect; see
+ * {@link io.github.cmuphil.earthlinguistfx.server.IngestionServer}. At most a fixed number of archives are uploaded
+ * at once. An upload that fails because the server cannot be reached or the connection drops is retried with
+ * exponential backoff, for as long as it takes; an archive the server rejects as invalid is moved to the outbox's
+ * 'failed' directory.
+ *
+ * @author josephramsey
+ */
+public class ResumableUploader {
+
+    /**
+     * The default chunk size, in bytes.
+     */
+    public static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+
+    /**
+     * The delay before the first retry, in milliseconds; it doubles with each failed attempt.
+     */
+    private static final long BASE_BACKOFF_MILLIS = 2_000;
+
+    /**
+     * The longest delay between retries, in milliseconds.
+     */
+    private static final long MAX_BACKOFF_MILLIS = 5 * 60_000;
+
+    /**
+     * The number of checksum mismatches in a row after which an attempt is abandoned and retried later.
+     */
+    private static final int MAX_CHUNK_RETRIES = 3;
+
+    /**
+     * The JSON reader for replies.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The outbox.
+     */
+    private final UploadOutbox outbox;
+
+    /**
+     * The address of the ingestion server.
+     */
+    private final URI server;
+
+    /**
+     * The chunk size, in bytes.
+     */
+    private final int chunkBytes;
+
+    /**
+     * The HTTP client.
+     */
+    private final HttpClient client;
+
+    /**
+     * The threads uploads run on; there are as many as may run at once.
+     */
+    private final ScheduledExecutorService pool;
+
+    /**
+     * The SHA-256s of the items being uploaded or waiting to be retried.
+     */
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Called on a background thread when an item has been uploaded or rejected.
+     */
+    private volatile Consumer<Outcome> listener = System.out::println;
+
+    /**
+     * Constructs an uploader, not yet started.
+     *
+     * @param outbox      the outbox.
+     * @param server      the address of the ingestion server, such as 'http://localhost:8642'.
+     * @param concurrency the most archives uploaded at once.
+     * @param chunkBytes  the chunk size, in bytes.
+     */
+    public ResumableUploader(UploadOutbox outbox, URI server, int concurrency, int chunkBytes) {
+        if (concurrency < 1 || chunkBytes < 1) {
+            throw new IllegalArgumentException("Expecting positive concurrency and chunk size: " + concurrency
+                    + ", " + chunkBytes);
+        }
+
+        this.outbox = outbox;
+        this.server = server;
+        this.chunkBytes = chunkBytes;
+        this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        this.pool = Executors.newScheduledThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "uploader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts uploading whatever is already in the outbox, such as items left when the application last closed.
+     *
+     * @throws IOException if the outbox cannot be read.
+     */
+    public void start() throws IOException {
+        for (UploadOutbox.Item item : outbox.getItems()) {
+            schedule(item, 0);
+        }
+    }
+
+    /**
+     * Adds an archive to the outbox and starts uploading it.
+     *
+     * @param archive the archive.
+     * @return the outbox item.
+     * @throws IOException if the archive cannot be added to the outbox.
+     */
+    public UploadOutbox.Item submit(Path archive) throws IOException {
+        UploadOutbox.Item item = outbox.enqueue(archive);
+        schedule(item, 0);
+        return item;
+    }
+
+    /**
+     * Stops uploading. Uploads in progress are cut off and resume from their last acknowledged chunk when the
+     * uploader is next started.
+     */
+    public void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Waits until nothing is being uploaded or waiting to be retried.
+     *
+     * @param timeout the longest time to wait.
+     * @param unit    the unit of the timeout.
+     * @return true if the uploader became idle, false if the time ran out.
+     * @throws InterruptedException if interrupted.
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (scheduled) {
+            while (!scheduled.isEmpty()) {
+                long left = deadline - System.nanoTime();
+
+                if (left <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(scheduled, left);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets what is called, on a background thread, when an item has been uploaded or rejected.
+     *
+     * @param listener the listener.
+     */
+    public void setListener(Consumer<Outcome> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Schedules an item to be uploaded, unless it already is.
+     *
+     * @param item        the item.
+     * @param delayMillis how long to wait first, in milliseconds.
+     */
+    private void schedule(UploadOutbox.Item item, long delayMillis) {
+        if (scheduled.add(item.getSha256())) {
+            try {
+                pool.schedule(() -> run(item), delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                done(item);
+            }
+        }
+    }
+
+    /**
+     * Makes one attempt at uploading an item and deals with the result. Anything unexpected, such as a reply of the
+     * wrong shape, is retried like a failed connection, so that the item is never left scheduled with no attempt to
+     * come.
+     *
+     * @param item the item.
+     */
+    private void run(UploadOutbox.Item item) {
+        try {
+            Outcome outcome = upload(item);
+            outbox.complete(item);
+            tell(outcome);
+            done(item);
+        } catch (RejectedException e) {
+            try {
+                outbox.reject(item, e.getMessage());
+            } catch (IOException | RuntimeException e2) {
+                System.out.println("Could not move " + item.getName() + " out of the outbox: " + e2.getMessage());
+            }
+
+            tell(new Outcome(item.getName(), item.getSha256(), null, false, e.getMessage()));
+            done(item);
+        } catch (IOException e) {
+            retry(item, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done(item);
+        } catch (RuntimeException e) {
+            retry(item, e.toString());
+        }
+    }
+
+    /**
+     * Passes an outcome to the listener. A listener that throws is reported, not allowed to upset the uploader.
+     *
+     * @param outcome the outcome.
+     */
+    private void tell(Outcome outcome) {
+        try {
+            listener.accept(outcome);
+        } catch (RuntimeException e) {
+            System.out.println("The upload listener failed on " + outcome.name() + ": " + e);
+        }
+    }
+
+    /**
+     * Records a failed attempt and schedules the next one.
+     *
+     * @param item  the item.
+     * @param error what went wrong.
+     */
+    private void retry(UploadOutbox.Item item, String error) {
+        UploadOutbox.Item updated;
+
+        try {
+            updated = outbox.retrying(item, error);
+        } catch (IOException | RuntimeException e) {
+            updated = item;
+        }
+
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS
+                << Math.min(Math.max(0, updated.getAttempts() - 1), 20));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+
+        System.out.println("Upload of " + item.getName() + " failed (" + error + "); retrying in "
+                + delay / 1000 + " s.");
+
+        try {
+            UploadOutbox.Item next = updated;
+            pool.schedule(() -> run(next), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            done(item);
+        }
+    }
+
+    /**
+     * Marks an item as no longer scheduled.
+     *
+     * @param item the item.
+     */
+    private void done(UploadOutbox.Item item) {
+        synchronized (scheduled) {
+            scheduled.remove(item.getSha256());
+            scheduled.notifyAll();
+        }
+    }
+
+    /**
+     * Uploads an item, starting from however much of it the server already has.
+     *
+     * @param item the item.
+     * @return the outcome.
+     * @throws IOException          if the upload was cut off or the server failed; it should be retried.
+     * @throws RejectedException    if the server rejected the archive.
+     * @throws InterruptedException if interrupted.
+     */
+    private Outcome upload(UploadOutbox.Item item) throws IOException, InterruptedException {
+        URI uri = server.resolve("/uploads/" + item.getSha256());
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).GET()
+                .timeout(Duration.ofMinutes(1)).build(), HttpResponse.BodyHandlers.ofString());
+        JsonObject reply = parse(response);
+
+        if (response.statusCode() != 200) {
+            throw new IOException("The server replied " + response.statusCode() + ": " + error(reply));
+        }
+
+        if (reply.has("id")) {
+            return new Outcome(item.getName(), item.getSha256(), reply.get("id").getAsString(), true, null);
+        }
+
+        long offset = offset(reply);
+        int mismatches = 0;
+
+        try (FileChannel channel = FileChannel.open(outbox.getArchive(item), StandardOpenOption.READ)) {
+            while (offset < item.getSize()) {
+                ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(chunkBytes, item.getSize() - offset));
+
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk, offset + chunk.position()) < 0) {
+                        throw new IOException("The outbox copy of " + item.getName() + " is truncated.");
+                    }
+                }
+
+                byte[] bytes = chunk.array();
+                long last = offset + bytes.length - 1;
+
+                response = client.send(HttpRequest.newBuilder(uri)
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(bytes))
+                        .header("Content-Range", "bytes " + offset + "-" + last + "/" + item.getSize())
+                        .header("X-Chunk-SHA256", sha256(bytes))
+                        .timeout(Duration.ofMinutes(2)).build(), HttpResponse.BodyHandlers.ofString());
+                reply = parse(response);
+                int status = response.statusCode();
+
+                if ((status == 200 || status == 201) && reply.has("id")) {
+                    return new Outcome(item.getName(), item.getSha256(), reply.get("id").getAsString(),
+                            reply.has("duplicate") && reply.get("duplicate").getAsBoolean(), null);
+                } else if (status == 200 || status == 409) {
+                    offset = offset(reply);
+                } else if (status == 400 && reply.has("offset") && ++mismatches < MAX_CHUNK_RETRIES) {
+                    // The chunk was damaged on the way; send it again.
+                    offset = offset(reply);
+                } else if (status == 400 || status == 413) {
+                    throw new RejectedException(error(reply));
+                } else {
+                    throw new IOException("The server replied " + status + ": " + error(reply));
+                }
+            }
+        }
+
+        throw new IOException("The server has all of " + item.getName() + " but has not stored it.");
+    }
+
+    /**
+     * Parses a JSON reply.
+     *
+     * @param response the response.
+     * @return the reply.
+     * @throws IOException if the reply is not a JSON object.
+     */
+    private static JsonObject parse(HttpResponse<String> response) throws IOException {
+        try {
+            JsonObject reply = GSON.fromJson(response.body(), JsonObject.class);
+
+            if (reply == null) {
+                throw new IOException("The server replied " + response.statusCode() + " with no body.");
+            }
+
+            return reply;
+        } catch (JsonParseException e) {
+            throw new IOException("The server replied " + response.statusCode() + " with something other than "
+                    + "JSON.", e);
+        }
+    }
+
+    /**
+     * Returns the offset the server expects the next chunk at, from a reply.
+     *
+     * @param reply the reply.
+     * @return the offset.
+     * @throws IOException if the reply has no offset that is a number.
+     */
+    private static long offset(JsonObject reply) throws IOException {
+        try {
+            return reply.get("offset").getAsLong();
+        } catch (RuntimeException e) {
+            throw new IOException("The server's reply has no offset: " + reply);
+        }
+    }
+
+    /**
+     * Returns the error message in a reply.
+     *
+     * @param reply the reply.
+     * @return the message.
+     */
+    private static String error(JsonObject reply) {
+        return reply.has("error") ? reply.get("error").getAsString() : reply.toString();
+    }
+
+    /**
+     * Returns the SHA-256 of some bytes, in hex.
+     *
+     * @param bytes the bytes.
+     * @return the SHA-256.
+     */
+    private static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(UploadOutbox.newDigest().digest(bytes));
+    }
+
+    /**
+     * The result of uploading an item.
+     *
+     * @param name      the file name the archive was saved under.
+     * @param sha256    the SHA-256 of the archive.
+     * @param id        the sample ID the server stored it under, or null if it was rejected.
+     * @param duplicate true if the server already had the archive.
+     * @param error     why the server rejected it, or null.
+     */
+    public record Outcome(String name, String sha256, String id, boolean duplicate, String error) {
+
+        /**
+         * Returns the string representation of the outcome.
+         *
+         * @return the string representation.
+         */
+        public String toString() {
+            if (error != null) {
+                return "Upload of " + name + " was rejected: " + error;
+            }
+
+            return "Uploaded " + name + " as sample " + id + (duplicate ? " (already on the server)." : ".");
+        }
+    }
+
+    /**
+     * Thrown when the server rejects an archive, so that it should not be retried.
+     */
+    private static class RejectedException extends IOException {
+
+        /**
+         * The serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs the exception.
+         *
+         * @param message why the archive was rejected.
+         */
+        RejectedException(String message) {
+            super(message);
+        }
+    }
+}
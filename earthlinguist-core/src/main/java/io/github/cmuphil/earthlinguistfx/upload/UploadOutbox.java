@@ -0,0 +1,375 @@
+package io.github.cmuphil.earthlinguistfx.upload;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A queue on disk of archives waiting to be uploaded, which survives the application being closed or crashing. Each
+ * item is a copy of the archive, '&lt;SHA-256&gt;.zip', plus a descriptor, '&lt;SHA-256&gt;.json'. The copy is
+ * written and forced to disk first and the descriptor is renamed into place after it, so an item is in the queue
+ * exactly when its descriptor exists; anything else left over from a crash is removed when the outbox is opened.
+ * Archives the server rejects are moved to a 'failed' subdirectory rather than retried.
+ *
+ * @author josephramsey
+ */
+public class UploadOutbox {
+
+    /**
+     * The JSON reader and writer for descriptors.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The directory rejected archives are moved to.
+     */
+    private static final String FAILED = "failed";
+
+    /**
+     * The outbox directory.
+     */
+    private final Path dir;
+
+    /**
+     * Constructs an outbox in the given directory.
+     *
+     * @param dir the directory.
+     */
+    private UploadOutbox(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Opens the outbox in the given directory, creating it if needed and removing anything left half-written.
+     *
+     * @param dir the directory.
+     * @return the outbox.
+     * @throws IOException if the directory cannot be created or cleaned up.
+     */
+    public static UploadOutbox open(Path dir) throws IOException {
+        Files.createDirectories(dir.resolve(FAILED));
+
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path path : list.toList()) {
+                String name = path.getFileName().toString();
+
+                if (name.startsWith(".") && Files.isRegularFile(path)) {
+                    Files.deleteIfExists(path);
+                } else if (name.endsWith(".zip") && !Files.exists(dir.resolve(stem(name) + ".json"))) {
+                    Files.deleteIfExists(path);
+                } else if (name.endsWith(".json") && !Files.exists(dir.resolve(stem(name) + ".zip"))) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+
+        return new UploadOutbox(dir);
+    }
+
+    /**
+     * Adds a copy of an archive to the outbox. The archive can be changed or deleted afterward. Adding an archive
+     * with the same contents as one already queued returns the queued item.
+     *
+     * @param archive the archive.
+     * @return the item.
+     * @throws IOException if the archive cannot be copied.
+     */
+    public synchronized Item enqueue(Path archive) throws IOException {
+        Path temp = Files.createTempFile(dir, ".enqueue", ".zip");
+
+        try {
+            MessageDigest digest = newDigest();
+
+            try (InputStream in = new DigestInputStream(Files.newInputStream(archive), digest)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            Item existing = get(sha256);
+
+            if (existing != null) {
+                return existing;
+            }
+
+            Item item = new Item(sha256, archive.getFileName().toString(), Files.size(temp),
+                    System.currentTimeMillis());
+            Files.move(temp, dir.resolve(sha256 + ".zip"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            writeDescriptor(item);
+            return item;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Returns the items in the outbox, oldest first.
+     *
+     * @return the items.
+     * @throws IOException if the outbox cannot be read.
+     */
+    public synchronized List<Item> getItems() throws IOException {
+        List<Item> items = new ArrayList<>();
+
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path path : list.filter(path -> path.getFileName().toString().endsWith(".json")).toList()) {
+                Item item = get(stem(path.getFileName().toString()));
+
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+        }
+
+        items.sort(Comparator.comparingLong(Item::getEnqueued));
+        return items;
+    }
+
+    /**
+     * Returns the queued item for the given SHA-256, or null if there is none.
+     *
+     * @param sha256 the SHA-256 of the archive.
+     * @return the item, or null.
+     * @throws IOException if its descriptor cannot be read.
+     */
+    public synchronized Item get(String sha256) throws IOException {
+        Path descriptor = dir.resolve(sha256 + ".json");
+
+        if (!Files.exists(descriptor)) {
+            return null;
+        }
+
+        try {
+            return GSON.fromJson(Files.readString(descriptor, StandardCharsets.UTF_8), Item.class);
+        } catch (RuntimeException e) {
+            throw new IOException("The outbox descriptor " + descriptor + " cannot be read: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the queued copy of an item's archive.
+     *
+     * @param item the item.
+     * @return the archive.
+     */
+    public Path getArchive(Item item) {
+        return dir.resolve(item.getSha256() + ".zip");
+    }
+
+    /**
+     * Records that an upload attempt failed and will be retried.
+     *
+     * @param item  the item.
+     * @param error what went wrong.
+     * @return the updated item.
+     * @throws IOException if the descriptor cannot be written.
+     */
+    public synchronized Item retrying(Item item, String error) throws IOException {
+        Item updated = new Item(item.sha256, item.name, item.size, item.enqueued);
+        updated.attempts = item.attempts + 1;
+        updated.lastError = error;
+
+        if (Files.exists(dir.resolve(item.sha256 + ".json"))) {
+            writeDescriptor(updated);
+        }
+
+        return updated;
+    }
+
+    /**
+     * Removes an item that has been uploaded. The descriptor goes first, so a crash in between leaves only a stray
+     * copy, which the next open removes.
+     *
+     * @param item the item.
+     * @throws IOException if the files cannot be deleted.
+     */
+    public synchronized void complete(Item item) throws IOException {
+        Files.deleteIfExists(dir.resolve(item.sha256 + ".json"));
+        Files.deleteIfExists(dir.resolve(item.sha256 + ".zip"));
+    }
+
+    /**
+     * Moves an item the server rejected to the 'failed' directory, with the reason in its descriptor.
+     *
+     * @param item  the item.
+     * @param error why it was rejected.
+     * @throws IOException if the files cannot be moved.
+     */
+    public synchronized void reject(Item item, String error) throws IOException {
+        Item updated = retrying(item, error);
+        Path failed = dir.resolve(FAILED);
+
+        Files.move(dir.resolve(item.sha256 + ".zip"), failed.resolve(item.sha256 + ".zip"),
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.writeString(failed.resolve(item.sha256 + ".json"), GSON.toJson(updated), StandardCharsets.UTF_8);
+        Files.deleteIfExists(dir.resolve(item.sha256 + ".json"));
+    }
+
+    /**
+     * Writes an item's descriptor to a temporary file and renames it into place.
+     *
+     * @param item the item.
+     * @throws IOException if the descriptor cannot be written.
+     */
+    private void writeDescriptor(Item item) throws IOException {
+        Path temp = Files.createTempFile(dir, ".descriptor", ".json");
+
+        try {
+            Files.writeString(temp, GSON.toJson(item), StandardCharsets.UTF_8);
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+
+            Files.move(temp, dir.resolve(item.sha256 + ".json"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Returns a file name without its extension.
+     *
+     * @param name the file name.
+     * @return the name up to the last dot.
+     */
+    private static String stem(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    /**
+     * Returns a new SHA-256 digest.
+     *
+     * @return the digest.
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * An archive waiting in the outbox. This is a class rather than a record so that Gson can read and write it.
+     */
+    public static final class Item {
+
+        /**
+         * The SHA-256 of the archive, in hex.
+         */
+        private final String sha256;
+
+        /**
+         * The file name the archive was saved under.
+         */
+        private final String name;
+
+        /**
+         * The size of the archive in bytes.
+         */
+        private final long size;
+
+        /**
+         * When the archive was added, in milliseconds since the epoch.
+         */
+        private final long enqueued;
+
+        /**
+         * The number of failed upload attempts.
+         */
+        private int attempts;
+
+        /**
+         * What went wrong with the last attempt, or null.
+         */
+        private String lastError;
+
+        /**
+         * Constructs an item.
+         *
+         * @param sha256   the SHA-256 of the archive, in hex.
+         * @param name     the file name the archive was saved under.
+         * @param size     the size of the archive in bytes.
+         * @param enqueued when the archive was added, in milliseconds since the epoch.
+         */
+        Item(String sha256, String name, long size, long enqueued) {
+            this.sha256 = sha256;
+            this.name = name;
+            this.size = size;
+            this.enqueued = enqueued;
+        }
+
+        /**
+         * Returns the SHA-256 of the archive, in hex.
+         *
+         * @return the SHA-256.
+         */
+        public String getSha256() {
+            return sha256;
+        }
+
+        /**
+         * Returns the file name the archive was saved under.
+         *
+         * @return the file name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the size of the archive in bytes.
+         *
+         * @return the size.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns when the archive was added, in milliseconds since the epoch.
+         *
+         * @return the time.
+         */
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        /**
+         * Returns the number of failed upload attempts.
+         *
+         * @return the number of attempts.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * Returns what went wrong with the last attempt, or null.
+         *
+         * @return the error, or null.
+         */
+        public String getLastError() {
+            return lastError;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.cmuphil.earthlinguistfx.utils;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Some constants for the EarthLinguist UI.
+ *
+ * @author josephramsey
+ */
+public class Constants {
+
+    /**
+     * The date time formatter.
+     */
+    public static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * The directory the app keeps its files under unless they are put elsewhere. Can be set with the system property
+     * 'earthlinguist.home'; each directory below can also be set on its own, for instance to put the scratch
+     * directories on a tmpfs and the library on a fast SSD.
+     */
+    public static final String APP_DIRECTORY = System.getProperty("earthlinguist.home",
+            System.getProperty("user.home") + "/.earthlinguist");
+
+    /**
+     * The directory where the app will store scratch files for recording. Can be set with the system property
+     * 'earthlinguist.scratchRecordDirectory'.
+     */
+    public static final String SCRATCH_FILES_DIRECTORY_RECORD = System.getProperty("earthlinguist.scratchRecordDirectory",
+            APP_DIRECTORY + "/scratch_record");
+
+    /**
+     * The directory where the app will store scratch files for listening. Can be set with the system property
+     * 'earthlinguist.scratchListenDirectory'.
+     */
+    public static final String SCRATCH_FILES_DIRECTORY_LISTEN = System.getProperty("earthlinguist.scratchListenDirectory",
+            APP_DIRECTORY + "/scratch_listen");
+
+    /**
+     * The directory where the app will store public sound zip files--those that are shared with the community. This
+     * will be replaced with a database in the future. Can be set with the system property
+     * 'earthlinguist.publicFilesDirectory'.
+     */
+    public static final String PUBLIC_FILES_DIRECTORY = System.getProperty("earthlinguist.publicFilesDirectory",
+            APP_DIRECTORY + "/public_sound_zips");
+
+    /**
+     * Stores examples that the user explicitly loads using the load examples button to be loaded by the Examples
+     * class. This directory should be emptied when the app is opened and when the stored state is reverted. Can be set
+     * with the system property 'earthlinguist.scratchZipsDirectory'.
+     */
+    public static final String SCRATCH_ZIPS = System.getProperty("earthlinguist.scratchZipsDirectory",
+            APP_DIRECTORY + "/scratch_zips");
+
+    /**
+     * The directory where imported sample archives are kept and catalogued. Unlike the public files directory, it is
+     * not emptied when the application starts. Can be set with the system property 'earthlinguist.libraryDirectory'.
+     */
+    public static final String LIBRARY_DIRECTORY = System.getProperty("earthlinguist.libraryDirectory",
+            APP_DIRECTORY + "/library");
+
+    /**
+     * The directory where the content-addressed clip store keeps one copy of every clip the scratch workspaces hold.
+     */
+    public static final String CLIP_STORE_DIRECTORY = APP_DIRECTORY + "/clip_store";
+
+    /**
+     * The directory where saved archives wait to be uploaded to the ingestion server. Unlike the scratch directories,
+     * it is not emptied when the application starts, so uploads carry on where they left off.
+     */
+    public static final String OUTBOX_DIRECTORY = APP_DIRECTORY + "/outbox";
+
+    /**
+     * The directory samples listened to from the ingestion server are cached in.
+     */
+    public static final String LISTEN_CACHE_DIRECTORY = APP_DIRECTORY + "/listen_cache";
+
+    /**
+     * The address of the ingestion server saved archives are uploaded to. Can be set with the system property
+     * earthlinguist.ingestionUrl.
+     */
+    public static final String INGESTION_URL = System.getProperty("earthlinguist.ingestionUrl", "http://localhost:8642");
+
+    /**
+     * True if saved archives are uploaded, which they are only when earthlinguist.ingestionUrl is set.
+     */
+    public static final boolean UPLOAD_SAVED = System.getProperty("earthlinguist.ingestionUrl") != null;
+
+    /**
+     * The number of milliseconds edits to the app state are collected for before 'state.json' is rewritten. Can be
+     * set with the system property earthlinguist.stateWriteDelayMillis.
+     */
+    public static final long STATE_WRITE_DELAY_MILLIS = Long.getLong("earthlinguist.stateWriteDelayMillis", 500);
+
+    /**
+     * The number of bytes of decoded image pixels the image cache holds before it starts evicting. Can be set with
+     * the system property earthlinguist.imageCacheBytes.
+     */
+    public static final long IMAGE_CACHE_BYTES = Long.getLong("earthlinguist.imageCacheBytes", 64L * 1024 * 1024);
+}
@@ -0,0 +1,215 @@
+package io.github.cmuphil.earthlinguistfx.utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Copies one scratch workspace (a directory of clips plus 'state.json') over another without compressing anything.
+ * The copy is built in a staging directory beside the target, using hard links where the file system allows and a
+ * channel copy otherwise, and is then swapped in for the target with renames, so the target is never seen half
+ * copied.
+ * <p>
+ * Hard links are safe here because nothing in the application writes a workspace file in place: clips and
+ * 'state.json' are always written to a temporary file and renamed over the old one, which leaves any other link to
+ * the old contents untouched.
+ *
+ * @author josephramsey
+ */
+public class WorkspaceTransfer {
+
+    /**
+     * The suffix of a staging directory, to which a unique number is appended.
+     */
+    private static final String STAGING = ".staging";
+
+    /**
+     * The suffix of a replaced workspace waiting to be deleted.
+     */
+    private static final String OLD = ".old";
+
+    /**
+     * Prevents instantiation.
+     */
+    private WorkspaceTransfer() {
+    }
+
+    /**
+     * Replaces the contents of the target workspace with a copy of the source workspace.
+     *
+     * @param source the source workspace.
+     * @param target the target workspace; it need not exist.
+     * @throws IOException if the copy cannot be made or swapped in. The target is left as it was.
+     */
+    public static void copy(Path source, Path target) throws IOException {
+        if (!Files.isDirectory(source)) {
+            throw new IOException("The source workspace is not a directory: " + source);
+        }
+
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        recover(target);
+
+        Path staging = Files.createTempDirectory(parent, "." + target.getFileName() + STAGING);
+
+        try {
+            fill(source, staging);
+            swap(staging, target);
+        } finally {
+            deleteRecursively(staging);
+        }
+    }
+
+    /**
+     * Cleans up after a transfer into the given target that was interrupted: a replaced workspace is restored if the
+     * new one never arrived, and leftover staging and replaced directories are deleted.
+     *
+     * @param target the target workspace.
+     * @throws IOException if the leftovers cannot be cleaned up.
+     */
+    public static void recover(Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Path old = parent.resolve("." + target.getFileName() + OLD);
+
+        if (!Files.exists(target) && Files.isDirectory(old)) {
+            move(old, target);
+        }
+
+        deleteRecursively(old);
+        String stagingPrefix = "." + target.getFileName() + STAGING;
+
+        try (Stream<Path> siblings = Files.list(parent)) {
+            for (Path sibling : siblings.filter(p -> p.getFileName().toString().startsWith(stagingPrefix)).toList()) {
+                deleteRecursively(sibling);
+            }
+        }
+    }
+
+    /**
+     * Fills the staging directory with links to, or copies of, every file in the source workspace.
+     *
+     * @param source  the source workspace.
+     * @param staging the staging directory.
+     * @throws IOException if a file can be neither linked nor copied.
+     */
+    private static void fill(Path source, Path staging) throws IOException {
+        List<Path> files;
+
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)).toList();
+        }
+
+        boolean link = true;
+
+        for (Path file : files) {
+            Path to = staging.resolve(source.relativize(file).toString());
+            Files.createDirectories(to.getParent());
+
+            if (link) {
+                try {
+                    Files.createLink(to, file);
+                    continue;
+                } catch (UnsupportedOperationException | FileSystemException e) {
+
+                    // Links fail for the whole file system or not at all, so stop trying after the first failure.
+                    link = false;
+                }
+            }
+
+            copyFile(file, to);
+        }
+    }
+
+    /**
+     * Copies a file with a channel transfer, which the operating system can carry out without passing the data
+     * through the Java heap.
+     *
+     * @param from the file to copy.
+     * @param to   the copy, which must not exist.
+     * @throws IOException if the file cannot be copied.
+     */
+    private static void copyFile(Path from, Path to) throws IOException {
+        try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long done = 0;
+
+            while (done < size) {
+                long n = in.transferTo(done, size - done, out);
+
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of file copying " + from);
+                }
+
+                done += n;
+            }
+        }
+
+        Files.setLastModifiedTime(to, Files.getLastModifiedTime(from));
+    }
+
+    /**
+     * Swaps the staging directory in for the target: the target is renamed aside, the staging directory is renamed
+     * into its place and the old target is deleted. If the second rename fails, the old target is put back.
+     *
+     * @param staging the staging directory.
+     * @param target  the target workspace.
+     * @throws IOException if the directories cannot be renamed.
+     */
+    private static void swap(Path staging, Path target) throws IOException {
+        Path old = target.toAbsolutePath().getParent().resolve("." + target.getFileName() + OLD);
+        boolean hadTarget = Files.exists(target);
+
+        if (hadTarget) {
+            move(target, old);
+        }
+
+        try {
+            move(staging, target);
+        } catch (IOException e) {
+            if (hadTarget) {
+                move(old, target);
+            }
+
+            throw e;
+        }
+
+        deleteRecursively(old);
+    }
+
+    /**
+     * Renames a directory, atomically if the file system allows.
+     *
+     * @param from the directory.
+     * @param to   the new name, which must not exist.
+     * @throws IOException if the directory cannot be renamed.
+     */
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to);
+        }
+    }
+
+    /**
+     * Deletes a directory and everything in it, if it exists.
+     *
+     * @param dir the directory.
+     * @throws IOException if something cannot be deleted.
+     */
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
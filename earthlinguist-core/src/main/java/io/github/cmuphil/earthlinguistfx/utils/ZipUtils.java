@@ -1,21 +1,20 @@
 package io.github.cmuphil.earthlinguistfx.utils;
 
-import javafx.scene.control.Alert;
-import javafx.stage.FileChooser;
-import javafx.stage.Stage;
+import io.github.cmuphil.earthlinguistfx.archive.ZipArchiveWriter;
+import io.github.cmuphil.earthlinguistfx.archive.ZipIndex;
+import io.github.cmuphil.earthlinguistfx.storage.StorageBackend;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.EnumSet;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
-
-import static io.github.cmuphil.earthlinguistfx.utils.UiUtils.alert;
 
 /**
  * Some utilities for zipping.
@@ -25,7 +24,8 @@ import static io.github.cmuphil.earthlinguistfx.utils.UiUtils.alert;
 public class ZipUtils {
 
     /**
-     * Zips the given directory.
+     * Zips the given directory. Entries are compressed in parallel, and audio and images are stored rather than
+     * deflated; see {@link ZipArchiveWriter}.
      *
      * @param dir     the directory to zip.
      * @param zipFile the zip file to create.
@@ -35,62 +35,104 @@ public class ZipUtils {
 
         if (!dir.exists()) {
             if (!dir.mkdirs()) {
-                alert(Alert.AlertType.ERROR, "Error creating directory: " + dir);
                 throw new RuntimeException("Error creating directory: " + dir);
             }
         } else if (!dir.isDirectory()) {
-            alert(Alert.AlertType.ERROR, "The source directory is not a directory: " + dir);
             throw new RuntimeException("The source directory is not a directory: " + dir);
         }
 
-        try (FileOutputStream fos = new FileOutputStream(zipFile);
-             ZipOutputStream zos = new ZipOutputStream(fos)) {
-
-            Files.walkFileTree(sourceDir, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE,
-                    new SimpleFileVisitor<>() {
-                        @Override
-                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                            // Only regular files should be added to the zip
-                            if (attrs.isRegularFile()) {
-                                // Get the relative path to the source directory
-                                Path relativePath = sourceDir.relativize(file);
-                                zos.putNextEntry(new ZipEntry(relativePath.toString()));
-                                byte[] bytes = Files.readAllBytes(file);
-                                zos.write(bytes, 0, bytes.length);
-                                zos.closeEntry();
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
-
+        try {
+            ZipArchiveWriter.write(sourceDir, zipFile.toPath());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * Extracts the given file from the zip file.
+     * Extracts the given zip file. The central directory is read first and the entries are then extracted
+     * concurrently and checked against their CRCs; see {@link ZipIndex}. Archives the index cannot read, such
+     * as split or encrypted archives, are extracted sequentially with a {@link ZipInputStream}.
      *
      * @param zipFile   the zip file.
      * @param targetDir the directory where the file will be extracted.
      * @throws IOException if there is an error extracting the file.
      */
     public static void unzip(File zipFile, File targetDir) throws IOException {
+        if (zipFile == null || zipFile.getName().isBlank()) {
+            throw new NullPointerException("The zip file name is not available.");
+        }
 
-        if (!targetDir.exists()) {
-            if (!targetDir.mkdirs()) {
-                alert(Alert.AlertType.ERROR, "Error creating directory: " + targetDir);
-                throw new RuntimeException("Error creating directory: " + targetDir);
-            }
+        ZipIndex index;
+
+        try {
+            index = ZipIndex.open(zipFile.toPath());
+        } catch (ZipException e) {
+            unzipStreaming(zipFile, targetDir);
+            return;
         }
 
-        if (zipFile == null || zipFile.getName().isBlank()) {
-            throw new NullPointerException("The zip file name is not available.");
+        try (index) {
+            unzip(index, targetDir);
+        }
+    }
+
+    /**
+     * Extracts the given zip file into a storage backend, each entry under its name. Directory entries, '__MACOSX'
+     * folders and hidden files are skipped. A backend kept in a directory is extracted into as a directory.
+     *
+     * @param zipFile the zip file.
+     * @param target  the backend.
+     * @throws IOException if there is an error extracting the file, or an entry's name would escape the backend.
+     */
+    public static void unzip(File zipFile, StorageBackend target) throws IOException {
+        if (target.getDirectory() != null) {
+            unzip(zipFile, target.getDirectory().toFile());
+            return;
+        }
+
+        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile))) {
+            for (ZipEntry zipEntry = zis.getNextEntry(); zipEntry != null; zipEntry = zis.getNextEntry()) {
+                String name = zipEntry.getName();
+
+                if (zipEntry.isDirectory() || name.startsWith("__MACOSX/") || name.startsWith(".")
+                        || name.contains("/.")) {
+                    continue;
+                }
+
+                try {
+                    target.write(StorageBackend.checkKey(name), zis);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Entry is outside of the target: " + name);
+                }
+            }
         }
+    }
+
+    /**
+     * Extracts every entry of an open zip index into the given directory.
+     *
+     * @param index     the zip index.
+     * @param targetDir the directory where the files will be extracted.
+     * @throws IOException if there is an error extracting the files.
+     */
+    public static void unzip(ZipIndex index, File targetDir) throws IOException {
+        makeTargetDir(targetDir);
+        index.extractAll(targetDir.toPath());
+    }
+
+    /**
+     * Extracts the given zip file sequentially with a {@link ZipInputStream}.
+     *
+     * @param zipFile   the zip file.
+     * @param targetDir the directory where the file will be extracted.
+     * @throws IOException if there is an error extracting the file.
+     */
+    private static void unzipStreaming(File zipFile, File targetDir) throws IOException {
+        makeTargetDir(targetDir);
 
         try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile))) {
             ZipEntry zipEntry = zis.getNextEntry();
-            byte[] buffer = new byte[1024];
+            byte[] buffer = new byte[64 * 1024];
 
             while (zipEntry != null) {
                 File newFile = newFile(targetDir, zipEntry);
@@ -106,7 +148,9 @@ public class ZipUtils {
                         throw new IOException("Failed to create directory " + parent);
                     }
 
-                    // Write file content
+                    // Write file content, unlinking any old file rather than truncating it
+                    Files.deleteIfExists(newFile.toPath());
+
                     try (FileOutputStream fos = new FileOutputStream(newFile)) {
                         int len;
                         while ((len = zis.read(buffer)) > 0) {
@@ -121,6 +165,19 @@ public class ZipUtils {
     }
 
 
+    /**
+     * Creates the target directory of an extraction if it does not exist.
+     *
+     * @param targetDir the directory.
+     */
+    private static void makeTargetDir(File targetDir) {
+        if (!targetDir.exists()) {
+            if (!targetDir.mkdirs()) {
+                throw new RuntimeException("Error creating directory: " + targetDir);
+            }
+        }
+    }
+
     /**
      * Creates a new file in the given directory.
      *
@@ -143,20 +200,32 @@ public class ZipUtils {
     }
 
     /**
-     * Returns the next zip file name for the given directory and name.
+     * Returns the next zip file name for the given directory and name. The directory is listed once, rather than
+     * probed for each candidate name, since it may hold many saved samples.
      *
      * @param zipFilesDir the directory where the zip files are saved.
      * @param name        the name of the zip file.
      * @return the next zip file name for the given directory and name.
      */
     public static String nextZipName(String zipFilesDir, String name) {
-        for (int i = 1; ; i++) {
-            String _name = name + "." + i + ".zip";
-            _name = _name.replace(" ", "_").toLowerCase();
+        String prefix = (name + ".").replace(" ", "_").toLowerCase();
+        Set<String> taken = new HashSet<>();
+        String[] names = new File(zipFilesDir).list();
+
+        if (names != null) {
+            for (String existing : names) {
+                String lower = existing.toLowerCase();
+
+                if (lower.startsWith(prefix) && lower.endsWith(".zip")) {
+                    taken.add(lower);
+                }
+            }
+        }
 
-            File file = new File(zipFilesDir, _name);
+        for (int i = 1; ; i++) {
+            String _name = prefix + i + ".zip";
 
-            if (!file.exists()) {
+            if (!taken.contains(_name)) {
                 return _name;
             }
         }
@@ -178,50 +247,10 @@ public class ZipUtils {
                     boolean delete = file.delete();
 
                     if (!delete) {
-                        alert(Alert.AlertType.ERROR, "Error deleting file: " + file.getName());
                         throw new RuntimeException("Error deleting file: " + file.getName());
                     }
                 }
             }
         }
     }
-
-    /**
-     * Zips the clips in the scratch directory and saves the zip file to the save directory.
-     *
-     * @param selectedExample  the name of the example.
-     * @param selectedLanguage the name of the language.
-     * @param primaryStage     the primary stage.
-     */
-    public static File save(Integer selectedExample, String selectedLanguage, String selectedCountry, Stage primaryStage) {
-        FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Save File");
-        File userHome = new File(System.getProperty("user.home"));
-        fileChooser.setInitialDirectory(userHome);
-
-        String clipsFilename = ("example " + selectedExample + " " + selectedLanguage
-                + " " + selectedCountry).replace(" ", "_").toLowerCase();
-
-        String next = ZipUtils.nextZipName(userHome.getAbsolutePath(), clipsFilename);
-
-        fileChooser.setInitialFileName(next);
-
-        // Set extension filter, if you want to restrict the file type
-        FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter("ZIP files (*.zip)", "*.zip");
-        fileChooser.getExtensionFilters().add(extFilter);
-
-        // Show save file dialog
-        File fileToSave = fileChooser.showSaveDialog(primaryStage);
-
-        if (fileToSave != null) {
-            String clipsFilename2 = fileToSave.getName();
-            File file = new File(fileToSave.getParent(), clipsFilename2);
-            UiUtils.recreateFile(clipsFilename, file);
-            zip(new File(Constants.SCRATCH_FILES_DIRECTORY_RECORD), file);
-
-            return file;
-        }
-
-        return null;
-    }
 }
@@ -0,0 +1,186 @@
+package io.github.cmuphil.earthlinguistfx.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link IncrementalZipUpdater}: in-place updates that keep unchanged entries where they were, and recovery of
+ * an archive whose in-place update was cut off part way through.
+ *
+ * @author josephramsey
+ */
+public class IncrementalZipUpdaterTest {
+
+    /**
+     * Checks that an in-place update rewrites only the changed entries, leaves the data before the old central
+     * directory as it was and produces an archive holding the new contents.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be written or read.
+     */
+    @Test
+    public void testUpdateInPlace(@TempDir Path dir) throws IOException {
+        Path workspace = dir.resolve("workspace");
+        Map<String, byte[]> files = ZipIndexTest.writeWorkspace(workspace);
+        Path zip = dir.resolve("sample.zip");
+        ZipArchiveWriter.write(workspace, zip);
+
+        byte[] before = Files.readAllBytes(zip);
+        long cdOffset = centralDirectoryOffset(zip);
+        change(workspace, files);
+
+        IncrementalZipUpdater.Result result = IncrementalZipUpdater.update(workspace, zip, zip);
+
+        assertTrue(result.inPlace());
+        assertEquals(2, result.written());
+        assertEquals(files.size() - 2, result.carried());
+        assertArrayEquals(Arrays.copyOf(before, (int) cdOffset),
+                Arrays.copyOf(Files.readAllBytes(zip), (int) cdOffset));
+        assertContents(zip, files);
+        assertFalse(IncrementalZipUpdater.recover(zip));
+    }
+
+    /**
+     * Checks that an archive whose in-place update was cut off at any point after the journal was written, as by a
+     * crash, is put back as it was before the update, and that the next update then succeeds.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be written or read.
+     */
+    @Test
+    public void testRecoveryFromInterruptedUpdate(@TempDir Path dir) throws IOException {
+        Path workspace = dir.resolve("workspace");
+        Map<String, byte[]> files = ZipIndexTest.writeWorkspace(workspace);
+        Map<String, byte[]> original = Map.copyOf(files);
+        Path zip = dir.resolve("sample.zip");
+        ZipArchiveWriter.write(workspace, zip);
+
+        byte[] before = Files.readAllBytes(zip);
+        int cdOffset = (int) centralDirectoryOffset(zip);
+        change(workspace, files);
+
+        Path updatedZip = dir.resolve("updated.zip");
+        Files.copy(zip, updatedZip);
+        IncrementalZipUpdater.update(workspace, updatedZip, updatedZip);
+        byte[] after = Files.readAllBytes(updatedZip);
+
+        // The journal holds the offset of the old central directory and the old tail of the file.
+        byte[] journal = ByteBuffer.allocate(Long.BYTES + before.length - cdOffset).putLong(cdOffset)
+                .put(before, cdOffset, before.length - cdOffset).array();
+        Path journalFile = dir.resolve(".sample.zip.journal");
+
+        for (int cut : new int[]{cdOffset, cdOffset + 1, cdOffset + 30, (cdOffset + after.length) / 2,
+                after.length - 22, after.length - 1, after.length}) {
+
+            // The file holds the new bytes written up to the cut, and the old bytes after it until it is truncated.
+            byte[] crashed = Arrays.copyOf(after, Math.max(cut, before.length));
+            System.arraycopy(after, 0, crashed, 0, cut);
+
+            if (cut < before.length) {
+                System.arraycopy(before, cut, crashed, cut, before.length - cut);
+            }
+
+            Files.write(zip, crashed);
+            Files.write(journalFile, journal);
+
+            assertTrue(IncrementalZipUpdater.recover(zip), "cut at " + cut);
+            assertArrayEquals(before, Files.readAllBytes(zip), "cut at " + cut);
+            assertFalse(Files.exists(journalFile));
+            assertContents(zip, original);
+        }
+
+        Files.write(zip, Arrays.copyOf(after, cdOffset + 100));
+        Files.write(journalFile, journal);
+
+        IncrementalZipUpdater.update(workspace, zip, zip);
+
+        assertFalse(Files.exists(journalFile));
+        assertContents(zip, files);
+    }
+
+    /**
+     * Checks that a journal left half written, as by a crash before it was renamed into place, is ignored: the
+     * archive had not been touched yet.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be written or read.
+     */
+    @Test
+    public void testPartialJournalIsIgnored(@TempDir Path dir) throws IOException {
+        Path workspace = dir.resolve("workspace");
+        Map<String, byte[]> files = ZipIndexTest.writeWorkspace(workspace);
+        Path zip = dir.resolve("sample.zip");
+        ZipArchiveWriter.write(workspace, zip);
+
+        byte[] before = Files.readAllBytes(zip);
+        Files.write(dir.resolve(".sample.zip.journal.tmp"), new byte[]{0, 0, 0});
+
+        assertFalse(IncrementalZipUpdater.recover(zip));
+        assertArrayEquals(before, Files.readAllBytes(zip));
+
+        change(workspace, files);
+        IncrementalZipUpdater.update(workspace, zip, zip);
+        assertContents(zip, files);
+    }
+
+    /**
+     * Changes two files of the workspace, one of which grows, by renaming new files over them, as the application
+     * does, and records their new contents.
+     *
+     * @param workspace the workspace.
+     * @param files     the contents of each file, by entry name, updated in place.
+     * @throws IOException if the files cannot be written.
+     */
+    private static void change(Path workspace, Map<String, byte[]> files) throws IOException {
+        files.put("state.json", "{\"exampleIndex\": 2, \"rows\": []}\n".repeat(300).getBytes(StandardCharsets.UTF_8));
+        files.put("clip.2.wav", ZipIndexTest.randomBytes(60_000, 20));
+
+        for (String name : new String[]{"state.json", "clip.2.wav"}) {
+            Path temp = workspace.resolve(name + ".tmp");
+            Files.write(temp, files.get(name));
+            Files.move(temp, workspace.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the offset of the central directory of an archive.
+     *
+     * @param zip the archive.
+     * @return the offset.
+     * @throws IOException if the archive cannot be read.
+     */
+    private static long centralDirectoryOffset(Path zip) throws IOException {
+        try (ZipIndex index = ZipIndex.open(zip)) {
+            return index.getCentralDirectoryOffset();
+        }
+    }
+
+    /**
+     * Checks that an archive holds exactly the given files.
+     *
+     * @param zip   the archive.
+     * @param files the contents of each file, by entry name.
+     * @throws IOException if the archive cannot be read.
+     */
+    private static void assertContents(Path zip, Map<String, byte[]> files) throws IOException {
+        try (ZipIndex index = ZipIndex.open(zip)) {
+            assertEquals(new TreeSet<>(files.keySet()), new TreeSet<>(index.list("")));
+
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                assertArrayEquals(file.getValue(), index.readAllBytes(file.getKey()), file.getKey());
+            }
+        }
+    }
+}
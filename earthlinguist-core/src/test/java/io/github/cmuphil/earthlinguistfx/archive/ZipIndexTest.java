@@ -0,0 +1,195 @@
+package io.github.cmuphil.earthlinguistfx.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link ZipArchiveWriter} and {@link ZipIndex} together: archives written are read back whole, by the index
+ * and by {@link ZipFile}, and entries whose data has been damaged are refused.
+ *
+ * @author josephramsey
+ */
+public class ZipIndexTest {
+
+    /**
+     * Checks that every file written is read back unchanged through the index, with text deflated and audio stored.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be written or read.
+     */
+    @Test
+    public void testRoundTrip(@TempDir Path dir) throws IOException {
+        Map<String, byte[]> files = writeWorkspace(dir.resolve("workspace"));
+        Path zip = dir.resolve("sample.zip");
+
+        ZipArchiveWriter.write(dir.resolve("workspace"), zip);
+
+        try (ZipIndex index = ZipIndex.open(zip)) {
+            assertEquals(files.keySet(), new TreeSet<>(index.list("")));
+
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                assertArrayEquals(file.getValue(), index.readAllBytes(file.getKey()), file.getKey());
+                assertEquals(file.getValue().length, index.size(file.getKey()));
+            }
+
+            assertEquals(ZipFormat.DEFLATED, index.getEntry("state.json").method());
+            assertEquals(ZipFormat.STORED, index.getEntry("clip.1.wav").method());
+        }
+    }
+
+    /**
+     * Checks that an archive written by {@link ZipArchiveWriter} is read the same by {@link ZipFile}.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be written or read.
+     */
+    @Test
+    public void testReadableByZipFile(@TempDir Path dir) throws IOException {
+        Map<String, byte[]> files = writeWorkspace(dir.resolve("workspace"));
+        Path zip = dir.resolve("sample.zip");
+
+        ZipArchiveWriter.write(dir.resolve("workspace"), zip);
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            Set<String> names = new TreeSet<>();
+
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                names.add(entry.getName());
+
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    assertArrayEquals(files.get(entry.getName()), in.readAllBytes(), entry.getName());
+                }
+            }
+
+            assertEquals(files.keySet(), names);
+        }
+    }
+
+    /**
+     * Checks that extracting every entry reproduces the directory the archive was written from.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be written or extracted.
+     */
+    @Test
+    public void testExtractAll(@TempDir Path dir) throws IOException {
+        Map<String, byte[]> files = writeWorkspace(dir.resolve("workspace"));
+        Path zip = dir.resolve("sample.zip");
+        Path target = dir.resolve("extracted");
+
+        ZipArchiveWriter.write(dir.resolve("workspace"), zip);
+
+        try (ZipIndex index = ZipIndex.open(zip)) {
+            index.extractAll(target);
+        }
+
+        assertEquals(files.keySet(), listFiles(target));
+
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            assertArrayEquals(file.getValue(), Files.readAllBytes(target.resolve(file.getKey())), file.getKey());
+        }
+    }
+
+    /**
+     * Checks that a stored entry whose data has been damaged fails its CRC check when read or extracted, and that
+     * nothing is left where it was to be extracted.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be written or read.
+     */
+    @Test
+    public void testDamagedStoredEntryIsRefused(@TempDir Path dir) throws IOException {
+        writeWorkspace(dir.resolve("workspace"));
+        Path zip = dir.resolve("sample.zip");
+        Path target = dir.resolve("clip.1.wav");
+
+        ZipArchiveWriter.write(dir.resolve("workspace"), zip);
+        long position;
+
+        try (ZipIndex index = ZipIndex.open(zip)) {
+            position = index.getDataOffset(index.getEntry("clip.1.wav")) + 1000;
+        }
+
+        try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) ~one.get(0));
+            channel.write(one.rewind(), position);
+        }
+
+        try (ZipIndex index = ZipIndex.open(zip)) {
+            assertThrows(ZipException.class, () -> index.readAllBytes("clip.1.wav"));
+            assertThrows(ZipException.class, () -> index.extract(index.getEntry("clip.1.wav"), target));
+            assertFalse(Files.exists(target));
+            assertEquals(index.size("state.json"), index.readAllBytes("state.json").length);
+        }
+    }
+
+    /**
+     * Writes a workspace: a compressible state.json, two clips of random audio, an empty file and a file in a
+     * subdirectory.
+     *
+     * @param workspace the directory to write.
+     * @return the contents of each file, by entry name.
+     * @throws IOException if the files cannot be written.
+     */
+    static Map<String, byte[]> writeWorkspace(Path workspace) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        files.put("state.json", "{\"exampleIndex\": 1, \"rows\": []}\n".repeat(200).getBytes(StandardCharsets.UTF_8));
+        files.put("clip.1.wav", randomBytes(200_000, 1));
+        files.put("clip.2.wav", randomBytes(50_000, 2));
+        files.put("notes.txt", new byte[0]);
+        files.put("images/figure.bin", randomBytes(3_000, 3));
+
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            Path path = workspace.resolve(file.getKey());
+            Files.createDirectories(path.getParent());
+            Files.write(path, file.getValue());
+        }
+
+        return files;
+    }
+
+    /**
+     * Returns reproducible random bytes.
+     *
+     * @param length the number of bytes.
+     * @param seed   the seed.
+     * @return the bytes.
+     */
+    static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the paths of the regular files under a directory, relative to it and with '/' separators.
+     *
+     * @param dir the directory.
+     * @return the paths.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private static Set<String> listFiles(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile).map(path -> ZipArchiveWriter.entryName(dir.relativize(path)))
+                    .collect(TreeSet::new, Set::add, Set::addAll);
+        }
+    }
+}
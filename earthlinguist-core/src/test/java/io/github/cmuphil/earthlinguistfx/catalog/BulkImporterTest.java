@@ -0,0 +1,112 @@
+package io.github.cmuphil.earthlinguistfx.catalog;
+
+import io.github.cmuphil.earthlinguistfx.state.AppState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link BulkImporter}, in particular that an import whose catalog cannot be saved stops rather than hanging
+ * and leaves no uncataloged archives in the library.
+ *
+ * @author josephramsey
+ */
+public class BulkImporterTest {
+
+    /**
+     * The number of samples to import; more than a catalog batch and the queues between stages hold, so that a
+     * failed catalog save leaves the earlier stages with work to pass on.
+     */
+    private static final int NUM_SAMPLES = 400;
+
+    /**
+     * Checks that every sample is imported and cataloged.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the samples cannot be written.
+     */
+    @Test
+    public void testImportAll(@TempDir Path dir) throws IOException {
+        Path sources = writeSamples(dir.resolve("sources"));
+        Path library = dir.resolve("library");
+
+        BulkImporter.Report report = new BulkImporter(library, 2).importAll(sources, null);
+
+        assertEquals(NUM_SAMPLES, report.imported().size(), report.errors().toString());
+        assertTrue(report.errors().isEmpty());
+        assertEquals(NUM_SAMPLES, SampleCatalog.open(library).getRecords().size());
+        assertEquals(NUM_SAMPLES, countArchives(library));
+    }
+
+    /**
+     * Checks that when the catalog cannot be saved, the import fails promptly and the archives it wrote are deleted.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the samples cannot be written.
+     */
+    @Test
+    public void testCatalogFailureRollsBack(@TempDir Path dir) throws IOException {
+        Path sources = writeSamples(dir.resolve("sources"));
+        Path library = dir.resolve("library");
+        BulkImporter importer = new BulkImporter(library, 2);
+
+        // Non-empty directories where the catalog writes its log and its temporary index make every save fail.
+        Files.createDirectories(library.resolve(SampleCatalog.LOG_FILE).resolve("blocker"));
+        Files.createDirectories(library.resolve(SampleCatalog.INDEX_FILE + ".tmp").resolve("blocker"));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(60),
+                () -> assertThrows(IOException.class, () -> importer.importAll(sources, null)));
+        assertEquals(0, countArchives(library));
+    }
+
+    /**
+     * Writes sample zips, each holding only a state.json for example 1.
+     *
+     * @param dir the directory to write them to.
+     * @return the directory.
+     * @throws IOException if they cannot be written.
+     */
+    private static Path writeSamples(Path dir) throws IOException {
+        Files.createDirectories(dir);
+
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            AppState appState = new AppState();
+            appState.setSelectedIndex(1);
+            appState.setSelectedLanguage("Language " + i);
+            appState.setSelectedCountry("Country");
+
+            try (OutputStream out = Files.newOutputStream(dir.resolve("sample_" + i + ".zip"));
+                 ZipOutputStream zip = new ZipOutputStream(out)) {
+                zip.putNextEntry(new ZipEntry(AppState.STATE_FILE));
+                zip.write(AppState.toJsonString(appState).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+
+        return dir;
+    }
+
+    /**
+     * Counts the archives in a library.
+     *
+     * @param library the library directory.
+     * @return the number of '.zip' files under it.
+     * @throws IOException if it cannot be walked.
+     */
+    private static long countArchives(Path library) throws IOException {
+        try (Stream<Path> walk = Files.walk(library)) {
+            return walk.filter(path -> path.getFileName().toString().endsWith(".zip")).count();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package io.github.cmuphil.earthlinguistfx.catalog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests how {@link SampleCatalog} saves its changes: appended to a log that is replayed on open, compacted into the
+ * index once it grows, and recovered when its last line was cut short.
+ *
+ * @author josephramsey
+ */
+public class SampleCatalogTest {
+
+    /**
+     * Checks that puts, renames and removals are appended to the log, not written to the index, and are all there
+     * when the catalog is opened again.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the catalog cannot be used.
+     */
+    @Test
+    public void testChangesAreLogged(@TempDir Path dir) throws IOException {
+        SampleCatalog catalog = SampleCatalog.open(dir);
+        catalog.put(record("a.zip"));
+        catalog.putAll(List.of(record("b.zip"), record("c.zip")));
+        catalog.rename(Map.of("b.zip", "shard/b.zip"));
+        catalog.removeAll(List.of("c.zip"));
+
+        assertFalse(Files.exists(dir.resolve(SampleCatalog.INDEX_FILE)));
+        assertEquals(6, Files.readAllLines(dir.resolve(SampleCatalog.LOG_FILE)).size());
+
+        SampleCatalog reopened = SampleCatalog.open(dir);
+        assertEquals(List.of("a.zip", "shard/b.zip"), files(reopened));
+        assertEquals("shard/b.zip", reopened.getRecord("shard/b.zip").getFile());
+    }
+
+    /**
+     * Checks that the log is folded into the index and deleted once it has grown past the compaction threshold, and
+     * that the catalog reads the same afterwards.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the catalog cannot be used.
+     */
+    @Test
+    public void testLogIsCompacted(@TempDir Path dir) throws IOException {
+        SampleCatalog catalog = SampleCatalog.open(dir);
+
+        for (int i = 0; i < 1000; i++) {
+            catalog.put(record("sample_" + (i % 10) + ".zip"));
+        }
+
+        assertEquals(1000, Files.readAllLines(dir.resolve(SampleCatalog.LOG_FILE)).size());
+
+        catalog.put(record("last.zip"));
+
+        assertFalse(Files.exists(dir.resolve(SampleCatalog.LOG_FILE)));
+        assertTrue(Files.exists(dir.resolve(SampleCatalog.INDEX_FILE)));
+        assertEquals(11, SampleCatalog.open(dir).getRecords().size());
+
+        catalog.removeAll(List.of("last.zip"));
+
+        assertEquals(1, Files.readAllLines(dir.resolve(SampleCatalog.LOG_FILE)).size());
+        assertEquals(10, SampleCatalog.open(dir).getRecords().size());
+    }
+
+    /**
+     * Checks that a log whose last line was cut short is replayed up to that line and compacted on open, so that
+     * later changes are not appended after the damage.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the catalog cannot be used.
+     */
+    @Test
+    public void testTornLogLineIsDropped(@TempDir Path dir) throws IOException {
+        SampleCatalog catalog = SampleCatalog.open(dir);
+        catalog.put(record("a.zip"));
+        catalog.put(record("b.zip"));
+
+        Path log = dir.resolve(SampleCatalog.LOG_FILE);
+        String text = Files.readString(log, StandardCharsets.UTF_8);
+        Files.writeString(log, text.substring(0, text.length() - 10), StandardCharsets.UTF_8,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        SampleCatalog reopened = SampleCatalog.open(dir);
+        assertEquals(List.of("a.zip"), files(reopened));
+        assertFalse(Files.exists(log));
+
+        reopened.put(record("c.zip"));
+        assertEquals(List.of("a.zip", "c.zip"), files(SampleCatalog.open(dir)));
+    }
+
+    /**
+     * Returns a record for the given file.
+     *
+     * @param file the path of the archive relative to the library directory.
+     * @return the record.
+     */
+    private static SampleRecord record(String file) {
+        return new SampleRecord(file, 1000, 0, "English", "USA", "", 1, 3, "", new int[]{0}, new double[]{1.5});
+    }
+
+    /**
+     * Returns the files a catalog has records for, in order.
+     *
+     * @param catalog the catalog.
+     * @return the files.
+     */
+    private static List<String> files(SampleCatalog catalog) {
+        List<String> files = new ArrayList<>();
+
+        for (SampleRecord record : catalog.getRecords()) {
+            files.add(record.getFile());
+        }
+
+        return files;
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.cmuphil.earthlinguistfx.catalog;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link SampleTable} against a brute-force scan of a million synthetic records. How long a warm three-filter
+ * count takes depends on the machine, so it is not tested; run {@link #main(String[])} to measure it.
+ *
+ * @author josephramsey
+ */
+public class SampleTableTest {
+
+    /**
+     * The number of synthetic records.
+     */
+    private static final int NUM_ROWS = 1_000_000;
+
+    /**
+     * The languages the records are drawn from.
+     */
+    private static final String[] LANGUAGES = {"Yoruba", "Quechua", "Tagalog", "Welsh", "Amharic", "Navajo"};
+
+    /**
+     * The countries the records are drawn from.
+     */
+    private static final String[] COUNTRIES = {"Nigeria", "Peru", "Philippines", "UK", "Ethiopia", "USA", "Benin"};
+
+    /**
+     * The synthetic records.
+     */
+    private static List<SampleRecord> records;
+
+    /**
+     * The table over the records.
+     */
+    private static SampleTable table;
+
+    /**
+     * Measures a warm three-filter count over the synthetic records and prints the median and slowest of 101 runs.
+     * The target is a median well under a millisecond.
+     *
+     * @param args ignored.
+     */
+    public static void main(String[] args) {
+        setUp();
+
+        for (int i = 0; i < 200; i++) {
+            threeFilterQuery().count();
+        }
+
+        long[] nanos = new long[101];
+
+        for (int i = 0; i < nanos.length; i++) {
+            long start = System.nanoTime();
+            threeFilterQuery().count();
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(nanos);
+        System.out.println("Three-filter count over " + NUM_ROWS + " rows: median " + nanos[nanos.length / 2] / 1000
+                + " us, slowest " + nanos[nanos.length - 1] / 1000 + " us.");
+    }
+
+    /**
+     * Builds the records and the table once for all the tests.
+     */
+    @BeforeAll
+    public static void setUp() {
+        Random random = new Random(42);
+        records = new ArrayList<>(NUM_ROWS);
+
+        for (int i = 0; i < NUM_ROWS; i++) {
+            int numColumns = 3 + random.nextInt(6);
+            int[] recorded = random.ints(0, numColumns).distinct().limit(random.nextInt(numColumns + 1))
+                    .sorted().toArray();
+            records.add(new SampleRecord("sample_" + i + ".zip", 1000, 0, LANGUAGES[random.nextInt(LANGUAGES.length)],
+                    COUNTRIES[random.nextInt(COUNTRIES.length)], "region " + random.nextInt(50),
+                    1 + random.nextInt(20), numColumns, "", recorded, new double[recorded.length]));
+        }
+
+        table = new SampleTable(records);
+    }
+
+    /**
+     * Checks counts, row indices and grouping against a scan of the records.
+     */
+    @Test
+    public void testQueriesMatchScan() {
+        int expected = 0;
+        Map<String, Integer> byCountry = new HashMap<>();
+
+        for (SampleRecord record : records) {
+            if (record.getLanguage().equals("Yoruba") && record.getExampleIndex() == 3 && record.isRecorded(1)) {
+                expected++;
+                byCountry.merge(record.getCountry(), 1, Integer::sum);
+            }
+        }
+
+        assertEquals(expected, threeFilterQuery().count());
+        assertEquals(expected, threeFilterQuery().rowIndices().length);
+        assertEquals(byCountry, new HashMap<>(threeFilterQuery().groupBy(SampleTable.Field.COUNTRY)));
+
+        for (int r : threeFilterQuery().rowIndices()) {
+            SampleRecord record = table.getRow(r);
+            assertEquals("Yoruba", record.getLanguage());
+            assertEquals(3, record.getExampleIndex());
+            assertTrue(record.isRecorded(1));
+        }
+
+        assertEquals(0, table.query().where(SampleTable.Field.LANGUAGE, "Klingon").count());
+        assertEquals(NUM_ROWS, table.query().count());
+    }
+
+    /**
+     * Checks that counts stay right when the same queries are run many times, as once the table is warm, and for
+     * filters on the other fields.
+     */
+    @Test
+    public void testRepeatedCountsMatchScan() {
+        int expected = 0;
+        int expectedOther = 0;
+
+        for (SampleRecord record : records) {
+            if (record.getLanguage().equals("Yoruba") && record.getExampleIndex() == 3 && record.isRecorded(1)) {
+                expected++;
+            }
+
+            if (record.getCountry().equals("Peru") && record.getRegion().equals("region 7") && record.isRecorded(0)) {
+                expectedOther++;
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals(expected, threeFilterQuery().count());
+        }
+
+        assertEquals(expectedOther, table.query().where(SampleTable.Field.COUNTRY, "Peru")
+                .where(SampleTable.Field.REGION, "region 7").recorded(0).count());
+    }
+
+    /**
+     * Returns the query for Yoruba samples of example 3 with column 2 recorded.
+     *
+     * @return the query.
+     */
+    private static SampleTable.Query threeFilterQuery() {
+        return table.query().where(SampleTable.Field.LANGUAGE, "Yoruba").where(SampleTable.Field.EXAMPLE, "3")
+                .recorded(1);
+    }
+}
@@ -0,0 +1,148 @@
+package io.github.cmuphil.earthlinguistfx.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link CheckmarkMatrix}, in particular that the binary form is checked before anything is allocated for it.
+ *
+ * @author josephramsey
+ */
+public class CheckmarkMatrixTest {
+
+    /**
+     * Checks that matrices whose column counts are and are not multiples of 64 read back from the binary form
+     * exactly, with the same rows checked in each column.
+     *
+     * @throws IOException if a matrix cannot be written or read.
+     */
+    @Test
+    public void testWriteReadRoundTrip() throws IOException {
+        Random random = new Random(11);
+
+        for (int numColumns : new int[]{1, 7, 63, 64, 65, 100, 128, 130}) {
+            for (int numRows : new int[]{1, 2, 63, 64, 65, 150}) {
+                CheckmarkMatrix matrix = new CheckmarkMatrix(numRows, numColumns);
+
+                for (int r = 0; r < numRows; r++) {
+                    for (int c = 0; c < numColumns; c++) {
+                        matrix.set(r, c, random.nextBoolean());
+                    }
+                }
+
+                byte[] binary = binary(matrix);
+                assertEquals(16 + numRows * ((numColumns + 63) / 64) * 8, binary.length);
+
+                CheckmarkMatrix read = CheckmarkMatrix.read(new ByteArrayInputStream(binary), binary.length);
+                String size = numRows + " x " + numColumns;
+
+                assertEquals(matrix, read, size);
+                assertEquals(matrix.toString(), read.toString(), size);
+                assertEquals(matrix.countChecked(), read.countChecked(), size);
+
+                for (int c = 0; c < numColumns; c++) {
+                    assertEquals(matrix.getCheckedRows(c), read.getCheckedRows(c), size);
+                    assertArrayEquals(matrix.getColumnWords(c), read.getColumnWords(c), size);
+                    assertTrue(read.columnEquals(c, matrix, c), size);
+                }
+
+                for (int r = 0; r < numRows; r++) {
+                    assertEquals(matrix.getCheckedColumns(r), read.getCheckedColumns(r), size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a header whose dimensions do not agree with the size of the binary form is rejected, however large
+     * the dimensions claim the matrix is.
+     *
+     * @throws IOException if the header cannot be written.
+     */
+    @Test
+    public void testReadRejectsBadDimensions() throws IOException {
+        byte[] huge = header(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> CheckmarkMatrix.read(new ByteArrayInputStream(huge), huge.length));
+
+        byte[] wide = header(1, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> CheckmarkMatrix.read(new ByteArrayInputStream(wide), wide.length));
+
+        byte[] negative = header(-1, 3);
+        assertThrows(IOException.class,
+                () -> CheckmarkMatrix.read(new ByteArrayInputStream(negative), negative.length));
+
+        byte[] binary = binary(CheckmarkMatrix.parse(List.of("101", "011")));
+        assertThrows(IOException.class,
+                () -> CheckmarkMatrix.read(new ByteArrayInputStream(binary), binary.length + 8));
+    }
+
+    /**
+     * Checks that a row with bits set past its last column is rejected.
+     *
+     * @throws IOException if the matrix cannot be written.
+     */
+    @Test
+    public void testReadRejectsStrayBits() throws IOException {
+        byte[] binary = binary(CheckmarkMatrix.parse(List.of("101", "011")));
+        binary[binary.length - 1] |= 0x10;
+        assertThrows(IOException.class, () -> CheckmarkMatrix.read(new ByteArrayInputStream(binary), binary.length));
+    }
+
+    /**
+     * Checks that a table made from a matrix reads each row's checkmarks from it.
+     */
+    @Test
+    public void testTableRowsReadMatrix() {
+        CheckmarkMatrix matrix = CheckmarkMatrix.parse(List.of("101", "011"));
+        TableData table = new TableData(matrix, List.of("/1.png", "/2.png"));
+
+        assertSame(matrix, table.getCheckmarks());
+        assertEquals(2, table.getNumRows());
+        assertEquals(3, table.getRow(1).getNumCheckmarkColumns());
+        assertTrue(table.getRow(0).isChecked(0));
+        assertFalse(table.getRow(0).isChecked(1));
+        assertFalse(table.getRow(1).isChecked(0));
+        assertTrue(table.getRow(1).isChecked(2));
+        assertThrows(UnsupportedOperationException.class, () -> table.getRows().clear());
+    }
+
+    /**
+     * Returns the binary form of a matrix.
+     *
+     * @param matrix the matrix.
+     * @return the bytes.
+     * @throws IOException if it cannot be written.
+     */
+    private static byte[] binary(CheckmarkMatrix matrix) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        matrix.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a header of the binary form with the given dimensions and nothing after it.
+     *
+     * @param numRows    the number of rows.
+     * @param numColumns the number of columns.
+     * @return the bytes.
+     * @throws IOException if it cannot be written.
+     */
+    private static byte[] header(int numRows, int numColumns) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(0x454c434d);
+        data.writeInt(1);
+        data.writeInt(numRows);
+        data.writeInt(numColumns);
+        data.flush();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.cmuphil.earthlinguistfx.examples;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link ExampleManifest}, in particular that the manifest bundled with the examples is the one that would be
+ * generated from them now, so that an example added or changed without regenerating it fails the build.
+ *
+ * @author josephramsey
+ */
+public class ExampleManifestTest {
+
+    /**
+     * The bundled examples directory, relative to the module.
+     */
+    private static final Path EXAMPLES = Path.of("resources", "examples");
+
+    /**
+     * Checks that regenerating the manifest from the examples directory reproduces the bundled manifest exactly.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the examples or the manifest cannot be read.
+     */
+    @Test
+    public void testBundledManifestIsCurrent(@TempDir Path dir) throws IOException {
+        Path generated = dir.resolve("manifest.json");
+        ExampleManifest.generate(EXAMPLES).write(generated);
+
+        String expected = Files.readString(generated, StandardCharsets.UTF_8);
+        String actual = Files.readString(EXAMPLES.resolve("manifest.json"), StandardCharsets.UTF_8);
+
+        assertEquals(expected, actual, "The examples manifest is out of date; regenerate it by running "
+                                       + "ExampleManifest.");
+    }
+
+    /**
+     * Checks that a written manifest reads back with the same examples and tables.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the manifest cannot be written or read.
+     */
+    @Test
+    public void testWriteRead(@TempDir Path dir) throws IOException {
+        ExampleManifest manifest = ExampleManifest.generate(EXAMPLES);
+        Path file = dir.resolve("manifest.json");
+        manifest.write(file);
+
+        ExampleManifest read;
+
+        try (InputStream in = Files.newInputStream(file)) {
+            read = ExampleManifest.read(in);
+        }
+
+        assertEquals(manifest.getExamples().size(), read.getExamples().size());
+        assertFalse(read.getExamples().isEmpty());
+
+        for (int i = 0; i < manifest.getExamples().size(); i++) {
+            ExampleManifest.Example expected = manifest.getExamples().get(i);
+            ExampleManifest.Example actual = read.getExamples().get(i);
+
+            assertEquals(expected.getIndex(), actual.getIndex());
+            assertEquals(expected.toTableData().getNumRows(), actual.toTableData().getNumRows());
+            assertEquals(expected.toTableData().getCheckmarks(), actual.toTableData().getCheckmarks());
+        }
+
+        try (Stream<Path> list = Files.list(dir)) {
+            assertEquals(1, list.count(), "The temporary file was left behind.");
+        }
+    }
+}
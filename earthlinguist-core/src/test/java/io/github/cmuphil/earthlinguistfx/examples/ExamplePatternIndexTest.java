@@ -0,0 +1,253 @@
+package io.github.cmuphil.earthlinguistfx.examples;
+
+import io.github.cmuphil.earthlinguistfx.data.CheckmarkMatrix;
+import io.github.cmuphil.earthlinguistfx.data.TableData;
+import io.github.cmuphil.earthlinguistfx.examples.ExamplePatternIndex.Match;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link ExamplePatternIndex} on a few small examples and against a scan of randomly generated ones.
+ *
+ * @author josephramsey
+ */
+public class ExamplePatternIndexTest {
+
+    /**
+     * The name of the set of the small examples.
+     */
+    private static final String SET = "small";
+
+    /**
+     * The index of the small examples.
+     */
+    private ExamplePatternIndex index;
+
+    /**
+     * Builds the index of the small examples: example 1 has columns checked in rows {0, 2}, {1, 2} and {0, 1};
+     * example 2 in {0, 2} and {1, 2}; example 3 in {0}; and example 4 in no rows and in {0}.
+     */
+    @BeforeEach
+    public void setUp() {
+        Map<Integer, TableData> examples = new HashMap<>();
+        examples.put(1, table("101", "011", "110"));
+        examples.put(2, table("10", "01", "11", "00"));
+        examples.put(3, table("1", "0", "0"));
+        examples.put(4, table("01", "00"));
+        index = ExamplePatternIndex.of(SET, examples);
+    }
+
+    /**
+     * Checks exact pattern queries, including the empty pattern and one no column has.
+     */
+    @Test
+    public void testFindExact() {
+        assertEquals(List.of(new Match(SET, 1, 0), new Match(SET, 2, 0)), index.findExact(rows(0, 2)));
+        assertEquals(List.of(new Match(SET, 3, 0), new Match(SET, 4, 1)), index.findExact(rows(0)));
+        assertEquals(List.of(new Match(SET, 4, 0)), index.findExact(rows()));
+        assertEquals(List.of(), index.findExact(rows(0, 1, 2)));
+        assertEquals(Map.of(SET, List.of(3, 4)), index.findExamples(rows(0)));
+        assertEquals(5, index.getNumPatterns());
+    }
+
+    /**
+     * Checks subset queries, including the empty pattern, which only columns checked in no rows are subsets of.
+     */
+    @Test
+    public void testFindSubsets() {
+        assertEquals(List.of(new Match(SET, 1, 0), new Match(SET, 2, 0), new Match(SET, 3, 0), new Match(SET, 4, 0), new Match(SET, 4, 1)),
+                index.findSubsets(rows(0, 2)));
+        assertEquals(List.of(new Match(SET, 4, 0)), index.findSubsets(rows()));
+        assertEquals(8, index.findSubsets(rows(0, 1, 2, 3)).size());
+    }
+
+    /**
+     * Checks superset queries, including the empty pattern, which every column is a superset of, and rows no column
+     * checks.
+     */
+    @Test
+    public void testFindSupersets() {
+        assertEquals(List.of(new Match(SET, 1, 0), new Match(SET, 1, 1), new Match(SET, 2, 0), new Match(SET, 2, 1)),
+                index.findSupersets(rows(2)));
+        assertEquals(List.of(new Match(SET, 1, 0), new Match(SET, 1, 2), new Match(SET, 2, 0), new Match(SET, 3, 0), new Match(SET, 4, 1)),
+                index.findSupersets(rows(0)));
+        assertEquals(8, index.findSupersets(rows()).size());
+        assertEquals(List.of(), index.findSupersets(rows(10)));
+    }
+
+    /**
+     * Checks that shared columns are found in other examples only, and that unknown or repeated examples are
+     * rejected.
+     */
+    @Test
+    public void testFindSharedColumns() {
+        Map<Integer, List<Match>> shared = index.findSharedColumns(SET, 1);
+        assertEquals(Map.of(0, List.of(new Match(SET, 2, 0)), 1, List.of(new Match(SET, 2, 1))), shared);
+        assertEquals(Map.of(0, List.of(new Match(SET, 4, 1))), index.findSharedColumns(SET, 3));
+        assertEquals(Map.of(1, List.of(new Match(SET, 3, 0))), index.findSharedColumns(SET, 4));
+
+        assertThrows(IllegalArgumentException.class, () -> index.findSharedColumns(SET, 99));
+        assertThrows(IllegalArgumentException.class, () -> index.add(SET, 1, table("1")));
+    }
+
+    /**
+     * Checks that an index over several sets finds columns in each of them, names their sets, and tells apart examples
+     * with the same index in different sets.
+     */
+    @Test
+    public void testAcrossSets() {
+        ExampleSet builtIn = new ExampleSet(Examples.BUILT_IN, Map.of(),
+                Map.of(1, table("10", "01"), 2, table("1", "1")), null);
+        ExampleSet pack = new ExampleSet("pack", Map.of(), Map.of(1, table("01", "10"), 5, table("11", "00")), null);
+        ExamplePatternIndex both = ExamplePatternIndex.of(List.of(builtIn, pack));
+
+        assertEquals(List.of(new Match(Examples.BUILT_IN, 1, 0), new Match("pack", 1, 1), new Match("pack", 5, 0),
+                new Match("pack", 5, 1)), both.findExact(rows(0)));
+        assertEquals(Map.of(Examples.BUILT_IN, List.of(1), "pack", List.of(1, 5)), both.findExamples(rows(0)));
+        assertEquals(Map.of(0, List.of(new Match("pack", 1, 1), new Match("pack", 5, 0), new Match("pack", 5, 1)),
+                        1, List.of(new Match("pack", 1, 0))),
+                both.findSharedColumns(Examples.BUILT_IN, 1));
+        assertEquals(Map.of(), both.findSharedColumns(Examples.BUILT_IN, 2));
+        assertThrows(IllegalArgumentException.class, () -> both.findSharedColumns("pack", 2));
+        both.add("other", 1, table("1"));
+    }
+
+    /**
+     * Checks that indexing a set whose tables are listed in a manifest reads their checkmarks without building the
+     * tables, and finds the same columns as an index of the built tables.
+     *
+     * @throws IOException if the bundled examples cannot be read.
+     */
+    @Test
+    public void testManifestTablesAreNotBuilt() throws IOException {
+        Map<Integer, ExampleManifest.Example> manifest = new HashMap<>();
+        Map<Integer, TableData> tables = new HashMap<>();
+
+        for (ExampleManifest.Example example : ExampleManifest.generate(Path.of("resources", "examples"))
+                .getExamples()) {
+            manifest.put(example.getIndex(), example);
+            tables.put(example.getIndex(), example.toTableData());
+        }
+
+        ExampleSet set = new ExampleSet(Examples.BUILT_IN, manifest, Map.of(), null);
+        ExamplePatternIndex lazy = ExamplePatternIndex.of(List.of(set));
+        ExamplePatternIndex built = ExamplePatternIndex.of(Examples.BUILT_IN, tables);
+
+        assertFalse(manifest.isEmpty());
+
+        for (int example : set.getExampleIndices()) {
+            assertFalse(set.isBuilt(example), "Example " + example + " was built.");
+            assertEquals(built.findSharedColumns(Examples.BUILT_IN, example),
+                    lazy.findSharedColumns(Examples.BUILT_IN, example));
+        }
+    }
+
+    /**
+     * Checks every kind of query against a scan of the columns of randomly generated examples.
+     */
+    @Test
+    public void testQueriesMatchScan() {
+        Random random = new Random(7);
+        Map<Integer, TableData> examples = new HashMap<>();
+
+        for (int e = 1; e <= 40; e++) {
+            int numRows = 1 + random.nextInt(6);
+            int numColumns = 1 + random.nextInt(8);
+            String[] lines = new String[numRows];
+
+            for (int r = 0; r < numRows; r++) {
+                StringBuilder line = new StringBuilder();
+
+                for (int c = 0; c < numColumns; c++) {
+                    line.append(random.nextInt(3) == 0 ? '1' : '0');
+                }
+
+                lines[r] = line.toString();
+            }
+
+            examples.put(e, table(lines));
+        }
+
+        ExamplePatternIndex random40 = ExamplePatternIndex.of(SET, examples);
+
+        for (int q = 0; q < 200; q++) {
+            BitSet query = new BitSet();
+
+            for (int r = 0; r < 6; r++) {
+                if (random.nextInt(3) == 0) {
+                    query.set(r);
+                }
+            }
+
+            List<Match> exact = new ArrayList<>();
+            List<Match> subsets = new ArrayList<>();
+            List<Match> supersets = new ArrayList<>();
+
+            for (int e = 1; e <= 40; e++) {
+                CheckmarkMatrix matrix = examples.get(e).getCheckmarks();
+
+                for (int c = 0; c < matrix.getNumColumns(); c++) {
+                    BitSet pattern = matrix.getCheckedRows(c);
+                    BitSet outside = (BitSet) pattern.clone();
+                    outside.andNot(query);
+                    BitSet missing = (BitSet) query.clone();
+                    missing.andNot(pattern);
+
+                    if (pattern.equals(query)) {
+                        exact.add(new Match(SET, e, c));
+                    }
+
+                    if (outside.isEmpty()) {
+                        subsets.add(new Match(SET, e, c));
+                    }
+
+                    if (missing.isEmpty()) {
+                        supersets.add(new Match(SET, e, c));
+                    }
+                }
+            }
+
+            assertEquals(exact, random40.findExact(query), query.toString());
+            assertEquals(subsets, random40.findSubsets(query), query.toString());
+            assertEquals(supersets, random40.findSupersets(query), query.toString());
+        }
+    }
+
+    /**
+     * Returns a table with the given rows of checkmarks.
+     *
+     * @param lines the rows, as in checkmarks.txt.
+     * @return the table.
+     */
+    private static TableData table(String... lines) {
+        List<String> images = new ArrayList<>();
+
+        for (int r = 1; r <= lines.length; r++) {
+            images.add("/examples/test/" + r + ".png");
+        }
+
+        return new TableData(CheckmarkMatrix.parse(List.of(lines)), images);
+    }
+
+    /**
+     * Returns a set of rows.
+     *
+     * @param rows the row indices, counting from 0.
+     * @return the set.
+     */
+    private static BitSet rows(int... rows) {
+        BitSet set = new BitSet();
+
+        for (int row : rows) {
+            set.set(row);
+        }
+
+        return set;
+    }
+}
@@ -0,0 +1,414 @@
+package io.github.cmuphil.earthlinguistfx.remote;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link RemoteArchive} against an in-process server that answers range requests: entries are fetched by range
+ * into the sparse cache, the cache is used again when the sample is opened again, a server that sends the whole
+ * archive instead of a range is handled, and a range cut short is not taken as cached.
+ *
+ * @author josephramsey
+ */
+public class RemoteArchiveTest {
+
+    /**
+     * The sample ID the server serves the archive under.
+     */
+    private static final String ID = "abc123";
+
+    /**
+     * The server.
+     */
+    private FakeLibrary server;
+
+    /**
+     * The archive, if one was opened.
+     */
+    private RemoteArchive archive;
+
+    /**
+     * Closes the archive and stops the server.
+     *
+     * @throws IOException if the archive cannot be closed.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (archive != null) {
+            archive.close();
+        }
+
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Checks that opening a sample fetches only the end of the archive, that an entry is then fetched with a range
+     * request covering just that entry, and that it is read from the cache after that.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be read.
+     */
+    @Test
+    public void testEntriesAreFetchedByRange(@TempDir Path dir) throws IOException {
+        Map<String, byte[]> files = files(1);
+        server = new FakeLibrary(zip(files), "\"v1\"");
+        archive = RemoteArchive.open(server.uri(), ID, dir);
+
+        assertEquals(List.of("bytes=-65557"), server.ranges);
+        assertTrue(archive.isCached("state.json"));
+        assertFalse(archive.isCached("clip.1.wav"));
+        assertFalse(archive.isCached("clip.2.wav"));
+
+        assertArrayEquals(files.get("clip.1.wav"), readAll(archive, "clip.1.wav"));
+
+        assertEquals(2, server.ranges.size());
+        assertTrue(server.ranges.get(1).matches("bytes=\\d+-\\d+"));
+        assertTrue(archive.isCached("clip.1.wav"));
+        assertFalse(archive.isCached("clip.2.wav"));
+
+        assertArrayEquals(files.get("clip.1.wav"), readAll(archive, "clip.1.wav"));
+        assertArrayEquals(files.get("state.json"), readAll(archive, "state.json"));
+        assertEquals(2, server.ranges.size());
+    }
+
+    /**
+     * Checks that a sample opened again is checked with 'If-None-Match' and its cached entries are not fetched
+     * again, that the cache can be read when the server is unavailable, and that it is thrown away once the archive
+     * has changed on the server.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be read.
+     */
+    @Test
+    public void testCacheIsReusedAcrossOpens(@TempDir Path dir) throws IOException {
+        Map<String, byte[]> files = files(1);
+        server = new FakeLibrary(zip(files), "\"v1\"");
+        URI uri = server.uri();
+
+        archive = RemoteArchive.open(uri, ID, dir);
+        readAll(archive, "clip.1.wav");
+        archive.close();
+
+        server.ranges.clear();
+        archive = RemoteArchive.open(uri, ID, dir);
+
+        assertEquals(1, server.notModified);
+        assertTrue(archive.isCached("clip.1.wav"));
+        assertArrayEquals(files.get("clip.1.wav"), readAll(archive, "clip.1.wav"));
+        assertEquals(List.of("bytes=-65557"), server.ranges);
+
+        archive.prefetch();
+        archive.close();
+        server.down = true;
+
+        archive = RemoteArchive.open(uri, ID, dir);
+
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            assertArrayEquals(file.getValue(), readAll(archive, file.getKey()), file.getKey());
+        }
+
+        archive.close();
+
+        Map<String, byte[]> changed = files(2);
+        server.down = false;
+        server.archive = zip(changed);
+        server.etag = "\"v2\"";
+        archive = RemoteArchive.open(uri, ID, dir);
+
+        assertFalse(archive.isCached("clip.1.wav"));
+        assertArrayEquals(changed.get("clip.1.wav"), readAll(archive, "clip.1.wav"));
+    }
+
+    /**
+     * Checks that a server that ignores the range and sends the whole archive with 200 has all of it cached on open,
+     * and that 200 for an entry's range, which means the archive changed since it was opened, is an error that leaves
+     * the entry uncached.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be read.
+     */
+    @Test
+    public void testWholeArchiveInsteadOfRange(@TempDir Path dir) throws IOException {
+        Map<String, byte[]> files = files(1);
+        server = new FakeLibrary(zip(files), "\"v1\"");
+        server.ignoreRanges = true;
+        archive = RemoteArchive.open(server.uri(), ID, dir.resolve("whole"));
+
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            assertTrue(archive.isCached(file.getKey()), file.getKey());
+            assertArrayEquals(file.getValue(), readAll(archive, file.getKey()), file.getKey());
+        }
+
+        assertEquals(1, server.ranges.size());
+        archive.close();
+
+        server.ignoreRanges = false;
+        archive = RemoteArchive.open(server.uri(), ID, dir.resolve("ranges"));
+        server.ignoreRanges = true;
+
+        IOException e = assertThrows(IOException.class, () -> readAll(archive, "clip.1.wav"));
+        assertTrue(e.getMessage().contains("has changed on the server"), e.getMessage());
+        assertFalse(archive.isCached("clip.1.wav"));
+    }
+
+    /**
+     * Checks that a range reply that ends early is an error, that the part that did arrive is not taken as cached,
+     * and that the entry is fetched whole once the server sends all of it.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the archive cannot be read.
+     */
+    @Test
+    public void testTruncatedResponse(@TempDir Path dir) throws IOException {
+        Map<String, byte[]> files = files(1);
+        server = new FakeLibrary(zip(files), "\"v1\"");
+        archive = RemoteArchive.open(server.uri(), ID, dir);
+        server.truncate = true;
+
+        assertThrows(IOException.class, () -> readAll(archive, "clip.1.wav"));
+        assertFalse(archive.isCached("clip.1.wav"));
+
+        server.truncate = false;
+
+        assertArrayEquals(files.get("clip.1.wav"), readAll(archive, "clip.1.wav"));
+        assertTrue(archive.isCached("clip.1.wav"));
+    }
+
+    /**
+     * Reads all of an entry.
+     *
+     * @param archive the archive.
+     * @param name    the entry name.
+     * @return the entry's contents.
+     * @throws IOException if the entry cannot be read.
+     */
+    private static byte[] readAll(RemoteArchive archive, String name) throws IOException {
+        try (InputStream in = archive.openStream(name)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Returns the files of a sample: three clips, each too big to be fetched with the end of the archive, then a
+     * state.json, which is.
+     *
+     * @param seed the seed for the clips' contents.
+     * @return the contents of each file, by entry name, in order.
+     */
+    private static Map<String, byte[]> files(long seed) {
+        Random random = new Random(seed);
+        Map<String, byte[]> files = new LinkedHashMap<>();
+
+        for (int i = 1; i <= 3; i++) {
+            byte[] clip = new byte[100_000];
+            random.nextBytes(clip);
+            files.put("clip." + i + ".wav", clip);
+        }
+
+        files.put("state.json", ("{\"exampleIndex\": " + seed + "}").getBytes(StandardCharsets.UTF_8));
+        return files;
+    }
+
+    /**
+     * Zips the given files.
+     *
+     * @param files the contents of each file, by entry name.
+     * @return the archive's bytes.
+     * @throws IOException if the archive cannot be written.
+     */
+    private static byte[] zip(Map<String, byte[]> files) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                out.putNextEntry(new ZipEntry(file.getKey()));
+                out.write(file.getValue());
+                out.closeEntry();
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A server for one sample archive that answers range requests the way the ingestion server does, and can be told
+     * to ignore ranges or to cut its replies short.
+     */
+    private static class FakeLibrary {
+
+        /**
+         * A Range header.
+         */
+        private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+        /**
+         * The archive.
+         */
+        private volatile byte[] archive;
+
+        /**
+         * The archive's ETag.
+         */
+        private volatile String etag;
+
+        /**
+         * The Range header of each request, in order.
+         */
+        private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+        /**
+         * The HTTP server.
+         */
+        private final HttpServer http;
+
+        /**
+         * Whether the whole archive is sent with 200 whatever range was asked for.
+         */
+        private volatile boolean ignoreRanges = false;
+
+        /**
+         * Whether range replies stop half way through.
+         */
+        private volatile boolean truncate = false;
+
+        /**
+         * Whether every request is answered with 503.
+         */
+        private volatile boolean down = false;
+
+        /**
+         * The number of requests answered with 304.
+         */
+        private volatile int notModified = 0;
+
+        /**
+         * Starts a server for the given archive on a free port.
+         *
+         * @param archive the archive.
+         * @param etag    the archive's ETag.
+         * @throws IOException if it cannot be started.
+         */
+        FakeLibrary(byte[] archive, String etag) throws IOException {
+            this.archive = archive;
+            this.etag = etag;
+            this.http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            http.createContext("/samples/" + ID, exchange -> {
+                try {
+                    handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            });
+            http.start();
+        }
+
+        /**
+         * Stops the server.
+         */
+        void stop() {
+            http.stop(0);
+        }
+
+        /**
+         * Returns the address of the server.
+         *
+         * @return the address.
+         */
+        URI uri() {
+            return URI.create("http://127.0.0.1:" + http.getAddress().getPort());
+        }
+
+        /**
+         * Answers a GET for the archive, or a range of it.
+         *
+         * @param exchange the exchange.
+         * @throws IOException if the reply cannot be sent.
+         */
+        private void handle(HttpExchange exchange) throws IOException {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            ranges.add(range == null ? "" : range);
+
+            if (down) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            byte[] archive = this.archive;
+            String etag = this.etag;
+            exchange.getResponseHeaders().set("ETag", etag);
+
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified++;
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+
+            if (ignoreRanges || matcher == null || !matcher.matches() || (ifRange != null && !ifRange.equals(etag))) {
+                send(exchange, archive, 200, 0, archive.length, false);
+                return;
+            }
+
+            int from;
+            int to;
+
+            if (matcher.group(1).isEmpty()) {
+                from = Math.max(0, archive.length - Integer.parseInt(matcher.group(2)));
+                to = archive.length;
+            } else {
+                from = Integer.parseInt(matcher.group(1));
+                to = matcher.group(2).isEmpty() ? archive.length
+                        : Math.min(archive.length, Integer.parseInt(matcher.group(2)) + 1);
+            }
+
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + (to - 1) + "/"
+                    + archive.length);
+            send(exchange, archive, 206, from, to, truncate);
+        }
+
+        /**
+         * Sends part of the archive.
+         *
+         * @param exchange the exchange.
+         * @param archive  the archive.
+         * @param status   the status.
+         * @param from     the first byte.
+         * @param to       one past the last byte.
+         * @param truncate whether to send only the first half of the part, with no length given, so that the reply
+         *                 simply ends early.
+         * @throws IOException if it cannot be sent.
+         */
+        private static void send(HttpExchange exchange, byte[] archive, int status, int from, int to,
+                                 boolean truncate) throws IOException {
+            exchange.sendResponseHeaders(status, truncate ? 0 : to - from);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(archive, from, truncate ? (to - from) / 2 : to - from);
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.cmuphil.earthlinguistfx.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link SegmentStore}: reopening, recovery from records cut short or followed by garbage, and compaction.
+ *
+ * @author josephramsey
+ */
+public class SegmentStoreTest {
+
+    /**
+     * Checks that files written, replaced and deleted are as they were after the store is closed and reopened.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the store cannot be used.
+     */
+    @Test
+    public void testReopen(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("store.seg");
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            store.write("a/1.json", bytes("one"));
+            store.write("a/2.json", bytes("two"));
+            store.write("b/3.json", bytes("three"));
+            store.write("a/1.json", bytes("one again"));
+            store.delete("a/2.json");
+        }
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            assertEquals(List.of("a/1.json", "b/3.json"), store.list(""));
+            assertEquals(List.of("a/1.json"), store.list("a/"));
+            assertEquals("one again", read(store, "a/1.json"));
+            assertEquals(9, store.size("a/1.json"));
+            assertFalse(store.exists("a/2.json"));
+            assertThrows(FileNotFoundException.class, () -> store.open("a/2.json"));
+        }
+    }
+
+    /**
+     * Checks that a record cut short, as by a crash while it was being written, is truncated away on open and the
+     * records before it survive.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the store cannot be used.
+     */
+    @Test
+    public void testTornRecordIsTruncated(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("store.seg");
+        long goodEnd;
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            store.write("kept", bytes("kept"));
+            store.sync();
+            goodEnd = Files.size(file);
+            store.write("torn", randomBytes(10_000, 1));
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            assertEquals(List.of("kept"), store.list(""));
+            assertEquals("kept", read(store, "kept"));
+            assertEquals(goodEnd, Files.size(file));
+
+            store.write("after", bytes("after"));
+        }
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            assertEquals(List.of("after", "kept"), store.list(""));
+        }
+    }
+
+    /**
+     * Checks that a store that was not closed, so that its index sidecar covers only part of it, and that has garbage
+     * after its last record, is opened with every whole record and the garbage truncated.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the store cannot be used.
+     */
+    @Test
+    public void testRecoveryAfterCrash(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("store.seg");
+        Path crashed = dir.resolve("crashed").resolve("store.seg");
+        Files.createDirectories(crashed.getParent());
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            store.write("before", bytes("before"));
+        }
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            store.write("during/1", bytes("first"));
+            store.write("during/2", bytes("second"));
+            store.delete("before");
+            store.sync();
+
+            // Copy the store while it is open, as a crash would leave it, with the sidecar of the earlier close.
+            Files.copy(file, crashed);
+            Files.copy(dir.resolve("store.seg.idx"), crashed.resolveSibling("store.seg.idx"));
+        }
+
+        long size = Files.size(crashed);
+        Files.write(crashed, randomBytes(100, 2), StandardOpenOption.APPEND);
+
+        try (SegmentStore store = SegmentStore.open(crashed)) {
+            assertEquals(List.of("during/1", "during/2"), store.list(""));
+            assertEquals("first", read(store, "during/1"));
+            assertEquals("second", read(store, "during/2"));
+            assertEquals(size, Files.size(crashed));
+        }
+    }
+
+    /**
+     * Checks that a sidecar that does not belong to the store file, as after the store file was replaced, is ignored.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the store cannot be used.
+     */
+    @Test
+    public void testForeignSidecarIsIgnored(@TempDir Path dir) throws IOException {
+        Path first = dir.resolve("first").resolve("store.seg");
+        Path second = dir.resolve("second").resolve("store.seg");
+
+        try (SegmentStore store = SegmentStore.open(first)) {
+            store.write("x", bytes("from the first store"));
+        }
+
+        try (SegmentStore store = SegmentStore.open(second)) {
+            store.write("y", bytes("from the second store"));
+        }
+
+        Files.copy(first.resolveSibling("store.seg.idx"), second.resolveSibling("store.seg.idx"),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        try (SegmentStore store = SegmentStore.open(second)) {
+            assertEquals(List.of("y"), store.list(""));
+            assertEquals("from the second store", read(store, "y"));
+        }
+    }
+
+    /**
+     * Checks that compaction drops dead records, keeps the live ones and leaves a store that reopens, and that
+     * closing a mostly dead store compacts it.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the store cannot be used.
+     */
+    @Test
+    public void testCompaction(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("store.seg");
+        byte[] last = null;
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            store.write("other", bytes("other"));
+
+            for (int i = 0; i < 50; i++) {
+                last = randomBytes(50_000, i);
+                store.write("image.png", last);
+            }
+
+            store.write("gone", bytes("gone"));
+            store.delete("gone");
+
+            long before = Files.size(file);
+            assertTrue(store.getDeadBytes() > 49 * 50_000L);
+
+            store.compact();
+
+            assertEquals(0, store.getDeadBytes());
+            assertTrue(Files.size(file) < before / 40);
+            assertArrayEquals(last, store.open("image.png").readAllBytes());
+            assertEquals(List.of("image.png", "other"), store.list(""));
+
+            store.write("after", bytes("after"));
+        }
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            assertArrayEquals(last, store.open("image.png").readAllBytes());
+            assertEquals(List.of("after", "image.png", "other"), store.list(""));
+
+            for (int i = 0; i < 50; i++) {
+                store.write("image.png", randomBytes(50_000, 100 + i));
+            }
+        }
+
+        assertTrue(Files.size(file) < 3 * 50_000L);
+
+        try (SegmentStore store = SegmentStore.open(file)) {
+            assertArrayEquals(randomBytes(50_000, 149), store.open("image.png").readAllBytes());
+        }
+    }
+
+    /**
+     * Returns the UTF-8 bytes of a string.
+     *
+     * @param s the string.
+     * @return the bytes.
+     */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns reproducible random bytes.
+     *
+     * @param length the number of bytes.
+     * @param seed   the seed.
+     * @return the bytes.
+     */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a file from the store as a UTF-8 string.
+     *
+     * @param store the store.
+     * @param key   the key.
+     * @return the contents.
+     * @throws IOException if it cannot be read.
+     */
+    private static String read(SegmentStore store, String key) throws IOException {
+        try (InputStream in = store.open(key)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.cmuphil.earthlinguistfx.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the mounts of {@link Storage}, in particular that unmounting a backend does not close it under a reader.
+ *
+ * @author josephramsey
+ */
+public class StorageTest {
+
+    /**
+     * Checks that a backend unmounted while a stream from it is open is closed only when the stream is, and that its
+     * files are then reported missing.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the backend cannot be used.
+     */
+    @Test
+    public void testUnmountWaitsForReaders(@TempDir Path dir) throws IOException {
+        ClosingBackend backend = new ClosingBackend(dir);
+        backend.write("image.png", "pixels".getBytes(StandardCharsets.UTF_8));
+
+        Storage storage = Storage.getInstance();
+        storage.mount("test_mount", backend);
+        String reference = Storage.reference("test_mount", "image.png");
+
+        InputStream in = storage.open(reference);
+        storage.unmount("test_mount");
+
+        assertFalse(backend.closed);
+        assertEquals("pixels", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+
+        in.close();
+        assertTrue(backend.closed);
+
+        in.close();
+        assertThrows(FileNotFoundException.class, () -> storage.open(reference));
+    }
+
+    /**
+     * Checks that a backend with no open streams is closed as soon as it is unmounted or replaced.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the backend cannot be used.
+     */
+    @Test
+    public void testUnmountClosesIdleBackend(@TempDir Path dir) throws IOException {
+        ClosingBackend first = new ClosingBackend(dir);
+        ClosingBackend second = new ClosingBackend(dir);
+        first.write("a", new byte[]{1});
+
+        Storage storage = Storage.getInstance();
+        storage.mount("test_idle", first);
+
+        try (InputStream in = storage.open(Storage.reference("test_idle", "a"))) {
+            assertEquals(1, in.read());
+        }
+
+        assertFalse(first.closed);
+
+        storage.mount("test_idle", second);
+        assertTrue(first.closed);
+        assertFalse(second.closed);
+
+        storage.unmount("test_idle");
+        assertTrue(second.closed);
+    }
+
+    /**
+     * A directory backend that notes whether it has been closed.
+     */
+    private static final class ClosingBackend extends DirectoryBackend {
+
+        /**
+         * Whether the backend has been closed.
+         */
+        private volatile boolean closed;
+
+        /**
+         * Constructs a backend over a directory.
+         *
+         * @param root the directory.
+         */
+        private ClosingBackend(Path root) {
+            super(root);
+        }
+
+        /**
+         * Notes that the backend has been closed.
+         */
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.cmuphil.earthlinguistfx.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link ClipStore}: clips shared between workspaces are stored once, clips are restored from the store only
+ * for content that matches, and blobs are deleted once nothing holds them.
+ *
+ * @author josephramsey
+ */
+public class ClipStoreTest {
+
+    /**
+     * Checks that the same clip in two workspaces ends up as one blob that both workspace files are links to, and
+     * that the store survives being reopened.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the store cannot be used.
+     */
+    @Test
+    public void testIngestSharesClips(@TempDir Path dir) throws IOException {
+        byte[] clip = randomBytes(100_000, 1);
+        Path first = writeWorkspace(dir.resolve("first"), clip, randomBytes(10_000, 2));
+        Path second = writeWorkspace(dir.resolve("second"), clip, randomBytes(10_000, 3));
+        ClipStore store = new ClipStore(dir.resolve("store"));
+
+        Map<String, String> firstDigests = store.ingest(first);
+        Map<String, String> secondDigests = store.ingest(second);
+
+        assertEquals(firstDigests.get("clip.1.wav"), secondDigests.get("clip.1.wav"));
+        assertNotEquals(firstDigests.get("clip.2.wav"), secondDigests.get("clip.2.wav"));
+        assertEquals(ClipStore.digest(first.resolve("clip.1.wav")), firstDigests.get("clip.1.wav"));
+        assertTrue(Files.isSameFile(first.resolve("clip.1.wav"), second.resolve("clip.1.wav")));
+        assertArrayEquals(clip, Files.readAllBytes(second.resolve("clip.1.wav")));
+
+        ClipStore reopened = new ClipStore(dir.resolve("store"));
+        assertEquals(secondDigests, reopened.ingest(second));
+        assertTrue(reopened.contains(firstDigests.get("clip.2.wav")));
+    }
+
+    /**
+     * Checks that a clip is placed from the store only when the content offered really has the digest claimed.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the store cannot be used.
+     */
+    @Test
+    public void testRestoreChecksContent(@TempDir Path dir) throws IOException {
+        byte[] clip = randomBytes(100_000, 1);
+        Path workspace = writeWorkspace(dir.resolve("workspace"), clip, randomBytes(10_000, 2));
+        ClipStore store = new ClipStore(dir.resolve("store"));
+        String digest = store.ingest(workspace).get("clip.1.wav");
+
+        Path restored = dir.resolve("restored.wav");
+        assertTrue(store.restore(digest, clip.length, new ByteArrayInputStream(clip), restored));
+        assertArrayEquals(clip, Files.readAllBytes(restored));
+
+        Path forged = dir.resolve("forged.wav");
+        byte[] other = randomBytes(clip.length, 9);
+        assertFalse(store.restore(digest, other.length, new ByteArrayInputStream(other), forged));
+        assertFalse(store.restore("not a digest", clip.length, new ByteArrayInputStream(clip), forged));
+        assertFalse(Files.exists(forged));
+    }
+
+    /**
+     * Checks that a blob is kept while any workspace holds it and deleted once the last one releases it.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the store cannot be used.
+     */
+    @Test
+    public void testReleaseCollects(@TempDir Path dir) throws IOException {
+        byte[] clip = randomBytes(100_000, 1);
+        Path first = writeWorkspace(dir.resolve("first"), clip, randomBytes(10_000, 2));
+        Path second = writeWorkspace(dir.resolve("second"), clip, randomBytes(10_000, 3));
+        ClipStore store = new ClipStore(dir.resolve("store"));
+        String shared = store.ingest(first).get("clip.1.wav");
+        String own = store.ingest(second).get("clip.2.wav");
+
+        store.release(first);
+        assertTrue(store.contains(shared));
+        assertArrayEquals(clip, Files.readAllBytes(first.resolve("clip.1.wav")));
+
+        store.release(second);
+        assertFalse(store.contains(shared));
+        assertFalse(store.contains(own));
+        assertArrayEquals(clip, Files.readAllBytes(second.resolve("clip.1.wav")));
+    }
+
+    /**
+     * Writes a workspace holding two clips and a state.json.
+     *
+     * @param workspace the directory to write.
+     * @param clip1     the first clip.
+     * @param clip2     the second clip.
+     * @return the directory.
+     * @throws IOException if the files cannot be written.
+     */
+    private static Path writeWorkspace(Path workspace, byte[] clip1, byte[] clip2) throws IOException {
+        Files.createDirectories(workspace);
+        Files.write(workspace.resolve("clip.1.wav"), clip1);
+        Files.write(workspace.resolve("clip.2.wav"), clip2);
+        Files.writeString(workspace.resolve("state.json"), "{}");
+        return workspace;
+    }
+
+    /**
+     * Returns reproducible random bytes.
+     *
+     * @param length the number of bytes.
+     * @param seed   the seed.
+     * @return the bytes.
+     */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
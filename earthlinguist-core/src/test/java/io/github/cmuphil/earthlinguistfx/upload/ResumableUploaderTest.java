@@ -0,0 +1,326 @@
+package io.github.cmuphil.earthlinguistfx.upload;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link ResumableUploader} against an in-process server that speaks the chunked upload protocol: an upload
+ * resumes from the offset the server already has, an archive the server rejects is moved aside, and an attempt that
+ * fails, with an error status or a reply of the wrong shape, is retried until it succeeds.
+ *
+ * @author josephramsey
+ */
+public class ResumableUploaderTest {
+
+    /**
+     * The chunk size the uploaders under test use.
+     */
+    private static final int CHUNK_BYTES = 1000;
+
+    /**
+     * The server, if one was started.
+     */
+    private FakeServer server;
+
+    /**
+     * The uploader, if one was made.
+     */
+    private ResumableUploader uploader;
+
+    /**
+     * Stops the uploader and the server.
+     */
+    @AfterEach
+    public void tearDown() {
+        if (uploader != null) {
+            uploader.stop();
+        }
+
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Checks that an upload the server already has part of is sent from where the server left off, and that the
+     * server ends up with the whole archive and the outbox is emptied.
+     *
+     * @param dir a temporary directory.
+     * @throws Exception if the test cannot be set up.
+     */
+    @Test
+    public void testResumesFromServerOffset(@TempDir Path dir) throws Exception {
+        byte[] archive = randomBytes(10_500, 1);
+        server = new FakeServer();
+        server.received.write(archive, 0, 4_000);
+
+        List<ResumableUploader.Outcome> outcomes = upload(dir, archive);
+
+        assertEquals(1, outcomes.size());
+        assertNull(outcomes.get(0).error());
+        assertEquals(server.id, outcomes.get(0).id());
+        assertEquals(4_000L, server.chunkOffsets.get(0));
+        assertTrue(server.chunkOffsets.stream().allMatch(offset -> offset >= 4_000));
+        assertArrayEquals(archive, server.received.toByteArray());
+        assertTrue(UploadOutbox.open(dir.resolve("outbox")).getItems().isEmpty());
+    }
+
+    /**
+     * Checks that an archive the server rejects is not retried but moved to the outbox's 'failed' directory, with
+     * the reason passed to the listener.
+     *
+     * @param dir a temporary directory.
+     * @throws Exception if the test cannot be set up.
+     */
+    @Test
+    public void testRejectedArchiveIsMovedAside(@TempDir Path dir) throws Exception {
+        byte[] archive = randomBytes(2_500, 2);
+        server = new FakeServer();
+        server.reject = true;
+
+        List<ResumableUploader.Outcome> outcomes = upload(dir, archive);
+
+        assertEquals(1, outcomes.size());
+        assertEquals("There is no state.json.", outcomes.get(0).error());
+        assertNull(outcomes.get(0).id());
+        assertTrue(UploadOutbox.open(dir.resolve("outbox")).getItems().isEmpty());
+
+        try (Stream<Path> failed = Files.list(dir.resolve("outbox").resolve("failed"))) {
+            assertEquals(2, failed.count());
+        }
+    }
+
+    /**
+     * Checks that an attempt cut off by an error status, and one given a reply of the wrong shape, are both retried
+     * until the archive is uploaded, rather than leaving it scheduled forever.
+     *
+     * @param dir a temporary directory.
+     * @throws Exception if the test cannot be set up.
+     */
+    @Test
+    public void testFailedAttemptsAreRetried(@TempDir Path dir) throws Exception {
+        byte[] archive = randomBytes(3_500, 3);
+        server = new FakeServer();
+        server.malformedReplies.set(1);
+        server.unavailableReplies.set(1);
+
+        List<ResumableUploader.Outcome> outcomes = upload(dir, archive);
+
+        assertEquals(1, outcomes.size());
+        assertEquals(server.id, outcomes.get(0).id());
+        assertEquals(0, server.malformedReplies.get());
+        assertEquals(0, server.unavailableReplies.get());
+        assertArrayEquals(archive, server.received.toByteArray());
+        assertTrue(UploadOutbox.open(dir.resolve("outbox")).getItems().isEmpty());
+    }
+
+    /**
+     * Writes an archive, submits it to a new uploader for the server and waits for the uploader to be idle.
+     *
+     * @param dir     a temporary directory.
+     * @param archive the archive's bytes.
+     * @return the outcomes the listener was given.
+     * @throws Exception if the archive cannot be submitted or the uploader does not become idle.
+     */
+    private List<ResumableUploader.Outcome> upload(Path dir, byte[] archive) throws Exception {
+        Path file = dir.resolve("example_1_english_usa.1.zip");
+        Files.write(file, archive);
+        server.start();
+
+        List<ResumableUploader.Outcome> outcomes = new CopyOnWriteArrayList<>();
+        uploader = new ResumableUploader(UploadOutbox.open(dir.resolve("outbox")), server.uri(), 1, CHUNK_BYTES);
+        uploader.setListener(outcomes::add);
+        uploader.submit(file);
+
+        assertTrue(uploader.awaitIdle(60, TimeUnit.SECONDS), "The uploader did not become idle.");
+        return outcomes;
+    }
+
+    /**
+     * Returns reproducible random bytes.
+     *
+     * @param length the number of bytes.
+     * @param seed   the seed.
+     * @return the bytes.
+     */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * A server for one resumable upload, which keeps what it has received in memory and can be told to fail.
+     */
+    private static class FakeServer {
+
+        /**
+         * A Content-Range header.
+         */
+        private static final Pattern RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+        /**
+         * The sample ID the server stores the archive under.
+         */
+        private final String id = "abc123";
+
+        /**
+         * The bytes received so far.
+         */
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        /**
+         * The offset of each chunk put, in order.
+         */
+        private final List<Long> chunkOffsets = new CopyOnWriteArrayList<>();
+
+        /**
+         * The number of requests still to be answered with a reply that is JSON of the wrong shape.
+         */
+        private final AtomicInteger malformedReplies = new AtomicInteger();
+
+        /**
+         * The number of chunks still to be answered with 503.
+         */
+        private final AtomicInteger unavailableReplies = new AtomicInteger();
+
+        /**
+         * Whether the archive is rejected once all of it has arrived.
+         */
+        private volatile boolean reject = false;
+
+        /**
+         * Whether all of the archive has arrived and been stored.
+         */
+        private boolean stored = false;
+
+        /**
+         * The HTTP server.
+         */
+        private HttpServer http;
+
+        /**
+         * Starts the server on a free port.
+         *
+         * @throws IOException if it cannot be started.
+         */
+        void start() throws IOException {
+            http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            http.createContext("/uploads/", exchange -> {
+                try {
+                    handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            });
+            http.start();
+        }
+
+        /**
+         * Stops the server.
+         */
+        void stop() {
+            if (http != null) {
+                http.stop(0);
+            }
+        }
+
+        /**
+         * Returns the address of the server.
+         *
+         * @return the address.
+         */
+        URI uri() {
+            return URI.create("http://127.0.0.1:" + http.getAddress().getPort());
+        }
+
+        /**
+         * Answers a GET for the upload's offset or a PUT of a chunk.
+         *
+         * @param exchange the exchange.
+         * @throws IOException if the reply cannot be sent.
+         */
+        private synchronized void handle(HttpExchange exchange) throws IOException {
+            if (malformedReplies.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                reply(exchange, 200, "{\"id\": null}");
+                return;
+            }
+
+            if (exchange.getRequestMethod().equals("GET")) {
+                reply(exchange, 200, stored ? "{\"id\": \"" + id + "\"}" : "{\"offset\": " + received.size() + "}");
+                return;
+            }
+
+            byte[] chunk = exchange.getRequestBody().readAllBytes();
+            Matcher range = RANGE.matcher(exchange.getRequestHeaders().getFirst("Content-Range"));
+            assertTrue(range.matches());
+            long first = Long.parseLong(range.group(1));
+            long last = Long.parseLong(range.group(2));
+            long total = Long.parseLong(range.group(3));
+            chunkOffsets.add(first);
+
+            if (unavailableReplies.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                reply(exchange, 503, "{\"error\": \"Busy.\"}");
+                return;
+            }
+
+            if (first != received.size()) {
+                reply(exchange, 409, "{\"offset\": " + received.size() + "}");
+                return;
+            }
+
+            assertEquals(last - first + 1, chunk.length);
+            assertEquals(HexFormat.of().formatHex(UploadOutbox.newDigest().digest(chunk)),
+                    exchange.getRequestHeaders().getFirst("X-Chunk-SHA256"));
+            received.write(chunk);
+
+            if (last + 1 < total) {
+                reply(exchange, 200, "{\"offset\": " + received.size() + "}");
+            } else if (reject) {
+                reply(exchange, 400, "{\"error\": \"There is no state.json.\"}");
+            } else {
+                stored = true;
+                reply(exchange, 201, "{\"id\": \"" + id + "\", \"duplicate\": false}");
+            }
+        }
+
+        /**
+         * Sends a JSON reply.
+         *
+         * @param exchange the exchange.
+         * @param status   the status.
+         * @param json     the body.
+         * @throws IOException if it cannot be sent.
+         */
+        private static void reply(HttpExchange exchange, int status, String json) throws IOException {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
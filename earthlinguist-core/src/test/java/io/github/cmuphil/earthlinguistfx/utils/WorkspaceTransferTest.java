@@ -0,0 +1,111 @@
+package io.github.cmuphil.earthlinguistfx.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link WorkspaceTransfer}: a copy replaces the target's contents, is unaffected by later changes to the
+ * source, and an interrupted transfer is cleaned up.
+ *
+ * @author josephramsey
+ */
+public class WorkspaceTransferTest {
+
+    /**
+     * Checks that the target ends up with exactly the source's files, and that nothing is left beside it.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the workspaces cannot be used.
+     */
+    @Test
+    public void testCopyReplacesTarget(@TempDir Path dir) throws IOException {
+        Path source = dir.resolve("source");
+        Path target = dir.resolve("target");
+        write(source.resolve("clip.1.wav"), "first clip");
+        write(source.resolve("state.json"), "{\"exampleIndex\": 1}");
+        write(target.resolve("clip.9.wav"), "stale clip");
+
+        WorkspaceTransfer.copy(source, target);
+
+        assertEquals(List.of("clip.1.wav", "state.json"), list(target));
+        assertEquals("first clip", Files.readString(target.resolve("clip.1.wav")));
+        assertEquals("{\"exampleIndex\": 1}", Files.readString(target.resolve("state.json")));
+        assertEquals(List.of("source", "target"), list(dir));
+    }
+
+    /**
+     * Checks that replacing a source file the way the application does, by renaming a new file over it, leaves the
+     * copy as it was, even when the copy is a hard link.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the workspaces cannot be used.
+     */
+    @Test
+    public void testCopyIsIndependentOfSource(@TempDir Path dir) throws IOException {
+        Path source = dir.resolve("source");
+        Path target = dir.resolve("target");
+        write(source.resolve("clip.1.wav"), "first take");
+
+        WorkspaceTransfer.copy(source, target);
+
+        write(source.resolve("clip.1.wav.tmp"), "second take");
+        Files.move(source.resolve("clip.1.wav.tmp"), source.resolve("clip.1.wav"),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        assertEquals("first take", Files.readString(target.resolve("clip.1.wav")));
+    }
+
+    /**
+     * Checks that a transfer cut off after the old target was renamed aside, and before the new one took its place,
+     * is undone: the old target comes back and the staging directory is deleted.
+     *
+     * @param dir a temporary directory.
+     * @throws IOException if the workspaces cannot be used.
+     */
+    @Test
+    public void testRecoverRestoresOldTarget(@TempDir Path dir) throws IOException {
+        Path target = dir.resolve("target");
+        write(dir.resolve(".target.old").resolve("clip.1.wav"), "old clip");
+        write(dir.resolve(".target.staging123").resolve("clip.1.wav"), "half copied");
+
+        WorkspaceTransfer.recover(target);
+
+        assertEquals("old clip", Files.readString(target.resolve("clip.1.wav")));
+        assertEquals(List.of("target"), list(dir));
+    }
+
+    /**
+     * Writes a file, creating its directory.
+     *
+     * @param file     the file.
+     * @param contents the contents.
+     * @throws IOException if it cannot be written.
+     */
+    private static void write(Path file, String contents) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, contents, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the sorted names of the files in a directory.
+     *
+     * @param dir the directory.
+     * @return the names.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private static List<String> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+}
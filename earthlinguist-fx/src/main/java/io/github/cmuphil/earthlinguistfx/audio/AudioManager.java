@@ -1,6 +1,8 @@
 package io.github.cmuphil.earthlinguistfx.audio;
 
-import io.github.cmuphil.earthlinguistfx.ui.AppState;
+import io.github.cmuphil.earthlinguistfx.state.AppState;
+import io.github.cmuphil.earthlinguistfx.storage.Storage;
+import io.github.cmuphil.earthlinguistfx.storage.StorageBackend;
 import io.github.cmuphil.earthlinguistfx.utils.UiUtils;
 import javafx.beans.property.BooleanProperty;
 import javafx.geometry.Pos;
@@ -10,6 +12,9 @@ import javafx.scene.layout.HBox;
 import javax.sound.sampled.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.BiConsumer;
 
 /**
  * A class for managing the microphone. Methods for recording, playing back, and stopping the microphone. Also records
@@ -24,11 +29,41 @@ public class AudioManager {
      */
     private static final AudioManager instance = new AudioManager();
 
+    /**
+     * The number of seconds of audio the capture ring buffer can hold while the disk catches up.
+     */
+    private static final double CAPTURE_BUFFER_SECONDS = 10.0;
+
     /**
      * The microphone line
      */
     private TargetDataLine microphone;
 
+    /**
+     * The capture engine for the current take, or null if nothing is being recorded.
+     */
+    private CaptureEngine captureEngine;
+
+    /**
+     * Called once the current take has been written, or null.
+     */
+    private Runnable onCaptureFinished;
+
+    /**
+     * The player for the clip currently playing, or null.
+     */
+    private StreamingPlayer player;
+
+    /**
+     * The storage clips are played from when they are not on disk, such as a library sample on the server, or null.
+     */
+    private volatile StorageBackend clipSource;
+
+    /**
+     * The directory the clip source's clips would be in, or null.
+     */
+    private volatile File clipSourceDir;
+
     /**
      * Constructs the singleton instance.
      */
@@ -148,8 +183,10 @@ public class AudioManager {
 
         try {
             stopRecording();
+
+            // WAV stores 16-bit samples little-endian, so capture them that way and write them straight through.
             AudioFormat format = new AudioFormat(48000.0f, 16, 1, true,
-                    true);
+                    false);
             DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
 
             if (!AudioSystem.isLineSupported(info)) {
@@ -158,20 +195,26 @@ public class AudioManager {
 
             microphone = (TargetDataLine) AudioSystem.getLine(info);
             microphone.open(format);
-            microphone.start();
 
-            Thread targetThread = new Thread(() -> {
-                AudioInputStream audioStream = new AudioInputStream(microphone);
+            captureEngine = new CaptureEngine(microphone, UiUtils.getSoundFile(audioFileDir, column),
+                    CaptureEngine.ringCapacityFor(format, CAPTURE_BUFFER_SECONDS));
+            onCaptureFinished = () -> {
+                UiUtils.recordClipDigests(appState, audioFileDir.toString());
+
                 try {
-                    AudioSystem.write(audioStream, AudioFileFormat.Type.WAVE, UiUtils.getSoundFile(audioFileDir, column));
                     AppState.toJson(appState, audioFileDir.toString());
                 } catch (IOException e) {
-                    System.out.println("There was a problem saving the recording to a file. " +
-                            "Please try again. " + "\n" + e.getMessage());
+                    System.out.println("There was a problem saving the app state. " + "\n" + e.getMessage());
                 }
-            });
-            targetThread.start();
+            };
+            captureEngine.start();
         } catch (Exception ex) {
+            if (microphone != null) {
+                microphone.close();
+            }
+
+            captureEngine = null;
+            onCaptureFinished = null;
             System.out.println("There was a problem accessing the microphone. " +
                     "Please check your microphone settings. " + "\n" + ex.getMessage());
         }
@@ -190,16 +233,21 @@ public class AudioManager {
             return;
         }
 
-        try (AudioInputStream audioStream = AudioSystem.getAudioInputStream(
-                UiUtils.getSoundFile(audioFileDir, column))) {
-            Clip clip = AudioSystem.getClip();
-            clip.open(audioStream);
-            clip.start();
-            clip.addLineListener(event -> {
-                if (event.getType() == LineEvent.Type.STOP) {
-                    clip.close();
-                }
-            });
+        stopPlayback();
+
+        try {
+            File file = UiUtils.getSoundFile(audioFileDir, column);
+            StorageBackend source = clipSource;
+            StreamingPlayer streamingPlayer;
+
+            if (!file.exists() && isFromSource(file)) {
+                streamingPlayer = new StreamingPlayer(() -> source.open(file.getName()));
+            } else {
+                streamingPlayer = new StreamingPlayer(file);
+            }
+
+            streamingPlayer.start(0);
+            player = streamingPlayer;
         } catch (Exception ex) {
             System.out.println("There was a problem playing back the audio. Perhaps it was not recorded yet. "
                     + "\n" + ex.getMessage());
@@ -207,9 +255,125 @@ public class AudioManager {
     }
 
     /**
-     * Stops the microphone and closes it.
+     * Stops any clip that is currently playing.
+     */
+    public void stopPlayback() {
+        if (player != null) {
+            player.stop();
+            player = null;
+        }
+    }
+
+    /**
+     * Returns true if the given file is an audio file that can be played. Only the file's header is read.
+     *
+     * @param file the file.
+     * @return true if the file can be played.
+     */
+    public boolean isPlayable(File file) {
+        return StreamingPlayer.isPlayable(file) || (!file.exists() && isFromSource(file));
+    }
+
+    /**
+     * Sets the storage whose clips are played when they are not in the given directory, such as a library sample on
+     * the server, closing the previous one.
+     *
+     * @param dir    the directory the clips would be in, or null.
+     * @param source the storage, or null to stop playing clips from storage.
+     */
+    public void setClipSource(File dir, StorageBackend source) {
+        StorageBackend previous = clipSource;
+        clipSource = source;
+        clipSourceDir = source == null ? null : dir.getAbsoluteFile();
+
+        if (previous != null && previous != source) {
+            stopPlayback();
+
+            try {
+                previous.close();
+            } catch (IOException e) {
+                System.out.println("There was a problem closing the clip source. " + "\n" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes any of the clip source's clips that are not yet in its directory there, fetching them from the server if
+     * the source is a library sample. This may take a while, so it should not be called on the FX thread.
+     *
+     * @param progress called with the number of clips done and the number of clips after each clip; may be null.
+     * @throws IOException if a clip cannot be read or written.
+     */
+    public void fetchClips(BiConsumer<Integer, Integer> progress) throws IOException {
+        StorageBackend source = clipSource;
+        File dir = clipSourceDir;
+
+        if (source == null) {
+            return;
+        }
+
+        StorageBackend target = Storage.getInstance().forDirectory(dir.toPath());
+        List<String> names = source.list("clip.");
+
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+
+            if (!name.contains("/") && !target.exists(name)) {
+                try (InputStream in = source.open(name)) {
+                    target.write(name, in);
+                }
+            }
+
+            if (progress != null) {
+                progress.accept(i + 1, names.size());
+            }
+        }
+    }
+
+    /**
+     * Returns true if the given file is a clip of the clip source.
+     *
+     * @param file the file.
+     * @return true if the clip source has it.
+     */
+    private boolean isFromSource(File file) {
+        StorageBackend source = clipSource;
+        File dir = clipSourceDir;
+
+        try {
+            return source != null && dir != null && dir.equals(file.getAbsoluteFile().getParentFile())
+                    && source.exists(file.getName());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stops the microphone and closes it. If a take is in progress, waits until it has been written to disk.
      */
     public void stopRecording() {
+        CaptureEngine engine = captureEngine;
+        Runnable finished = onCaptureFinished;
+        captureEngine = null;
+        onCaptureFinished = null;
+
+        if (engine != null) {
+            try {
+                engine.stop();
+
+                if (engine.getRingOverruns() > 0 || engine.getLineOverruns() > 0) {
+                    System.out.println("The recording fell behind the microphone: " + engine.getRingOverruns()
+                            + " ring overrun(s), " + engine.getLineOverruns() + " line overrun(s), peak buffer "
+                            + engine.getMaxRingFill() + " of " + engine.getRingCapacity() + " bytes.");
+                }
+
+                finished.run();
+            } catch (IOException e) {
+                System.out.println("There was a problem saving the recording to a file. " +
+                        "Please try again. " + "\n" + e.getMessage());
+            }
+        }
+
         if (microphone != null) {
             microphone.stop();
             microphone.close();
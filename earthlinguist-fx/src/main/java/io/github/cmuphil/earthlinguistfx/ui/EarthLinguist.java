@@ -4,31 +4,39 @@ import io.github.cmuphil.earthlinguistfx.audio.AudioManager;
 import io.github.cmuphil.earthlinguistfx.data.TableData;
 import io.github.cmuphil.earthlinguistfx.data.TableRow;
 import io.github.cmuphil.earthlinguistfx.examples.Examples;
+import io.github.cmuphil.earthlinguistfx.remote.RemoteArchive;
+import io.github.cmuphil.earthlinguistfx.state.AppState;
+import io.github.cmuphil.earthlinguistfx.state.StatePersister;
+import io.github.cmuphil.earthlinguistfx.storage.Storage;
+import io.github.cmuphil.earthlinguistfx.store.ClipStore;
+import io.github.cmuphil.earthlinguistfx.upload.ResumableUploader;
+import io.github.cmuphil.earthlinguistfx.upload.UploadOutbox;
 import io.github.cmuphil.earthlinguistfx.utils.Constants;
 import io.github.cmuphil.earthlinguistfx.utils.UiUtils;
+import io.github.cmuphil.earthlinguistfx.utils.WorkspaceTransfer;
 import io.github.cmuphil.earthlinguistfx.utils.ZipUtils;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Side;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
 
 import static io.github.cmuphil.earthlinguistfx.utils.Constants.*;
 import static io.github.cmuphil.earthlinguistfx.utils.UiUtils.*;
@@ -116,6 +124,11 @@ public class EarthLinguist extends Application {
      */
     private TabPane leftTabs;
 
+    /**
+     * Uploads saved archives to the ingestion server in the background, or null if the outbox could not be opened.
+     */
+    private ResumableUploader uploader;
+
     /**
      * The main method.
      *
@@ -140,6 +153,27 @@ public class EarthLinguist extends Application {
         primaryStage.toFront();
     }
 
+    /**
+     * Writes any app state still waiting to be saved before the application exits.
+     */
+    @Override
+    public void stop() {
+        AudioManager.getInstance().stopRecording();
+        AudioManager.getInstance().setClipSource(null, null);
+
+        if (uploader != null) {
+            uploader.stop();
+        }
+
+        try {
+            StatePersister.getInstance().flushAll();
+        } catch (IOException e) {
+            System.out.println("There was a problem saving the app state. " + "\n" + e.getMessage());
+        }
+
+        Storage.getInstance().closeAll();
+    }
+
     /**
      * Sets up the overall layout of the application interface. Organizes the configuration of tabs for the main
      * functionalities, such as Introduction, Listen to Clips and Record Clips. Returns the main element of the
@@ -149,12 +183,33 @@ public class EarthLinguist extends Application {
      * @return the main element of the interface.
      */
     private TabPane setUpUi(Stage primaryStage) {
-        if (new File(Constants.PUBLIC_FILES_DIRECTORY).exists()) {
-            deleteDirectoryContents(new File(Constants.PUBLIC_FILES_DIRECTORY));
-            if (new File(Constants.PUBLIC_FILES_DIRECTORY).exists()) {
-                if (!new File(Constants.PUBLIC_FILES_DIRECTORY).delete()) {
-                    System.out.println("Error deleting public files directory.");
-                }
+        StatePersister.getInstance().setErrorHandler(e -> Platform.runLater(() ->
+                alert(Alert.AlertType.ERROR, "Error saving annotations: " + e.getMessage())));
+
+        // Public sound zips and scratch zips are not kept from one session to the next.
+        for (Storage.Area area : List.of(Storage.Area.PUBLIC_FILES, Storage.Area.SCRATCH_ZIPS)) {
+            try {
+                Storage.getInstance().get(area).deleteAll("");
+            } catch (IOException | IllegalStateException e) {
+                System.out.println("Error clearing the " + area.getName() + " area: " + e.getMessage());
+            }
+        }
+
+        try {
+            WorkspaceTransfer.recover(Path.of(SCRATCH_FILES_DIRECTORY_RECORD));
+        } catch (IOException e) {
+            System.out.println("Could not clean up an interrupted edit: " + e.getMessage());
+        }
+
+        // Archives saved in an earlier session that have not been uploaded yet carry on from where they stopped.
+        // Nothing is uploaded unless an ingestion server has been configured.
+        if (UPLOAD_SAVED) {
+            try {
+                uploader = new ResumableUploader(UploadOutbox.open(Path.of(OUTBOX_DIRECTORY)),
+                        URI.create(INGESTION_URL), 2, ResumableUploader.DEFAULT_CHUNK_BYTES);
+                uploader.start();
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Saved clips will not be uploaded: " + e.getMessage());
             }
         }
 
@@ -171,17 +226,11 @@ public class EarthLinguist extends Application {
             deleteDirectoryContents(new File(SCRATCH_FILES_DIRECTORY_RECORD));
         }
 
-        ZipUtils.deleteDirectoryContents(new File(Constants.SCRATCH_ZIPS));
         appStateListen = null;
 
         leftTabs = new TabPane();
         leftTabs.setSide(Side.LEFT);
 
-        // This should be empty on startup.
-        if (new File(SCRATCH_ZIPS).exists()) {
-            deleteDirectoryContents(new File(SCRATCH_ZIPS));
-        }
-
         try {
             UiUtils.checkClipsDirectory(SCRATCH_FILES_DIRECTORY_LISTEN);
         } catch (Exception e) {
@@ -196,6 +245,14 @@ public class EarthLinguist extends Application {
             deleteDirectoryContents(new File(SCRATCH_FILES_DIRECTORY_RECORD));
         }
 
+        // Bring the clip store up to date with whatever survived, dropping references to deleted clips.
+        try {
+            ClipStore.getInstance().ingest(Path.of(SCRATCH_FILES_DIRECTORY_LISTEN));
+            ClipStore.getInstance().ingest(Path.of(SCRATCH_FILES_DIRECTORY_RECORD));
+        } catch (IOException e) {
+            System.out.println("There was a problem checking the clip store. " + "\n" + e.getMessage());
+        }
+
         Tab introduction = new Tab("Introduction");
         Tab listen = new Tab("Listen");
         record = new Tab("Record");
@@ -265,23 +322,10 @@ public class EarthLinguist extends Application {
      * @return the Node containing this content.
      */
     private Node getIntroContent() {
-        ImageView imageView;
-
-        TableData tableData = Examples.getInstance().getExample(1);
+        TableData tableData = Examples.getInstance().getExampleSet(Examples.BUILT_IN).getExample(1);
         String path = tableData.getRow(0).getExampleImage();
-        try (InputStream resourceStream = EarthLinguist.class.getResourceAsStream(path)) {
-            if (resourceStream == null) {
-                throw new RuntimeException("Couldn't load image: " + path);
-            }
-
-            imageView = new ImageView(new Image(resourceStream));
-            imageView.setPreserveRatio(true);
-            imageView.setFitHeight(200.0);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
 
-        return new VBox(getLabel(""), UiUtils.getCenteredImage(imageView),
+        return new VBox(getLabel(""), UiUtils.createImage(path, 200.0),
                 getLabel("Welcome to the EarthLinguist app!"),
                 getLabel("Our goal is to build a library of sounds clips recorded by users suitable for "
                         + "listening or doing linguistics research. The sound clips are recorded in various languages "
@@ -302,41 +346,60 @@ public class EarthLinguist extends Application {
      */
     private Node getWhichSampleTabContent(Stage primaryStage) {
         Button loadSample = getLoadButton(primaryStage);
+        Button librarySample = getLibraryButton(primaryStage);
         VBox vBox = new VBox(
                 getLabeledRegion("To load a sample recording from your hard drive to " +
-                        "edit or listen, select it here:", loadSample));
+                        "edit or listen, select it here:", loadSample),
+                getLabeledRegion("Or, to listen to a sample from the library, choose it here:", librarySample));
         vBox.setPadding(new Insets(10));
 
         Button edit = new Button("Edit");
+        ProgressIndicator editProgress = new ProgressIndicator();
+        editProgress.setVisible(false);
 
         edit.setOnAction(e -> {
-            if (appStateListen != null) {
-                try {
-                    ZipUtils.deleteDirectoryContents(new File(SCRATCH_ZIPS));
-
-                    if (!new File(SCRATCH_ZIPS).exists()) {
-                       if (!new File(SCRATCH_ZIPS).mkdirs()) {
-                            throw new RuntimeException("Error creating scratch zips directory.");
-                       }
-                    } else if (!new File(SCRATCH_ZIPS).isDirectory()) {
-                        throw new RuntimeException("Scratch zips is not a directory.");
-                    }
+            if (appStateListen == null) {
+                return;
+            }
 
-                    ZipUtils.zip(new File(SCRATCH_FILES_DIRECTORY_LISTEN), new File(SCRATCH_ZIPS, "loaded.zip"));
-                    ZipUtils.deleteDirectoryContents(new File(SCRATCH_FILES_DIRECTORY_RECORD));
-                    ZipUtils.unzip(new File(SCRATCH_ZIPS, "loaded.zip"), new File(SCRATCH_FILES_DIRECTORY_RECORD));
-
-                    appStateRecord = AppState.fromJson(SCRATCH_FILES_DIRECTORY_LISTEN);
-                    whichExample.setContent(getWhichExampleTabContent(primaryStage));
-                    recordClips.setContent(getRecordClipsTabContent());
-                    annotateClipsRecord.setContent(getAnnotationTabContentRecord());
-                    saveClips.setContent(getSaveClipsTabContent(primaryStage));
-                    leftTabs.getSelectionModel().select(record);
-                    recordTabs.getSelectionModel().select(whichExample);
-                } catch (IOException ex) {
-                    throw new RuntimeException(ex);
+            // A sample from the library may not have all its clips on disk yet, so they are fetched, along with the
+            // copy into the record workspace, off the FX thread.
+            Task<AppState> copy = new Task<>() {
+                @Override
+                protected AppState call() throws IOException {
+                    AudioManager.getInstance().fetchClips((done, total) -> updateProgress(done, total));
+                    StatePersister.getInstance().flush(SCRATCH_FILES_DIRECTORY_LISTEN);
+                    StatePersister.getInstance().discard(SCRATCH_FILES_DIRECTORY_RECORD);
+                    UiUtils.forgetLastSaved(SCRATCH_FILES_DIRECTORY_RECORD);
+                    WorkspaceTransfer.copy(Path.of(SCRATCH_FILES_DIRECTORY_LISTEN),
+                            Path.of(SCRATCH_FILES_DIRECTORY_RECORD));
+
+                    AppState appState = AppState.fromJson(SCRATCH_FILES_DIRECTORY_LISTEN);
+                    UiUtils.recordClipDigests(appState, SCRATCH_FILES_DIRECTORY_RECORD);
+                    return appState;
                 }
-            }
+            };
+
+            editProgress.progressProperty().bind(copy.progressProperty());
+            editProgress.visibleProperty().bind(copy.runningProperty());
+            edit.disableProperty().bind(copy.runningProperty());
+
+            copy.setOnSucceeded(event -> {
+                appStateRecord = copy.getValue();
+                whichExample.setContent(getWhichExampleTabContent(primaryStage));
+                recordClips.setContent(getRecordClipsTabContent());
+                annotateClipsRecord.setContent(getAnnotationTabContentRecord());
+                saveClips.setContent(getSaveClipsTabContent(primaryStage));
+                leftTabs.getSelectionModel().select(record);
+                recordTabs.getSelectionModel().select(whichExample);
+            });
+
+            copy.setOnFailed(event -> alert(Alert.AlertType.ERROR, "Could not copy the sample for editing: "
+                    + copy.getException().getMessage()));
+
+            Thread thread = new Thread(copy, "edit-sample");
+            thread.setDaemon(true);
+            thread.start();
         });
 
         if (appStateListen != null) {
@@ -350,7 +413,8 @@ public class EarthLinguist extends Application {
                         getLabel("\tThe country of origin of the sample is : " + appStateListen.getSelectedCountry()),
                         getLabel("\tThe region(s) listed are: " + appStateListen.getEnteredRegion()),
                         getLabel("\tThe index of the sample is : " + appStateListen.getSelectedIndex()),
-                        getLabeledRegion("To edit this sample and save out a revised sample, click this button:", edit)
+                        getLabeledRegion("To edit this sample and save out a revised sample, click this button:", edit,
+                                editProgress)
                 );
             }
         }
@@ -390,13 +454,10 @@ public class EarthLinguist extends Application {
         for (int i = 0; i < numColumns; i++) {
             File audioFileDir = new File(SCRATCH_FILES_DIRECTORY_LISTEN);
 
-            try (AudioInputStream audioStream = AudioSystem.getAudioInputStream(UiUtils.getSoundFile(audioFileDir, i))) {
+            if (AudioManager.getInstance().isPlayable(UiUtils.getSoundFile(audioFileDir, i))) {
                 TextArea userArea = UiUtils.getUserArea(i, true, appStateListen, SCRATCH_FILES_DIRECTORY_LISTEN, numColumns);
                 TextArea expertArea = UiUtils.getExpertArea(i, true, appStateListen, SCRATCH_FILES_DIRECTORY_LISTEN, numColumns);
 
-                Clip clip = AudioSystem.getClip();
-                clip.open(audioStream);
-
                 if (appStateListen.getUserAnnotations()[i].isBlank()) {
                     userArea.setPromptText("User annotation: No annotation was provided.");
                 } else {
@@ -413,7 +474,7 @@ public class EarthLinguist extends Application {
                 expertArea.getStyleClass().add("text-userArea-disabled");
 
                 setUpAreas(i, audioFileDir, vbox, userArea, checkBox, expertArea);
-            } catch (Exception ex) {
+            } else {
                 TextArea userArea = UiUtils.getUserArea(i, false, appStateListen, SCRATCH_FILES_DIRECTORY_LISTEN, numColumns);
                 TextArea expertArea = UiUtils.getExpertArea(i, false, appStateListen, SCRATCH_FILES_DIRECTORY_LISTEN, numColumns);
 
@@ -498,7 +559,10 @@ public class EarthLinguist extends Application {
         regionArea.setPromptText("Enter a city/state/region (or a list of such regions)");
 
         // Initialize stuff
-        if (result.examplesCombo.getItems().contains(appStateRecord.getSelectedIndex())) {
+        String activeSet = Examples.getInstance().getActiveSet().getName();
+
+        if (appStateRecord.getSelectedExampleSet().equals(activeSet)
+            && result.examplesCombo.getItems().contains(appStateRecord.getSelectedIndex())) {
             result.examplesCombo.setValue(appStateRecord.getSelectedIndex());
         }
 
@@ -529,11 +593,14 @@ public class EarthLinguist extends Application {
         regionArea.textProperty().addListener((observable, oldValue, newValue) ->
                 clearForRecord(result.examplesCombo, result.languagesCombo, result.countriesCombo, regionArea));
 
+        ComboBox<String> setsCombo = getExampleSetsCombo(primaryStage);
+        Button remove = getRemoveExampleSetButton(primaryStage, activeSet);
         Button load = getLoadExamplesButton(primaryStage);
         Button stored = getRestoreExamplesButton(primaryStage);
 
         VBox vBox = new VBox(
-                getLabeledRegion("For which example table would you like to record clips?", result.examplesCombo, stored, load),
+                getLabeledRegion("Which set of examples would you like to use?", setsCombo, remove, stored, load),
+                getLabeledRegion("For which example table would you like to record clips?", result.examplesCombo),
                 getLabeledRegion("In which language would you like to record the clips?", result.languagesCombo),
                 getLabel("Please answer the following questions to help us understand your background:"),
                 getLabel("(1) In which country did you mainly grow up?"), UiUtils.getRegion(result.countriesCombo),
@@ -544,22 +611,95 @@ public class EarthLinguist extends Application {
         return vBox;
     }
 
+    /**
+     * Returns a combo box of the loaded example sets, showing the active one, which makes the set chosen active.
+     *
+     * @param primaryStage the primary stage.
+     * @return the combo box.
+     */
+    private ComboBox<String> getExampleSetsCombo(Stage primaryStage) {
+        ComboBox<String> setsCombo = new ComboBox<>();
+        setsCombo.getItems().addAll(Examples.getInstance().getExampleSetNames());
+        setsCombo.setValue(Examples.getInstance().getActiveSet().getName());
+
+        setsCombo.setOnAction(actionEvent -> {
+            String name = setsCombo.getValue();
+
+            if (name == null || name.equals(Examples.getInstance().getActiveSet().getName())) {
+                return;
+            }
+
+            try {
+                Examples.getInstance().setActiveSet(name);
+            } catch (IllegalArgumentException e) {
+                new Alert(Alert.AlertType.ERROR, "Couldn't use that example set: " + e.getMessage()).showAndWait();
+            }
+
+            whichExample.setContent(getWhichExampleTabContent(primaryStage));
+        });
+
+        return setsCombo;
+    }
+
+    /**
+     * Returns a button that removes the active example set, closing its example pack. The built-in set cannot be
+     * removed.
+     *
+     * @param primaryStage the primary stage.
+     * @param activeSet    the name of the active set.
+     * @return the button.
+     */
+    private Button getRemoveExampleSetButton(Stage primaryStage, String activeSet) {
+        Button remove = new Button("Remove");
+        remove.setDisable(activeSet.equals(Examples.BUILT_IN));
+
+        remove.setOnAction(actionEvent -> {
+            try {
+                Examples.getInstance().removeExampleSet(activeSet);
+            } catch (IllegalArgumentException e) {
+                new Alert(Alert.AlertType.ERROR, "Couldn't remove that example set: " + e.getMessage()).showAndWait();
+            }
+
+            whichExample.setContent(getWhichExampleTabContent(primaryStage));
+        });
+
+        return remove;
+    }
+
+    /**
+     * Returns a button that restores the built-in examples, removing every loaded example set and closing its pack.
+     *
+     * @param primaryStage the primary stage.
+     * @return the button.
+     */
     private Button getRestoreExamplesButton(Stage primaryStage) {
         Button stored = new Button("Restore");
 
         stored.setOnAction(actionEvent -> {
             try {
+                for (String name : Examples.getInstance().getExampleSetNames()) {
+                    if (!name.equals(Examples.BUILT_IN)) {
+                        Examples.getInstance().removeExampleSet(name);
+                    }
+                }
+
                 Examples.getInstance().loadExamplesFromJar();
             } catch (IOException | IllegalArgumentException e) {
                 new Alert(Alert.AlertType.ERROR, "Error loading examples from jar: " + e.getMessage()).showAndWait();
             }
 
             whichExample.setContent(getWhichExampleTabContent(primaryStage));
-            ZipUtils.deleteDirectoryContents(new File(LOADED_EXAMPLES));
         });
         return stored;
     }
 
+    /**
+     * Returns a button that loads an example pack from a zip as a new example set, which becomes active. Loading a
+     * pack with the name of a loaded set replaces it.
+     *
+     * @param primaryStage the primary stage.
+     * @return the button.
+     */
     private Button getLoadExamplesButton(Stage primaryStage) {
         Button load = new Button("Load New Examples...");
 
@@ -574,6 +714,10 @@ public class EarthLinguist extends Application {
 
             File file = fileChooser.showOpenDialog(primaryStage);
 
+            if (file == null) {
+                return;
+            }
+
             try {
                 Examples.getInstance().loadExamplesFromZip(file);
             } catch (Exception e) {
@@ -594,7 +738,12 @@ public class EarthLinguist extends Application {
     private TableView<TableRow> getRecordClipsTabContent() {
         int selectedIndex = appStateRecord.getSelectedIndex();
         TableView<TableRow> table = UiUtils.getTable(true, selectedIndex, appStateRecord, Constants.SCRATCH_FILES_DIRECTORY_RECORD);
-        appStateRecord.setNumColumns(table.getColumns().size() - 1);
+
+        // A table with no columns is for an example set that is not loaded; keep the annotations for when it is.
+        if (!table.getColumns().isEmpty()) {
+            appStateRecord.setNumColumns(table.getColumns().size() - 1);
+        }
+
         return table;
     }
 
@@ -607,9 +756,9 @@ public class EarthLinguist extends Application {
         VBox vbox = new VBox();
 
         TableView<TableRow> table = UiUtils.getTable(true, appStateRecord.getSelectedIndex(), appStateRecord, Constants.SCRATCH_FILES_DIRECTORY_RECORD);
-        int numColumns = table.getColumns().size() - 1;
+        int numColumns = Math.max(0, table.getColumns().size() - 1);
 
-        if (appStateRecord.getUserAnnotations().length != numColumns) {
+        if (!table.getColumns().isEmpty() && appStateRecord.getUserAnnotations().length != numColumns) {
             appStateRecord.setNumColumns(numColumns);
         }
 
@@ -623,17 +772,14 @@ public class EarthLinguist extends Application {
         for (int i = 0; i < numColumns; i++) {
             File audioFileDir = new File(Constants.SCRATCH_FILES_DIRECTORY_RECORD);
 
-            try (AudioInputStream audioStream = AudioSystem.getAudioInputStream(UiUtils.getSoundFile(audioFileDir, i))) {
+            if (AudioManager.getInstance().isPlayable(UiUtils.getSoundFile(audioFileDir, i))) {
                 TextArea userArea = UiUtils.getUserArea(i, true, appStateRecord, Constants.SCRATCH_FILES_DIRECTORY_RECORD, numColumns);
                 TextArea expertArea = UiUtils.getExpertArea(i, true, appStateRecord, Constants.SCRATCH_FILES_DIRECTORY_RECORD, numColumns);
 
-                Clip clip = AudioSystem.getClip();
-                clip.open(audioStream);
-
                 setUpAreas(i, audioFileDir, vbox, userArea, checkBox, expertArea);
 
                 vbox.getChildren().add(new Label(""));
-            } catch (Exception ex) {
+            } else {
                 TextArea userArea = UiUtils.getUserArea(i, false, appStateRecord, Constants.SCRATCH_FILES_DIRECTORY_RECORD, numColumns);
                 TextArea expertArea = UiUtils.getExpertArea(i, false, appStateRecord, Constants.SCRATCH_FILES_DIRECTORY_RECORD, numColumns);
 
@@ -695,12 +841,18 @@ public class EarthLinguist extends Application {
         Button save = new Button("Save As...");
 
         save.setOnAction(e -> {
-            File saveFile = ZipUtils.save(appStateRecord.getSelectedIndex(),
+            File saveFile = UiUtils.save(appStateRecord.getSelectedIndex(),
                     appStateRecord.getSelectedLanguage(), appStateRecord.getSelectedCountry(),
                     primaryStage);
 
             if (saveFile != null) {
-                ZipUtils.nextZipName(saveFile.getParent(), saveFile.getName());
+                if (uploader != null) {
+                    try {
+                        uploader.submit(saveFile.toPath());
+                    } catch (IOException ex) {
+                        System.out.println("Could not queue " + saveFile.getName() + " for upload: " + ex.getMessage());
+                    }
+                }
                 this.saveFile = saveFile;
                 saveClips.setContent(getSaveClipsTabContent(primaryStage));
             } else {
@@ -738,6 +890,7 @@ public class EarthLinguist extends Application {
                 throw new RuntimeException(e);
             }
 
+            AudioManager.getInstance().setClipSource(null, null);
             appStateListen = load1;
             whichSample.setContent(getWhichSampleTabContent(primaryStage));
         });
@@ -745,6 +898,118 @@ public class EarthLinguist extends Application {
         return load;
     }
 
+    /**
+     * Constructs a button for listening to a sample in the library on the ingestion server. Only the sample's state is
+     * fetched up front; its clips are streamed when played, and fetched into the listen cache in the background. The
+     * listing and the sample's state are fetched off the FX thread.
+     *
+     * @param primaryStage the primary stage.
+     * @return the button.
+     */
+    private Button getLibraryButton(Stage primaryStage) {
+        Button library = new Button("Listen from Library...");
+
+        library.setOnAction(actionEvent -> {
+            URI server = URI.create(INGESTION_URL);
+
+            Task<List<RemoteArchive.Listing>> list = new Task<>() {
+                @Override
+                protected List<RemoteArchive.Listing> call() throws IOException {
+                    return RemoteArchive.list(server);
+                }
+            };
+
+            library.disableProperty().bind(list.runningProperty());
+
+            list.setOnSucceeded(event -> {
+                List<RemoteArchive.Listing> listing = list.getValue();
+
+                if (listing.isEmpty()) {
+                    alert(Alert.AlertType.INFORMATION, "There are no samples in the library yet.");
+                    return;
+                }
+
+                ChoiceDialog<RemoteArchive.Listing> dialog = new ChoiceDialog<>(listing.get(0), listing);
+                dialog.setTitle("Listen from Library");
+                dialog.setHeaderText("Choose a sample to listen to:");
+                Optional<RemoteArchive.Listing> choice = dialog.showAndWait();
+
+                if (choice.isPresent()) {
+                    loadLibrarySample(primaryStage, library, server, choice.get());
+                }
+            });
+
+            list.setOnFailed(event -> alert(Alert.AlertType.ERROR, "Could not reach the library at " + server + ": "
+                    + list.getException().getMessage()));
+
+            Thread thread = new Thread(list, "library-list");
+            thread.setDaemon(true);
+            thread.start();
+        });
+
+        return library;
+    }
+
+    /**
+     * Opens the given library sample and loads its state into the listen workspace off the FX thread, then plays its
+     * clips from the server and fetches the rest of it into the listen cache in the background.
+     *
+     * @param primaryStage the primary stage.
+     * @param library      the library button, which is disabled while the sample loads.
+     * @param server       the address of the ingestion server.
+     * @param choice       the sample chosen.
+     */
+    private void loadLibrarySample(Stage primaryStage, Button library, URI server, RemoteArchive.Listing choice) {
+        // Nothing should be played from the listen workspace while it is replaced.
+        AudioManager.getInstance().setClipSource(null, null);
+
+        Task<LibrarySample> load = new Task<>() {
+            @Override
+            protected LibrarySample call() throws IOException {
+                RemoteArchive archive = RemoteArchive.open(server, choice.getId(), Path.of(LISTEN_CACHE_DIRECTORY));
+
+                try {
+                    return new LibrarySample(archive,
+                            UiUtils.loadRemoteAppState(archive, SCRATCH_FILES_DIRECTORY_LISTEN));
+                } catch (IOException | RuntimeException e) {
+                    try {
+                        archive.close();
+                    } catch (IOException ignored) {
+                    }
+
+                    throw e;
+                }
+            }
+        };
+
+        library.disableProperty().bind(load.runningProperty());
+
+        load.setOnSucceeded(event -> {
+            RemoteArchive archive = load.getValue().archive();
+            appStateListen = load.getValue().appState();
+            AudioManager.getInstance().setClipSource(new File(SCRATCH_FILES_DIRECTORY_LISTEN), archive);
+
+            Thread prefetch = new Thread(() -> {
+                try {
+                    archive.prefetch();
+                } catch (IOException e) {
+                    System.out.println("Could not fetch the rest of the sample: " + e.getMessage());
+                }
+            }, "library-prefetch");
+            prefetch.setDaemon(true);
+            prefetch.start();
+
+            whichSample.setContent(getWhichSampleTabContent(primaryStage));
+        });
+
+        load.setOnFailed(event -> alert(Alert.AlertType.ERROR, "Could not load the sample: "
+                + load.getException().getMessage()));
+
+        Thread thread = new Thread(load, "library-load");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /**
      * Clears the appState for recording.
      *
@@ -755,7 +1020,11 @@ public class EarthLinguist extends Application {
      */
     private void clearForRecord(ComboBox<Integer> examplesCombo, ComboBox<String> languagesCombo,
                                 ComboBox<String> countriesCombo, TextArea regionArea) {
-        appStateRecord.setSelectedIndex(examplesCombo.getValue());
+        if (examplesCombo.getValue() != null) {
+            appStateRecord.setSelectedExampleSet(Examples.getInstance().getActiveSet().getName());
+            appStateRecord.setSelectedIndex(examplesCombo.getValue());
+        }
+
         appStateRecord.setSelectedLanguage(languagesCombo.getValue());
         appStateRecord.setSelectedCountry(countriesCombo.getValue());
         appStateRecord.setEnteredRegion(regionArea.getText());
@@ -766,6 +1035,7 @@ public class EarthLinguist extends Application {
             throw new RuntimeException(e);
         }
         deleteDirectoryContents(new File(Constants.SCRATCH_FILES_DIRECTORY_RECORD));
+        UiUtils.forgetLastSaved(Constants.SCRATCH_FILES_DIRECTORY_RECORD);
     }
 
     /**
@@ -774,4 +1044,13 @@ public class EarthLinguist extends Application {
     public record comboBoxes(ComboBox<Integer> examplesCombo, ComboBox<String> countriesCombo,
                              ComboBox<String> languagesCombo) {
     }
+
+    /**
+     * A library sample that has been opened, with the state loaded from it.
+     *
+     * @param archive  the sample on the server.
+     * @param appState the sample's state.
+     */
+    private record LibrarySample(RemoteArchive archive, AppState appState) {
+    }
 }
@@ -4,6 +4,7 @@ import io.github.cmuphil.earthlinguistfx.audio.AudioManager;
 import io.github.cmuphil.earthlinguistfx.data.CheckboxRow;
 import io.github.cmuphil.earthlinguistfx.data.TableData;
 import io.github.cmuphil.earthlinguistfx.data.TableRow;
+import io.github.cmuphil.earthlinguistfx.state.AppState;
 import io.github.cmuphil.earthlinguistfx.utils.UiUtils;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
@@ -122,7 +123,6 @@ public class TableGenerator {
                             throw new RuntimeException(ex);
                         }
                     }
-                    setGraphic(UiUtils.createImage(item, checkboxImageHeight));
                 } else {
                     setGraphic(null);
                     setText(null);
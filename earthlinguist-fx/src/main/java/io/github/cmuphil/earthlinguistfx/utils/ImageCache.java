@@ -0,0 +1,262 @@
+package io.github.cmuphil.earthlinguistfx.utils;
+
+import javafx.scene.image.Image;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of decoded images shared by all tables, keyed by image path and the height the image is shown at. Images are
+ * kept in a least-recently-used map bounded by the number of bytes their pixels take up. Images evicted from that map
+ * are still held through soft references, so they can be reused until the garbage collector needs the memory; the
+ * references the collector clears are dropped as it queues them. An image that failed to load, in the background or
+ * otherwise, is never handed out again, so the next request for it tries again. This class is a singleton.
+ *
+ * @author josephramsey
+ */
+public class ImageCache {
+
+    /**
+     * Singleton pattern.
+     */
+    private static final ImageCache instance = new ImageCache(Constants.IMAGE_CACHE_BYTES);
+
+    /**
+     * The maximum number of pixel bytes held strongly.
+     */
+    private final long maxBytes;
+
+    /**
+     * The strongly held images, in access order.
+     */
+    private final LinkedHashMap<Key, Entry> images = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Images evicted from the strongly held map.
+     */
+    private final Map<Key, EvictedImage> evicted = new HashMap<>();
+
+    /**
+     * The soft references to evicted images that the garbage collector has cleared.
+     */
+    private final ReferenceQueue<Image> cleared = new ReferenceQueue<>();
+
+    /**
+     * The number of pixel bytes held strongly.
+     */
+    private long currentBytes = 0;
+
+    /**
+     * Constructs the cache.
+     *
+     * @param maxBytes the maximum number of pixel bytes to hold strongly.
+     */
+    private ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Singleton pattern.
+     *
+     * @return the singleton instance.
+     */
+    public static ImageCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the image for the given path and height, decoding it with the given loader if it is not cached. The
+     * loader is run without holding the cache's lock, so a slow decode does not hold up other lookups; if two threads
+     * decode the same image at once, the first one cached wins.
+     *
+     * @param path   the path of the image, used only as part of the key.
+     * @param height the height the image is shown at.
+     * @param loader decodes the image.
+     * @return the image.
+     * @throws IOException if the image could not be loaded.
+     */
+    public Image get(String path, double height, Loader loader) throws IOException {
+        Image image = peek(path, height);
+        return image != null ? image : put(path, height, loader.load());
+    }
+
+    /**
+     * Returns the cached image for the given path and height, or null if it is not cached or failed to load.
+     *
+     * @param path   the path of the image, used only as part of the key.
+     * @param height the height the image is shown at.
+     * @return the image, or null.
+     */
+    public synchronized Image peek(String path, double height) {
+        purgeCleared();
+
+        Key key = new Key(path, height);
+        Entry entry = images.get(key);
+
+        if (entry != null) {
+            if (!entry.image().isError()) {
+                return entry.image();
+            }
+
+            images.remove(key);
+            currentBytes -= entry.bytes();
+        }
+
+        EvictedImage reference = evicted.remove(key);
+        Image image = reference == null ? null : reference.get();
+
+        if (image == null || image.isError()) {
+            return null;
+        }
+
+        add(key, image);
+        return image;
+    }
+
+    /**
+     * Caches an image decoded for the given path and height, unless one has been cached for them in the meantime, in
+     * which case that one is returned instead.
+     *
+     * @param path   the path of the image, used only as part of the key.
+     * @param height the height the image is shown at.
+     * @param image  the decoded image.
+     * @return the cached image.
+     */
+    public synchronized Image put(String path, double height, Image image) {
+        Image cached = peek(path, height);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        add(new Key(path, height), image);
+        return image;
+    }
+
+    /**
+     * Holds an image strongly and evicts older ones if the byte budget is exceeded.
+     *
+     * @param key   the key of the image.
+     * @param image the image.
+     */
+    private void add(Key key, Image image) {
+        Entry entry = new Entry(image, sizeOf(image, key.height()));
+        images.put(key, entry);
+        currentBytes += entry.bytes();
+        evict();
+    }
+
+    /**
+     * Drops every cached image.
+     */
+    public synchronized void clear() {
+        images.clear();
+        evicted.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Moves least-recently-used images to soft references until the strongly held images fit in the byte budget.
+     * The most recently used image is always kept.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> iterator = images.entrySet().iterator();
+
+        while (currentBytes > maxBytes && images.size() > 1 && iterator.hasNext()) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            currentBytes -= eldest.getValue().bytes();
+            evicted.put(eldest.getKey(), new EvictedImage(eldest.getKey(), eldest.getValue().image(), cleared));
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Drops the soft references the garbage collector has cleared since the last call.
+     */
+    private void purgeCleared() {
+        Reference<? extends Image> reference;
+
+        while ((reference = cleared.poll()) != null) {
+            EvictedImage evictedImage = (EvictedImage) reference;
+            evicted.remove(evictedImage.key, evictedImage);
+        }
+    }
+
+    /**
+     * Returns the number of bytes the decoded pixels of the image take up. An image still being decoded in the
+     * background does not know its size yet, so a 4:3 image of the requested height is assumed.
+     *
+     * @param image  the image.
+     * @param height the height the image was requested at.
+     * @return the size in bytes.
+     */
+    private static long sizeOf(Image image, double height) {
+        if (image.getWidth() > 0 && image.getHeight() > 0) {
+            return 4L * Math.round(image.getWidth()) * Math.round(image.getHeight());
+        }
+
+        return 4L * Math.round(height) * Math.round(height * 4 / 3);
+    }
+
+    /**
+     * Decodes an image.
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * Decodes the image.
+         *
+         * @return the image.
+         * @throws IOException if the image could not be read.
+         */
+        Image load() throws IOException;
+    }
+
+    /**
+     * A soft reference to an evicted image that knows its key, so that it can be dropped once cleared.
+     */
+    private static final class EvictedImage extends SoftReference<Image> {
+
+        /**
+         * The key of the image.
+         */
+        private final Key key;
+
+        /**
+         * Constructs the reference.
+         *
+         * @param key   the key of the image.
+         * @param image the image.
+         * @param queue the queue the reference is put on when cleared.
+         */
+        private EvictedImage(Key key, Image image, ReferenceQueue<Image> queue) {
+            super(image, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * A strongly held image and the number of bytes it was counted as.
+     *
+     * @param image the image.
+     * @param bytes the number of bytes counted against the budget.
+     */
+    private record Entry(Image image, long bytes) {
+    }
+
+    /**
+     * The key of a cached image.
+     *
+     * @param path   the path of the image.
+     * @param height the height the image is shown at.
+     */
+    private record Key(String path, double height) {
+    }
+}
@@ -1,11 +1,22 @@
 package io.github.cmuphil.earthlinguistfx.utils;
 
+import io.github.cmuphil.earthlinguistfx.archive.IncrementalZipUpdater;
+import io.github.cmuphil.earthlinguistfx.archive.ZipEntryRecord;
+import io.github.cmuphil.earthlinguistfx.archive.ZipIndex;
+import io.github.cmuphil.earthlinguistfx.catalog.SampleValidator;
 import io.github.cmuphil.earthlinguistfx.data.TableData;
 import io.github.cmuphil.earthlinguistfx.data.TableRow;
 import io.github.cmuphil.earthlinguistfx.examples.Examples;
-import io.github.cmuphil.earthlinguistfx.ui.AppState;
+import io.github.cmuphil.earthlinguistfx.remote.RemoteArchive;
+import io.github.cmuphil.earthlinguistfx.state.AppState;
+import io.github.cmuphil.earthlinguistfx.state.StatePersister;
+import io.github.cmuphil.earthlinguistfx.storage.Storage;
+import io.github.cmuphil.earthlinguistfx.store.ClipStore;
 import io.github.cmuphil.earthlinguistfx.ui.EarthLinguist;
 import io.github.cmuphil.earthlinguistfx.ui.TableGenerator;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -15,15 +26,18 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
 import javafx.scene.text.Font;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
 
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipException;
 
 /**
  * Various static utility method for the EarthLinguist UI.
@@ -33,36 +47,159 @@ import java.util.List;
 public class UiUtils {
 
     /**
-     * Creates an image view for the given file path.
+     * The archive each workspace was last saved to, by workspace directory, used as the base of the next save so that
+     * unchanged entries can be copied rather than compressed again. A workspace's entry is dropped when something is
+     * loaded into it.
+     */
+    private static final Map<String, File> lastSaved = new ConcurrentHashMap<>();
+
+    /**
+     * Decodes images read from storage, off the JavaFX application thread.
+     */
+    private static final ExecutorService IMAGE_LOADER = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "image-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Creates an image view for the given resource path, or for a file in storage if the path is a
+     * {@link Storage} reference. A resource is decoded in the background directly at the given height, keeping its
+     * aspect ratio, and a placeholder is shown until it is ready; a file in storage is read and decoded on a loader
+     * thread, with the same placeholder shown meanwhile. The decoded image is shared through the {@link ImageCache}. A
+     * file in storage that is missing, as when its example pack has been unmounted, is reported and left as an empty
+     * placeholder.
      *
-     * @param filePath the file path.
+     * @param filePath the resource path or storage reference.
      * @param height   the height of the image.
      */
     public static StackPane createImage(String filePath, double height) {
-        StackPane pane = new StackPane();
+        if (Storage.isReference(filePath)) {
+            return createStoredImage(filePath, height);
+        }
 
-        try (InputStream resourceStream = EarthLinguist.class.getResourceAsStream(filePath)) {
-            if (resourceStream == null) {
-                throw new RuntimeException("Couldn't load image: " + filePath);
-            }
+        Image image;
 
-            ImageView imageView = new ImageView(new Image(resourceStream));
-            imageView.setPreserveRatio(true);
-            imageView.setFitHeight(height);
-            pane.getChildren().add(imageView);
-            return pane;
+        try {
+            image = ImageCache.getInstance().get(filePath, height, () -> {
+                URL url = EarthLinguist.class.getResource(filePath);
+
+                if (url == null) {
+                    throw new RuntimeException("Couldn't load image: " + filePath);
+                }
+
+                return new Image(url.toExternalForm(), 0, height, true, true, true);
+            });
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+
+        return getImagePane(image, height);
     }
 
+    /**
+     * Creates an image view for a file in storage. If the image is cached, it is shown at once; otherwise a
+     * placeholder is shown while the file is read and decoded on a loader thread, and the image replaces it on the
+     * JavaFX application thread when it is ready.
+     *
+     * @param reference the storage reference.
+     * @param height    the height of the image.
+     * @return the pane.
+     */
+    private static StackPane createStoredImage(String reference, double height) {
+        Image cached = ImageCache.getInstance().peek(reference, height);
+
+        if (cached != null) {
+            return getImagePane(cached, height);
+        }
+
+        StackPane pane = getMissingImagePane(height);
+
+        IMAGE_LOADER.execute(() -> {
+            Image image;
+
+            try (InputStream in = Storage.getInstance().open(reference)) {
+                image = ImageCache.getInstance().put(reference, height, new Image(in, 0, height, true, true));
+            } catch (IOException e) {
+                System.out.println("Image not found: " + reference + "\n" + e.getMessage());
+                return;
+            }
+
+            if (!image.isError()) {
+                Platform.runLater(() -> pane.getChildren().setAll(getImagePane(image, height)));
+            }
+        });
+
+        return pane;
+    }
+
+    /**
+     * Returns a pane of the given height standing in for an image that could not be found or is not loaded yet.
+     *
+     * @param height the height of the image.
+     * @return the pane.
+     */
+    private static StackPane getMissingImagePane(double height) {
+        Region placeholder = new Region();
+        placeholder.setPrefSize(height, height);
+        placeholder.getStyleClass().add("image-placeholder");
+        return new StackPane(placeholder);
+    }
+
+    /**
+     * Creates an image view for the given image file. The image is decoded in the background directly at the given
+     * height, keeping its aspect ratio, and a placeholder is shown until it is ready. The decoded image is shared
+     * through the {@link ImageCache}.
+     *
+     * @param file   the image file.
+     * @param height the height of the image.
+     * @throws IOException if the image file does not exist.
+     */
     public static StackPane createImage(File file, double height) throws IOException {
+        Image image = ImageCache.getInstance().get(file.getAbsolutePath(), height, () -> {
+            if (!file.isFile()) {
+                throw new FileNotFoundException("Couldn't load image: " + file);
+            }
+
+            return new Image(file.toURI().toString(), 0, height, true, true, true);
+        });
+
+        return getImagePane(image, height);
+    }
+
+    /**
+     * Returns a pane showing the given image at the given height. If the image is still being decoded, a placeholder
+     * of the same height is shown until it is done.
+     *
+     * @param image  the image.
+     * @param height the height.
+     * @return the pane.
+     */
+    private static StackPane getImagePane(Image image, double height) {
         StackPane pane = new StackPane();
-        Image image = new Image(new FileInputStream(file));
         ImageView imageView = new ImageView(image);
         imageView.setPreserveRatio(true);
         imageView.setFitHeight(height);
         pane.getChildren().add(imageView);
+
+        if (image.getProgress() < 1.0 && !image.isError()) {
+            Region placeholder = new Region();
+            placeholder.setPrefSize(height, height);
+            placeholder.getStyleClass().add("image-placeholder");
+            pane.getChildren().add(placeholder);
+
+            image.progressProperty().addListener(new ChangeListener<>() {
+                @Override
+                public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
+                    if (newValue.doubleValue() >= 1.0) {
+                        pane.getChildren().remove(placeholder);
+                        image.progressProperty().removeListener(this);
+                    }
+                }
+            });
+        }
+
         return pane;
     }
 
@@ -78,8 +215,9 @@ public class UiUtils {
     }
 
     /**
-     * Returns a formatted TableView for the given example. The 'record' parameter governs whether the table is meant
-     * for recording clips or listening to clips.
+     * Returns a formatted TableView for the given example of the app state's example set. The 'record' parameter
+     * governs whether the table is meant for recording clips or listening to clips. If the set is not loaded, as after
+     * it has been removed or the app restarted, the table has no columns and says so.
      *
      * @param record       whether the table is meant for recording clips or listening to clips.
      * @param exampleIndex the index of the example.
@@ -87,7 +225,17 @@ public class UiUtils {
      * @return a formatted TableView for the given example.
      */
     public static TableView<TableRow> getTable(boolean record, int exampleIndex, AppState appState, String dir) {
-        TableData tableData = Examples.getInstance().getExample(exampleIndex);
+        String set = appState.getSelectedExampleSet();
+
+        if (!Examples.getInstance().getExampleSetNames().contains(set)) {
+            TableView<TableRow> tableView = new TableView<>();
+            tableView.setPlaceholder(new Label("The example set '" + set + "' is not loaded. Load it again, or "
+                                               + "select another example."));
+            tableView.setPrefSize(800, 600);
+            return tableView;
+        }
+
+        TableData tableData = Examples.getInstance().getExampleSet(set).getExample(exampleIndex);
         TableGenerator tableGenerator = new TableGenerator();
 
         TableView<TableRow> tableView = tableGenerator.getExampleTable(tableData, 110,
@@ -199,12 +347,7 @@ public class UiUtils {
             userArea.getStyleClass().add("text-userArea-enabled");
             userArea.textProperty().addListener((observable, oldValue, newValue) -> {
                 appState.getUserAnnotations()[i] = newValue;
-                try {
-                    AppState.toJson(appState, directory);
-                } catch (IOException e) {
-                    new Alert(Alert.AlertType.ERROR, "Error saving annotations").showAndWait();
-                    throw new RuntimeException(e);
-                }
+                StatePersister.getInstance().submit(appState, directory);
             });
         } else {
             userArea.setEditable(false);
@@ -239,12 +382,7 @@ public class UiUtils {
             expertArea.getStyleClass().add("text-userArea-enabled");
             expertArea.textProperty().addListener((observable, oldValue, newValue) -> {
                 appState.getExpertAnnotations()[i] = newValue;
-                try {
-                    AppState.toJson(appState, directory);
-                } catch (IOException e) {
-                    new Alert(Alert.AlertType.ERROR, "Error saving annotations").showAndWait();
-                    throw new RuntimeException(e);
-                }
+                StatePersister.getInstance().submit(appState, directory);
             });
         } else {
             expertArea.setEditable(false);
@@ -305,6 +443,9 @@ public class UiUtils {
      * ("clip.[number].wav") and are valid for use in the application. 4. Initializing the AppState object based on the
      * "state.json" file, which contains necessary configuration or state information for the application.
      * <p>
+     * Before any of this, "state.json" is read directly from the zip file's central directory and parsed, so that an
+     * archive without a readable state is rejected before the directory is cleared or anything is extracted.
+     * <p>
      * This method aims to ensure the integrity and correctness of the application state and audio files extracted from
      * the zip. If the "state.json" file is missing, the directory is inaccessible, contains invalid files, or if any
      * other error occurs during the extraction and validation process, the method attempts to clean up by clearing the
@@ -327,15 +468,73 @@ public class UiUtils {
      *                                  file, or presence of invalid files within the directory.
      */
     public static AppState loadAppState(File file, String toDirectory) throws IOException, IllegalArgumentException {
-        ZipUtils.deleteDirectoryContents(new File(toDirectory));
+        ZipIndex index;
+        AppState archived = null;
 
-        if (!new File(toDirectory).exists()) {
-            if (!new File(toDirectory).mkdirs()) {
-                throw new IOException("Could not create directory: " + toDirectory);
-            }
+        forgetLastSaved(toDirectory);
+        IncrementalZipUpdater.recover(file.toPath());
+
+        try {
+            index = ZipIndex.open(file.toPath());
+        } catch (ZipException e) {
+            index = null;
         }
 
-        ZipUtils.unzip(file, new File(toDirectory));
+        try {
+            // Read state.json straight from the archive first, so that an archive without a readable state is
+            // rejected before the target directory is cleared or anything is extracted.
+            if (index != null) {
+                if (index.getEntry("state.json") == null) {
+                    throw new IllegalArgumentException(
+                            "I was expecting a state.json file plus a number of clip.wav files.");
+                }
+
+                try (Reader reader = new InputStreamReader(index.openStream("state.json"), StandardCharsets.UTF_8)) {
+                    archived = AppState.fromJson(reader);
+                }
+            }
+
+            StatePersister.getInstance().discard(toDirectory);
+            ZipUtils.deleteDirectoryContents(new File(toDirectory));
+
+            if (!new File(toDirectory).exists()) {
+                if (!new File(toDirectory).mkdirs()) {
+                    throw new IOException("Could not create directory: " + toDirectory);
+                }
+            }
+
+            if (index != null) {
+
+                // Clips the clip store already holds are linked from it rather than extracted, once the archived
+                // clip has been hashed and found to be the stored one.
+                Set<String> restored = new HashSet<>();
+
+                for (Map.Entry<String, String> clip : archived.getClipDigests().entrySet()) {
+                    String name = clip.getKey();
+                    ZipEntryRecord entry = index.getEntry(name);
+
+                    if (entry == null || !name.matches("[^./\\\\][^/\\\\]*\\.wav")
+                        || !ClipStore.getInstance().contains(clip.getValue())) {
+                        continue;
+                    }
+
+                    try (InputStream in = index.openStream(name)) {
+                        if (ClipStore.getInstance().restore(clip.getValue(), entry.size(), in,
+                                new File(toDirectory, name).toPath())) {
+                            restored.add(name);
+                        }
+                    }
+                }
+
+                index.extractAll(new File(toDirectory).toPath(), restored);
+            } else {
+                ZipUtils.unzip(file, new File(toDirectory));
+            }
+        } finally {
+            if (index != null) {
+                index.close();
+            }
+        }
 
         if (new File(toDirectory).exists()) {
             checkClipsDirectory(toDirectory);
@@ -343,9 +542,62 @@ public class UiUtils {
             throw new IllegalArgumentException("Error loading state from file: " + file.getAbsolutePath());
         }
 
+        AppState appState = AppState.fromJson(toDirectory);
+        recordClipDigests(appState, toDirectory);
+        AppState.toJson(appState, toDirectory);
+        return appState;
+    }
+
+    /**
+     * Loads the app state of a sample in the library into the given directory, without its clips, which are streamed
+     * from the server when played. The directory's existing contents are cleared once the sample's state.json has been
+     * read and found to refer to an example of a loaded example set.
+     *
+     * @param archive     the library sample.
+     * @param toDirectory the directory to load the state into.
+     * @return the app state.
+     * @throws IOException              if state.json cannot be fetched or written.
+     * @throws IllegalArgumentException if the sample has no readable state.json or it refers to an unknown example.
+     */
+    public static AppState loadRemoteAppState(RemoteArchive archive, String toDirectory) throws IOException,
+            IllegalArgumentException {
+        if (!archive.exists(AppState.STATE_FILE)) {
+            throw new IllegalArgumentException("I was expecting a state.json file plus a number of clip.wav files.");
+        }
+
+        AppState archived = AppState.fromJson(archive);
+
+        Examples.getInstance().getExampleSet(archived.getSelectedExampleSet()).getExample(archived.getSelectedIndex());
+
+        forgetLastSaved(toDirectory);
+        StatePersister.getInstance().discard(toDirectory);
+        ZipUtils.deleteDirectoryContents(new File(toDirectory));
+
+        if (!new File(toDirectory).exists()) {
+            if (!new File(toDirectory).mkdirs()) {
+                throw new IOException("Could not create directory: " + toDirectory);
+            }
+        }
+
+        archive.extract("state.json", new File(toDirectory, "state.json").toPath());
         return AppState.fromJson(toDirectory);
     }
 
+    /**
+     * Adds the clips in the given workspace to the clip store and records their digests in the app state. Problems
+     * with the store are reported but not thrown, since the workspace itself is complete without it.
+     *
+     * @param appState the app state for the workspace.
+     * @param dir      the workspace directory.
+     */
+    public static void recordClipDigests(AppState appState, String dir) {
+        try {
+            appState.setClipDigests(ClipStore.getInstance().ingest(new File(dir).toPath()));
+        } catch (IOException e) {
+            System.out.println("There was a problem adding the clips to the clip store. " + "\n" + e.getMessage());
+        }
+    }
+
     /**
      * Validates the contents of a specified directory for compliance with the expected structure and file format for
      * audio clips.
@@ -354,7 +606,8 @@ public class UiUtils {
      * clips adhere to a specific naming convention and format. It checks for the absence of subdirectories and hidden
      * files within the directory. Each audio clip file must be named according to the pattern 'clip.<number>.wav',
      * where <number> is a positive integer that corresponds to a valid column in a specified example from the
-     * application's state. The method also verifies the validity of each audio file.</p>
+     * application's state. The method also verifies the validity of each audio file by checking its RIFF/WAVE header
+     * and chunk sizes, in parallel across files, without reading any audio data.</p>
      *
      * @param toDirectory A {@link String} representing the path to the directory whose contents are to be validated.
      *                    The directory must contain a 'state.json' file and comply with the specified constraints
@@ -372,73 +625,7 @@ public class UiUtils {
      *                                  </ul>
      */
     public static void checkClipsDirectory(String toDirectory) throws IOException {
-        if (!new File(toDirectory, "state.json").exists()) {
-            throw new IllegalArgumentException("I was expecting a state.json file plus a number of clip.wav files.");
-        }
-
-        File[] files = new File(toDirectory).listFiles();
-
-        if (files == null) {
-            throw new IllegalArgumentException("The directory does not exist: " + toDirectory);
-        }
-
-        // Check that the app state can be parsed.
-        AppState appState;
-
-        try {
-            appState = AppState.fromJson(toDirectory);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Could not parse app state: " + e.getMessage());
-        }
-
-        for (File _file : files) {
-            if (_file.isDirectory()) {
-                throw new IllegalArgumentException("The directory contains subdirectories.");
-            }
-
-            if (_file.getName().startsWith(".")) {
-                throw new IllegalArgumentException("The directory contains hidden files.");
-            }
-
-            if (_file.getName().equals("state.json")) {
-                continue;
-            }
-
-            // Any other file should be a clip.
-            int clipNumber = getClipNumber(_file);
-            int example = appState.getSelectedIndex();
-
-            // It should be for a column in the given example.
-            if (!(clipNumber >= 1 && clipNumber <= Examples.getInstance().getExample(example).getNumColumns())) {
-                throw new IllegalArgumentException("The directory contains a clip that is not for a column in the given example, clip." + clipNumber + ".wav");
-            }
-
-            // It should be a valid audio file.
-            try (AudioInputStream audioStream = AudioSystem.getAudioInputStream(_file)) {
-                Clip clip = AudioSystem.getClip();
-                clip.open(audioStream);
-                clip.close();
-            } catch (Exception ex) {
-                throw new IllegalArgumentException("The directory contains a clip that is not a valid audio clip, clip." + clipNumber + ".wav");
-            }
-        }
-    }
-
-    /**
-     * Returns the number of the clip from the given file.
-     *
-     * @param _file the file.
-     * @return the number of the clip from the given file.
-     */
-    private static int getClipNumber(File _file) {
-        String name = _file.getName();
-        String[] tokens = name.split("\\.");
-
-        if (tokens.length != 3 || !tokens[0].equals("clip") || !tokens[2].equals("wav") || !tokens[1].matches("\\d+") || Integer.parseInt(tokens[1]) < 1) {
-            throw new IllegalArgumentException("The directory contains a clip that is not for a column in the given example, " + _file.getName());
-        }
-
-        return Integer.parseInt(tokens[1]);
+        SampleValidator.checkClipsDirectory(toDirectory);
     }
 
     /**
@@ -497,11 +684,12 @@ public class UiUtils {
     /**
      * Returns true if some column has not been inverted.
      *
-     * @param selectedExampleIndex the name of the example.
+     * @param appState the app state for recording, which names the example and its set.
      * @return true if some column has not been inverted.
      */
-    public static boolean someColumnNotRecorded(Integer selectedExampleIndex) {
-        TableData table = Examples.getInstance().getExample(selectedExampleIndex);
+    public static boolean someColumnNotRecorded(AppState appState) {
+        TableData table = Examples.getInstance().getExampleSet(appState.getSelectedExampleSet())
+                .getExample(appState.getSelectedIndex());
         int numColumns = table.getNumColumns();
 
         for (int i = 0; i < numColumns; i++) {
@@ -524,4 +712,90 @@ public class UiUtils {
             tab.setClosable(false);
         }
     }
+
+    /**
+     * Forgets the archive the given workspace was last saved to, so that the next save does not use it as a base. This
+     * is called when the workspace is cleared or something else is loaded into it.
+     *
+     * @param workspace the workspace directory.
+     */
+    public static void forgetLastSaved(String workspace) {
+        lastSaved.remove(workspace);
+    }
+
+    /**
+     * Zips the clips in the scratch directory and saves the zip file to the save directory. If the chosen file is an
+     * existing archive, it is updated in place; otherwise the archive saved last is used as a base. Either way only
+     * changed entries are compressed and written; see {@link IncrementalZipUpdater}. If the archive cannot be written
+     * in full either, the user is told and the empty file made for it is deleted.
+     *
+     * @param selectedExample  the name of the example.
+     * @param selectedLanguage the name of the language.
+     * @param primaryStage     the primary stage.
+     */
+    public static File save(Integer selectedExample, String selectedLanguage, String selectedCountry, Stage primaryStage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save File");
+        File userHome = new File(System.getProperty("user.home"));
+        fileChooser.setInitialDirectory(userHome);
+
+        String clipsFilename = ("example " + selectedExample + " " + selectedLanguage
+                + " " + selectedCountry).replace(" ", "_").toLowerCase();
+
+        String next = ZipUtils.nextZipName(userHome.getAbsolutePath(), clipsFilename);
+
+        fileChooser.setInitialFileName(next);
+
+        // Set extension filter, if you want to restrict the file type
+        FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter("ZIP files (*.zip)", "*.zip");
+        fileChooser.getExtensionFilters().add(extFilter);
+
+        // Show save file dialog
+        File fileToSave = fileChooser.showSaveDialog(primaryStage);
+
+        if (fileToSave != null) {
+            String clipsFilename2 = fileToSave.getName();
+            File file = new File(fileToSave.getParent(), clipsFilename2);
+            try {
+                StatePersister.getInstance().flush(Constants.SCRATCH_FILES_DIRECTORY_RECORD);
+            } catch (IOException e) {
+                alert(Alert.AlertType.ERROR, "Error saving app state: " + e.getMessage());
+                throw new RuntimeException(e);
+            }
+
+            String workspace = Constants.SCRATCH_FILES_DIRECTORY_RECORD;
+            File base = file.exists() ? file : lastSaved.get(workspace);
+
+            if (base != null && base.exists()) {
+                try {
+                    IncrementalZipUpdater.update(new File(workspace).toPath(), base.toPath(), file.toPath());
+                    lastSaved.put(workspace, file);
+                    return file;
+                } catch (IOException e) {
+                    System.out.println("Rewriting " + file.getName() + " in full: " + e.getMessage());
+                }
+            }
+
+            recreateFile(clipsFilename, file);
+
+            try {
+                ZipUtils.zip(new File(Constants.SCRATCH_FILES_DIRECTORY_RECORD), file);
+            } catch (RuntimeException e) {
+                lastSaved.remove(workspace);
+
+                if (!file.delete()) {
+                    System.out.println("Could not delete the unfinished " + file.getName());
+                }
+
+                alert(Alert.AlertType.ERROR, "Error saving " + file.getName() + ": " + e.getMessage());
+                throw e;
+            }
+
+            lastSaved.put(workspace, file);
+
+            return file;
+        }
+
+        return null;
+    }
 }